@@ -0,0 +1,34 @@
+package net.devromik.suspender;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Runs the JMH benchmarks once for each number of the benchmark threads
+ * listed (comma-separated) by the system property THREAD_COUNTS_PROPERTY.
+ * The arguments are the JMH command line options (for example, "-p depth=4 .*overwrite").
+ *
+ * @author Shulnyaev Roman
+ */
+public final class BenchmarkRunner {
+
+    public static final String THREAD_COUNTS_PROPERTY = "benchmark.threads";
+    public static final String DEFAULT_THREAD_COUNTS = "1";
+
+    // ****************************** //
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        for (String threadCount : System.getProperty(THREAD_COUNTS_PROPERTY, DEFAULT_THREAD_COUNTS).split(",")) {
+            Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .threads(Integer.parseInt(threadCount.trim()))
+                .build();
+
+            new Runner(options).run();
+        }
+    }
+
+    private BenchmarkRunner() {}
+}
@@ -0,0 +1,73 @@
+package net.devromik.suspender.mem;
+
+import java.time.Instant;
+import java.util.Random;
+import org.openjdk.jmh.annotations.*;
+import static java.lang.System.currentTimeMillis;
+import static java.time.Duration.*;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import net.devromik.suspender.utils.Path;
+
+/**
+ * An expiration sweep of net.devromik.suspender.mem.MemSuspender:
+ * restoring EXPIRED_OBJECT_COUNT expired objects suspended by random paths
+ * of {@code depth} segments, each segment has one of {@code fanout} values.
+ *
+ * The sweep is made by the benchmark threads instead of the restorer (the suspender is not started),
+ * so with several threads the divisions are swept concurrently.
+ *
+ * @author Shulnyaev Roman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExpirationSweepBenchmark {
+
+    public static final int EXPIRED_OBJECT_COUNT = 100_000;
+
+    // ****************************** //
+
+    @Param({"2", "4"})
+    public int depth;
+
+    @Param({"16", "256"})
+    public int fanout;
+
+    @Param({"4", "64"})
+    public int divisionCount;
+
+    // ****************************** //
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        suspender = new MemSuspender(divisionCount, ZERO, ofSeconds(1L));
+        Random random = new Random(0L);
+        long expirationTime = currentTimeMillis() - ofMinutes(1L).toMillis();
+
+        for (int i = 0; i < EXPIRED_OBJECT_COUNT; ++i) {
+            String[] segments = new String[depth];
+
+            for (int j = 0; j < depth - 1; ++j) {
+                segments[j] = "s" + random.nextInt(fanout);
+            }
+
+            // The paths are distinct, so all the objects stay suspended until the sweep.
+            segments[depth - 1] = "o" + i;
+            suspender.suspend(new Path(segments), i, Instant.ofEpochMilli(expirationTime - random.nextInt(1000)));
+        }
+    }
+
+    @Benchmark
+    public void sweep() {
+        while (suspender.restoreExpired(currentTimeMillis())) {
+            // Sweeping until all the expired objects are restored.
+        }
+    }
+
+    // ****************************** //
+
+    MemSuspender suspender;
+}
@@ -0,0 +1,239 @@
+package net.devromik.suspender.mem;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+import static java.time.Duration.*;
+import static java.util.concurrent.TimeUnit.*;
+import net.devromik.suspender.utils.Path;
+
+/**
+ * The core operations of net.devromik.suspender.mem.MemSuspender.
+ *
+ * The suspender is prefilled with PREFILLED_OBJECT_COUNT objects suspended by distinct paths
+ * of {@code depth} segments: each segment but the last one has one of {@code fanout} random values,
+ * and the last one is unique.
+ * The operations which do not change the number of the objects (overwrite(), hasObjectsSuspendedBy())
+ * are measured by the throughput over the prefilled objects.
+ * The operations which add or remove objects are measured by the time of a batch over the objects
+ * added by each benchmark thread under its own first path segment before the iteration,
+ * so the suspender does not grow or run empty during a measurement.
+ *
+ * @author Shulnyaev Roman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MemSuspenderBenchmark {
+
+    public static final int PREFILLED_OBJECT_COUNT = 100_000;
+
+    /**
+     * The number of the operations in a batch.
+     */
+    public static final int BATCH_SIZE = 10_000;
+    public static final int SUBTREE_BATCH_SIZE = 1_000;
+
+    // ****************************** //
+
+    @Param({"2", "4"})
+    public int depth;
+
+    @Param({"16", "256"})
+    public int fanout;
+
+    @Param({"4", "64"})
+    public int divisionCount;
+
+    // ****************************** //
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        suspender = new MemSuspender(divisionCount, ZERO, ofSeconds(1L));
+        prefilledPaths = new Path[PREFILLED_OBJECT_COUNT];
+        Random random = new Random(0L);
+
+        for (int i = 0; i < PREFILLED_OBJECT_COUNT; ++i) {
+            prefilledPaths[i] = randomPath(random, depth - 1).withAppendedSegment("o" + i);
+            suspender.suspend(prefilledPaths[i], i, ofHours(1L));
+        }
+    }
+
+    Path randomPath(Random random, int segmentCount) {
+        String[] segments = new String[segmentCount];
+
+        for (int i = 0; i < segmentCount; ++i) {
+            segments[i] = "s" + random.nextInt(fanout);
+        }
+
+        return new Path(segments);
+    }
+
+    // ****************************** //
+
+    @Benchmark
+    public void overwrite() {
+        suspender.suspend(prefilledPaths[ThreadLocalRandom.current().nextInt(PREFILLED_OBJECT_COUNT)], 0, ofHours(1L));
+    }
+
+    /**
+     * Checks a random prefix of {@code depth - 1} segments (a single-segment one spans the divisions).
+     */
+    @Benchmark
+    public boolean hasObjectsSuspendedBy() {
+        return suspender.hasObjectsSuspendedBy(randomPath(ThreadLocalRandom.current(), depth - 1));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 5, batchSize = BATCH_SIZE)
+    public void suspend(FreshPaths paths) {
+        suspender.suspend(paths.next(), 0, ofHours(1L));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 5, batchSize = BATCH_SIZE)
+    public void restoreLeaf(SuspendedLeaves leaves) {
+        suspender.restore(leaves.next());
+    }
+
+    /**
+     * Restores a subtree of {@code fanout} objects.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = SUBTREE_BATCH_SIZE)
+    @Measurement(iterations = 5, batchSize = SUBTREE_BATCH_SIZE)
+    public void restoreSubtree(SuspendedSubtrees subtrees) {
+        suspender.restore(subtrees.next());
+    }
+
+    /**
+     * Restores the object with the min restoration time of the BATCH_SIZE objects of the thread.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 5, batchSize = BATCH_SIZE)
+    public void restoreObjectWithMinRestorationTime(SuspendedLeaves leaves) {
+        suspender.restoreObjectWithMinRestorationTime(leaves.threadPrefix);
+    }
+
+    // ****************************** //
+
+    /**
+     * The paths of the objects of a benchmark thread.
+     * The paths have the first segment of the thread and {@code depth} segments at least.
+     */
+    public static abstract class ThreadPaths {
+
+        void makePaths(MemSuspenderBenchmark benchmark) {
+            this.benchmark = benchmark;
+            paths = new ArrayList<>(BATCH_SIZE);
+            nextIndex = 0;
+            Random random = ThreadLocalRandom.current();
+
+            for (int i = 0; i < BATCH_SIZE; ++i) {
+                Path path = threadPrefix;
+
+                for (int j = 2; j < benchmark.depth; ++j) {
+                    path = path.withAppendedSegment("s" + random.nextInt(benchmark.fanout));
+                }
+
+                paths.add(path.withAppendedSegment("o" + i));
+            }
+        }
+
+        Path next() {
+            return paths.get(nextIndex++);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            benchmark.suspender.restore(threadPrefix, Collections.emptyList());
+        }
+
+        // ****************************** //
+
+        final Path threadPrefix = new Path("T" + threadCounter.incrementAndGet());
+        MemSuspenderBenchmark benchmark;
+        List<Path> paths;
+        int nextIndex;
+    }
+
+    @State(Scope.Thread)
+    public static class FreshPaths extends ThreadPaths {
+
+        @Setup(Level.Iteration)
+        public void setUp(MemSuspenderBenchmark benchmark) {
+            makePaths(benchmark);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SuspendedLeaves extends ThreadPaths {
+
+        @Setup(Level.Iteration)
+        public void setUp(MemSuspenderBenchmark benchmark) {
+            makePaths(benchmark);
+            Random random = ThreadLocalRandom.current();
+
+            for (Path path : paths) {
+                benchmark.suspender.suspend(path, 0, ofMinutes(10L + random.nextInt(60)));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SuspendedSubtrees {
+
+        @Setup(Level.Iteration)
+        public void setUp(MemSuspenderBenchmark benchmark) {
+            this.benchmark = benchmark;
+            prefixes = new ArrayList<>(SUBTREE_BATCH_SIZE);
+            nextIndex = 0;
+
+            for (int i = 0; i < SUBTREE_BATCH_SIZE; ++i) {
+                Path prefix = new Path(threadSegment, "t" + i);
+                prefixes.add(prefix);
+
+                for (int j = 0; j < benchmark.fanout; ++j) {
+                    benchmark.suspender.suspend(prefix.withAppendedSegment("s" + j), 0, ofHours(1L));
+                }
+            }
+        }
+
+        Path next() {
+            return prefixes.get(nextIndex++);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            benchmark.suspender.restore(new Path(threadSegment), Collections.emptyList());
+        }
+
+        // ****************************** //
+
+        final String threadSegment = "T" + threadCounter.incrementAndGet();
+        MemSuspenderBenchmark benchmark;
+        List<Path> prefixes;
+        int nextIndex;
+    }
+
+    // ****************************** //
+
+    MemSuspender suspender;
+    Path[] prefilledPaths;
+    static final AtomicInteger threadCounter = new AtomicInteger();
+}
@@ -52,7 +52,7 @@ public class ComplexLoadTest {
 
     @Test
     public void canWorkUnderConcurrentLoad() throws Exception {
-        /* We suspend objects (actually, paths: suspend(path, path, duration)) concurrently.
+        /* We suspend objects (actually, paths: suspendIfAbsent(path, path, duration)) concurrently.
            As a result we will get the following tree of suspended objects (format: "node: set of suspended objects"):
 
            root
@@ -83,22 +83,18 @@ public class ComplexLoadTest {
                         for (int b = 1; b <= 2; ++b) {
                             Path path_AI_BJ = new Path("A" + a, "B" + b);
 
-                            if (!suspender.hasObjectsSuspendedBy(path_AI_BJ)) {
-                                suspender.suspend(
-                                    path_AI_BJ,
-                                    path_AI_BJ,
-                                    ofHours(2L));
-                            }
+                            suspender.suspendIfAbsent(
+                                path_AI_BJ,
+                                path_AI_BJ,
+                                ofHours(2L));
 
                             for (int c = 1; c <= 2; ++c) {
                                 Path path_AI_BJ_CK = new Path("A" + a, "B" + b, "C" + c);
 
-                                if (!suspender.hasObjectsSuspendedBy(path_AI_BJ_CK)) {
-                                    suspender.suspend(
-                                        path_AI_BJ_CK,
-                                        path_AI_BJ_CK,
-                                        ofHours(1L));
-                                }
+                                suspender.suspendIfAbsent(
+                                    path_AI_BJ_CK,
+                                    path_AI_BJ_CK,
+                                    ofHours(1L));
 
                                 for (int d = 1; d <= 2; ++d) {
                                     for (int e = 1; e <= 256; ++e) {
@@ -109,12 +105,10 @@ public class ComplexLoadTest {
                                             "D" + d,
                                             "E" + e);
 
-                                        if (!suspender.hasObjectsSuspendedBy(path_AI_BJ_CK_DL_EM)) {
-                                            suspender.suspend(
-                                                path_AI_BJ_CK_DL_EM,
-                                                path_AI_BJ_CK_DL_EM,
-                                                ofSeconds(10L));
-                                        }
+                                        suspender.suspendIfAbsent(
+                                            path_AI_BJ_CK_DL_EM,
+                                            path_AI_BJ_CK_DL_EM,
+                                            ofSeconds(10L));
                                     }
                                 }
                             }
@@ -250,11 +244,8 @@ public class ComplexLoadTest {
         }
 
         checkNotification(expectedRestoredObjects);
-        assertThat(suspender.pathFirstSegmentToDivCount.size(), is(suspender.suspendedObjectDivCount));
-
-        for (int i = 1; i <= suspender.suspendedObjectDivCount; ++i) {
-            assertThat(suspender.pathFirstSegmentToDivCount.get("A" + i).get(), is(0));
-        }
+        // The entries of the restored first segments are reclaimed.
+        assertThat(suspender.getPathFirstSegmentCount(), is(0));
     }
 
     void checkNotification(Set<Path> paths) throws Exception {
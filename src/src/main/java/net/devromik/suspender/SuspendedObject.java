@@ -0,0 +1,97 @@
+package net.devromik.suspender;
+
+import java.time.Instant;
+import java.util.Objects;
+import com.google.common.base.MoreObjects;
+import static com.google.common.base.Preconditions.checkNotNull;
+import net.devromik.suspender.utils.Path;
+
+/**
+ * A suspended object as seen from the outside of a suspender:
+ * the suspension path, the object itself and the planned restoration time.
+ *
+ * This class is immutable.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class SuspendedObject {
+
+    /**
+     * @throws NullPointerException when {@code path} or {@code restorationTime} is null.
+     */
+    public SuspendedObject(Path path, Object object, Instant restorationTime) {
+        this.path = checkNotNull(path);
+        this.object = object;
+        this.restorationTime = checkNotNull(restorationTime);
+    }
+
+    /**
+     * @return the path by which the object is suspended.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the suspended object.
+     */
+    public Object getObject() {
+        return object;
+    }
+
+    /**
+     * @return the planned restoration time of the object.
+     */
+    public Instant getRestorationTime() {
+        return restorationTime;
+    }
+
+    // ****************************** //
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+
+        if (other == null) {
+            return false;
+        }
+
+        if (other.getClass() != getClass()) {
+            return false;
+        }
+
+        SuspendedObject otherSuspendedObject = (SuspendedObject)other;
+
+        return
+            path.equals(otherSuspendedObject.path) &&
+            Objects.equals(object, otherSuspendedObject.object) &&
+            restorationTime.equals(otherSuspendedObject.restorationTime);
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 17;
+        hashCode = hashCode * 37 + path.hashCode();
+        hashCode = hashCode * 37 + Objects.hashCode(object);
+        hashCode = hashCode * 37 + restorationTime.hashCode();
+
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("path", path)
+            .add("object", object)
+            .add("restorationTime", restorationTime)
+            .toString();
+    }
+
+    // ****************************** //
+
+    private final Path path;
+    private final Object object;
+    private final Instant restorationTime;
+}
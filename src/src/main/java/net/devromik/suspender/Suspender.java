@@ -1,9 +1,11 @@
 package net.devromik.suspender;
 
-import java.time.Duration;
-import java.util.Collection;
+import java.time.*;
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 import static java.time.Duration.*;
-import net.devromik.suspender.utils.Path;
+import net.devromik.suspender.utils.*;
 
 /**
  * It allows you to suspend arbitrary objects for a certain amount of time.
@@ -23,6 +25,8 @@ import net.devromik.suspender.utils.Path;
  *
  * You can get notifications on object restoration by registering a listener:
  * {@code addRestoredObjectListener(RestoredObjectListener)}.
+ * A listener which is interested only in a group of suspended objects can be subscribed to the group prefix:
+ * {@code addRestoredObjectListener(Path, RestoredObjectListener)}.
  *
  * @author Shulnyaev Roman
  */
@@ -55,6 +59,21 @@ public interface Suspender {
      */
     void removeRestoredObjectListener(RestoredObjectListener listener);
 
+    /**
+     * Adds an object restoration event listener
+     * which is notified only about restoration of objects suspended by paths with the prefix {@code prefix}.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    void addRestoredObjectListener(Path prefix, RestoredObjectListener listener);
+
+    /**
+     * Removes an object restoration event listener previously added for the prefix {@code prefix}.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    void removeRestoredObjectListener(Path prefix, RestoredObjectListener listener);
+
     /**
      * @return {@code true} iff there are any objects suspended by paths with the prefix {@code path}.
      *
@@ -62,6 +81,43 @@ public interface Suspender {
      */
     boolean hasObjectsSuspendedBy(Path path);
 
+    /**
+     * @return {@code true} iff there are any objects suspended by paths having a prefix which matches the {@code pattern}.
+     *         See net.devromik.suspender.utils.PathPattern for the wildcards.
+     */
+    boolean hasObjectsSuspendedBy(PathPattern pattern);
+
+    /**
+     * @return the number of objects suspended by paths with the prefix {@code path}.
+     *         It takes constant time for a path with one segment
+     *         and time proportional to the path length otherwise.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    long countSuspendedBy(Path path);
+
+    /**
+     * @return at most {@code maxCount} objects suspended by paths with the prefix {@code prefix}
+     *         having the closest restoration times, ordered by restoration time.
+     *         The objects are not restored.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     * @throws IllegalArgumentException when {@code maxCount < 0}.
+     */
+    List<SuspendedObject> peekEarliest(Path prefix, int maxCount);
+
+    /**
+     * @return a lazy stream of the objects suspended by paths with the prefix {@code prefix}.
+     *         The objects are not restored.
+     *
+     *         The stream is weakly consistent:
+     *         it may or may not reflect suspensions and restorations made after the stream has been created.
+     *         The stream can be used in parallel.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    Stream<SuspendedObject> stream(Path prefix);
+
     /**
      * Suspends the object {@code object}
      * by the path {@code path}
@@ -73,6 +129,48 @@ public interface Suspender {
      */
     void suspend(Path path, Object object, Duration duration);
 
+    /**
+     * If there is no object suspended by the path {@code path} then
+     * suspends the object {@code object} by the {@code path} for {@code duration}.
+     *
+     * The check and the suspension are atomic.
+     * Objects suspended by longer paths with the prefix {@code path} are not taken into account.
+     *
+     * @return {@code true} iff the object was suspended.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    boolean suspendIfAbsent(Path path, Object object, Duration duration);
+
+    /**
+     * If the object suspended by the path {@code path} equals {@code expectedObject} then
+     * suspends the object {@code newObject} by the {@code path} for {@code duration} instead of it.
+     *
+     * The check and the suspension are atomic.
+     *
+     * @return {@code true} iff the object was replaced.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    boolean replace(Path path, Object expectedObject, Object newObject, Duration duration);
+
+    /**
+     * Passes the object suspended by the path {@code path} ({@code null} if there is no such object)
+     * to the {@code remappingFunction}.
+     *
+     * If the function returns an object then it is suspended by the {@code path} for {@code duration}.
+     * If the function returns {@code null} then the currently suspended object (if any) is restored
+     * and all the registered listeners are notified about it.
+     *
+     * The computation and the suspension are atomic.
+     * The function should be short and must not access the suspender.
+     *
+     * @return the object returned by the {@code remappingFunction}.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    Object compute(Path path, UnaryOperator<Object> remappingFunction, Duration duration);
+
     /**
      * If there are any objects suspended by the paths with the prefix {@code path},
      * restores them and notifies all the registered listeners about it.
@@ -89,6 +187,41 @@ public interface Suspender {
      */
     void restore(Path path, Collection<RestoredObjectListener> listeners);
 
+    /**
+     * If there are any objects suspended by the paths having a prefix which matches the {@code pattern},
+     * restores them and notifies all the registered listeners about it.
+     * See net.devromik.suspender.utils.PathPattern for the wildcards.
+     */
+    void restore(PathPattern pattern);
+
+    /**
+     * If there are any objects suspended by the paths having a prefix which matches the {@code pattern},
+     * restores them and notifies only the specified {@code listeners} about it.
+     * See net.devromik.suspender.utils.PathPattern for the wildcards.
+     */
+    void restore(PathPattern pattern, Collection<RestoredObjectListener> listeners);
+
+    /**
+     * Restores all the objects suspended by paths with the prefix {@code prefix}
+     * having the restoration times before {@code cutoff}
+     * and notifies all the registered listeners about them in the order of restoration time.
+     *
+     * For example, {@code restoreDueBefore(prefix, now().plus(ofMinutes(10L)))} flushes
+     * all the objects under the {@code prefix} that would be restored within the next 10 minutes.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    void restoreDueBefore(Path prefix, Instant cutoff);
+
+    /**
+     * Restores all the objects suspended by paths with the prefix {@code prefix}
+     * having the restoration times before {@code cutoff}
+     * and notifies only the specified {@code listeners} about them in the order of restoration time.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    void restoreDueBefore(Path prefix, Instant cutoff, Collection<RestoredObjectListener> listeners);
+
     /**
      * If there are any objects suspended by the {@code path},
      * restores the one with the closest restoration time
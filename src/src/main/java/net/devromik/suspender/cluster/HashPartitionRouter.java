@@ -0,0 +1,46 @@
+package net.devromik.suspender.cluster;
+
+import java.util.*;
+import com.google.common.collect.ImmutableList;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.hash.Hashing.consistentHash;
+import static net.devromik.suspender.mem.MemSuspender.routingHashCodeOf;
+import net.devromik.suspender.utils.Path;
+
+/**
+ * Routes a path by the hash code of its first two segments (the same as the one of the divisions of
+ * net.devromik.suspender.mem.MemSuspender, see MemSuspender.routingHashCodeOf()).
+ *
+ * The hash code is mapped to a node by consistent hashing rather than by a remainder:
+ *     - the objects of a node are still spread over all the divisions of its engine,
+ *     - when a node is appended to the list of the nodes, only about 1 / (number of the nodes) of the paths change their owner.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class HashPartitionRouter implements PartitionRouter {
+
+    /**
+     * @param nodes the names of the nodes. New nodes are expected to be appended to the end.
+     *
+     * @throws IllegalArgumentException when {@code nodes} is empty or contains duplicates.
+     */
+    public HashPartitionRouter(List<String> nodes) {
+        checkArgument(!nodes.isEmpty());
+        checkArgument(new HashSet<>(nodes).size() == nodes.size());
+        this.nodes = ImmutableList.copyOf(nodes);
+    }
+
+    @Override
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public String ownerOf(Path path) {
+        return nodes.get(consistentHash(routingHashCodeOf(path), nodes.size()));
+    }
+
+    // ****************************** //
+
+    private final List<String> nodes;
+}
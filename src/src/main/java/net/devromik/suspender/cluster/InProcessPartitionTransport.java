@@ -0,0 +1,37 @@
+package net.devromik.suspender.cluster;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import static com.google.common.base.Preconditions.*;
+import net.devromik.suspender.Suspender;
+
+/**
+ * A transport to the nodes living in the same process (for example, in tests).
+ *
+ * @author Shulnyaev Roman
+ */
+public final class InProcessPartitionTransport implements PartitionTransport {
+
+    /**
+     * Registers the {@code suspender} as the node with the name {@code node}.
+     *
+     * @throws IllegalStateException when there is already such a node.
+     */
+    public void register(String node, Suspender suspender) {
+        checkNotNull(node);
+        checkNotNull(suspender);
+        checkState(nodeToSuspender.putIfAbsent(node, suspender) == null);
+    }
+
+    @Override
+    public Suspender suspenderOf(String node) {
+        Suspender suspender = nodeToSuspender.get(node);
+        checkArgument(suspender != null);
+
+        return suspender;
+    }
+
+    // ****************************** //
+
+    private final Map<String, Suspender> nodeToSuspender = new ConcurrentHashMap<>();
+}
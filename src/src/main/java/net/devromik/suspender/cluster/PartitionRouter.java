@@ -0,0 +1,27 @@
+package net.devromik.suspender.cluster;
+
+import java.util.List;
+import net.devromik.suspender.utils.Path;
+
+/**
+ * Determines which node of net.devromik.suspender.cluster.PartitionedSuspender owns a path.
+ *
+ * The objects suspended by the paths with the same first two segments must be owned by the same node,
+ * so the operations with a prefix of at least two segments are performed by a single node.
+ *
+ * @author Shulnyaev Roman
+ */
+public interface PartitionRouter {
+
+    /**
+     * @return the names of all the nodes.
+     */
+    List<String> getNodes();
+
+    /**
+     * @return the name of the node which owns the {@code path}.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    String ownerOf(Path path);
+}
@@ -0,0 +1,22 @@
+package net.devromik.suspender.cluster;
+
+import net.devromik.suspender.Suspender;
+
+/**
+ * Delivers the operations of net.devromik.suspender.cluster.PartitionedSuspender to the nodes.
+ *
+ * A node is represented by a suspender: the local one (see net.devromik.suspender.cluster.InProcessPartitionTransport)
+ * or a stub which sends the operations over the network and delivers the restored objects of the node
+ * to the listeners added to the stub.
+ *
+ * @author Shulnyaev Roman
+ */
+public interface PartitionTransport {
+
+    /**
+     * @return the suspender of the node with the name {@code node}.
+     *
+     * @throws IllegalArgumentException when there is no such node.
+     */
+    Suspender suspenderOf(String node);
+}
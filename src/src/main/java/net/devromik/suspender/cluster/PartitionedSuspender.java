@@ -0,0 +1,346 @@
+package net.devromik.suspender.cluster;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.Stream;
+import static com.google.common.base.Preconditions.*;
+import static java.lang.Thread.currentThread;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+import net.devromik.suspender.*;
+import net.devromik.suspender.utils.*;
+
+/**
+ * A suspender whose objects are partitioned between several nodes.
+ *
+ * Each path is owned by a node determined by the router (net.devromik.suspender.cluster.PartitionRouter),
+ * and the operations are delivered to the nodes by the transport (net.devromik.suspender.cluster.PartitionTransport).
+ * Since the objects suspended by the paths with the same first two segments are owned by the same node,
+ * an operation with a path (or a path pattern) which has at least two literal first segments is performed by one node.
+ * The operations with a single-segment prefix (for example, restore(new Path("A")))
+ * and with the other patterns are scattered to all the nodes in parallel, and their results are gathered.
+ *
+ * The restored objects are delivered to the listeners by the nodes which own them.
+ * The suspender starts and stops the suspenders of the nodes returned by the transport.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class PartitionedSuspender implements Suspender {
+
+    public static final String SCATTERER_THREAD_NAME = "Suspender Partition Scatterer";
+
+    // ****************************** //
+
+    public PartitionedSuspender(PartitionRouter router, PartitionTransport transport) {
+        this.router = checkNotNull(router);
+        this.transport = checkNotNull(transport);
+    }
+
+    public PartitionRouter getRouter() {
+        return router;
+    }
+
+    @Override
+    public void start() {
+        synchronized (lifeCycleLock) {
+            checkState(!started);
+
+            for (String node : router.getNodes()) {
+                transport.suspenderOf(node).start();
+            }
+
+            started = true;
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lifeCycleLock) {
+            checkState(started);
+
+            for (String node : router.getNodes()) {
+                transport.suspenderOf(node).stop();
+            }
+
+            started = false;
+        }
+    }
+
+    @Override
+    public void addRestoredObjectListener(RestoredObjectListener listener) {
+        forEachNode((suspender) -> suspender.addRestoredObjectListener(listener));
+    }
+
+    @Override
+    public void removeRestoredObjectListener(RestoredObjectListener listener) {
+        forEachNode((suspender) -> suspender.removeRestoredObjectListener(listener));
+    }
+
+    @Override
+    public void addRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        forEachNode((suspender) -> suspender.addRestoredObjectListener(prefix, listener));
+    }
+
+    @Override
+    public void removeRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        forEachNode((suspender) -> suspender.removeRestoredObjectListener(prefix, listener));
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(Path path) {
+        return
+            isRoutable(path) ?
+            ownerOf(path).hasObjectsSuspendedBy(path) :
+            scatter((suspender) -> suspender.hasObjectsSuspendedBy(path)).contains(true);
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(PathPattern pattern) {
+        return
+            isRoutable(pattern) ?
+            ownerOf(pattern).hasObjectsSuspendedBy(pattern) :
+            scatter((suspender) -> suspender.hasObjectsSuspendedBy(pattern)).contains(true);
+    }
+
+    @Override
+    public long countSuspendedBy(Path path) {
+        return
+            isRoutable(path) ?
+            ownerOf(path).countSuspendedBy(path) :
+            scatter((suspender) -> suspender.countSuspendedBy(path)).stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public List<SuspendedObject> peekEarliest(Path prefix, int maxCount) {
+        if (isRoutable(prefix)) {
+            return ownerOf(prefix).peekEarliest(prefix, maxCount);
+        }
+
+        // Each node returns its own earliest objects, so the earliest objects overall are among them.
+        return scatter((suspender) -> suspender.peekEarliest(prefix, maxCount)).stream()
+            .flatMap(List::stream)
+            .sorted(comparing(SuspendedObject::getRestorationTime))
+            .limit(maxCount)
+            .collect(toList());
+    }
+
+    @Override
+    public Stream<SuspendedObject> stream(Path prefix) {
+        return
+            isRoutable(prefix) ?
+            ownerOf(prefix).stream(prefix) :
+            router.getNodes().stream().flatMap((node) -> transport.suspenderOf(node).stream(prefix));
+    }
+
+    @Override
+    public void suspend(Path path, Object object, Duration duration) {
+        ownerOf(path).suspend(path, object, duration);
+    }
+
+    @Override
+    public boolean suspendIfAbsent(Path path, Object object, Duration duration) {
+        return ownerOf(path).suspendIfAbsent(path, object, duration);
+    }
+
+    @Override
+    public boolean replace(Path path, Object expectedObject, Object newObject, Duration duration) {
+        return ownerOf(path).replace(path, expectedObject, newObject, duration);
+    }
+
+    @Override
+    public Object compute(Path path, UnaryOperator<Object> remappingFunction, Duration duration) {
+        return ownerOf(path).compute(path, remappingFunction, duration);
+    }
+
+    @Override
+    public void restore(Path path) {
+        if (isRoutable(path)) {
+            ownerOf(path).restore(path);
+        }
+        else {
+            scatter((suspender) -> { suspender.restore(path); return null; });
+        }
+    }
+
+    @Override
+    public void restore(Path path, Collection<RestoredObjectListener> listeners) {
+        if (isRoutable(path)) {
+            ownerOf(path).restore(path, listeners);
+        }
+        else {
+            scatter((suspender) -> { suspender.restore(path, listeners); return null; });
+        }
+    }
+
+    @Override
+    public void restore(PathPattern pattern) {
+        if (isRoutable(pattern)) {
+            ownerOf(pattern).restore(pattern);
+        }
+        else {
+            scatter((suspender) -> { suspender.restore(pattern); return null; });
+        }
+    }
+
+    @Override
+    public void restore(PathPattern pattern, Collection<RestoredObjectListener> listeners) {
+        if (isRoutable(pattern)) {
+            ownerOf(pattern).restore(pattern, listeners);
+        }
+        else {
+            scatter((suspender) -> { suspender.restore(pattern, listeners); return null; });
+        }
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff) {
+        if (isRoutable(prefix)) {
+            ownerOf(prefix).restoreDueBefore(prefix, cutoff);
+        }
+        else {
+            scatter((suspender) -> { suspender.restoreDueBefore(prefix, cutoff); return null; });
+        }
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff, Collection<RestoredObjectListener> listeners) {
+        if (isRoutable(prefix)) {
+            ownerOf(prefix).restoreDueBefore(prefix, cutoff, listeners);
+        }
+        else {
+            scatter((suspender) -> { suspender.restoreDueBefore(prefix, cutoff, listeners); return null; });
+        }
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path) {
+        Suspender suspender = isRoutable(path) ? ownerOf(path) : holderOfEarliest(path);
+
+        if (suspender != null) {
+            suspender.restoreObjectWithMinRestorationTime(path);
+        }
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path, Collection<RestoredObjectListener> listeners) {
+        Suspender suspender = isRoutable(path) ? ownerOf(path) : holderOfEarliest(path);
+
+        if (suspender != null) {
+            suspender.restoreObjectWithMinRestorationTime(path, listeners);
+        }
+    }
+
+    /**
+     * @return the suspender of the node which has the earliest object suspended by the paths with the {@code prefix}
+     *         or {@code null} if there are no such objects.
+     */
+    private Suspender holderOfEarliest(Path prefix) {
+        Suspender holder = null;
+        Instant earliestRestorationTime = null;
+
+        for (String node : router.getNodes()) {
+            Suspender suspender = transport.suspenderOf(node);
+            List<SuspendedObject> earliest = suspender.peekEarliest(prefix, 1);
+
+            if (!earliest.isEmpty() &&
+                (earliestRestorationTime == null || earliest.get(0).getRestorationTime().isBefore(earliestRestorationTime))) {
+
+                holder = suspender;
+                earliestRestorationTime = earliest.get(0).getRestorationTime();
+            }
+        }
+
+        return holder;
+    }
+
+    // ****************************** //
+
+    private static boolean isRoutable(Path path) {
+        return path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT;
+    }
+
+    private static boolean isRoutable(PathPattern pattern) {
+        return
+            pattern.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT &&
+            pattern.isLiteral(0) &&
+            pattern.isLiteral(1);
+    }
+
+    private Suspender ownerOf(Path path) {
+        return transport.suspenderOf(router.ownerOf(path));
+    }
+
+    private Suspender ownerOf(PathPattern pattern) {
+        return ownerOf(new Path(pattern.getSegment(0), pattern.getSegment(1)));
+    }
+
+    private void forEachNode(Consumer<Suspender> action) {
+        for (String node : router.getNodes()) {
+            action.accept(transport.suspenderOf(node));
+        }
+    }
+
+    /**
+     * Performs the {@code operation} on all the nodes in parallel.
+     *
+     * @return the results of the nodes in the order of the nodes.
+     */
+    private <R> List<R> scatter(Function<Suspender, R> operation) {
+        List<String> nodes = router.getNodes();
+        List<Future<R>> futures = new ArrayList<>(nodes.size());
+
+        // The calling thread performs the operation on the first node itself.
+        for (int i = 1; i < nodes.size(); ++i) {
+            Suspender suspender = transport.suspenderOf(nodes.get(i));
+            futures.add(scatterer.submit(() -> operation.apply(suspender)));
+        }
+
+        List<R> results = new ArrayList<>(nodes.size());
+        results.add(operation.apply(transport.suspenderOf(nodes.get(0))));
+
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        }
+        catch (InterruptedException exception) {
+            currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+        catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+
+            throw new IllegalStateException(cause);
+        }
+
+        return results;
+    }
+
+    // ****************************** //
+
+    private final PartitionRouter router;
+    private final PartitionTransport transport;
+
+    // The idle threads are terminated, so the pool needs no shutdown.
+    private final ExecutorService scatterer = Executors.newCachedThreadPool(
+        (runnable) -> {
+            Thread thread = new Thread(runnable, SCATTERER_THREAD_NAME);
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+    // Life cycle.
+    private final Object lifeCycleLock = new Object();
+    private boolean started;
+}
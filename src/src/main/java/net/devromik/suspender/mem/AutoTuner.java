@@ -0,0 +1,296 @@
+package net.devromik.suspender.mem;
+
+import java.time.Duration;
+import org.slf4j.Logger;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Thread.*;
+import static java.time.Duration.*;
+import net.devromik.suspender.utils.*;
+import static net.devromik.slf4jUtils.Slf4jUtils.logException;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Tunes net.devromik.suspender.mem.MemSuspender at runtime by its measurements.
+ *
+ * Once in the tuning interval the tuner looks at what has happened since the previous tuning:
+ *     - if more than CONTENTION_THRESHOLD of the entries to the critical sections of the divisions
+ *       waited for another thread, the number of the divisions is doubled (see MemSuspender.resize()),
+ *     - if the 99th percentile of the restoration lateness exceeds the target lateness,
+ *       the sleep times of the restorer are halved,
+ *     - if the lateness and the duration of an iteration of the restorer over the divisions
+ *       are well within the target lateness, the sleep times are doubled, so the restorer wastes less CPU.
+ *
+ * The sleep times and the number of the divisions never go beyond the configured limits.
+ * The name of the tuning thread is tuner.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class AutoTuner {
+
+    public static final String TUNER_THREAD_NAME = "Suspender Auto-Tuner";
+
+    /**
+     * Time-out between the tunings.
+     */
+    public static final Duration MIN_TUNING_INTERVAL = ofMillis(10L);
+    public static final Duration MAX_TUNING_INTERVAL = ofMinutes(10L);
+    public static final Duration DEFAULT_TUNING_INTERVAL = ofSeconds(10L);
+
+    /**
+     * The lateness of the restored objects the tuner aims at.
+     * The restoration times are rounded up to MemSuspender.MIN_DURATION_HALF, so a lesser lateness cannot be aimed at.
+     */
+    public static final Duration MIN_TARGET_LATENESS = ofMillis(MemSuspender.MIN_DURATION_HALF);
+    public static final Duration MAX_TARGET_LATENESS = ofMinutes(1L);
+    public static final Duration DEFAULT_TARGET_LATENESS = ofMillis(200L);
+
+    /**
+     * Share of the contended entries to the critical sections which makes the tuner add divisions.
+     */
+    public static final double CONTENTION_THRESHOLD = 0.05;
+
+    /**
+     * Minimal number of the entries to the critical sections since the previous tuning to judge the contention.
+     */
+    public static final long MIN_LOCK_ACQUISITION_COUNT = 1000L;
+
+    /**
+     * The sleep times which are increased from zero become these ones.
+     */
+    static final Duration INITIAL_SLEEP_TIME_AFTER_USEFUL_WORK = ofMillis(1L);
+    static final Duration INITIAL_SLEEP_TIME_AFTER_USELESS_WORK = ofMillis(10L);
+
+    // ****************************** //
+
+    public AutoTuner(MemSuspender suspender) {
+        this(
+            suspender,
+            DEFAULT_TUNING_INTERVAL,
+            DEFAULT_TARGET_LATENESS,
+            DEFAULT_TARGET_LATENESS.dividedBy(4L),
+            DEFAULT_TARGET_LATENESS.dividedBy(2L),
+            MemSuspender.MAX_SUSPENDED_OBJECT_DIVISION_COUNT);
+    }
+
+    /**
+     * @param maxRestorerSleepTimeAfterUsefulWork the limit of MemSuspender.setRestorerSleepTimeAfterUsefulWork().
+     * @param maxRestorerSleepTimeAfterUselessWork the limit of MemSuspender.setRestorerSleepTimeAfterUselessWork().
+     * @param maxDivCount the limit of MemSuspender.resize().
+     */
+    public AutoTuner(
+        MemSuspender suspender,
+        Duration tuningInterval,
+        Duration targetLateness,
+        Duration maxRestorerSleepTimeAfterUsefulWork,
+        Duration maxRestorerSleepTimeAfterUselessWork,
+        int maxDivCount) {
+
+        this.suspender = suspender;
+        this.tuningInterval = Durations.adjust(tuningInterval, MIN_TUNING_INTERVAL, MAX_TUNING_INTERVAL);
+        this.targetLatenessMillis = Durations.adjust(targetLateness, MIN_TARGET_LATENESS, MAX_TARGET_LATENESS).toMillis();
+
+        this.maxRestorerSleepTimeAfterUsefulWork = Durations.adjust(
+            maxRestorerSleepTimeAfterUsefulWork,
+            MemSuspender.MIN_RESTORER_SLEEP_TIME_AFTER_USEFUL_WORK,
+            MemSuspender.MAX_RESTORER_SLEEP_TIME_AFTER_USEFUL_WORK);
+
+        this.maxRestorerSleepTimeAfterUselessWork = Durations.adjust(
+            maxRestorerSleepTimeAfterUselessWork,
+            MemSuspender.MIN_RESTORER_SLEEP_TIME_AFTER_USELESS_WORK,
+            MemSuspender.MAX_RESTORER_SLEEP_TIME_AFTER_USELESS_WORK);
+
+        this.maxDivCount = Ints.adjust(
+            maxDivCount,
+            MemSuspender.MIN_SUSPENDED_OBJECT_DIVISION_COUNT,
+            MemSuspender.MAX_SUSPENDED_OBJECT_DIVISION_COUNT);
+    }
+
+    public void start() {
+        synchronized (lifeCycleLock) {
+            checkState(!started);
+
+            // Creating and starting the tuner.
+            makeAndStartTuner();
+
+            started = true;
+        }
+    }
+
+    private void makeAndStartTuner() {
+        // Creating the tuner.
+        tuner = new Thread(
+            () -> {
+                while (!currentThread().isInterrupted()) {
+                    try {
+                        sleep(tuningInterval.toMillis());
+                        tune();
+                    }
+                    catch (InterruptedException exception) {
+                        currentThread().interrupt();
+                    }
+                    catch (Exception exception) {
+                        logException(logger, exception);
+                    }
+                }
+            },
+            TUNER_THREAD_NAME);
+
+        // Starting the tuner.
+        tuner.start();
+    }
+
+    public void stop() {
+        synchronized (lifeCycleLock) {
+            checkState(started);
+            tuner.interrupt();
+
+            try {
+                logger.info("Waiting for \"{}\" to be stopped...", TUNER_THREAD_NAME);
+                tuner.join();
+                logger.info("\"{}\" has been stopped", TUNER_THREAD_NAME);
+            }
+            catch (InterruptedException exception) {
+                logger.error("Interrupted while waiting for \"{}\" to be stopped", TUNER_THREAD_NAME);
+            }
+
+            started = false;
+        }
+    }
+
+    /**
+     * Tunes the suspender by the measurements made since the previous tuning.
+     * Is called by the tuner.
+     */
+    void tune() {
+        tuneDivisionCount();
+        tuneRestorerSleepTimes();
+    }
+
+    private void tuneDivisionCount() {
+        long lockAcquisitionCount = 0L;
+        long contendedLockAcquisitionCount = 0L;
+        int divCount = suspender.getDivisionCount();
+
+        for (int i = 0; i < divCount; ++i) {
+            lockAcquisitionCount += suspender.getLockAcquisitionCount(i);
+            contendedLockAcquisitionCount += suspender.getContendedLockAcquisitionCount(i);
+        }
+
+        long newLockAcquisitionCount = lockAcquisitionCount - lastLockAcquisitionCount;
+        long newContendedLockAcquisitionCount = contendedLockAcquisitionCount - lastContendedLockAcquisitionCount;
+        lastLockAcquisitionCount = lockAcquisitionCount;
+        lastContendedLockAcquisitionCount = contendedLockAcquisitionCount;
+
+        if (newLockAcquisitionCount >= MIN_LOCK_ACQUISITION_COUNT &&
+            newContendedLockAcquisitionCount > newLockAcquisitionCount * CONTENTION_THRESHOLD &&
+            2 * divCount <= maxDivCount) {
+
+            logger.info(
+                "{} of {} entries to the critical sections were contended, the number of the divisions is doubled",
+                newContendedLockAcquisitionCount,
+                newLockAcquisitionCount);
+
+            suspender.resize(2 * divCount);
+        }
+    }
+
+    private void tuneRestorerSleepTimes() {
+        long[] latenessBuckets = bucketsOf(suspender.getRestorationLateness());
+        long[] newLatenessBuckets = new long[Histogram.BUCKET_COUNT];
+
+        for (int i = 0; i < Histogram.BUCKET_COUNT; ++i) {
+            newLatenessBuckets[i] = latenessBuckets[i] - lastLatenessBuckets[i];
+        }
+
+        lastLatenessBuckets = latenessBuckets;
+
+        Histogram sweepDurations = suspender.getExpirationSweepDurations();
+        long sweepCount = sweepDurations.getCount();
+        double sweepDurationSum = sweepDurations.getMean() * sweepCount;
+        long newSweepCount = sweepCount - lastSweepCount;
+        double newSweepMeanMillis = newSweepCount > 0L ? (sweepDurationSum - lastSweepDurationSum) / newSweepCount / 1000.0 : 0.0;
+        lastSweepCount = sweepCount;
+        lastSweepDurationSum = sweepDurationSum;
+
+        // Without restorations since the previous tuning the restorer is not late.
+        long latenessP99 = valueAtPercentile(newLatenessBuckets, 99.0);
+        Duration usefulSleepTime = suspender.getRestorerSleepTimeAfterUsefulWork();
+        Duration uselessSleepTime = suspender.getRestorerSleepTimeAfterUselessWork();
+
+        if (latenessP99 > targetLatenessMillis) {
+            suspender.setRestorerSleepTimeAfterUsefulWork(usefulSleepTime.dividedBy(2L));
+            suspender.setRestorerSleepTimeAfterUselessWork(uselessSleepTime.dividedBy(2L));
+        }
+        else if (latenessP99 < targetLatenessMillis / 2L && newSweepMeanMillis < targetLatenessMillis / 2.0) {
+            suspender.setRestorerSleepTimeAfterUsefulWork(increased(usefulSleepTime, INITIAL_SLEEP_TIME_AFTER_USEFUL_WORK, maxRestorerSleepTimeAfterUsefulWork));
+            suspender.setRestorerSleepTimeAfterUselessWork(increased(uselessSleepTime, INITIAL_SLEEP_TIME_AFTER_USELESS_WORK, maxRestorerSleepTimeAfterUselessWork));
+        }
+    }
+
+    private static Duration increased(Duration sleepTime, Duration initialSleepTime, Duration maxSleepTime) {
+        Duration increased = sleepTime.isZero() ? initialSleepTime : sleepTime.multipliedBy(2L);
+        return increased.compareTo(maxSleepTime) > 0 ? maxSleepTime : increased;
+    }
+
+    private static long[] bucketsOf(Histogram histogram) {
+        long[] buckets = new long[Histogram.BUCKET_COUNT];
+
+        for (int i = 0; i < Histogram.BUCKET_COUNT; ++i) {
+            buckets[i] = histogram.getBucketCount(i);
+        }
+
+        return buckets;
+    }
+
+    /**
+     * @return the upper bound of the bucket (see net.devromik.suspender.utils.Histogram) containing the value at the {@code percentile}
+     *         or {@code 0} if there are no values.
+     */
+    static long valueAtPercentile(long[] buckets, double percentile) {
+        long count = 0L;
+
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+
+        if (count == 0L) {
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long)Math.ceil(count * percentile / 100.0));
+        long seen = 0L;
+
+        for (int i = 0; i < buckets.length; ++i) {
+            seen += buckets[i];
+
+            if (seen >= rank) {
+                return i == 0 ? 0L : (1L << i) - 1L;
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    // ****************************** //
+
+    private final MemSuspender suspender;
+    private final Duration tuningInterval;
+    private final long targetLatenessMillis;
+    private final Duration maxRestorerSleepTimeAfterUsefulWork;
+    private final Duration maxRestorerSleepTimeAfterUselessWork;
+    private final int maxDivCount;
+
+    // The measurements as of the previous tuning.
+    private long lastLockAcquisitionCount;
+    private long lastContendedLockAcquisitionCount;
+    private long[] lastLatenessBuckets = new long[Histogram.BUCKET_COUNT];
+    private long lastSweepCount;
+    private double lastSweepDurationSum;
+
+    // Life cycle.
+    private final Object lifeCycleLock = new Object();
+    private boolean started;
+    private Thread tuner;
+
+    private final static Logger logger = getLogger(AutoTuner.class);
+}
@@ -0,0 +1,139 @@
+package net.devromik.suspender.mem;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import com.google.common.util.concurrent.RateLimiter;
+import net.devromik.suspender.RestoredObjectListener;
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Restores the objects which are overdue when net.devromik.suspender.mem.MemSuspender is started
+ * (for example, after downtime), so they are not restored in one sweep.
+ *
+ * The objects with the restoration times not greater than the cutoff (the start time) are overdue.
+ * They are restored by the restorer in the order of restoration time at most at the given rate:
+ * either overall or for each first segment of the paths separately.
+ * The other objects are restored by the restorer as usual, so the on-time restorations are not delayed by the catch-up.
+ *
+ * On each step the earliest overdue objects of each division are merged by restoration time
+ * and are restored while the rate allows.
+ * In the per-first-segment mode a throttled first segment is skipped till the next step,
+ * so the other first segments are not delayed by it.
+ *
+ * @author Shulnyaev Roman
+ */
+final class CatchUpRestorer {
+
+    /**
+     * Maximal number of the overdue objects of a division considered on a step.
+     */
+    static final int MAX_OBJECT_COUNT_PER_DIVISION_AND_STEP = 256;
+
+    // ****************************** //
+
+    CatchUpRestorer(
+        MemSuspender memSuspender,
+        long cutoff,
+        double maxRate,
+        boolean perPathFirstSegment,
+        LongAdder restoredCount) {
+
+        this.memSuspender = memSuspender;
+        this.cutoff = cutoff;
+        this.maxRate = maxRate;
+        this.perPathFirstSegment = perPathFirstSegment;
+        this.restoredCount = restoredCount;
+        this.rateLimiter = perPathFirstSegment ? null : RateLimiter.create(maxRate);
+    }
+
+    /**
+     * Restores the earliest overdue objects while the rate allows.
+     *
+     * @return {@code false} iff there are no overdue objects anymore.
+     */
+    boolean restoreNext(Collection<RestoredObjectListener> listeners) {
+        Set<String> throttledPathFirstSegments = new HashSet<>();
+        boolean overdueFound = false;
+        boolean moreCanBeRestored = true;
+
+        while (moreCanBeRestored) {
+            List<SuspendedObjectDivision.OverdueObject> overdue = new ArrayList<>();
+
+            for (SuspendedObjectDivision div : memSuspender.getDivisions()) {
+                overdue.addAll(div.peekOverdue(cutoff, MAX_OBJECT_COUNT_PER_DIVISION_AND_STEP, throttledPathFirstSegments));
+            }
+
+            if (overdue.isEmpty()) {
+                return overdueFound;
+            }
+
+            overdueFound = true;
+            overdue.sort(comparingLong((overdueObject) -> overdueObject.restorationTime));
+            moreCanBeRestored = false;
+
+            for (SuspendedObjectDivision.OverdueObject overdueObject : overdue) {
+                if (perPathFirstSegment) {
+                    String pathFirstSegment = overdueObject.getPathFirstSegment();
+
+                    if (throttledPathFirstSegments.contains(pathFirstSegment)) {
+                        continue;
+                    }
+
+                    if (!rateLimiterFor(pathFirstSegment).tryAcquire()) {
+                        // The next pass skips the segment, so the later objects of the other segments are reached.
+                        throttledPathFirstSegments.add(pathFirstSegment);
+                        moreCanBeRestored = true;
+                        continue;
+                    }
+                }
+                else if (!rateLimiter.tryAcquire()) {
+                    return true;
+                }
+
+                if (overdueObject.div.restoreOverdue(overdueObject, listeners)) {
+                    restoredCount.increment();
+                }
+            }
+
+            // All the considered objects are restored, there can be more of them.
+            if (!perPathFirstSegment) {
+                moreCanBeRestored = true;
+            }
+        }
+
+        return true;
+    }
+
+    private RateLimiter rateLimiterFor(String pathFirstSegment) {
+        return pathFirstSegmentToRateLimiter.computeIfAbsent(pathFirstSegment, (segment) -> RateLimiter.create(maxRate));
+    }
+
+    /**
+     * @return the number of the overdue objects which are not restored yet.
+     */
+    long countOverdue() {
+        long count = 0L;
+
+        for (SuspendedObjectDivision div : memSuspender.getDivisions()) {
+            count += div.countOverdue(cutoff);
+        }
+
+        return count;
+    }
+
+    long getCutoff() {
+        return cutoff;
+    }
+
+    // ****************************** //
+
+    private final MemSuspender memSuspender;
+    private final long cutoff;
+    private final double maxRate;
+    private final boolean perPathFirstSegment;
+    private final LongAdder restoredCount;
+
+    private final RateLimiter rateLimiter;
+    private final Map<String, RateLimiter> pathFirstSegmentToRateLimiter = new ConcurrentHashMap<>();
+}
@@ -1,15 +1,22 @@
 package net.devromik.suspender.mem;
 
-import java.time.Duration;
+import java.time.*;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+import java.util.stream.*;
 import org.slf4j.Logger;
+import com.google.common.collect.*;
 import static com.google.common.base.Preconditions.*;
 import static java.lang.Math.abs;
-import static java.lang.System.currentTimeMillis;
+import static java.lang.System.*;
 import static java.lang.Thread.*;
 import static java.time.Duration.*;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+import static net.devromik.suspender.mem.SuspendedObjectDivision.notifyAboutObjectRestored;
 import net.devromik.suspender.*;
 import net.devromik.suspender.utils.*;
 import static net.devromik.slf4jUtils.Slf4jUtils.logException;
@@ -30,6 +37,12 @@ import static org.slf4j.LoggerFactory.getLogger;
  * the restorer creates a separated task that restores objects from the expired(division).
  * The task is passed to the system Fork/Join pool to be executed.
  *
+ * The restorer can be a pool of workers (see setRestorerThreadCount()).
+ * Each worker owns the divisions whose index modulo the number of the workers is equal to the index of the worker.
+ * A worker which has restored nothing from its own divisions restores the expired objects of the others' divisions
+ * which are not being restored by their owners at the moment, so a worker lagging behind is helped by the idle ones.
+ * The first worker also performs the catch-up restoration and partitions the hot subtrees.
+ *
  * @author Shulnyaev Roman
  */
 public final class MemSuspender implements Suspender {
@@ -57,6 +70,32 @@ public final class MemSuspender implements Suspender {
     public static final Duration MAX_RESTORER_SLEEP_TIME_AFTER_USELESS_WORK = ofMinutes(1L);
     public static final Duration DEFAULT_RESTORER_SLEEP_TIME_AFTER_USELESS_WORK = ofSeconds(1L);
 
+    /**
+     * Maximal rate (restorations per second) of the catch-up restoration.
+     */
+    public static final double MIN_CATCH_UP_RATE = 1.0;
+    public static final double MAX_CATCH_UP_RATE = 1_000_000.0;
+
+    /**
+     * Time-out after a catch-up step while there are overdue objects.
+     */
+    public static final Duration CATCH_UP_SLEEP_TIME = ofMillis(10L);
+
+    /**
+     * Number of the restorer workers.
+     */
+    public static final int MIN_RESTORER_THREAD_COUNT = 1;
+    public static final int MAX_RESTORER_THREAD_COUNT = 64;
+    public static final int DEFAULT_RESTORER_THREAD_COUNT = MIN_RESTORER_THREAD_COUNT;
+
+    /**
+     * Number of the objects suspended by the paths with the same first two segments and at least three segments
+     * which makes the subtree of these segments partitioned between the divisions (see partitionSubtree()).
+     */
+    public static final int MIN_HOT_SUBTREE_OBJECT_COUNT = 16;
+    public static final int MAX_HOT_SUBTREE_OBJECT_COUNT = Integer.MAX_VALUE;
+    public static final int DEFAULT_HOT_SUBTREE_OBJECT_COUNT = 100_000;
+
     // ****************************** //
 
     public MemSuspender() {
@@ -75,17 +114,25 @@ public final class MemSuspender implements Suspender {
             suspendedObjectDivCount,
             MIN_SUSPENDED_OBJECT_DIVISION_COUNT,
             MAX_SUSPENDED_OBJECT_DIVISION_COUNT);
-        this.suspendedObjectDivCount = suspendedObjectDivCount;
+        layout = new DivisionLayout(suspendedObjectDivCount, 0, ImmutableMap.of());
 
-        suspendedObjectDivs = new SuspendedObjectDivision[suspendedObjectDivCount];
-        pathFirstSegmentToDivCount = new ConcurrentHashMap<>(suspendedObjectDivCount);
+        // The divisions are added by resizing.
+        suspendedObjectDivs = new SuspendedObjectDivision[MAX_SUSPENDED_OBJECT_DIVISION_COUNT];
 
         for (int i = 0; i < suspendedObjectDivCount; ++i) {
-            suspendedObjectDivs[i] = new SuspendedObjectDivision(pathFirstSegmentToDivCount);
+            suspendedObjectDivs[i] = new SuspendedObjectDivision(i, pathFirstSegmentIndex);
+            suspendedObjectDivs[i].restorationLateness = restorationLateness;
+            suspendedObjectDivs[i].oversizedSubtrees = oversizedSubtrees;
+            suspendedObjectDivs[i].partitionedSubtrees = this::isPartitioned;
         }
 
+        setHotSubtreeObjectCount(DEFAULT_HOT_SUBTREE_OBJECT_COUNT);
         setRestorerSleepTimeAfterUsefulWork(restorerSleepTimeAfterUsefulWork);
         setRestorerSleepTimeAfterUselessWork(restorerSleepTimeAfterUselessWork);
+
+        // The prefix-scoped listeners are notified through the trie
+        // which is registered as an ordinary listener.
+        listeners.add(prefixListeners);
     }
 
     public void setRestorerSleepTimeAfterUsefulWork(Duration restorerSleepTimeAfterUsefulWork) {
@@ -95,6 +142,14 @@ public final class MemSuspender implements Suspender {
             MAX_RESTORER_SLEEP_TIME_AFTER_USEFUL_WORK);
     }
 
+    public Duration getRestorerSleepTimeAfterUsefulWork() {
+        return restorerSleepTimeAfterUsefulWork;
+    }
+
+    public Duration getRestorerSleepTimeAfterUselessWork() {
+        return restorerSleepTimeAfterUselessWork;
+    }
+
     public void setRestorerSleepTimeAfterUselessWork(Duration restorerSleepTimeAfterUselessWork) {
         this.restorerSleepTimeAfterUselessWork = Durations.adjust(
             restorerSleepTimeAfterUselessWork,
@@ -102,11 +157,145 @@ public final class MemSuspender implements Suspender {
             MAX_RESTORER_SLEEP_TIME_AFTER_USELESS_WORK);
     }
 
+    /**
+     * Sets the number of the restorer workers.
+     * It takes effect when the suspender is started.
+     */
+    public void setRestorerThreadCount(int restorerThreadCount) {
+        this.restorerThreadCount = Ints.adjust(restorerThreadCount, MIN_RESTORER_THREAD_COUNT, MAX_RESTORER_THREAD_COUNT);
+    }
+
+    public int getRestorerThreadCount() {
+        return restorerThreadCount;
+    }
+
+    /**
+     * Sets the number of the objects suspended by the paths with the same first two segments
+     * which makes the subtree of these segments partitioned between the divisions by the restorer (see partitionSubtree()).
+     */
+    public void setHotSubtreeObjectCount(int hotSubtreeObjectCount) {
+        this.hotSubtreeObjectCount = Ints.adjust(hotSubtreeObjectCount, MIN_HOT_SUBTREE_OBJECT_COUNT, MAX_HOT_SUBTREE_OBJECT_COUNT);
+
+        for (int i = 0; i < getDivisionCount(); ++i) {
+            suspendedObjectDivs[i].maxSubtreeObjectCount = this.hotSubtreeObjectCount;
+        }
+    }
+
+    public int getHotSubtreeObjectCount() {
+        return hotSubtreeObjectCount;
+    }
+
+    /**
+     * Enables the catch-up restoration (see net.devromik.suspender.mem.CatchUpRestorer):
+     * the objects which are overdue when the suspender is started are restored
+     * at most at the rate of {@code maxRestorationsPerSecond}
+     * (for each path first segment separately if {@code perPathFirstSegment} is {@code true})
+     * in the order of restoration time, the other objects are restored on time.
+     * It is expected to be enabled before the suspender is started.
+     */
+    public void enableCatchUp(double maxRestorationsPerSecond, boolean perPathFirstSegment) {
+        checkArgument(maxRestorationsPerSecond > 0.0);
+        catchUpRate = Math.min(Math.max(maxRestorationsPerSecond, MIN_CATCH_UP_RATE), MAX_CATCH_UP_RATE);
+        catchUpPerPathFirstSegment = perPathFirstSegment;
+    }
+
+    /**
+     * @return {@code true} iff there are overdue objects being restored by the catch-up restoration.
+     */
+    public boolean isCatchingUp() {
+        return catchUpRestorer != null;
+    }
+
+    /**
+     * @return the number of the overdue objects not restored yet by the catch-up restoration.
+     */
+    public long getOverdueBacklog() {
+        CatchUpRestorer catchUpRestorer = this.catchUpRestorer;
+        return catchUpRestorer != null ? catchUpRestorer.countOverdue() : 0L;
+    }
+
+    /**
+     * @return the number of the objects restored by the catch-up restoration.
+     */
+    public long getCatchUpRestoredCount() {
+        return catchUpRestoredCount.sum();
+    }
+
+    // ****************************** //
+
+    /**
+     * @return the lateness (in milliseconds) of the objects restored by the restorer
+     *         relative to their restoration times.
+     */
+    public Histogram getRestorationLateness() {
+        return restorationLateness;
+    }
+
+    /**
+     * @return the durations (in microseconds) of the iterations of the restorer over the divisions.
+     */
+    public Histogram getExpirationSweepDurations() {
+        return expirationSweepDurations;
+    }
+
+    /**
+     * @return the number of the entries to the critical section of the division with the index {@code divIndex}.
+     */
+    public long getLockAcquisitionCount(int divIndex) {
+        checkElementIndex(divIndex, getDivisionCount());
+        return suspendedObjectDivs[divIndex].lockAcquisitionCount.sum();
+    }
+
+    /**
+     * @return the number of the entries to the critical section of the division with the index {@code divIndex}
+     *         which waited for another thread.
+     */
+    public long getContendedLockAcquisitionCount(int divIndex) {
+        checkElementIndex(divIndex, getDivisionCount());
+        return suspendedObjectDivs[divIndex].contendedLockAcquisitionCount.sum();
+    }
+
+    /**
+     * @return the time (in nanoseconds) spent waiting for the critical section of the division with the index {@code divIndex}.
+     */
+    public long getLockWaitNanos(int divIndex) {
+        checkElementIndex(divIndex, getDivisionCount());
+        return suspendedObjectDivs[divIndex].lockWaitNanos.sum();
+    }
+
+    // ****************************** //
+
+    /**
+     * Sets the listener of the modifications of the suspended objects.
+     * It is expected to be set before the suspender is used.
+     */
+    public void setMutationListener(MutationListener mutationListener) {
+        this.mutationListener = checkNotNull(mutationListener);
+
+        for (int i = 0; i < getDivisionCount(); ++i) {
+            suspendedObjectDivs[i].mutationListener = mutationListener;
+        }
+    }
+
     @Override
     public void start() {
         synchronized (lifeCycleLock) {
             checkState(!started);
 
+            if (catchUpRate > 0.0) {
+                CatchUpRestorer catchUpRestorer = new CatchUpRestorer(
+                    this,
+                    currentTimeMillis(),
+                    catchUpRate,
+                    catchUpPerPathFirstSegment,
+                    catchUpRestoredCount);
+
+                if (catchUpRestorer.countOverdue() > 0L) {
+                    logger.info("Catching up {} overdue objects", catchUpRestorer.countOverdue());
+                    this.catchUpRestorer = catchUpRestorer;
+                }
+            }
+
             // Creating and starting the restorer.
             makeAndStartRestorer();
 
@@ -115,34 +304,71 @@ public final class MemSuspender implements Suspender {
     }
 
     private void makeAndStartRestorer() {
-        // Creating the restorer.
-        restorer = new Thread(
-            () -> {
-                while (!currentThread().isInterrupted()) {
-                    try {
-                        if (restoreExpired()) {
-                            if (restorerSleepTimeAfterUsefulWork != ZERO) {
-                                sleep(restorerSleepTimeAfterUsefulWork.toMillis());
-                            }
-                        }
-                        else {
-                            if (restorerSleepTimeAfterUselessWork != ZERO) {
-                                sleep(restorerSleepTimeAfterUselessWork.toMillis());
-                            }
+        int workerCount = restorerThreadCount;
+        restorers = new ArrayList<>(workerCount);
+
+        // Creating the workers.
+        for (int i = 0; i < workerCount; ++i) {
+            int workerIndex = i;
+
+            restorers.add(new Thread(
+                () -> runRestorerWorker(workerIndex, workerCount),
+                workerCount == 1 ? RESTORER_THREAD_NAME : RESTORER_THREAD_NAME + " " + (workerIndex + 1)));
+        }
+
+        // Starting the workers.
+        for (Thread restorer : restorers) {
+            restorer.start();
+        }
+    }
+
+    private void runRestorerWorker(int workerIndex, int workerCount) {
+        while (!currentThread().isInterrupted()) {
+            try {
+                long sweepStart = nanoTime();
+                long expirationTime = currentTimeMillis();
+                boolean atLeastOneObjectWasRestored = restoreExpired(workerIndex, workerCount, expirationTime);
+
+                if (!atLeastOneObjectWasRestored && workerCount > 1) {
+                    atLeastOneObjectWasRestored = stealExpired(workerIndex, workerCount, expirationTime);
+                }
+
+                expirationSweepDurations.record((nanoTime() - sweepStart) / 1000L);
+
+                if (workerIndex == 0) {
+                    if (!oversizedSubtrees.isEmpty()) {
+                        partitionOversizedSubtrees();
+                    }
+
+                    if (catchUpRestorer != null) {
+                        if (catchUpRestorer.restoreNext(listeners)) {
+                            sleep(CATCH_UP_SLEEP_TIME.toMillis());
+                            continue;
                         }
+
+                        catchUpRestorer = null;
+                        logger.info("The overdue objects have been caught up");
                     }
-                    catch (InterruptedException exception) {
-                        currentThread().interrupt();
+                }
+
+                if (atLeastOneObjectWasRestored) {
+                    if (restorerSleepTimeAfterUsefulWork != ZERO) {
+                        sleep(restorerSleepTimeAfterUsefulWork.toMillis());
                     }
-                    catch (Exception exception) {
-                        logException(logger, exception);
+                }
+                else {
+                    if (restorerSleepTimeAfterUselessWork != ZERO) {
+                        sleep(restorerSleepTimeAfterUselessWork.toMillis());
                     }
                 }
-            },
-            RESTORER_THREAD_NAME);
-
-        // Starting the restorer.
-        restorer.start();
+            }
+            catch (InterruptedException exception) {
+                currentThread().interrupt();
+            }
+            catch (Exception exception) {
+                logException(logger, exception);
+            }
+        }
     }
 
     boolean restoreExpired() {
@@ -151,9 +377,52 @@ public final class MemSuspender implements Suspender {
 
     boolean restoreExpired(long expirationTime) {
         boolean atLeastOneObjectWasRestored = false;
+        long minRestorationTime = minExpiredRestorationTime();
+
+        for (int i = 0; i < getDivisionCount(); ++i) {
+            if (suspendedObjectDivs[i].restoreExpired(listeners, minRestorationTime, expirationTime)) {
+                atLeastOneObjectWasRestored = true;
+            }
+        }
+
+        return atLeastOneObjectWasRestored;
+    }
+
+    /**
+     * Restores the expired objects of the divisions owned by the worker with the index {@code workerIndex}.
+     *
+     * @return {@code true} iff there were any objects restored.
+     */
+    boolean restoreExpired(int workerIndex, int workerCount, long expirationTime) {
+        boolean atLeastOneObjectWasRestored = false;
+        long minRestorationTime = minExpiredRestorationTime();
+
+        for (int i = workerIndex; i < getDivisionCount(); i += workerCount) {
+            if (suspendedObjectDivs[i].restoreExpiredUnlessBusy(listeners, minRestorationTime, expirationTime)) {
+                atLeastOneObjectWasRestored = true;
+            }
+        }
+
+        return atLeastOneObjectWasRestored;
+    }
+
+    /**
+     * Restores the expired objects of the divisions owned by the other workers which are not being restored at the moment.
+     * The divisions are visited starting from the ones next to the worker, so the idle workers spread over the divisions.
+     *
+     * @return {@code true} iff there were any objects restored.
+     */
+    boolean stealExpired(int workerIndex, int workerCount, long expirationTime) {
+        boolean atLeastOneObjectWasRestored = false;
+        long minRestorationTime = minExpiredRestorationTime();
+        int divCount = getDivisionCount();
+
+        for (int i = 1; i < divCount; ++i) {
+            int divIndex = (workerIndex + i) % divCount;
+
+            if (divIndex % workerCount != workerIndex &&
+                suspendedObjectDivs[divIndex].restoreExpiredUnlessBusy(listeners, minRestorationTime, expirationTime)) {
 
-        for (int i = 0; i < suspendedObjectDivCount; ++i) {
-            if (suspendedObjectDivs[i].restoreExpired(listeners, expirationTime)) {
                 atLeastOneObjectWasRestored = true;
             }
         }
@@ -161,19 +430,30 @@ public final class MemSuspender implements Suspender {
         return atLeastOneObjectWasRestored;
     }
 
+    private long minExpiredRestorationTime() {
+        // The overdue objects are left to the catch-up restoration.
+        CatchUpRestorer catchUpRestorer = this.catchUpRestorer;
+        return catchUpRestorer != null ? catchUpRestorer.getCutoff() + 1L : Long.MIN_VALUE;
+    }
+
     @Override
     public void stop() {
         synchronized (lifeCycleLock) {
             checkState(started);
-            restorer.interrupt();
 
-            try {
-                logger.info("Waiting for \"{}\" to be stopped...", RESTORER_THREAD_NAME);
-                restorer.join();
-                logger.info("\"{}\" has been stopped", RESTORER_THREAD_NAME);
+            for (Thread restorer : restorers) {
+                restorer.interrupt();
             }
-            catch (InterruptedException exception) {
-                logger.error("Interrupted while waiting for \"{}\" to be stopped", RESTORER_THREAD_NAME);
+
+            for (Thread restorer : restorers) {
+                try {
+                    logger.info("Waiting for \"{}\" to be stopped...", restorer.getName());
+                    restorer.join();
+                    logger.info("\"{}\" has been stopped", restorer.getName());
+                }
+                catch (InterruptedException exception) {
+                    logger.error("Interrupted while waiting for \"{}\" to be stopped", restorer.getName());
+                }
             }
 
             started = false;
@@ -190,6 +470,16 @@ public final class MemSuspender implements Suspender {
         listeners.remove(checkNotNull(listener));
     }
 
+    @Override
+    public void addRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        prefixListeners.add(prefix, listener);
+    }
+
+    @Override
+    public void removeRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        prefixListeners.remove(prefix, listener);
+    }
+
     @Override
     public boolean hasObjectsSuspendedBy(Path path) {
         checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
@@ -198,20 +488,267 @@ public final class MemSuspender implements Suspender {
         return
             path.getSegmentCount() == 1 ?
             hasObjectsSuspendedBy(pathFirstSegment) :
-            divisionFor(path).hasObjectsSuspendedBy(path);
+            withDivisionsFor(
+                path,
+                (div) -> div.hasObjectsSuspendedBy(path),
+                () -> withAllDivisions(() -> divisionsFor(pathFirstSegment).stream().anyMatch((div) -> div.hasObjectsSuspendedBy(path))));
     }
 
     boolean hasObjectsSuspendedBy(String pathFirstSegment) {
-        return
-            pathFirstSegmentToDivCount.containsKey(pathFirstSegment) &&
-            pathFirstSegmentToDivCount.get(pathFirstSegment).get() > 0;
+        return pathFirstSegmentIndex.contains(pathFirstSegment);
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(PathPattern pattern) {
+        return withDivisionsFor(
+            (layout) -> layout.routingPathOf(pattern),
+            (div) -> div.hasObjectsSuspendedBy(pattern),
+            () -> withAllDivisions(() -> divisionsFor(pattern).parallel().anyMatch((div) -> div.hasObjectsSuspendedBy(pattern))));
+    }
+
+    /**
+     * @return the divisions which may contain objects suspended by paths having a prefix which matches
+     *         the non-routable {@code pattern}.
+     */
+    private Stream<SuspendedObjectDivision> divisionsFor(PathPattern pattern) {
+        return pattern.isLiteral(0) ? divisionsFor(pattern.getSegment(0)).stream() : getDivisions().stream();
+    }
+
+    /**
+     * @return the divisions which contain objects suspended by paths with the first segment {@code pathFirstSegment}
+     *         (only these divisions are visited by the operations with a single-segment prefix).
+     */
+    private List<SuspendedObjectDivision> divisionsFor(String pathFirstSegment) {
+        return pathFirstSegmentIndex.divisionIndicesOf(pathFirstSegment).mapToObj((divIndex) -> suspendedObjectDivs[divIndex]).collect(toList());
+    }
+
+    @Override
+    public long countSuspendedBy(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+
+        if (path.getSegmentCount() == 1) {
+            return pathFirstSegmentIndex.countSuspendedBy(path.getFirstSegment());
+        }
+        else {
+            return withDivisionsFor(
+                path,
+                (div) -> div.countSuspendedBy(path),
+                () -> withAllDivisions(() -> divisionsFor(path.getFirstSegment()).stream().mapToLong((div) -> div.countSuspendedBy(path)).sum()));
+        }
+    }
+
+    @Override
+    public List<SuspendedObject> peekEarliest(Path prefix, int maxCount) {
+        checkArgument(prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        checkArgument(maxCount >= 0);
+
+        return withDivisionsFor(
+            prefix,
+            (div) -> div.peekEarliest(prefix, maxCount),
+            () -> {
+                String prefixFirstSegment = prefix.getFirstSegment();
+                List<SuspendedObject> earliest = new ArrayList<>();
+
+                if (hasObjectsSuspendedBy(prefixFirstSegment)) {
+                    withAllDivisions(() -> {
+                        for (SuspendedObjectDivision div : divisionsFor(prefixFirstSegment)) {
+                            earliest.addAll(div.peekEarliest(prefix, maxCount));
+                        }
+
+                        return null;
+                    });
+                }
+
+                // Each division returns its own earliest objects, so the earliest objects overall are among them.
+                return earliest.stream()
+                    .sorted(comparing(SuspendedObject::getRestorationTime))
+                    .limit(maxCount)
+                    .collect(toList());
+            });
     }
 
+    @Override
+    public Stream<SuspendedObject> stream(Path prefix) {
+        checkArgument(prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        return StreamSupport.stream(new SuspendedObjectSpliterator(this, prefix), false);
+    }
+
+    /**
+     * Passes all the suspended objects to the {@code consumer}.
+     *
+     * The objects of a division are collected within a single critical section of the division,
+     * so the passed state is consistent per division. The divisions are collected one after another.
+     * The {@code consumer} is called out of the critical sections.
+     * The divisions are not resized meanwhile.
+     */
+    public void forEachSuspendedObject(Consumer<SuspendedObject> consumer) {
+        checkNotNull(consumer);
+
+        withAllDivisions(() -> {
+            for (SuspendedObjectDivision div : getDivisions()) {
+                div.snapshot().forEach(consumer);
+            }
+
+            return null;
+        });
+    }
+
+    // ****************************** //
+
+    /**
+     * @return the number of the distinct first segments of the paths of the suspended objects.
+     */
+    public int getPathFirstSegmentCount() {
+        return pathFirstSegmentIndex.size();
+    }
+
+    public int getDivisionCount() {
+        DivisionLayout layout = this.layout;
+        return layout.baseDivCount + layout.splitDivCount;
+    }
+
+    /**
+     * @return the current divisions.
+     */
+    List<SuspendedObjectDivision> getDivisions() {
+        return Arrays.asList(suspendedObjectDivs).subList(0, getDivisionCount());
+    }
+
+    /**
+     * @return the index of the division the object suspended by the path {@code path} belongs to.
+     *         The objects suspended by the paths with the same first two segments belong to one division
+     *         unless the subtree of these segments has been partitioned (see partitionSubtree()).
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    public int getDivisionIndex(Path path) {
+        return layout.divisionIndexOf(path);
+    }
+
+    /**
+     * @return the hash code of the first two segments of the {@code path}:
+     *         the objects suspended by the paths with the same first two segments are always kept together.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    public static int routingHashCodeOf(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+
+        int pathFirstSegmentHashCode = path.getSegment(0).hashCode();
+        int pathSecondSegmentHashCode = path.getSegment(1).hashCode();
+
+        return (17 * 37 + pathFirstSegmentHashCode) * 37 + pathSecondSegmentHashCode;
+    }
+
+    /**
+     * @return the hash code of the first three segments of the {@code path}
+     *         which routes the paths of a partitioned subtree (see partitionSubtree()).
+     */
+    static int partitionedRoutingHashCodeOf(Path path) {
+        return routingHashCodeOf(path) * 37 + path.getSegment(2).hashCode();
+    }
+
+    /**
+     * Bulk loading.
+     *
+     * A lot of objects can be loaded into an unused suspender (for example, recovered after a restart)
+     * by several threads in parallel bypassing the critical sections:
+     * each division is loaded by its own loader, and a loader is used by one thread at a time.
+     * The modifications of the objects suspended by a path must be passed to the loader of its division (see getDivisionIndex()).
+     * After all the loaders are done, completeLoading() must be called.
+     *
+     * @return a listener which applies the reported modifications straight to the division with the index {@code divIndex}.
+     *         A single-segment prefix passed to onRestored() is applied to that division only.
+     *         The restored object listeners and the mutation listener are not called.
+     */
+    public MutationListener makeDivisionLoader(int divIndex) {
+        checkElementIndex(divIndex, getDivisionCount());
+        return suspendedObjectDivs[divIndex].makeLoader();
+    }
+
+    /**
+     * Makes the loaded objects visible to the operations which span several divisions.
+     * Must be called after all the loaders are done and before the suspender is used.
+     */
+    public void completeLoading() {
+        pathFirstSegmentIndex.clear();
+
+        for (SuspendedObjectDivision div : getDivisions()) {
+            div.indexPathFirstSegments();
+        }
+    }
+
+    // ****************************** //
+
     @Override
     public void suspend(Path path, Object object, Duration duration) {
         checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
         duration = Durations.adjust(duration, MIN_SUSPENSION_DURATION, MAX_SUSPENSION_DURATION);
-        divisionFor(path).suspend(path, object, duration);
+        Duration adjustedDuration = duration;
+        withDivisionFor(path, (div) -> { div.suspend(path, object, adjustedDuration); return null; });
+    }
+
+    /**
+     * Suspends the object {@code object}
+     * by the path {@code path}
+     * until the {@code restorationTime}.
+     * Unlike {@link #suspend(Path, Object, Duration)}, the restoration time is not adjusted,
+     * so the method can be used to restore the state of the suspender (for example, after a restart).
+     *
+     * If there is already an object suspended by the {@code path} then it will be overwritten.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    public void suspend(Path path, Object object, Instant restorationTime) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        withDivisionFor(path, (div) -> { div.suspend(path, object, restorationTime.toEpochMilli()); return null; });
+    }
+
+    /**
+     * @return the object suspended by exactly the path {@code path} or {@code null} if there is no such object.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    public SuspendedObject getSuspendedObject(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        return withDivisionFor(path, (div) -> div.getSuspendedObject(path));
+    }
+
+    /**
+     * Removes the object suspended by exactly the path {@code path} (if any)
+     * without notifying the restored object listeners,
+     * so the object can be moved elsewhere (for example, to another storage tier).
+     * The mutation listener is notified as if the object was restored.
+     *
+     * @return {@code true} iff the object was removed.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    public boolean discard(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        return withDivisionFor(path, (div) -> div.discard(path));
+    }
+
+    @Override
+    public boolean suspendIfAbsent(Path path, Object object, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        Duration adjustedDuration = Durations.adjust(duration, MIN_SUSPENSION_DURATION, MAX_SUSPENSION_DURATION);
+        return withDivisionFor(path, (div) -> div.suspendIfAbsent(path, object, adjustedDuration));
+    }
+
+    @Override
+    public boolean replace(Path path, Object expectedObject, Object newObject, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        Duration adjustedDuration = Durations.adjust(duration, MIN_SUSPENSION_DURATION, MAX_SUSPENSION_DURATION);
+        return withDivisionFor(path, (div) -> div.replace(path, expectedObject, newObject, adjustedDuration));
+    }
+
+    @Override
+    public Object compute(Path path, UnaryOperator<Object> remappingFunction, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        checkNotNull(remappingFunction);
+        Duration adjustedDuration = Durations.adjust(duration, MIN_SUSPENSION_DURATION, MAX_SUSPENSION_DURATION);
+        return withDivisionFor(path, (div) -> div.compute(path, remappingFunction, adjustedDuration, listeners));
     }
 
     @Override
@@ -228,22 +765,88 @@ public final class MemSuspender implements Suspender {
         // Top-level containers are usually restored last.
         // So one iteration over the divisions won't hurt,
         // and it is still a very efficient and concurrent implementation.
-        if (path.getSegmentCount() == 1) {
-            String pathFirstSegment = path.getFirstSegment();
+        withDivisionsFor(
+            path,
+            (div) -> { div.restore(path, listeners); return null; },
+            () -> {
+                String pathFirstSegment = path.getFirstSegment();
 
-            if (hasObjectsSuspendedBy(pathFirstSegment)) {
-                for (int i = 0; i < suspendedObjectDivCount; ++i) {
-                    SuspendedObjectDivision div = suspendedObjectDivs[i];
+                if (hasObjectsSuspendedBy(pathFirstSegment)) {
+                    withAllDivisions(() -> {
+                        for (SuspendedObjectDivision div : divisionsFor(pathFirstSegment)) {
+                            div.restore(path, listeners);
+                        }
 
-                    if (div.hasObjectsSuspendedBy(pathFirstSegment)) {
-                        div.restore(path, listeners);
-                    }
+                        return null;
+                    });
                 }
-            }
-        }
-        else {
-            divisionFor(path).restore(path, listeners);
-        }
+
+                return null;
+            });
+    }
+
+    @Override
+    public void restore(PathPattern pattern) {
+        restore(pattern, listeners);
+    }
+
+    @Override
+    public void restore(PathPattern pattern, Collection<RestoredObjectListener> listeners) {
+        withDivisionsFor(
+            (layout) -> layout.routingPathOf(pattern),
+            (div) -> { div.restore(pattern, listeners); return null; },
+            // Each division walks its tree once. The divisions are processed in parallel.
+            () -> withAllDivisions(() -> {
+                divisionsFor(pattern).parallel().forEach((div) -> div.restore(pattern, listeners));
+                return null;
+            }));
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff) {
+        restoreDueBefore(prefix, cutoff, listeners);
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff, Collection<RestoredObjectListener> listeners) {
+        checkArgument(prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        long maxRestorationTime = maxRestorationTimeBefore(cutoff);
+
+        withDivisionsFor(
+            prefix,
+            (div) -> { div.restoreDueBy(prefix, maxRestorationTime, listeners); return null; },
+            () -> {
+                String prefixFirstSegment = prefix.getFirstSegment();
+                List<SuspendedObject> restored = new ArrayList<>();
+
+                if (hasObjectsSuspendedBy(prefixFirstSegment)) {
+                    withAllDivisions(() -> {
+                        for (SuspendedObjectDivision div : divisionsFor(prefixFirstSegment)) {
+                            restored.addAll(div.removeDueBy(prefix, maxRestorationTime));
+                        }
+
+                        return null;
+                    });
+                }
+
+                // Each division returns its objects in the order of restoration time,
+                // so the stable sort only merges them.
+                restored.sort(comparing(SuspendedObject::getRestorationTime));
+
+                for (SuspendedObject restoredObject : restored) {
+                    notifyAboutObjectRestored(restoredObject.getPath(), restoredObject.getObject(), listeners);
+                }
+
+                return null;
+            });
+    }
+
+    /**
+     * @return the maximal restoration time (in milliseconds) which is before {@code cutoff}.
+     */
+    static long maxRestorationTimeBefore(Instant cutoff) {
+        long cutoffMillis = cutoff.toEpochMilli();
+        return cutoff.getNano() % 1_000_000 == 0 ? cutoffMillis - 1L : cutoffMillis;
     }
 
     @Override
@@ -255,57 +858,452 @@ public final class MemSuspender implements Suspender {
     public void restoreObjectWithMinRestorationTime(Path path, Collection<RestoredObjectListener> listeners) {
         checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
 
-        if (path.getSegmentCount() == 1) {
-            String pathFirstSegment = path.getFirstSegment();
+        withDivisionsFor(
+            path,
+            (div) -> { div.restoreObjectWithMinRestorationTime(path, listeners); return null; },
+            () -> {
+                String pathFirstSegment = path.getFirstSegment();
 
-            if (hasObjectsSuspendedBy(pathFirstSegment)) {
-                Long min = Long.MAX_VALUE;
-                SuspendedObjectDivision divHavingMin = null;
+                if (hasObjectsSuspendedBy(pathFirstSegment)) {
+                    withAllDivisions(() -> {
+                        restoreObjectWithMinRestorationTime(pathFirstSegment, path, listeners);
+                        return null;
+                    });
+                }
 
-                for (int i = 0; i < suspendedObjectDivCount; ++i) {
-                    SuspendedObjectDivision div = suspendedObjectDivs[i];
+                return null;
+            });
+    }
 
-                    if (div.hasObjectsSuspendedBy(pathFirstSegment)) {
-                        Long divMin = div.findMinRestorationTime(path);
+    private void restoreObjectWithMinRestorationTime(
+        String pathFirstSegment,
+        Path path,
+        Collection<RestoredObjectListener> listeners) {
 
-                        if (divMin != null && divMin < min) {
-                            min = divMin;
-                            divHavingMin = div;
-                        }
-                    }
+        Long min = Long.MAX_VALUE;
+        SuspendedObjectDivision divHavingMin = null;
+
+        for (SuspendedObjectDivision div : divisionsFor(pathFirstSegment)) {
+            Long divMin = div.findMinRestorationTime(path);
+
+            if (divMin != null && divMin < min) {
+                min = divMin;
+                divHavingMin = div;
+            }
+        }
+
+        if (divHavingMin != null) {
+            // This is not a bug. ;)
+            // If the "found" object was restored within another operation then all is well - the source problem was solved.
+            // And we still have the right to restore another object with minimal restoration time because
+            // in essence the contract of the method is
+            // "some object with the minimal restoration time should be restored".
+            // But we cannot influence other restoration processes and we do not have to.
+            divHavingMin.restoreObjectWithMinRestorationTime(path, listeners);
+        }
+    }
+
+    // ****************************** //
+
+    /**
+     * Online resizing.
+     *
+     * Doubles the number of the divisions until it is not less than {@code divCount}
+     * (the number cannot exceed MAX_SUSPENDED_OBJECT_DIVISION_COUNT).
+     * The divisions are split one at a time: a division passes the objects of about a half of its paths
+     * (by the hash code of the first two segments, see getDivisionIndex()) to a new division.
+     * Only the operations with the division being split wait for the split,
+     * as well as the operations which span all the divisions (for example, restore(new Path("A"))).
+     * The split waits until there are no such operations in progress,
+     * so it never blocks an operation which has already started (for example, the one which notifies a listener).
+     *
+     * The number of the divisions cannot be decreased.
+     *
+     * @return the number of the divisions after resizing.
+     */
+    public int resize(int divCount) {
+        reorganizationLock.lock();
+
+        try {
+            while (getDivisionCount() < divCount && 2 * layout.baseDivCount <= MAX_SUSPENDED_OBJECT_DIVISION_COUNT) {
+                int baseDivCount = layout.baseDivCount;
+
+                for (int i = 0; i < baseDivCount; ++i) {
+                    splitDivision(i, baseDivCount);
                 }
 
-                if (divHavingMin != null) {
-                    // This is not a bug. ;)
-                    // If the "found" object was restored within another operation then all is well - the source problem was solved.
-                    // And we still have the right to restore another object with minimal restoration time because
-                    // in essence the contract of the method is
-                    // "some object with the minimal restoration time should be restored".
-                    // But we cannot influence other restoration processes and we do not have to.
-                    divHavingMin.restoreObjectWithMinRestorationTime(path, listeners);
+                logger.info("The number of the suspended object divisions has been increased to {}", getDivisionCount());
+            }
+
+            return getDivisionCount();
+        }
+        finally {
+            reorganizationLock.unlock();
+        }
+    }
+
+    private void splitDivision(int divIndex, int baseDivCount) {
+        SuspendedObjectDivision div = suspendedObjectDivs[divIndex];
+        int newDivIndex = baseDivCount + divIndex;
+
+        SuspendedObjectDivision newDiv = new SuspendedObjectDivision(newDivIndex, pathFirstSegmentIndex);
+        newDiv.mutationListener = mutationListener;
+        newDiv.restorationLateness = restorationLateness;
+        newDiv.oversizedSubtrees = oversizedSubtrees;
+        newDiv.partitionedSubtrees = this::isPartitioned;
+        newDiv.maxSubtreeObjectCount = hotSubtreeObjectCount;
+        suspendedObjectDivs[newDivIndex] = newDiv;
+
+        DivisionLayout newLayout =
+            divIndex + 1 < baseDivCount ?
+            layout.withSplitDivCount(divIndex + 1) :
+            layout.withBaseDivCount(2 * baseDivCount);
+
+        reorganize(div, newLayout, (prefix) -> true);
+    }
+
+    /**
+     * Sub-partitioning of a hot subtree.
+     *
+     * Since the objects suspended by the paths with the same first two segments belong to one division,
+     * a lot of such objects (for example, the ones of a big customer under /tenant/bigCustomer)
+     * make their division a bottleneck. Partitioning distributes the objects suspended by the paths
+     * with the {@code prefix} of two segments and at least three segments between the divisions
+     * by the hash code of the first three segments (the object suspended by exactly the {@code prefix} stays in its division).
+     * The operations with such a path or prefix are performed by one division as before,
+     * the operations with the {@code prefix} itself span the divisions like the ones with a single-segment prefix.
+     *
+     * The restorer partitions a subtree when it outgrows the hot subtree object count (see setHotSubtreeObjectCount()).
+     * The partitioning waits for the operations like a split (see resize()). A subtree is never merged back.
+     *
+     * @return {@code false} iff the subtree has already been partitioned.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() != Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    public boolean partitionSubtree(Path prefix) {
+        checkArgument(prefix.getSegmentCount() == MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+
+        reorganizationLock.lock();
+
+        try {
+            if (layout.isPartitioned(prefix)) {
+                return false;
+            }
+
+            long movedObjectCount = reorganize(divisionFor(prefix), layout.withPartitioned(prefix), prefix::equals);
+            logPartitioned(prefix, movedObjectCount);
+
+            return true;
+        }
+        finally {
+            reorganizationLock.unlock();
+        }
+    }
+
+    private static void logPartitioned(Path prefix, long movedObjectCount) {
+        logger.info("The subtree of {} has been partitioned between the divisions, {} objects have been moved", prefix, movedObjectCount);
+    }
+
+    /**
+     * @return {@code true} iff the subtree of the {@code prefix} of two segments has been partitioned between the divisions.
+     */
+    boolean isPartitioned(Path prefix) {
+        return layout.isPartitioned(prefix);
+    }
+
+    /**
+     * Partitions the subtrees reported by the divisions as oversized.
+     *
+     * Is called by the restorer, so it never waits for a reorganization in progress
+     * and tries to partition a subtree PARTITIONING_ATTEMPT_COUNT times at most:
+     * the division of a hot subtree may be busy almost all the time.
+     * The subtrees which have not been partitioned are left to the next call.
+     */
+    void partitionOversizedSubtrees() {
+        if (!reorganizationLock.tryLock()) {
+            return;
+        }
+
+        try {
+            for (Path prefix : new ArrayList<>(oversizedSubtrees)) {
+                if (layout.isPartitioned(prefix) || !hasObjectsSuspendedBy(prefix) || tryPartitionSubtree(prefix)) {
+                    oversizedSubtrees.remove(prefix);
                 }
             }
         }
-        else {
-            divisionFor(path).restoreObjectWithMinRestorationTime(path, listeners);
+        finally {
+            reorganizationLock.unlock();
         }
     }
 
-    // ****************************** //
+    /**
+     * Must be called within the reorganization lock.
+     *
+     * @return {@code true} iff the subtree has been partitioned.
+     */
+    private boolean tryPartitionSubtree(Path prefix) {
+        for (int i = 0; i < PARTITIONING_ATTEMPT_COUNT; ++i) {
+            long movedObjectCount = tryReorganize(divisionFor(prefix), layout.withPartitioned(prefix), prefix::equals);
+
+            if (movedObjectCount >= 0L) {
+                logPartitioned(prefix, movedObjectCount);
+                return true;
+            }
+
+            LockSupport.parkNanos(SPLIT_RETRY_PAUSE_NANOS);
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves the objects of the {@code div} within the {@code scope} to the divisions they belong to by the {@code newLayout}
+     * and publishes the {@code newLayout}. Waits until the {@code div} is not busy.
+     * Must be called within the reorganization lock.
+     *
+     * @return the number of the moved objects.
+     */
+    private long reorganize(SuspendedObjectDivision div, DivisionLayout newLayout, Predicate<Path> scope) {
+        while (true) {
+            long movedObjectCount = tryReorganize(div, newLayout, scope);
+
+            if (movedObjectCount >= 0L) {
+                return movedObjectCount;
+            }
+
+            LockSupport.parkNanos(SPLIT_RETRY_PAUSE_NANOS);
+        }
+    }
+
+    /**
+     * The same as reorganize() but makes a single attempt.
+     *
+     * @return the number of the moved objects or {@code -1} if the {@code div} is busy.
+     */
+    private long tryReorganize(SuspendedObjectDivision div, DivisionLayout newLayout, Predicate<Path> scope) {
+        // The locks are only tried, so the reorganization never waits while holding a lock
+        // (an operation holding a lock may wait for another one, for example, in a listener).
+        if (div.splitLock.writeLock().tryLock()) {
+            try {
+                if (divisionsResizeLock.writeLock().tryLock()) {
+                    try {
+                        long movedObjectCount = div.moveOut(scope, (unitPrefix) -> suspendedObjectDivs[newLayout.divisionIndexOf(unitPrefix)]);
+                        layout = newLayout;
+
+                        return movedObjectCount;
+                    }
+                    finally {
+                        divisionsResizeLock.writeLock().unlock();
+                    }
+                }
+            }
+            finally {
+                div.splitLock.writeLock().unlock();
+            }
+        }
+
+        return -1L;
+    }
 
     SuspendedObjectDivision divisionFor(Path path) {
-        int pathFirstSegmentHashCode = path.getSegment(0).hashCode();
-        int pathSecondSegmentHashCode = path.getSegment(1).hashCode();
-        int combinedHashCode = (17 * 37 + pathFirstSegmentHashCode) * 37 + pathSecondSegmentHashCode;
+        return suspendedObjectDivs[getDivisionIndex(path)];
+    }
+
+    SuspendedObjectDivision divisionFor(DivisionLayout layout, Path path) {
+        return suspendedObjectDivs[layout.divisionIndexOf(path)];
+    }
+
+    /**
+     * @return the current layout of the divisions.
+     *         It stays current while the divisions are not resized (see withAllDivisions()).
+     */
+    DivisionLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Performs the {@code operation} with the division of the {@code path}.
+     * The division is not reorganized meanwhile.
+     */
+    private <R> R withDivisionFor(Path path, Function<SuspendedObjectDivision, R> operation) {
+        return withDivisionsFor((layout) -> path, operation, null);
+    }
+
+    /**
+     * Performs the {@code operation} with the division of the {@code prefix}
+     * or the {@code spanningOperation} if the objects suspended by the paths with the {@code prefix}
+     * may belong to several divisions.
+     */
+    private <R> R withDivisionsFor(Path prefix, Function<SuspendedObjectDivision, R> operation, Supplier<R> spanningOperation) {
+        return withDivisionsFor((layout) -> layout.spansDivisions(prefix) ? null : prefix, operation, spanningOperation);
+    }
+
+    /**
+     * Performs the {@code operation} with the division of the path returned by {@code routingPathOf}
+     * or the {@code spanningOperation} if it returns {@code null}.
+     * The division is not reorganized meanwhile.
+     */
+    private <R> R withDivisionsFor(
+        Function<DivisionLayout, Path> routingPathOf,
+        Function<SuspendedObjectDivision, R> operation,
+        Supplier<R> spanningOperation) {
+
+        while (true) {
+            DivisionLayout layout = this.layout;
+            Path routingPath = routingPathOf.apply(layout);
+
+            // A partitioned subtree is never merged back, so the spanning operation is always correct once chosen.
+            if (routingPath == null) {
+                return spanningOperation.get();
+            }
+
+            SuspendedObjectDivision div = suspendedObjectDivs[layout.divisionIndexOf(routingPath)];
+            Lock splitLock = div.splitLock.readLock();
+            splitLock.lock();
+
+            try {
+                // The divisions may have been reorganized before the lock was acquired.
+                if (layout == this.layout) {
+                    return operation.apply(div);
+                }
+            }
+            finally {
+                splitLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Performs the {@code operation} which spans all the divisions.
+     * The divisions are not resized meanwhile.
+     */
+    <R> R withAllDivisions(Supplier<R> operation) {
+        divisionsResizeLock.readLock().lock();
+
+        try {
+            return operation.get();
+        }
+        finally {
+            divisionsResizeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The divisions with the indices less than {@code splitDivCount} have been split:
+     * a path belongs to the division with the index {@code abs(routingHashCodeOf(path)) % (2 * baseDivCount)} if
+     * {@code abs(routingHashCodeOf(path)) % baseDivCount < splitDivCount}
+     * and to the division with the index {@code abs(routingHashCodeOf(path)) % baseDivCount} otherwise.
+     *
+     * The paths of at least three segments of the partitioned subtrees are routed the same way
+     * by partitionedRoutingHashCodeOf() instead of routingHashCodeOf().
+     * The layout is immutable, a new one is published on each reorganization.
+     */
+    static final class DivisionLayout {
+
+        DivisionLayout(int baseDivCount, int splitDivCount, ImmutableMap<String, ImmutableSet<String>> partitionedPrefixes) {
+            this.baseDivCount = baseDivCount;
+            this.splitDivCount = splitDivCount;
+            this.partitionedPrefixes = partitionedPrefixes;
+        }
+
+        DivisionLayout withSplitDivCount(int splitDivCount) {
+            return new DivisionLayout(baseDivCount, splitDivCount, partitionedPrefixes);
+        }
+
+        DivisionLayout withBaseDivCount(int baseDivCount) {
+            return new DivisionLayout(baseDivCount, 0, partitionedPrefixes);
+        }
+
+        DivisionLayout withPartitioned(Path prefix) {
+            Map<String, ImmutableSet<String>> newPartitionedPrefixes = new HashMap<>(partitionedPrefixes);
+            ImmutableSet<String> pathSecondSegments = partitionedPrefixes.getOrDefault(prefix.getSegment(0), ImmutableSet.of());
+
+            newPartitionedPrefixes.put(
+                prefix.getSegment(0),
+                ImmutableSet.<String>builder().addAll(pathSecondSegments).add(prefix.getSegment(1)).build());
+
+            return new DivisionLayout(baseDivCount, splitDivCount, ImmutableMap.copyOf(newPartitionedPrefixes));
+        }
 
-        return suspendedObjectDivs[abs(combinedHashCode) % suspendedObjectDivCount];
+        /**
+         * @return {@code true} iff the subtree of the first two segments of the {@code path} has been partitioned.
+         */
+        boolean isPartitioned(Path path) {
+            if (partitionedPrefixes.isEmpty()) {
+                return false;
+            }
+
+            ImmutableSet<String> pathSecondSegments = partitionedPrefixes.get(path.getSegment(0));
+            return pathSecondSegments != null && pathSecondSegments.contains(path.getSegment(1));
+        }
+
+        /**
+         * @return {@code true} iff the objects suspended by the paths with the {@code prefix} may belong to several divisions.
+         */
+        boolean spansDivisions(Path prefix) {
+            return
+                prefix.getSegmentCount() < MIN_SUSPENSION_PATH_SEGMENT_COUNT ||
+                prefix.getSegmentCount() == MIN_SUSPENSION_PATH_SEGMENT_COUNT && isPartitioned(prefix);
+        }
+
+        /**
+         * @return a path of the division which contains all the objects suspended by paths having a prefix which matches
+         *         the {@code pattern} or {@code null} if they may belong to several divisions.
+         */
+        Path routingPathOf(PathPattern pattern) {
+            if (pattern.getSegmentCount() < MIN_SUSPENSION_PATH_SEGMENT_COUNT || !pattern.isLiteral(0) || !pattern.isLiteral(1)) {
+                return null;
+            }
+
+            Path prefix = new Path(pattern.getSegment(0), pattern.getSegment(1));
+
+            if (!isPartitioned(prefix)) {
+                return prefix;
+            }
+
+            return
+                pattern.getSegmentCount() > MIN_SUSPENSION_PATH_SEGMENT_COUNT && pattern.isLiteral(2) ?
+                prefix.withAppendedSegment(pattern.getSegment(2)) :
+                null;
+        }
+
+        int divisionIndexOf(Path path) {
+            int routingHashCode = abs(
+                path.getSegmentCount() > MIN_SUSPENSION_PATH_SEGMENT_COUNT && isPartitioned(path) ?
+                partitionedRoutingHashCodeOf(path) :
+                routingHashCodeOf(path));
+
+            int divIndex = routingHashCode % baseDivCount;
+
+            // The split divisions have passed a part of their objects to the divisions with the indices shifted by baseDivCount.
+            return divIndex < splitDivCount ? routingHashCode % (2 * baseDivCount) : divIndex;
+        }
+
+        // ****************************** //
+
+        final int baseDivCount;
+        final int splitDivCount;
+
+        // The first segment -> the second segments of the partitioned subtrees.
+        final ImmutableMap<String, ImmutableSet<String>> partitionedPrefixes;
     }
 
+    static final long SPLIT_RETRY_PAUSE_NANOS = 100_000L;
+
+    /**
+     * The number of the attempts to partition an oversized subtree per restorer sweep (see partitionOversizedSubtrees()).
+     */
+    static final int PARTITIONING_ATTEMPT_COUNT = 10;
+
     // ****************************** //
 
     final static long MIN_DURATION_HALF = MIN_SUSPENSION_DURATION.toMillis() / 2L;
 
-    static long calcRestorationTime(Duration duration) {
+    /**
+     * @return the restoration time of an object suspended now for {@code duration}
+     *         (see calcRestorationTime(long, Duration)).
+     */
+    public static long calcRestorationTime(Duration duration) {
         return calcRestorationTime(currentTimeMillis(), duration);
     }
 
@@ -342,24 +1340,48 @@ public final class MemSuspender implements Suspender {
     private final Object lifeCycleLock = new Object();
 
     // Divisions between which suspended objects are distributed.
+    // Only the first getDivisionCount() elements are used.
     private final SuspendedObjectDivision[] suspendedObjectDivs;
-    final int suspendedObjectDivCount;
+    private volatile DivisionLayout layout;
+
+    // Online resizing.
+    // Resizing and partitioning are performed one at a time.
+    private final Lock reorganizationLock = new ReentrantLock();
+    private final ReadWriteLock divisionsResizeLock = new ReentrantReadWriteLock();
+    private volatile MutationListener mutationListener = MutationListener.NONE;
+
+    // Sub-partitioning of the hot subtrees.
+    private final Set<Path> oversizedSubtrees = ConcurrentHashMap.newKeySet();
+    private volatile int hotSubtreeObjectCount;
 
-    // The value of the map is the number of divisions that contain objects
-    // suspended by paths that have the first segment equal to the key of the map.
-    final Map<String, AtomicInteger> pathFirstSegmentToDivCount;
+    // The divisions and the number of the objects by the path first segment.
+    final PathFirstSegmentIndex pathFirstSegmentIndex = new PathFirstSegmentIndex();
 
-    // The thread that restores suspended objects.
-    private Thread restorer;
+    // The threads that restore suspended objects.
+    private List<Thread> restorers;
+    private volatile int restorerThreadCount = DEFAULT_RESTORER_THREAD_COUNT;
 
     // Time-out after an iteration over the divisions with at least one restored object.
     private volatile Duration restorerSleepTimeAfterUsefulWork;
 
+    // Measurements of the restorer.
+    private final Histogram restorationLateness = new Histogram();
+    private final Histogram expirationSweepDurations = new Histogram();
+
     // Time-out after an iteration over the divisions with no restored objects.
     private volatile Duration restorerSleepTimeAfterUselessWork;
 
+    // The catch-up restoration of the overdue objects.
+    private volatile double catchUpRate;
+    private volatile boolean catchUpPerPathFirstSegment;
+    private volatile CatchUpRestorer catchUpRestorer;
+    private final LongAdder catchUpRestoredCount = new LongAdder();
+
     // An object restoration event listeners.
     final CopyOnWriteArraySet<RestoredObjectListener> listeners = new CopyOnWriteArraySet<>();
 
+    // An object restoration event listeners subscribed to path prefixes.
+    final RestoredObjectListenerTrie prefixListeners = new RestoredObjectListenerTrie();
+
     private final static Logger logger = getLogger(MemSuspender.class);
 }
@@ -0,0 +1,51 @@
+package net.devromik.suspender.mem;
+
+import net.devromik.suspender.utils.Path;
+
+/**
+ * A listener of the modifications of the suspended objects of net.devromik.suspender.mem.MemSuspender.
+ * It is used to make the in-memory state durable (for example, by a write-ahead log).
+ *
+ * The methods are called within the critical section of the division being modified,
+ * so the modifications of the objects suspended by the same path are reported in the order they are performed.
+ * Hence the methods must be fast and must not access the suspender.
+ *
+ * @author Shulnyaev Roman
+ */
+public interface MutationListener {
+
+    MutationListener NONE = new MutationListener() {
+
+        @Override
+        public void onSuspended(Path path, Object object, long restorationTime) {}
+
+        @Override
+        public void onObjectRestored(Path path) {}
+
+        @Override
+        public void onRestored(Path prefix) {}
+    };
+
+    /**
+     * Is called before the {@code object} is suspended by the {@code path} until the {@code restorationTime}.
+     * If the method throws an exception then the object is not suspended.
+     *
+     * @param restorationTime the restoration time in milliseconds since the epoch.
+     */
+    void onSuspended(Path path, Object object, long restorationTime);
+
+    /**
+     * Is called when the object suspended by exactly the {@code path} is restored.
+     * The objects suspended by the paths with the prefix {@code path} (if any) stay suspended.
+     */
+    void onObjectRestored(Path path);
+
+    /**
+     * Is called when all the objects suspended by the paths with the {@code prefix} are restored.
+     * The {@code prefix} belongs to the division being modified only:
+     * it has at least Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT segments,
+     * and the restoration of a prefix whose subtree is partitioned between the divisions
+     * is reported as onObjectRestored() of the prefix and onRestored() of its one segment longer prefixes instead.
+     */
+    void onRestored(Path prefix);
+}
@@ -0,0 +1,119 @@
+package net.devromik.suspender.mem;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+import static net.devromik.suspender.mem.MemSuspender.MAX_SUSPENDED_OBJECT_DIVISION_COUNT;
+
+/**
+ * The index of the path first segments shared by all the divisions.
+ *
+ * For each first segment of the paths of the suspended objects it keeps the number of the objects
+ * and the set of the divisions containing them (as a bitset of the division indices),
+ * so an operation with a single-segment prefix visits only these divisions.
+ * The entry of a first segment is removed as soon as there are no objects suspended by the paths with it,
+ * so short-lived first segments (for example, request ids) do not pile up.
+ *
+ * An entry is modified only within ConcurrentHashMap.compute(), so the modifications of an entry are serialized.
+ * It is read without locking.
+ *
+ * @author Shulnyaev Roman
+ */
+final class PathFirstSegmentIndex {
+
+    /**
+     * Reflects a modification of the objects of the division with the index {@code divIndex}
+     * suspended by the paths with the first segment {@code pathFirstSegment}.
+     *
+     * @param countBefore the number of such objects in the division before the modification.
+     * @param countAfter the number of such objects in the division after the modification.
+     */
+    void update(String pathFirstSegment, int divIndex, long countBefore, long countAfter) {
+        entries.compute(
+            pathFirstSegment,
+            (key, entry) -> {
+                if (entry == null) {
+                    entry = new Entry();
+                }
+
+                entry.objectCount += countAfter - countBefore;
+
+                if (countBefore == 0L) {
+                    entry.addDivision(divIndex);
+                }
+                else if (countAfter == 0L) {
+                    entry.removeDivision(divIndex);
+                }
+
+                return entry.objectCount > 0L ? entry : null;
+            });
+    }
+
+    /**
+     * @return {@code true} iff there are objects suspended by paths with the first segment {@code pathFirstSegment}.
+     */
+    boolean contains(String pathFirstSegment) {
+        return entries.containsKey(pathFirstSegment);
+    }
+
+    /**
+     * @return the number of the objects (in all the divisions) suspended by paths with the first segment {@code pathFirstSegment}.
+     */
+    long countSuspendedBy(String pathFirstSegment) {
+        Entry entry = entries.get(pathFirstSegment);
+        return entry != null ? entry.objectCount : 0L;
+    }
+
+    /**
+     * @return the indices (in ascending order) of the divisions which contain
+     *         objects suspended by paths with the first segment {@code pathFirstSegment}.
+     */
+    IntStream divisionIndicesOf(String pathFirstSegment) {
+        Entry entry = entries.get(pathFirstSegment);
+        return entry != null ? entry.divisionIndices() : IntStream.empty();
+    }
+
+    /**
+     * @return the number of the indexed first segments.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        void addDivision(int divIndex) {
+            int word = divIndex / Long.SIZE;
+            divBits.set(word, divBits.get(word) | (1L << divIndex));
+        }
+
+        void removeDivision(int divIndex) {
+            int word = divIndex / Long.SIZE;
+            divBits.set(word, divBits.get(word) & ~(1L << divIndex));
+        }
+
+        IntStream divisionIndices() {
+            long[] words = new long[divBits.length()];
+
+            for (int i = 0; i < words.length; ++i) {
+                words[i] = divBits.get(i);
+            }
+
+            return BitSet.valueOf(words).stream();
+        }
+
+        // ****************************** //
+
+        volatile long objectCount;
+        final AtomicLongArray divBits = new AtomicLongArray(MAX_SUSPENDED_OBJECT_DIVISION_COUNT / Long.SIZE);
+    }
+
+    // ****************************** //
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,143 @@
+package net.devromik.suspender.mem;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.slf4j.Logger;
+import static com.google.common.base.Preconditions.*;
+import net.devromik.suspender.RestoredObjectListener;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT;
+import net.devromik.suspender.utils.Path;
+import static net.devromik.slf4jUtils.Slf4jUtils.logException;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A trie of object restoration event listeners subscribed to path prefixes.
+ *
+ * Each node of the trie corresponds to a path prefix and holds the listeners subscribed to that prefix.
+ * When an object suspended by a path is restored, only the nodes lying on that path are visited.
+ * So the cost of a notification is proportional to the path length plus the number of matching listeners
+ * rather than to the total number of listeners.
+ *
+ * Notification is lock-free. Adding and removing listeners are serialized.
+ *
+ * @author Shulnyaev Roman
+ */
+final class RestoredObjectListenerTrie implements RestoredObjectListener {
+
+    /**
+     * Subscribes the {@code listener} to restoration of objects suspended by paths with the prefix {@code prefix}.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    synchronized void add(Path prefix, RestoredObjectListener listener) {
+        checkArgument(prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        checkNotNull(listener);
+
+        Node node = root;
+
+        for (String segment : prefix) {
+            node = node.ensureChild(segment);
+        }
+
+        node.listeners.add(listener);
+    }
+
+    /**
+     * Unsubscribes the {@code listener} from the prefix {@code prefix}.
+     * The nodes which become empty are removed from the trie.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    synchronized void remove(Path prefix, RestoredObjectListener listener) {
+        checkArgument(prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        checkNotNull(listener);
+
+        Node node = root;
+
+        for (String segment : prefix) {
+            node = node.children.get(segment);
+
+            if (node == null) {
+                return;
+            }
+        }
+
+        node.listeners.remove(listener);
+        node.detachRecursivelyUpIfEmpty();
+    }
+
+    /**
+     * @return {@code true} iff there are no subscribed listeners.
+     */
+    boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    /**
+     * Notifies all the listeners subscribed to the prefixes of the {@code suspensionPath}.
+     * An exception thrown by a listener does not prevent the others from being notified.
+     */
+    @Override
+    public void onObjectRestored(Path suspensionPath, Object restoredObject) {
+        Node node = root;
+
+        for (String segment : suspensionPath) {
+            node = node.children.get(segment);
+
+            if (node == null) {
+                return;
+            }
+
+            for (RestoredObjectListener listener : node.listeners) {
+                try {
+                    listener.onObjectRestored(suspensionPath, restoredObject);
+                }
+                catch (Exception exception) {
+                    logException(logger, exception);
+                }
+            }
+        }
+    }
+
+    // ****************************** //
+
+    private static final class Node {
+
+        Node(Node parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        Node ensureChild(String segment) {
+            Node child = children.get(segment);
+
+            if (child == null) {
+                child = new Node(this, segment);
+                children.put(segment, child);
+            }
+
+            return child;
+        }
+
+        void detachRecursivelyUpIfEmpty() {
+            if (parent != null && listeners.isEmpty() && children.isEmpty()) {
+                parent.children.remove(segment);
+                parent.detachRecursivelyUpIfEmpty();
+            }
+        }
+
+        // ****************************** //
+
+        final Node parent;
+        final String segment;
+
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+        final Set<RestoredObjectListener> listeners = new CopyOnWriteArraySet<>();
+    }
+
+    // ****************************** //
+
+    private final Node root = new Node(null, null);
+
+    private final static Logger logger = getLogger(RestoredObjectListenerTrie.class);
+}
@@ -1,10 +1,11 @@
 package net.devromik.suspender.mem;
 
-import java.time.Duration;
+import java.time.*;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.*;
 import java.util.concurrent.locks.*;
+import java.util.function.*;
 import org.slf4j.Logger;
 import com.google.common.collect.*;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -14,7 +15,7 @@ import net.devromik.suspender.*;
 import static net.devromik.suspender.Suspender.*;
 import static net.devromik.suspender.mem.MemSuspender.calcRestorationTime;
 import static net.devromik.suspender.mem.SuspendedObjectTreeNode.makeRoot;
-import net.devromik.suspender.utils.Path;
+import net.devromik.suspender.utils.*;
 import static net.devromik.slf4jUtils.Slf4jUtils.logException;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -36,8 +37,16 @@ import static org.slf4j.LoggerFactory.getLogger;
  */
 final class SuspendedObjectDivision {
 
-    SuspendedObjectDivision(Map<String, AtomicInteger> pathFirstSegmentToDivCount) {
-        this.pathFirstSegmentToDivCount = pathFirstSegmentToDivCount;
+    static final int MAX_SKIPPED_OVERDUE_FACTOR = 16;
+
+    // ****************************** //
+
+    /**
+     * @param divIndex the index of the division in net.devromik.suspender.mem.MemSuspender.
+     */
+    SuspendedObjectDivision(int divIndex, PathFirstSegmentIndex pathFirstSegmentIndex) {
+        this.divIndex = divIndex;
+        this.pathFirstSegmentIndex = pathFirstSegmentIndex;
     }
 
     /**
@@ -47,7 +56,7 @@ final class SuspendedObjectDivision {
      */
     boolean hasObjectsSuspendedBy(Path path) {
         checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
-        suspendedObjectTreeLock.lock();
+        lockTree();
 
         try {
             SuspendedObjectTreeNode parent = findParentNodeFor(path);
@@ -84,6 +93,77 @@ final class SuspendedObjectDivision {
             suspendedObjectTreeRoot.hasChild(pathFirstSegment);
     }
 
+    /**
+     * @return the number of objects suspended by paths with the prefix {@code path}.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    long countSuspendedBy(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        String pathLastSegment = path.getLastSegment();
+        lockTree();
+
+        try {
+            SuspendedObjectTreeNode parent = findParentNodeFor(path);
+
+            if (parent == null) {
+                return 0L;
+            }
+
+            long count = parent.hasSuspendedObject(pathLastSegment) ? 1L : 0L;
+
+            if (parent.hasChild(pathLastSegment)) {
+                count += parent.getChild(pathLastSegment).getSubtreeSuspendedObjectCount();
+            }
+
+            return count;
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of objects in the division suspended by paths with the first segment {@code pathFirstSegment}.
+     *         Must be called within the critical section.
+     */
+    long countSuspendedBy(String pathFirstSegment) {
+        // Paths have at least two segments, so the root itself never has suspended objects.
+        SuspendedObjectTreeNode pathFirstSegmentNode = suspendedObjectTreeRoot.getChild(pathFirstSegment);
+        return pathFirstSegmentNode != null ? pathFirstSegmentNode.getSubtreeSuspendedObjectCount() : 0L;
+    }
+
+    /**
+     * Brings the index shared by all the divisions ({@code pathFirstSegmentIndex})
+     * into accordance with the current state of the division.
+     * Must be called within the critical section after a modification of the objects suspended by
+     * paths with the first segment {@code pathFirstSegment}.
+     *
+     * @param countBefore {@code countSuspendedBy(pathFirstSegment)} before the modification.
+     */
+    void updatePathFirstSegmentIndices(String pathFirstSegment, long countBefore) {
+        long countAfter = countSuspendedBy(pathFirstSegment);
+
+        if (countAfter != countBefore) {
+            pathFirstSegmentIndex.update(pathFirstSegment, divIndex, countBefore, countAfter);
+        }
+    }
+
+    /**
+     * Enters the critical section.
+     * The time spent waiting for the lock is measured only if the lock is held by another thread.
+     */
+    void lockTree() {
+        lockAcquisitionCount.increment();
+
+        if (!suspendedObjectTreeLock.tryLock()) {
+            long waitStart = System.nanoTime();
+            suspendedObjectTreeLock.lock();
+            lockWaitNanos.add(System.nanoTime() - waitStart);
+            contendedLockAcquisitionCount.increment();
+        }
+    }
+
     /**
      * Suspends the object {@code object}
      * by the path {@code path}
@@ -95,40 +175,260 @@ final class SuspendedObjectDivision {
      */
     void suspend(Path path, Object object, Duration duration) {
         checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        lockTree();
+
+        try {
+            suspendUntil(path, object, calcRestorationTime(duration));
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * Suspends the object {@code object}
+     * by the path {@code path}
+     * until the restoration time {@code restorationTime} (in milliseconds since the epoch).
+     *
+     * If there is already an object suspended by the {@code path} then it will be overwritten.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    void suspend(Path path, Object object, long restorationTime) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        lockTree();
+
+        try {
+            suspendUntil(path, object, restorationTime);
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * Suspends the object {@code object}
+     * by the path {@code path}
+     * until the restoration time {@code restorationTime}.
+     * Must be called within the critical section.
+     */
+    private void suspendUntil(Path path, Object object, long restorationTime) {
+        // The listener may reject the object, so it is called before any modification.
+        mutationListener.onSuspended(path, object, restorationTime);
+
         String pathFirstSegment = path.getFirstSegment();
-        suspendedObjectTreeLock.lock();
+        long countBefore = countSuspendedBy(pathFirstSegment);
+        insert(path, object, restorationTime);
+        updatePathFirstSegmentIndices(pathFirstSegment, countBefore);
+    }
+
+    /**
+     * Puts the object to the tree and to the restoration queue.
+     * Neither the mutation listener nor the indices shared by all the divisions are updated.
+     */
+    private void insert(Path path, Object object, long restorationTime) {
+        SuspendedObjectTreeNode parent = suspendedObjectTreeRoot;
+
+        SuspendedObjectTreeNode pathSecondSegmentNode = null;
+
+        for (int i = 0; i < path.getSegmentCount() - 1; ++i) {
+            parent = parent.ensureChild(path.getSegment(i));
+
+            if (i == 1) {
+                pathSecondSegmentNode = parent;
+            }
+        }
+
+        String pathLastSegment = path.getLastSegment();
+
+        if (parent.hasSuspendedObject(pathLastSegment)) {
+            removeFromRestorationQueue(parent, pathLastSegment);
+        }
+
+        restorationQueue.put(restorationTime, new RestorationQueueElement(parent, pathLastSegment));
+        parent.suspend(pathLastSegment, object, restorationTime);
+
+        // The subtree is reported once, when it outgrows the limit.
+        if (pathSecondSegmentNode != null && pathSecondSegmentNode.getSubtreeSuspendedObjectCount() == maxSubtreeObjectCount + 1L) {
+            oversizedSubtrees.add(pathSecondSegmentNode.path);
+        }
+    }
+
+    /**
+     * If there is no object suspended by the path {@code path} then
+     * suspends the object {@code object} by the {@code path} for {@code duration}.
+     * The check and the suspension are performed within a single critical section.
+     *
+     * @return {@code true} iff the object was suspended.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    boolean suspendIfAbsent(Path path, Object object, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        lockTree();
 
         try {
-            boolean hadObjectsSuspendedByPathFirstSegment = hasObjectsSuspendedBy(pathFirstSegment);
-            SuspendedObjectTreeNode parent = suspendedObjectTreeRoot;
+            SuspendedObjectTreeNode parent = findParentNodeFor(path);
 
-            for (int i = 0; i < path.getSegmentCount() - 1; ++i) {
-                parent = parent.ensureChild(path.getSegment(i));
+            if (parent != null && parent.hasSuspendedObject(path.getLastSegment())) {
+                return false;
             }
 
-            String pathLastSegment = path.getLastSegment();
+            suspendUntil(path, object, calcRestorationTime(duration));
+            return true;
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
 
-            if (parent.hasSuspendedObject(pathLastSegment)) {
-                removeFromRestorationQueue(parent, pathLastSegment);
+    /**
+     * @return the object suspended by exactly the path {@code path} or {@code null} if there is no such object.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    SuspendedObject getSuspendedObject(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        String pathLastSegment = path.getLastSegment();
+        lockTree();
+
+        try {
+            SuspendedObjectTreeNode parent = findParentNodeFor(path);
+
+            return
+                parent != null && parent.hasSuspendedObject(pathLastSegment) ?
+                new SuspendedObject(path, parent.getSuspendedObject(pathLastSegment), Instant.ofEpochMilli(parent.getRestorationTime(pathLastSegment))) :
+                null;
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the object suspended by exactly the path {@code path} (if any).
+     * The restored object listeners are not notified.
+     *
+     * @return {@code true} iff the object was removed.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    boolean discard(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        String pathLastSegment = path.getLastSegment();
+        lockTree();
+
+        try {
+            SuspendedObjectTreeNode parent = findParentNodeFor(path);
+
+            if (parent == null || !parent.hasSuspendedObject(pathLastSegment)) {
+                return false;
             }
 
-            long restorationTime = calcRestorationTime(duration);
-            restorationQueue.put(restorationTime, new RestorationQueueElement(parent, pathLastSegment));
-            parent.suspend(pathLastSegment, object, restorationTime);
+            long countBefore = countSuspendedBy(path.getFirstSegment());
+            removeFromRestorationQueue(parent, pathLastSegment);
+            parent.removeSuspendedObject(pathLastSegment);
+            parent.detachRecursivelyUpIfEmpty();
+            updatePathFirstSegmentIndices(path.getFirstSegment(), countBefore);
+            mutationListener.onObjectRestored(path);
 
-            if (!hadObjectsSuspendedByPathFirstSegment) {
-                if (!pathFirstSegmentToDivCount.containsKey(pathFirstSegment)) {
-                    pathFirstSegmentToDivCount.putIfAbsent(pathFirstSegment, new AtomicInteger());
-                }
+            return true;
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * If the object suspended by the path {@code path} equals {@code expectedObject} then
+     * suspends the object {@code newObject} by the {@code path} for {@code duration} instead of it.
+     * The check and the suspension are performed within a single critical section.
+     *
+     * @return {@code true} iff the object was replaced.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    boolean replace(Path path, Object expectedObject, Object newObject, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        String pathLastSegment = path.getLastSegment();
+        lockTree();
+
+        try {
+            SuspendedObjectTreeNode parent = findParentNodeFor(path);
+
+            if (parent == null ||
+                !parent.hasSuspendedObject(pathLastSegment) ||
+                !Objects.equals(parent.getSuspendedObject(pathLastSegment), expectedObject)) {
 
-                pathFirstSegmentToDivCount.get(pathFirstSegment).incrementAndGet();
+                return false;
             }
+
+            suspendUntil(path, newObject, calcRestorationTime(duration));
+            return true;
         }
         finally {
             suspendedObjectTreeLock.unlock();
         }
     }
 
+    /**
+     * Computes a new object to be suspended by the path {@code path}
+     * by the object currently suspended by the {@code path} ({@code null} if there is no such object).
+     *
+     * If the computed object is not {@code null} then it is suspended by the {@code path} for {@code duration}.
+     * Else the currently suspended object (if any) is restored
+     * and the specified {@code listeners} are notified about it.
+     *
+     * The computation and the suspension are performed within a single critical section,
+     * so the {@code remappingFunction} should be short and must not access the suspender.
+     *
+     * @return the computed object.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT}.
+     */
+    Object compute(
+        Path path,
+        UnaryOperator<Object> remappingFunction,
+        Duration duration,
+        Collection<RestoredObjectListener> listeners) {
+
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        String pathLastSegment = path.getLastSegment();
+
+        Object computedObject;
+        Object restoredObject = null;
+
+        lockTree();
+
+        try {
+            SuspendedObjectTreeNode parent = findParentNodeFor(path);
+            boolean hadSuspendedObject = parent != null && parent.hasSuspendedObject(pathLastSegment);
+            Object currentObject = hadSuspendedObject ? parent.getSuspendedObject(pathLastSegment) : null;
+            computedObject = remappingFunction.apply(currentObject);
+
+            if (computedObject != null) {
+                suspendUntil(path, computedObject, calcRestorationTime(duration));
+            }
+            else if (hadSuspendedObject) {
+                long countBefore = countSuspendedBy(path.getFirstSegment());
+                removeFromRestorationQueue(parent, pathLastSegment);
+                restoredObject = parent.removeSuspendedObject(pathLastSegment);
+                parent.detachRecursivelyUpIfEmpty();
+                updatePathFirstSegmentIndices(path.getFirstSegment(), countBefore);
+                mutationListener.onObjectRestored(path);
+            }
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+
+        if (restoredObject != null) {
+            notifyAboutObjectRestored(path, restoredObject, listeners);
+        }
+
+        return computedObject;
+    }
+
     /**
      * If there are any objects suspended by the paths with the prefix {@code path},
      * restores them and notifies only the specified {@code listeners} about it.
@@ -144,10 +444,10 @@ final class SuspendedObjectDivision {
         Object objectExactlyMatchedForPath = null;
         SuspendedObjectTreeNode pathSubtreeRoot = null;
 
-        suspendedObjectTreeLock.lock();
+        lockTree();
 
         try {
-            boolean hadObjectsSuspendedByPathFirstSegment = hasObjectsSuspendedBy(pathFirstSegment);
+            long countBefore = countSuspendedBy(pathFirstSegment);
             SuspendedObjectTreeNode parent = findParentNodeFor(path);
 
             if (parent == null) {
@@ -168,8 +468,10 @@ final class SuspendedObjectDivision {
                 parent.detachRecursivelyUpIfEmpty();
             }
 
-            if (!hasObjectsSuspendedBy(pathFirstSegment) && hadObjectsSuspendedByPathFirstSegment) {
-                pathFirstSegmentToDivCount.get(pathFirstSegment).decrementAndGet();
+            updatePathFirstSegmentIndices(pathFirstSegment, countBefore);
+
+            if (objectExactlyMatchedForPath != null || pathSubtreeRoot != null) {
+                reportRestored(path, objectExactlyMatchedForPath != null, pathSubtreeRoot);
             }
         }
         finally {
@@ -189,8 +491,201 @@ final class SuspendedObjectDivision {
         }
     }
 
+    /**
+     * Reports the restoration of the objects suspended by the paths with the prefix {@code path}
+     * to the mutation listener. Must be called within the critical section.
+     *
+     * A single-segment prefix spans all the divisions, and so does a two-segment prefix whose subtree is partitioned.
+     * Such a prefix is reported as the object suspended by exactly the prefix (if {@code objectExactlyMatched})
+     * and the one segment longer prefixes of the restored subtree ({@code pathSubtreeRoot}) instead.
+     * Thus each reported prefix belongs to this division only,
+     * and the restoration cannot be confused with the objects suspended in other divisions meanwhile.
+     */
+    private void reportRestored(Path path, boolean objectExactlyMatched, SuspendedObjectTreeNode pathSubtreeRoot) {
+        int pathSegmentCount = path.getSegmentCount();
+
+        if (pathSegmentCount > MIN_SUSPENSION_PATH_SEGMENT_COUNT ||
+            pathSegmentCount == MIN_SUSPENSION_PATH_SEGMENT_COUNT && !partitionedSubtrees.test(path)) {
+
+            mutationListener.onRestored(path);
+            return;
+        }
+
+        if (objectExactlyMatched) {
+            mutationListener.onObjectRestored(path);
+        }
+
+        if (pathSubtreeRoot != null) {
+            Set<String> nextSegments = new HashSet<>(pathSubtreeRoot.suspendedObjects.keySet());
+            nextSegments.addAll(pathSubtreeRoot.children.keySet());
+
+            for (String nextSegment : nextSegments) {
+                reportRestored(
+                    path.withAppendedSegment(nextSegment),
+                    pathSubtreeRoot.hasSuspendedObject(nextSegment),
+                    pathSubtreeRoot.getChild(nextSegment));
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} iff there are objects suspended by paths having a prefix which matches the {@code pattern}.
+     */
+    boolean hasObjectsSuspendedBy(PathPattern pattern) {
+        lockTree();
+
+        try {
+            return !findMatches(pattern, true).isEmpty();
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * If there are any objects suspended by the paths having a prefix which matches the {@code pattern},
+     * restores them and notifies only the specified {@code listeners} about it.
+     *
+     * The tree is walked once within the critical section.
+     * The matched subtrees are only detached there, the notification is performed out of the critical section.
+     */
+    void restore(PathPattern pattern, Collection<RestoredObjectListener> listeners) {
+        List<PathAndSuspendedObject> objectsExactlyMatched = new ArrayList<>();
+        List<SuspendedObjectTreeNode> matchedSubtreeRoots = new ArrayList<>();
+
+        lockTree();
+
+        try {
+            List<PathPatternMatch> matches = findMatches(pattern, false);
+            Map<String, Long> countsBefore = new HashMap<>();
+
+            for (PathPatternMatch match : matches) {
+                SuspendedObjectTreeNode parent = match.parentNode;
+                String pathLastSegment = match.pathLastSegment;
+                String pathFirstSegment = parent.isRoot() ? pathLastSegment : parent.path.getFirstSegment();
+
+                if (!countsBefore.containsKey(pathFirstSegment)) {
+                    countsBefore.put(pathFirstSegment, countSuspendedBy(pathFirstSegment));
+                }
+
+                boolean objectExactlyMatched = parent.hasSuspendedObject(pathLastSegment);
+
+                if (objectExactlyMatched) {
+                    removeFromRestorationQueue(parent, pathLastSegment);
+
+                    objectsExactlyMatched.add(
+                        new PathAndSuspendedObject(
+                            parent.path.withAppendedSegment(pathLastSegment),
+                            parent.removeSuspendedObject(pathLastSegment)));
+                }
+
+                SuspendedObjectTreeNode matchedSubtreeRoot = null;
+
+                if (parent.hasChild(pathLastSegment)) {
+                    matchedSubtreeRoot = parent.getChild(pathLastSegment);
+                    matchedSubtreeRoot.detach();
+                    matchedSubtreeRoots.add(matchedSubtreeRoot);
+                }
+
+                parent.detachRecursivelyUpIfEmpty();
+                reportRestored(
+                    parent.isRoot() ? new Path(pathLastSegment) : parent.path.withAppendedSegment(pathLastSegment),
+                    objectExactlyMatched,
+                    matchedSubtreeRoot);
+            }
+
+            countsBefore.forEach(this::updatePathFirstSegmentIndices);
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+
+        for (PathAndSuspendedObject objectExactlyMatched : objectsExactlyMatched) {
+            notifyAboutObjectRestored(objectExactlyMatched.path, objectExactlyMatched.suspendedObject, listeners);
+        }
+
+        for (SuspendedObjectTreeNode matchedSubtreeRoot : matchedSubtreeRoots) {
+            matchedSubtreeRoot.traverse(
+                (restoredSubtreeNode) -> {
+                    removeFromRestorationQueue(restoredSubtreeNode);
+                    notifyAboutNodeRestored(restoredSubtreeNode, listeners);
+                });
+        }
+    }
+
+    /**
+     * Walks the tree once matching the {@code pattern} against the paths.
+     * Must be called within the critical section.
+     *
+     * @return the places (a node and the last segment of a path) where the paths having a prefix
+     *         which matches the {@code pattern} start. The places do not overlap:
+     *         the walk does not descend below a match.
+     */
+    private List<PathPatternMatch> findMatches(PathPattern pattern, boolean firstOnly) {
+        List<PathPatternMatch> matches = new ArrayList<>();
+        findMatches(suspendedObjectTreeRoot, pattern, pattern.start(), firstOnly, matches);
+
+        return matches;
+    }
+
+    private void findMatches(
+        SuspendedObjectTreeNode node,
+        PathPattern pattern,
+        BitSet states,
+        boolean firstOnly,
+        List<PathPatternMatch> matches) {
+
+        Set<String> expectedSegments = pattern.expectedSegments(states);
+        Collection<String> candidateSegments;
+
+        // When the pattern expects only literal segments, there is no need to look through all the children.
+        if (expectedSegments != null) {
+            candidateSegments = expectedSegments;
+        }
+        else {
+            candidateSegments = new HashSet<>(node.suspendedObjects.keySet());
+            candidateSegments.addAll(node.children.keySet());
+        }
+
+        for (String segment : candidateSegments) {
+            if (!node.hasSuspendedObject(segment) && !node.hasChild(segment)) {
+                continue;
+            }
+
+            BitSet nextStates = pattern.step(states, segment);
+
+            if (nextStates.isEmpty()) {
+                continue;
+            }
+
+            if (pattern.isMatched(nextStates)) {
+                matches.add(new PathPatternMatch(node, segment));
+            }
+            else if (node.hasChild(segment)) {
+                findMatches(node.getChild(segment), pattern, nextStates, firstOnly, matches);
+            }
+
+            if (firstOnly && !matches.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private static final class PathPatternMatch {
+
+        PathPatternMatch(SuspendedObjectTreeNode parentNode, String pathLastSegment) {
+            this.parentNode = parentNode;
+            this.pathLastSegment = pathLastSegment;
+        }
+
+        // ****************************** //
+
+        final SuspendedObjectTreeNode parentNode;
+        final String pathLastSegment;
+    }
+
     void removeFromRestorationQueue(SuspendedObjectTreeNode parent) {
-        suspendedObjectTreeLock.lock();
+        lockTree();
 
         try {
             parent.suspendedObjects.keySet().forEach(
@@ -228,10 +723,10 @@ final class SuspendedObjectDivision {
         SuspendedObjectInfo pathSubtreeMinInfo = null;
         PathAndSuspendedObject pathSubtreeMinPathAndObject = null;
 
-        suspendedObjectTreeLock.lock();
+        lockTree();
 
         try {
-            boolean hadObjectsSuspendedByPathFirstSegment = hasObjectsSuspendedBy(pathFirstSegment);
+            long countBefore = countSuspendedBy(pathFirstSegment);
             SuspendedObjectTreeNode parent = findParentNodeFor(path);
 
             if (parent == null) {
@@ -253,42 +748,97 @@ final class SuspendedObjectDivision {
                     removeFromRestorationQueue(parent, pathLastSegment);
                     parent.removeSuspendedObject(pathLastSegment);
                     parent.detachRecursivelyUpIfEmpty();
+                    mutationListener.onObjectRestored(path);
                 }
                 // Here we are only detaching the subtree from the tree (very fast operation).
                 // The "heavy" notification operation will be performed out of the critical section.
                 else {
                     removeFromRestorationQueue(pathSubtreeMinInfo.parentNode, pathSubtreeMinInfo.pathLastSegment);
                     pathSubtreeMinPathAndObject = parent.removeObjectWithMinRestorationTimeFromSubtree(pathSubtreeMinInfo);
+                    mutationListener.onObjectRestored(pathSubtreeMinPathAndObject.path);
                 }
             }
             else if (objectExactlyMatchedForPath != null) {
                 removeFromRestorationQueue(parent, pathLastSegment);
                 parent.removeSuspendedObject(pathLastSegment);
                 parent.detachRecursivelyUpIfEmpty();
+                mutationListener.onObjectRestored(path);
             }
             // Here we are only detaching the subtree from the tree (very fast operation).
             // The "heavy" notification operation will be performed out of the critical section.
             else if (pathSubtreeMinInfo != null) {
                 removeFromRestorationQueue(pathSubtreeMinInfo.parentNode, pathSubtreeMinInfo.pathLastSegment);
                 pathSubtreeMinPathAndObject = parent.removeObjectWithMinRestorationTimeFromSubtree(pathSubtreeMinInfo);
+                mutationListener.onObjectRestored(pathSubtreeMinPathAndObject.path);
             }
 
-            if (!hasObjectsSuspendedBy(pathFirstSegment) && hadObjectsSuspendedByPathFirstSegment) {
-                pathFirstSegmentToDivCount.get(pathFirstSegment).decrementAndGet();
+            updatePathFirstSegmentIndices(pathFirstSegment, countBefore);
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+
+        if (pathSubtreeMinPathAndObject != null) {
+            notifyAboutObjectRestored(
+                pathSubtreeMinPathAndObject.path,
+                pathSubtreeMinPathAndObject.suspendedObject,
+                listeners);
+        }
+        else if (objectExactlyMatchedForPath != null) {
+            notifyAboutObjectRestored(path, objectExactlyMatchedForPath, listeners);
+        }
+    }
+
+    /**
+     * Restores the objects suspended by paths with the prefix {@code path}
+     * having the restoration times not greater than {@code maxRestorationTime}
+     * within a single critical section.
+     * The restoration queue and the deadline indices of the tree are used,
+     * so only the restored objects are visited.
+     *
+     * The listeners are not notified, it is the caller's responsibility.
+     *
+     * @return the restored objects ordered by restoration time.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    List<SuspendedObject> removeDueBy(Path path, long maxRestorationTime) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        String pathFirstSegment = path.getFirstSegment();
+        lockTree();
+
+        try {
+            long countBefore = countSuspendedBy(pathFirstSegment);
+            List<SuspendedObjectInfo> infos = findObjectsWithMinRestorationTimes(path, Integer.MAX_VALUE, maxRestorationTime);
+            List<SuspendedObject> removed = toSuspendedObjects(infos);
+
+            // A node becomes empty (and is detached) only after all the objects of its subtree are removed,
+            // so the nodes of the remaining infos are still attached.
+            for (SuspendedObjectInfo info : infos) {
+                removeFromRestorationQueue(info.parentNode, info.pathLastSegment);
+                info.parentNode.removeSuspendedObject(info.pathLastSegment);
+                info.parentNode.detachRecursivelyUpIfEmpty();
+                mutationListener.onObjectRestored(info.getPath());
             }
+
+            updatePathFirstSegmentIndices(pathFirstSegment, countBefore);
+            return removed;
         }
         finally {
             suspendedObjectTreeLock.unlock();
         }
+    }
 
-        if (pathSubtreeMinPathAndObject != null) {
-            notifyAboutObjectRestored(
-                pathSubtreeMinPathAndObject.path,
-                pathSubtreeMinPathAndObject.suspendedObject,
-                listeners);
-        }
-        else if (objectExactlyMatchedForPath != null) {
-            notifyAboutObjectRestored(path, objectExactlyMatchedForPath, listeners);
+    /**
+     * Restores the objects suspended by paths with the prefix {@code path}
+     * having the restoration times not greater than {@code maxRestorationTime}
+     * and notifies only the specified {@code listeners} about it in the order of restoration time.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    void restoreDueBy(Path path, long maxRestorationTime, Collection<RestoredObjectListener> listeners) {
+        for (SuspendedObject restored : removeDueBy(path, maxRestorationTime)) {
+            notifyAboutObjectRestored(restored.getPath(), restored.getObject(), listeners);
         }
     }
 
@@ -301,7 +851,7 @@ final class SuspendedObjectDivision {
         SuspendedObjectTreeNode pathSubtreeRoot = null;
         SuspendedObjectInfo pathSubtreeMinInfo = null;
 
-        suspendedObjectTreeLock.lock();
+        lockTree();
 
         try {
             SuspendedObjectTreeNode parent = findParentNodeFor(path);
@@ -342,19 +892,371 @@ final class SuspendedObjectDivision {
         }
     }
 
+    /**
+     * @return at most {@code maxCount} objects suspended by paths with the prefix {@code path}
+     *         having the minimal restoration times, ordered by restoration time.
+     *         The objects are not restored.
+     *
+     * @throws IllegalArgumentException when {@code path.getSegmentCount() < Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1}.
+     */
+    List<SuspendedObject> peekEarliest(Path path, int maxCount) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        lockTree();
+
+        try {
+            return toSuspendedObjects(findObjectsWithMinRestorationTimes(path, maxCount, Long.MAX_VALUE));
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * Finds at most {@code maxCount} objects suspended by paths with the prefix {@code path}
+     * having the minimal restoration times not greater than {@code maxRestorationTime}.
+     * Must be called within the critical section.
+     *
+     * @return the found objects ordered by restoration time.
+     */
+    List<SuspendedObjectInfo> findObjectsWithMinRestorationTimes(Path path, int maxCount, long maxRestorationTime) {
+        String pathLastSegment = path.getLastSegment();
+        SuspendedObjectTreeNode parent = findParentNodeFor(path);
+
+        if (parent == null) {
+            return new ArrayList<>();
+        }
+
+        List<SuspendedObjectInfo> result =
+            parent.hasChild(pathLastSegment) ?
+            parent.getChild(pathLastSegment).findObjectsWithMinRestorationTimesInSubtree(maxCount, maxRestorationTime) :
+            new ArrayList<>();
+
+        if (parent.hasSuspendedObject(pathLastSegment)) {
+            SuspendedObjectInfo objectExactlyMatchedForPath = new SuspendedObjectInfo();
+            objectExactlyMatchedForPath.parentNode = parent;
+            objectExactlyMatchedForPath.pathLastSegment = pathLastSegment;
+            objectExactlyMatchedForPath.restorationTime = parent.getRestorationTime(pathLastSegment);
+
+            if (objectExactlyMatchedForPath.restorationTime <= maxRestorationTime) {
+                int i = 0;
+
+                while (i < result.size() && result.get(i).restorationTime <= objectExactlyMatchedForPath.restorationTime) {
+                    ++i;
+                }
+
+                if (i < maxCount) {
+                    result.add(i, objectExactlyMatchedForPath);
+
+                    if (result.size() > maxCount) {
+                        result.remove(result.size() - 1);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static List<SuspendedObject> toSuspendedObjects(List<SuspendedObjectInfo> infos) {
+        List<SuspendedObject> suspendedObjects = new ArrayList<>(infos.size());
+
+        for (SuspendedObjectInfo info : infos) {
+            suspendedObjects.add(info.toSuspendedObject());
+        }
+
+        return suspendedObjects;
+    }
+
+    /**
+     * @return all the objects suspended in the division.
+     *         The objects are collected within a single critical section,
+     *         so the result is a consistent point-in-time state of the division.
+     */
+    List<SuspendedObject> snapshot() {
+        lockTree();
+
+        try {
+            List<SuspendedObject> snapshot = new ArrayList<>();
+
+            suspendedObjectTreeRoot.traverse(
+                (node) ->
+                    node.suspendedObjects.forEach(
+                        (pathLastSegment, suspendedObjectAndRestorationTime) ->
+                            snapshot.add(
+                                SuspendedObjectSpliterator.toSuspendedObject(
+                                    node,
+                                    pathLastSegment,
+                                    suspendedObjectAndRestorationTime))));
+
+            return snapshot;
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * @return a listener which applies the reported modifications straight to the division.
+     *         It is used to load a lot of objects fast (for example, to recover them after a restart):
+     *             - the critical section is not entered,
+     *             - the mutation listener of the division is not called,
+     *             - the restored object listeners are not notified,
+     *             - the indices shared by all the divisions are not updated
+     *               (see net.devromik.suspender.mem.MemSuspender.completeLoading()).
+     *         So the division must not be accessed by other threads while the loader is used.
+     */
+    MutationListener makeLoader() {
+        return new Loader();
+    }
+
+    /**
+     * Adds the objects of the division to the indices shared by all the divisions.
+     * Is called after loading.
+     */
+    void indexPathFirstSegments() {
+        lockTree();
+
+        try {
+            for (String pathFirstSegment : suspendedObjectTreeRoot.children.keySet()) {
+                updatePathFirstSegmentIndices(pathFirstSegment, 0L);
+            }
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    private class Loader implements MutationListener {
+
+        @Override
+        public void onSuspended(Path path, Object object, long restorationTime) {
+            insert(path, object, restorationTime);
+        }
+
+        @Override
+        public void onObjectRestored(Path path) {
+            SuspendedObjectTreeNode parent = findParentNodeFor(path);
+            String pathLastSegment = path.getLastSegment();
+
+            if (parent != null && parent.hasSuspendedObject(pathLastSegment)) {
+                removeFromRestorationQueue(parent, pathLastSegment);
+                parent.removeSuspendedObject(pathLastSegment);
+                parent.detachRecursivelyUpIfEmpty();
+            }
+        }
+
+        @Override
+        public void onRestored(Path prefix) {
+            SuspendedObjectTreeNode parent = findParentNodeFor(prefix);
+            String prefixLastSegment = prefix.getLastSegment();
+
+            if (parent == null) {
+                return;
+            }
+
+            onObjectRestored(prefix);
+
+            if (parent.hasChild(prefixLastSegment)) {
+                SuspendedObjectTreeNode prefixSubtreeRoot = parent.getChild(prefixLastSegment);
+                prefixSubtreeRoot.detach();
+                parent.detachRecursivelyUpIfEmpty();
+
+                prefixSubtreeRoot.traverse(
+                    (node) ->
+                        node.suspendedObjects.keySet().forEach(
+                            (pathLastSegment) ->
+                                removeFromRestorationQueue(node, pathLastSegment)));
+            }
+        }
+    }
+
+    /**
+     * Moves the objects to the divisions returned by {@code destination} (for example, to split the division).
+     * The objects are moved by the routing units: for each prefix of two segments satisfying {@code scope}
+     * it is the object suspended by exactly the prefix and each subtree of the prefix of three segments
+     * with the object suspended by exactly that prefix (see net.devromik.suspender.mem.MemSuspender.getDivisionIndex()).
+     * {@code destination} is passed the prefix of a unit and returns this division if the unit stays.
+     * The restoration times are kept,
+     * neither the mutation listener nor the restored object listeners are called.
+     *
+     * Must be called by one thread at a time: the critical sections of the targets are entered
+     * while the critical section of this division is held.
+     *
+     * @return the number of the moved objects.
+     */
+    long moveOut(Predicate<Path> scope, Function<Path, SuspendedObjectDivision> destination) {
+        long movedObjectCount = 0L;
+        Set<SuspendedObjectDivision> lockedTargets = new HashSet<>();
+        lockTree();
+
+        try {
+            Loader loader = new Loader();
+
+            for (String pathFirstSegment : new ArrayList<>(suspendedObjectTreeRoot.children.keySet())) {
+                SuspendedObjectTreeNode pathFirstSegmentNode = suspendedObjectTreeRoot.getChild(pathFirstSegment);
+                Set<String> pathSecondSegments = new HashSet<>(pathFirstSegmentNode.suspendedObjects.keySet());
+                pathSecondSegments.addAll(pathFirstSegmentNode.children.keySet());
+                long countBefore = countSuspendedBy(pathFirstSegment);
+                Map<SuspendedObjectDivision, Long> targetToCountBefore = new HashMap<>();
+
+                for (String pathSecondSegment : pathSecondSegments) {
+                    Path prefix = new Path(pathFirstSegment, pathSecondSegment);
+
+                    if (!scope.test(prefix)) {
+                        continue;
+                    }
+
+                    for (Path unitPrefix : routingUnitPrefixesOf(prefix)) {
+                        SuspendedObjectDivision target = destination.apply(unitPrefix);
+
+                        if (target == this) {
+                            continue;
+                        }
+
+                        if (lockedTargets.add(target)) {
+                            target.lockTree();
+                        }
+
+                        targetToCountBefore.computeIfAbsent(target, (div) -> div.countSuspendedBy(pathFirstSegment));
+
+                        // The object suspended by exactly the prefix of two segments is a unit without the subtree.
+                        boolean withSubtree = unitPrefix.getSegmentCount() > MIN_SUSPENSION_PATH_SEGMENT_COUNT;
+                        List<SuspendedObject> movedObjects = collectSuspendedBy(unitPrefix, withSubtree);
+
+                        if (withSubtree) {
+                            loader.onRestored(unitPrefix);
+                        }
+                        else {
+                            loader.onObjectRestored(unitPrefix);
+                        }
+
+                        for (SuspendedObject movedObject : movedObjects) {
+                            target.insert(movedObject.getPath(), movedObject.getObject(), movedObject.getRestorationTime().toEpochMilli());
+                        }
+
+                        movedObjectCount += movedObjects.size();
+                    }
+                }
+
+                // The targets are indexed first, so the objects never disappear from the indices.
+                targetToCountBefore.forEach((target, targetCountBefore) -> target.updatePathFirstSegmentIndices(pathFirstSegment, targetCountBefore));
+                updatePathFirstSegmentIndices(pathFirstSegment, countBefore);
+            }
+
+            return movedObjectCount;
+        }
+        finally {
+            for (SuspendedObjectDivision target : lockedTargets) {
+                target.suspendedObjectTreeLock.unlock();
+            }
+
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the prefix of two segments {@code prefix} and its children prefixes of three segments.
+     *         Must be called within the critical section.
+     */
+    private List<Path> routingUnitPrefixesOf(Path prefix) {
+        List<Path> unitPrefixes = new ArrayList<>();
+        unitPrefixes.add(prefix);
+        SuspendedObjectTreeNode parent = findParentNodeFor(prefix);
+        String prefixLastSegment = prefix.getLastSegment();
+
+        if (parent.hasChild(prefixLastSegment)) {
+            SuspendedObjectTreeNode prefixNode = parent.getChild(prefixLastSegment);
+            Set<String> pathThirdSegments = new HashSet<>(prefixNode.suspendedObjects.keySet());
+            pathThirdSegments.addAll(prefixNode.children.keySet());
+
+            for (String pathThirdSegment : pathThirdSegments) {
+                unitPrefixes.add(prefix.withAppendedSegment(pathThirdSegment));
+            }
+        }
+
+        return unitPrefixes;
+    }
+
+    /**
+     * @return the object suspended by exactly the path {@code prefix} (if any)
+     *         and, if {@code withSubtree} is {@code true}, the objects suspended by the paths with the {@code prefix}.
+     *         Must be called within the critical section.
+     */
+    private List<SuspendedObject> collectSuspendedBy(Path prefix, boolean withSubtree) {
+        List<SuspendedObject> objects = new ArrayList<>();
+        SuspendedObjectTreeNode parent = findParentNodeFor(prefix);
+        String prefixLastSegment = prefix.getLastSegment();
+
+        if (parent == null) {
+            return objects;
+        }
+
+        if (parent.hasSuspendedObject(prefixLastSegment)) {
+            objects.add(
+                SuspendedObjectSpliterator.toSuspendedObject(
+                    parent,
+                    prefixLastSegment,
+                    parent.suspendedObjects.get(prefixLastSegment)));
+        }
+
+        if (withSubtree && parent.hasChild(prefixLastSegment)) {
+            parent.getChild(prefixLastSegment).traverse(
+                (node) ->
+                    node.suspendedObjects.forEach(
+                        (pathLastSegment, suspendedObjectAndRestorationTime) ->
+                            objects.add(
+                                SuspendedObjectSpliterator.toSuspendedObject(
+                                    node,
+                                    pathLastSegment,
+                                    suspendedObjectAndRestorationTime))));
+        }
+
+        return objects;
+    }
+
     /**
      * Restores objects with expired restoration time.
      *
      * @return {@code true} iff there were any objects restored (objects with expired restoration time).
      */
     boolean restoreExpired(Collection<RestoredObjectListener> listeners, long expirationTime) {
-        return new RestoreExpiredTask(listeners, expirationTime).invoke();
+        return restoreExpired(listeners, Long.MIN_VALUE, expirationTime);
+    }
+
+    /**
+     * Restores objects with the restoration times within [{@code minRestorationTime}, {@code expirationTime}].
+     *
+     * @return {@code true} iff there were any objects restored.
+     */
+    boolean restoreExpired(Collection<RestoredObjectListener> listeners, long minRestorationTime, long expirationTime) {
+        return new RestoreExpiredTask(listeners, minRestorationTime, expirationTime).invoke();
+    }
+
+    /**
+     * Restores objects with the restoration times within [{@code minRestorationTime}, {@code expirationTime}]
+     * unless another restorer worker is restoring the objects of the division
+     * (see net.devromik.suspender.mem.MemSuspender.setRestorerThreadCount()).
+     *
+     * @return {@code true} iff there were any objects restored.
+     */
+    boolean restoreExpiredUnlessBusy(Collection<RestoredObjectListener> listeners, long minRestorationTime, long expirationTime) {
+        if (!restoringExpired.compareAndSet(false, true)) {
+            return false;
+        }
+
+        try {
+            return restoreExpired(listeners, minRestorationTime, expirationTime);
+        }
+        finally {
+            restoringExpired.set(false);
+        }
     }
 
     private class RestoreExpiredTask extends RecursiveTask<Boolean> {
 
-        private RestoreExpiredTask(Collection<RestoredObjectListener> listeners, long expirationTime) {
+        private RestoreExpiredTask(Collection<RestoredObjectListener> listeners, long minRestorationTime, long expirationTime) {
             this.listeners = listeners;
+            this.minRestorationTime = minRestorationTime;
             this.expirationTime = expirationTime;
         }
 
@@ -365,36 +1267,31 @@ final class SuspendedObjectDivision {
 
             while (/* there are suspended objects and */ !currentThread().isInterrupted()) {
                 Collection<PathAndSuspendedObject> restoredPathAndObjects = null;
-                suspendedObjectTreeLock.lock();
+                lockTree();
 
                 try {
-                    if (restorationQueue.isEmpty()) {
+                    SortedSet<Long> restorationTimes = restorationTimes().tailSet(minRestorationTime);
+
+                    if (restorationTimes.isEmpty()) {
                         return atLeastOneObjectWasRestored;
                     }
 
-                    long minRestorationTime = restorationQueue.keySet().iterator().next();
+                    long restorationTime = restorationTimes.first();
 
-                    if (minRestorationTime > expirationTime) {
+                    if (restorationTime > expirationTime) {
                         return atLeastOneObjectWasRestored;
                     }
 
-                    for (RestorationQueueElement restoredQueueElement : restorationQueue.removeAll(minRestorationTime)) {
-                        if (!restoredQueueElement.suspendedObjectParentNode.isDetached()) {
-                            SuspendedObjectTreeNode restoredObjectParentNode = restoredQueueElement.suspendedObjectParentNode;
-                            Path restoredObjectPath = restoredObjectParentNode.path.withAppendedSegment(restoredQueueElement.suspendedObjectPathLastSegment);
-                            boolean hadObjectsSuspendedByPathFirstSegment = hasObjectsSuspendedBy(restoredObjectPath.getFirstSegment());
-                            Object restoredObject = restoredObjectParentNode.removeSuspendedObject(restoredQueueElement.suspendedObjectPathLastSegment);
-                            restoredObjectParentNode.detachRecursivelyUpIfEmpty();
-
-                            if (!hasObjectsSuspendedBy(restoredObjectPath.getFirstSegment()) && hadObjectsSuspendedByPathFirstSegment) {
-                                pathFirstSegmentToDivCount.get(restoredObjectPath.getFirstSegment()).decrementAndGet();
-                            }
+                    long lateness = Math.max(System.currentTimeMillis() - restorationTime, 0L);
 
+                    for (RestorationQueueElement restoredQueueElement : restorationQueue.removeAll(restorationTime)) {
+                        if (!restoredQueueElement.suspendedObjectParentNode.isDetached()) {
                             if (restoredPathAndObjects == null) {
                                 restoredPathAndObjects = new ArrayList<>();
                             }
 
-                            restoredPathAndObjects.add(new PathAndSuspendedObject(restoredObjectPath, restoredObject));
+                            restoredPathAndObjects.add(removeQueued(restoredQueueElement));
+                            restorationLateness.record(lateness);
                         }
                     }
                 }
@@ -420,18 +1317,145 @@ final class SuspendedObjectDivision {
         // ****************************** //
 
         final Collection<RestoredObjectListener> listeners;
+        final long minRestorationTime;
         final long expirationTime;
     }
 
+    /**
+     * Removes the object of the {@code queueElement} already removed from the restoration queue.
+     * Must be called within the critical section.
+     */
+    private PathAndSuspendedObject removeQueued(RestorationQueueElement queueElement) {
+        SuspendedObjectTreeNode parent = queueElement.suspendedObjectParentNode;
+        Path path = parent.path.withAppendedSegment(queueElement.suspendedObjectPathLastSegment);
+        long countBefore = countSuspendedBy(path.getFirstSegment());
+        Object restoredObject = parent.removeSuspendedObject(queueElement.suspendedObjectPathLastSegment);
+        parent.detachRecursivelyUpIfEmpty();
+        updatePathFirstSegmentIndices(path.getFirstSegment(), countBefore);
+        mutationListener.onObjectRestored(path);
+
+        return new PathAndSuspendedObject(path, restoredObject);
+    }
+
+    /**
+     * @return at most {@code maxCount} elements of the restoration queue
+     *         with the restoration times not greater than {@code maxRestorationTime} in the order of restoration time
+     *         skipping the ones with the path first segments within {@code skippedPathFirstSegments}
+     *         (at most {@code MAX_SKIPPED_OVERDUE_FACTOR * maxCount} elements are looked through).
+     */
+    List<OverdueObject> peekOverdue(long maxRestorationTime, int maxCount, Set<String> skippedPathFirstSegments) {
+        List<OverdueObject> overdue = new ArrayList<>();
+        long lookedThroughCount = 0L;
+        lockTree();
+
+        try {
+            for (long restorationTime : restorationTimes().headSet(maxRestorationTime + 1L)) {
+                for (RestorationQueueElement queueElement : restorationQueue.get(restorationTime)) {
+                    if (overdue.size() == maxCount || lookedThroughCount++ == (long)MAX_SKIPPED_OVERDUE_FACTOR * maxCount) {
+                        return overdue;
+                    }
+
+                    OverdueObject overdueObject = new OverdueObject(this, restorationTime, queueElement);
+
+                    if (!skippedPathFirstSegments.contains(overdueObject.getPathFirstSegment())) {
+                        overdue.add(overdueObject);
+                    }
+                }
+            }
+
+            return overdue;
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * Restores the object of the {@code overdue} element (if it is still suspended until the same time)
+     * and notifies the {@code listeners} about it.
+     *
+     * @return {@code true} iff the object was restored.
+     */
+    boolean restoreOverdue(OverdueObject overdue, Collection<RestoredObjectListener> listeners) {
+        PathAndSuspendedObject restored;
+        lockTree();
+
+        try {
+            if (overdue.queueElement.suspendedObjectParentNode.isDetached() ||
+                !restorationQueue.remove(overdue.restorationTime, overdue.queueElement)) {
+
+                return false;
+            }
+
+            restored = removeQueued(overdue.queueElement);
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+
+        notifyAboutObjectRestored(restored.path, restored.suspendedObject, listeners);
+        return true;
+    }
+
+    /**
+     * @return the number of the objects with the restoration times not greater than {@code maxRestorationTime}.
+     */
+    long countOverdue(long maxRestorationTime) {
+        long count = 0L;
+        lockTree();
+
+        try {
+            for (long restorationTime : restorationTimes().headSet(maxRestorationTime + 1L)) {
+                count += restorationQueue.get(restorationTime).size();
+            }
+
+            return count;
+        }
+        finally {
+            suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    /**
+     * An element of the restoration queue taken out of the critical section.
+     */
+    static final class OverdueObject {
+
+        OverdueObject(SuspendedObjectDivision div, long restorationTime, RestorationQueueElement queueElement) {
+            this.div = div;
+            this.restorationTime = restorationTime;
+            this.queueElement = queueElement;
+        }
+
+        String getPathFirstSegment() {
+            Path parentPath = queueElement.suspendedObjectParentNode.path;
+            return parentPath.getSegmentCount() > 0 ? parentPath.getFirstSegment() : queueElement.suspendedObjectPathLastSegment;
+        }
+
+        // ****************************** //
+
+        final SuspendedObjectDivision div;
+        final long restorationTime;
+        final RestorationQueueElement queueElement;
+    }
+
+    /**
+     * The restoration queue is built with sorted keys.
+     */
+    @SuppressWarnings("unchecked")
+    private SortedSet<Long> restorationTimes() {
+        return (SortedSet<Long>)restorationQueue.keySet();
+    }
+
     // ****************************** //
 
-    private void notifyAboutObjectRestored(Path path, Object restoredObject, Collection<RestoredObjectListener> listeners) {
+    static void notifyAboutObjectRestored(Path path, Object restoredObject, Collection<RestoredObjectListener> listeners) {
         for (RestoredObjectListener listener : listeners) {
             notifyAboutObjectRestored(path, restoredObject, listener);
         }
     }
 
-    private void notifyAboutObjectRestored(Path path, Object restoredObject, RestoredObjectListener listener) {
+    private static void notifyAboutObjectRestored(Path path, Object restoredObject, RestoredObjectListener listener) {
         try {
             listener.onObjectRestored(path, restoredObject);
         }
@@ -453,14 +1477,43 @@ final class SuspendedObjectDivision {
 
     // The tree of suspended objects.
     final SuspendedObjectTreeNode suspendedObjectTreeRoot = makeRoot();
-    final Lock suspendedObjectTreeLock = new ReentrantLock();
+    final ReentrantLock suspendedObjectTreeLock = new ReentrantLock();
+
+    // Contention of the critical section (see lockTree()).
+    final LongAdder lockAcquisitionCount = new LongAdder();
+    final LongAdder contendedLockAcquisitionCount = new LongAdder();
+    final LongAdder lockWaitNanos = new LongAdder();
+
+    // Is set while a restorer worker is restoring the expired objects of the division (see restoreExpiredUnlessBusy()).
+    final AtomicBoolean restoringExpired = new AtomicBoolean();
+
+    // The lateness (in milliseconds) of the objects restored by the restorer. Is shared by all the divisions.
+    volatile Histogram restorationLateness = new Histogram();
+
+    // The prefixes of two segments whose subtrees have outgrown maxSubtreeObjectCount objects
+    // (see net.devromik.suspender.mem.MemSuspender.partitionOversizedSubtrees()). Is shared by all the divisions.
+    volatile Set<Path> oversizedSubtrees = ConcurrentHashMap.newKeySet();
+    volatile long maxSubtreeObjectCount = Long.MAX_VALUE;
+
+    // The operations with the division hold the read lock, the split and the partitioning hold the write lock
+    // (see net.devromik.suspender.mem.MemSuspender.resize()).
+    final ReadWriteLock splitLock = new ReentrantReadWriteLock();
 
     // The restoration queue of suspended objects.
     final Multimap<Long, RestorationQueueElement> restorationQueue = treeKeys().hashSetValues().build();
 
-    // The value of the map is the number of divisions that contain objects
-    // suspended by paths that have the first segment equal to the key of the map.
-    final Map<String, AtomicInteger> pathFirstSegmentToDivCount;
+    // The index of the division in net.devromik.suspender.mem.MemSuspender.
+    final int divIndex;
+
+    // The divisions and the number of the objects by the path first segment. Is shared by all the divisions.
+    final PathFirstSegmentIndex pathFirstSegmentIndex;
+
+    // Is called within the critical section on each modification of the suspended objects.
+    volatile MutationListener mutationListener = MutationListener.NONE;
+
+    // Tells whether the subtree of a prefix of two segments is partitioned between the divisions
+    // (see net.devromik.suspender.mem.MemSuspender.partitionSubtree()).
+    volatile Predicate<Path> partitionedSubtrees = (prefix) -> false;
 
     final static Logger logger = getLogger(SuspendedObjectDivision.class);
 }
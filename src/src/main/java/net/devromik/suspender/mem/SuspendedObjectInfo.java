@@ -1,5 +1,7 @@
 package net.devromik.suspender.mem;
 
+import java.time.Instant;
+import net.devromik.suspender.SuspendedObject;
 import net.devromik.suspender.utils.Path;
 
 /**
@@ -17,6 +19,13 @@ final class SuspendedObjectInfo {
         return parentNode.path.withAppendedSegment(pathLastSegment);
     }
 
+    SuspendedObject toSuspendedObject() {
+        return new SuspendedObject(
+            getPath(),
+            parentNode.getSuspendedObject(pathLastSegment),
+            Instant.ofEpochMilli(restorationTime));
+    }
+
     // ****************************** //
 
     SuspendedObjectTreeNode parentNode;
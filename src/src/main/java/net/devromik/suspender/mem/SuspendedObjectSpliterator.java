@@ -0,0 +1,270 @@
+package net.devromik.suspender.mem;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import net.devromik.suspender.SuspendedObject;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT;
+import net.devromik.suspender.mem.MemSuspender.DivisionLayout;
+import net.devromik.suspender.utils.Path;
+
+/**
+ * A spliterator over the objects suspended by paths with a given prefix.
+ *
+ * The spliterator walks the subtrees of suspended objects depth-first.
+ * The division lock is held only while a single node is being read:
+ * the objects of the node are copied to a buffer and the children of the node become pending.
+ * So the traversal is weakly consistent: it never fails because of concurrent modifications,
+ * it reports each object at most once,
+ * but it may or may not reflect the modifications made after the traversal has started.
+ *
+ * A node is read while the divisions are not reorganized (see MemSuspender.resize() and MemSuspender.partitionSubtree()).
+ * Each pending subtree remembers the division layout it has been found with.
+ * If the divisions have been reorganized since, nothing of the subtree has been reported yet,
+ * so it is looked up again by its path in the division it belongs to now.
+ * A prefix which spans the divisions is expanded in all of them at once,
+ * so a subtree moved to another division meanwhile is found exactly once.
+ *
+ * Splitting hands over the pending subtrees (children of the already visited nodes) to a new spliterator,
+ * so parallel streams can scan a large group of suspended objects on several cores.
+ *
+ * @author Shulnyaev Roman
+ */
+final class SuspendedObjectSpliterator implements Spliterator<SuspendedObject> {
+
+    /**
+     * @param prefix a path prefix with at least one segment.
+     */
+    SuspendedObjectSpliterator(MemSuspender suspender, Path prefix) {
+        this.suspender = suspender;
+        pending.addLast(new PendingSubtree(null, null, prefix, null, true));
+    }
+
+    private SuspendedObjectSpliterator(MemSuspender suspender, Deque<PendingSubtree> pending) {
+        this.suspender = suspender;
+        this.pending.addAll(pending);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super SuspendedObject> action) {
+        while (buffer.isEmpty()) {
+            if (pending.isEmpty()) {
+                return false;
+            }
+
+            visit(pending.removeFirst());
+        }
+
+        action.accept(buffer.removeFirst());
+        return true;
+    }
+
+    @Override
+    public Spliterator<SuspendedObject> trySplit() {
+        while (pending.size() == 1) {
+            // Expanding the only pending subtree in order to find out whether it can be split by children.
+            visit(pending.removeFirst());
+        }
+
+        if (pending.size() < 2) {
+            return null;
+        }
+
+        // The tail of the deque contains the subtrees which were discovered earliest,
+        // that is the ones closest to the prefix and, presumably, the largest ones.
+        Deque<PendingSubtree> split = new ArrayDeque<>();
+
+        for (int i = pending.size() / 2; i > 0; --i) {
+            split.addFirst(pending.removeLast());
+        }
+
+        return new SuspendedObjectSpliterator(suspender, split);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+
+    // ****************************** //
+
+    private void visit(PendingSubtree subtree) {
+        suspender.withAllDivisions(() -> {
+            DivisionLayout layout = suspender.getLayout();
+
+            // The subtree has not been routed yet or the divisions have been reorganized since it was found.
+            PendingSubtree routedSubtree = subtree.layout == layout ? subtree : route(subtree, layout);
+
+            if (routedSubtree.div == null) {
+                expandSpanning(routedSubtree, layout);
+            }
+            else {
+                visitInDivision(routedSubtree, layout);
+            }
+
+            return null;
+        });
+    }
+
+    private PendingSubtree route(PendingSubtree subtree, DivisionLayout layout) {
+        Path path = subtree.getPath();
+
+        return
+            layout.spansDivisions(path) ?
+            new PendingSubtree(layout, null, path, null, subtree.withPathObject) :
+            new PendingSubtree(layout, suspender.divisionFor(layout, path), path, null, subtree.withPathObject);
+    }
+
+    private void visitInDivision(PendingSubtree subtree, DivisionLayout layout) {
+        SuspendedObjectDivision div = subtree.div;
+        div.lockTree();
+
+        try {
+            if (subtree.root == null) {
+                resolvePath(div, subtree.path, subtree.withPathObject, layout);
+            }
+            else if (!subtree.root.isDetached()) {
+                visitNode(div, subtree.root, layout);
+            }
+        }
+        finally {
+            div.suspendedObjectTreeLock.unlock();
+        }
+    }
+
+    private void resolvePath(SuspendedObjectDivision div, Path path, boolean withPathObject, DivisionLayout layout) {
+        SuspendedObjectTreeNode parent = div.findParentNodeFor(path);
+
+        if (parent == null) {
+            return;
+        }
+
+        String pathLastSegment = path.getLastSegment();
+
+        if (withPathObject && parent.hasSuspendedObject(pathLastSegment)) {
+            buffer.addLast(toSuspendedObject(parent, pathLastSegment, parent.suspendedObjects.get(pathLastSegment)));
+        }
+
+        if (parent.hasChild(pathLastSegment)) {
+            pending.addFirst(new PendingSubtree(layout, div, null, parent.getChild(pathLastSegment), false));
+        }
+    }
+
+    private void visitNode(SuspendedObjectDivision div, SuspendedObjectTreeNode node, DivisionLayout layout) {
+        node.suspendedObjects.forEach(
+            (pathLastSegment, suspendedObjectAndRestorationTime) ->
+                buffer.addLast(toSuspendedObject(node, pathLastSegment, suspendedObjectAndRestorationTime)));
+
+        node.children.values().forEach(
+            (child) ->
+                pending.addFirst(new PendingSubtree(layout, div, null, child, false)));
+    }
+
+    /**
+     * Visits the nodes of the {@code subtree} path in all the divisions.
+     * The children which belong to a single division become pending in it,
+     * the ones which span the divisions become pending once.
+     */
+    private void expandSpanning(PendingSubtree subtree, DivisionLayout layout) {
+        Path path = subtree.path;
+
+        // The object suspended by exactly the path belongs to the division of the path.
+        if (subtree.withPathObject && path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT) {
+            SuspendedObject pathObject = suspender.divisionFor(layout, path).getSuspendedObject(path);
+
+            if (pathObject != null) {
+                buffer.addLast(pathObject);
+            }
+        }
+
+        Set<Path> spanningChildPaths = new HashSet<>();
+
+        for (SuspendedObjectDivision div : suspender.getDivisions()) {
+            div.lockTree();
+
+            try {
+                SuspendedObjectTreeNode parent = div.findParentNodeFor(path);
+                String pathLastSegment = path.getLastSegment();
+
+                if (parent == null || !parent.hasChild(pathLastSegment)) {
+                    continue;
+                }
+
+                SuspendedObjectTreeNode node = parent.getChild(pathLastSegment);
+
+                node.suspendedObjects.forEach(
+                    (childLastSegment, suspendedObjectAndRestorationTime) ->
+                        buffer.addLast(toSuspendedObject(node, childLastSegment, suspendedObjectAndRestorationTime)));
+
+                for (SuspendedObjectTreeNode child : node.children.values()) {
+                    if (!layout.spansDivisions(child.path)) {
+                        pending.addFirst(new PendingSubtree(layout, div, null, child, false));
+                    }
+                    else if (spanningChildPaths.add(child.path)) {
+                        pending.addFirst(new PendingSubtree(layout, null, child.path, null, false));
+                    }
+                }
+            }
+            finally {
+                div.suspendedObjectTreeLock.unlock();
+            }
+        }
+    }
+
+    static SuspendedObject toSuspendedObject(
+        SuspendedObjectTreeNode parent,
+        String pathLastSegment,
+        SuspendedObjectAndRestorationTime suspendedObjectAndRestorationTime) {
+
+        return new SuspendedObject(
+            parent.path.withAppendedSegment(pathLastSegment),
+            suspendedObjectAndRestorationTime.suspendedObject,
+            Instant.ofEpochMilli(suspendedObjectAndRestorationTime.restorationTime));
+    }
+
+    // ****************************** //
+
+    /**
+     * A subtree which has not been visited yet.
+     * Either the {@code root} or the {@code path} is defined:
+     * in the latter case the subtree root has not been looked up yet.
+     * The {@code div} is {@code null} if the subtree spans the divisions,
+     * the {@code layout} is {@code null} if the subtree has not been routed yet.
+     */
+    private static final class PendingSubtree {
+
+        /**
+         * @param withPathObject whether the object suspended by exactly the path of the subtree is reported with it.
+         */
+        PendingSubtree(DivisionLayout layout, SuspendedObjectDivision div, Path path, SuspendedObjectTreeNode root, boolean withPathObject) {
+            this.layout = layout;
+            this.div = div;
+            this.path = path;
+            this.root = root;
+            this.withPathObject = withPathObject;
+        }
+
+        Path getPath() {
+            return root != null ? root.path : path;
+        }
+
+        // ****************************** //
+
+        final DivisionLayout layout;
+        final SuspendedObjectDivision div;
+        final Path path;
+        final SuspendedObjectTreeNode root;
+        final boolean withPathObject;
+    }
+
+    // ****************************** //
+
+    private final MemSuspender suspender;
+    private final Deque<PendingSubtree> pending = new ArrayDeque<>();
+    private final Deque<SuspendedObject> buffer = new ArrayDeque<>();
+}
@@ -63,6 +63,8 @@ final class SuspendedObjectTreeNode {
             new SuspendedObjectAndRestorationTime(object, restorationTime));
 
         restorationQueue.put(restorationTime, pathLastSegment);
+        changeSubtreeSuspendedObjectCount(1L);
+        updateSubtreeMinRestorationTime();
     }
 
     Object getSuspendedObject(String pathLastSegment) {
@@ -86,8 +88,86 @@ final class SuspendedObjectTreeNode {
 
         Long restorationTime = getRestorationTime(pathLastSegment);
         restorationQueue.remove(restorationTime, pathLastSegment);
+        changeSubtreeSuspendedObjectCount(-1L);
+        Object removedObject = suspendedObjects.remove(pathLastSegment).suspendedObject;
+        updateSubtreeMinRestorationTime();
 
-        return suspendedObjects.remove(pathLastSegment).suspendedObject;
+        return removedObject;
+    }
+
+    /**
+     * @return the number of objects suspended by paths with the prefix {@code this.path}
+     *         except for the object suspended by the path {@code this.path} itself
+     *         (that one belongs to the parent node).
+     */
+    long getSubtreeSuspendedObjectCount() {
+        return subtreeSuspendedObjectCount;
+    }
+
+    /**
+     * @return the minimal restoration time of the objects suspended in the subtree having this node as a root
+     *         or {@code null} if the subtree is empty.
+     */
+    Long getSubtreeMinRestorationTime() {
+        return subtreeMinRestorationTime;
+    }
+
+    /**
+     * Recalculates the minimal restoration time of the subtree having this node as a root
+     * by the restoration queue of the node and the minimal restoration times of the child subtrees.
+     * If it has changed, the parent index is corrected and the recalculation goes up.
+     */
+    private void updateSubtreeMinRestorationTime() {
+        Long newSubtreeMinRestorationTime = min(
+            firstKeyOf(restorationQueue),
+            firstKeyOf(childrenBySubtreeMinRestorationTime));
+
+        if (Objects.equals(newSubtreeMinRestorationTime, subtreeMinRestorationTime)) {
+            return;
+        }
+
+        if (parent != null) {
+            String pathLastSegment = path.getLastSegment();
+
+            if (subtreeMinRestorationTime != null) {
+                parent.childrenBySubtreeMinRestorationTime.remove(subtreeMinRestorationTime, pathLastSegment);
+            }
+
+            if (newSubtreeMinRestorationTime != null) {
+                parent.childrenBySubtreeMinRestorationTime.put(newSubtreeMinRestorationTime, pathLastSegment);
+            }
+        }
+
+        subtreeMinRestorationTime = newSubtreeMinRestorationTime;
+
+        if (parent != null) {
+            parent.updateSubtreeMinRestorationTime();
+        }
+    }
+
+    private static Long firstKeyOf(Multimap<Long, String> queue) {
+        return queue.isEmpty() ? null : queue.keySet().iterator().next();
+    }
+
+    private static Long min(Long first, Long second) {
+        if (first == null) {
+            return second;
+        }
+
+        if (second == null) {
+            return first;
+        }
+
+        return first <= second ? first : second;
+    }
+
+    /**
+     * Adds the {@code delta} to the suspended object counters of this node and all its ancestors.
+     */
+    private void changeSubtreeSuspendedObjectCount(long delta) {
+        for (SuspendedObjectTreeNode node = this; node != null; node = node.parent) {
+            node.subtreeSuspendedObjectCount += delta;
+        }
     }
 
     boolean isEmpty() {
@@ -162,8 +242,18 @@ final class SuspendedObjectTreeNode {
      */
     void detach() {
         if (parent != null) {
-            parent.children.remove(path.getLastSegment());
-            parent = null;
+            SuspendedObjectTreeNode parent = this.parent;
+            String pathLastSegment = path.getLastSegment();
+
+            parent.children.remove(pathLastSegment);
+            parent.changeSubtreeSuspendedObjectCount(-subtreeSuspendedObjectCount);
+
+            if (subtreeMinRestorationTime != null) {
+                parent.childrenBySubtreeMinRestorationTime.remove(subtreeMinRestorationTime, pathLastSegment);
+            }
+
+            this.parent = null;
+            parent.updateSubtreeMinRestorationTime();
         }
     }
 
@@ -220,38 +310,124 @@ final class SuspendedObjectTreeNode {
      * finds one of the objects having the minimal restoration time among all such objects
      * and returns it.
      *
-     * If the subtree is empty then returns {@code null}.
+     * If the subtree is empty then returns a non-initialized info.
+     *
+     * The search descends along the minimal restoration times of the subtrees,
+     * so it takes time proportional to the subtree height rather than to the subtree size.
      */
     SuspendedObjectInfo findObjectWithMinRestorationTimeInSubtree() {
         SuspendedObjectInfo subtreeMin = new SuspendedObjectInfo();
+        SuspendedObjectTreeNode node = this;
+
+        while (node.subtreeMinRestorationTime != null) {
+            Long nodeMinRestorationTime = firstKeyOf(node.restorationQueue);
 
-        traverse(
-            node -> {
-                if (!node.hasSuspendedObjects()) {
-                    return;
-                }
-
-                Map.Entry<Long, String> nodeMin = node.restorationQueue.entries().iterator().next();
-                String nodeMinPathLastSegment = nodeMin.getValue();
-                Long nodeMinRestorationTime = nodeMin.getKey();
-
-                if (subtreeMin.isInitialized()) {
-                    if (nodeMinRestorationTime < subtreeMin.restorationTime) {
-                        subtreeMin.parentNode = node;
-                        subtreeMin.pathLastSegment = nodeMinPathLastSegment;
-                        subtreeMin.restorationTime = nodeMinRestorationTime;
-                    }
-                }
-                else {
-                    subtreeMin.parentNode = node;
-                    subtreeMin.pathLastSegment = nodeMinPathLastSegment;
-                    subtreeMin.restorationTime = nodeMinRestorationTime;
-                }
-            });
+            if (node.subtreeMinRestorationTime.equals(nodeMinRestorationTime)) {
+                subtreeMin.parentNode = node;
+                subtreeMin.pathLastSegment = node.restorationQueue.get(nodeMinRestorationTime).iterator().next();
+                subtreeMin.restorationTime = nodeMinRestorationTime;
+
+                break;
+            }
+
+            node = node.getChild(node.childrenBySubtreeMinRestorationTime.values().iterator().next());
+        }
 
         return subtreeMin;
     }
 
+    /**
+     * Finds at most {@code maxCount} objects suspended in the subtree having this node as a root
+     * which have the minimal restoration times not greater than {@code maxRestorationTime}.
+     *
+     * @return the found objects ordered by restoration time.
+     *
+     * The restoration queues of the nodes are merged lazily:
+     * a node is visited only if the minimal restoration time of its subtree may get into the result.
+     */
+    List<SuspendedObjectInfo> findObjectsWithMinRestorationTimesInSubtree(int maxCount, long maxRestorationTime) {
+        List<SuspendedObjectInfo> result = new ArrayList<>();
+
+        if (maxCount <= 0 || subtreeMinRestorationTime == null) {
+            return result;
+        }
+
+        PriorityQueue<RestorationQueueCursor> cursors = new PriorityQueue<>();
+        RestorationQueueCursor.addTo(cursors, this);
+
+        while (!cursors.isEmpty() && result.size() < maxCount) {
+            RestorationQueueCursor cursor = cursors.remove();
+            Long restorationTime = cursor.current.getKey();
+
+            if (restorationTime > maxRestorationTime) {
+                break;
+            }
+
+            if (cursor.overChildren) {
+                RestorationQueueCursor.addTo(cursors, cursor.node.getChild(cursor.current.getValue()));
+            }
+            else {
+                SuspendedObjectInfo info = new SuspendedObjectInfo();
+                info.parentNode = cursor.node;
+                info.pathLastSegment = cursor.current.getValue();
+                info.restorationTime = restorationTime;
+                result.add(info);
+            }
+
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * A position either in the restoration queue of a node
+     * or in the queue of its children ordered by the minimal restoration times of their subtrees.
+     */
+    private static final class RestorationQueueCursor implements Comparable<RestorationQueueCursor> {
+
+        static void addTo(Queue<RestorationQueueCursor> cursors, SuspendedObjectTreeNode node) {
+            if (!node.restorationQueue.isEmpty()) {
+                cursors.add(new RestorationQueueCursor(node, false, node.restorationQueue.entries().iterator()));
+            }
+
+            if (!node.childrenBySubtreeMinRestorationTime.isEmpty()) {
+                cursors.add(new RestorationQueueCursor(node, true, node.childrenBySubtreeMinRestorationTime.entries().iterator()));
+            }
+        }
+
+        RestorationQueueCursor(SuspendedObjectTreeNode node, boolean overChildren, Iterator<Map.Entry<Long, String>> iterator) {
+            this.node = node;
+            this.overChildren = overChildren;
+            this.iterator = iterator;
+            this.current = iterator.next();
+        }
+
+        boolean advance() {
+            if (iterator.hasNext()) {
+                current = iterator.next();
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(RestorationQueueCursor other) {
+            return current.getKey().compareTo(other.current.getKey());
+        }
+
+        // ****************************** //
+
+        final SuspendedObjectTreeNode node;
+        final boolean overChildren;
+        final Iterator<Map.Entry<Long, String>> iterator;
+        Map.Entry<Long, String> current;
+    }
+
     // ****************************** //
 
     // Path of the node in the tree.
@@ -275,4 +451,20 @@ final class SuspendedObjectTreeNode {
     //                  the set of the last segments of the suspended object paths.
     final Map<String, SuspendedObjectAndRestorationTime> suspendedObjects = new HashMap<>();
     final Multimap<Long, String> restorationQueue = treeKeys().hashSetValues().build();
+
+    // The number of objects suspended in the subtree having this node as a root.
+    // It is maintained incrementally on suspension, removal and detaching.
+    private long subtreeSuspendedObjectCount;
+
+    // The deadline index of the subtree having this node as a root.
+    //
+    // subtreeMinRestorationTime is the minimal restoration time of the objects suspended in the subtree
+    //                           or null if the subtree is empty.
+    //
+    // childrenBySubtreeMinRestorationTime maps the minimal restoration time of a child subtree to
+    //                                     the set of the last segments of the child node paths.
+    //
+    // Both are maintained incrementally on suspension, removal and detaching.
+    private Long subtreeMinRestorationTime;
+    final Multimap<Long, String> childrenBySubtreeMinRestorationTime = treeKeys().hashSetValues().build();
 }
\ No newline at end of file
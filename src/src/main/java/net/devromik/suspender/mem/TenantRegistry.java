@@ -0,0 +1,225 @@
+package net.devromik.suspender.mem;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.slf4j.Logger;
+import static com.google.common.base.Preconditions.*;
+import static java.lang.Thread.currentThread;
+import net.devromik.suspender.utils.*;
+import static net.devromik.slf4jUtils.Slf4jUtils.logException;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Hosts the suspenders of many tenants (net.devromik.suspender.mem.TenantSuspender) over one engine,
+ * so the tenants share the divisions and the restorer of a single net.devromik.suspender.mem.MemSuspender
+ * instead of having their own ones.
+ *
+ * The objects of a tenant are suspended by the engine under the paths prefixed with the name of the tenant.
+ * The objects restored by the engine on expiration are queued per tenant and delivered to the listeners of the tenants
+ * by the dispatchers: a dispatcher takes the next tenant with queued objects, delivers at most DISPATCH_QUANTUM of them
+ * and puts the tenant to the end of the line if it still has queued objects.
+ * So a tenant with a burst of expirations or a slow listener gets its fair share and does not delay the other tenants.
+ * The objects of a tenant are delivered in the order of restoration.
+ * The number of the objects of a tenant waiting for a dispatcher is bounded (see TenantSuspender.setMaxRestorationBacklog()):
+ * beyond it the restorer delivers them itself.
+ *
+ * The objects of a tenant group (the tenant paths with the same first segment) are kept in one division of the engine
+ * until the group outgrows the hot subtree object count of the engine and gets partitioned between the divisions
+ * (see MemSuspender.setHotSubtreeObjectCount()).
+ *
+ * The names of the dispatching threads are dispatchers.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class TenantRegistry {
+
+    public static final String DISPATCHER_THREAD_NAME = "Suspender Tenant Dispatcher";
+
+    /**
+     * Number of the dispatchers.
+     */
+    public static final int MIN_DISPATCHER_THREAD_COUNT = 1;
+    public static final int MAX_DISPATCHER_THREAD_COUNT = 64;
+    public static final int DEFAULT_DISPATCHER_THREAD_COUNT = 2;
+
+    /**
+     * Maximal number of the objects of a tenant delivered in one turn.
+     */
+    public static final int DISPATCH_QUANTUM = 64;
+
+    // ****************************** //
+
+    public TenantRegistry() {
+        this(new MemSuspender(), DEFAULT_DISPATCHER_THREAD_COUNT);
+    }
+
+    /**
+     * @param engine an unused suspender which is started and stopped by the registry.
+     */
+    public TenantRegistry(MemSuspender engine, int dispatcherThreadCount) {
+        this.engine = checkNotNull(engine);
+        this.dispatcherThreadCount = Ints.adjust(dispatcherThreadCount, MIN_DISPATCHER_THREAD_COUNT, MAX_DISPATCHER_THREAD_COUNT);
+
+        engine.addRestoredObjectListener(
+            (enginePath, restoredObject) -> {
+                TenantSuspender tenantSuspender = tenants.get(enginePath.getFirstSegment());
+
+                if (tenantSuspender != null && tenantSuspender.enqueueRestored(TenantSuspender.toTenantPath(enginePath), restoredObject)) {
+                    turns.add(tenantSuspender);
+                }
+            });
+    }
+
+    public MemSuspender getEngine() {
+        return engine;
+    }
+
+    /**
+     * Registers a tenant which can have at most {@code maxObjectCount} suspended objects.
+     *
+     * @throws IllegalArgumentException when the {@code tenant} is a wildcard (see net.devromik.suspender.utils.PathPattern).
+     * @throws IllegalStateException when there is already such a tenant.
+     */
+    public TenantSuspender register(String tenant, long maxObjectCount) {
+        checkArgument(new PathPattern(tenant).isLiteral(0));
+        TenantSuspender tenantSuspender = new TenantSuspender(tenant, engine, maxObjectCount);
+        checkState(tenants.putIfAbsent(tenant, tenantSuspender) == null);
+
+        return tenantSuspender;
+    }
+
+    /**
+     * @return the suspender of the {@code tenant} or {@code null} if there is no such tenant.
+     */
+    public TenantSuspender getTenant(String tenant) {
+        return tenants.get(tenant);
+    }
+
+    public Set<String> getTenants() {
+        return Collections.unmodifiableSet(tenants.keySet());
+    }
+
+    /**
+     * Unregisters the {@code tenant} and drops its objects without notifying the listeners.
+     *
+     * @return {@code false} iff there was no such tenant.
+     */
+    public boolean unregister(String tenant) {
+        if (tenants.remove(tenant) == null) {
+            return false;
+        }
+
+        engine.restore(new Path(tenant), Collections.emptyList());
+        return true;
+    }
+
+    public void start() {
+        synchronized (lifeCycleLock) {
+            checkState(!started);
+            engine.start();
+
+            // Creating and starting the dispatchers.
+            makeAndStartDispatchers();
+
+            started = true;
+        }
+    }
+
+    private void makeAndStartDispatchers() {
+        dispatchers = new ArrayList<>(dispatcherThreadCount);
+
+        // Creating the dispatchers.
+        for (int i = 0; i < dispatcherThreadCount; ++i) {
+            dispatchers.add(new Thread(
+                () -> {
+                    while (!currentThread().isInterrupted()) {
+                        try {
+                            dispatch(turns.take());
+                        }
+                        catch (InterruptedException exception) {
+                            currentThread().interrupt();
+                        }
+                        catch (Exception exception) {
+                            logException(logger, exception);
+                        }
+                    }
+                },
+                DISPATCHER_THREAD_NAME + " " + (i + 1)));
+        }
+
+        // Starting the dispatchers.
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.start();
+        }
+    }
+
+    private void dispatch(TenantSuspender tenantSuspender) {
+        if (tenantSuspender.deliverRestored(DISPATCH_QUANTUM)) {
+            turns.add(tenantSuspender);
+        }
+    }
+
+    /**
+     * Gives the turn to the next tenant with queued objects (if any) in the calling thread.
+     *
+     * @return {@code false} iff there were no such tenants.
+     */
+    boolean dispatchNext() {
+        TenantSuspender tenantSuspender = turns.poll();
+
+        if (tenantSuspender == null) {
+            return false;
+        }
+
+        dispatch(tenantSuspender);
+        return true;
+    }
+
+    /**
+     * Stops the engine and the dispatchers.
+     * The objects restored but not delivered yet are delivered by the calling thread.
+     */
+    public void stop() {
+        synchronized (lifeCycleLock) {
+            checkState(started);
+            engine.stop();
+
+            for (Thread dispatcher : dispatchers) {
+                dispatcher.interrupt();
+            }
+
+            for (Thread dispatcher : dispatchers) {
+                try {
+                    logger.info("Waiting for \"{}\" to be stopped...", dispatcher.getName());
+                    dispatcher.join();
+                    logger.info("\"{}\" has been stopped", dispatcher.getName());
+                }
+                catch (InterruptedException exception) {
+                    logger.error("Interrupted while waiting for \"{}\" to be stopped", dispatcher.getName());
+                }
+            }
+
+            while (dispatchNext()) {
+                // Delivering the rest.
+            }
+
+            started = false;
+        }
+    }
+
+    // ****************************** //
+
+    private final MemSuspender engine;
+    private final Map<String, TenantSuspender> tenants = new ConcurrentHashMap<>();
+
+    // The tenants with the queued restored objects in the order of their turns.
+    private final BlockingQueue<TenantSuspender> turns = new LinkedBlockingQueue<>();
+    private final int dispatcherThreadCount;
+    private List<Thread> dispatchers;
+
+    // Life cycle.
+    private final Object lifeCycleLock = new Object();
+    private boolean started;
+
+    private final static Logger logger = getLogger(TenantRegistry.class);
+}
@@ -0,0 +1,357 @@
+package net.devromik.suspender.mem;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import static com.google.common.base.Preconditions.*;
+import static java.util.stream.Collectors.toList;
+import static net.devromik.suspender.mem.SuspendedObjectDivision.notifyAboutObjectRestored;
+import net.devromik.suspender.*;
+import net.devromik.suspender.utils.*;
+
+/**
+ * A logical suspender of a tenant hosted by net.devromik.suspender.mem.TenantRegistry.
+ *
+ * The objects of the tenant are kept by the engine of the registry (a MemSuspender shared by all the tenants)
+ * under the paths prefixed with the name of the tenant, so the tenants share the divisions and the restorer.
+ * The paths seen by the tenant and its listeners are not prefixed.
+ *
+ * The engine routes a path by its first two segments, that is by the tenant and the first segment of the tenant path,
+ * so all the objects of a tenant group (the tenant paths with the same first segment) start in one division.
+ * When a group outgrows the hot subtree object count of the engine (see MemSuspender.setHotSubtreeObjectCount()),
+ * the restorer partitions it between the divisions, after which its objects are routed
+ * by the tenant and the first two segments of the tenant path.
+ *
+ * The number of the objects of the tenant is limited by the quota:
+ * a suspension of a new object is rejected with IllegalStateException when the quota is reached
+ * (concurrent suspensions may exceed it by the number of the suspending threads).
+ *
+ * The objects restored on expiration (and by compute()) are delivered to the listeners of the tenant
+ * by the dispatchers of the registry, in turn with the other tenants.
+ * The objects restored explicitly (for example, by restore()) are delivered by the calling thread.
+ * At most the max restoration backlog of the restored objects wait for a dispatcher:
+ * beyond it the restorer delivers the excess itself, so a slow listener slows down the restorer
+ * instead of letting the backlog grow without limit.
+ * Either way the objects of the tenant are delivered in the order of restoration, by one thread at a time.
+ *
+ * The life cycle of the tenant is the one of the registry, so start() and stop() do nothing.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class TenantSuspender implements Suspender {
+
+    /**
+     * Maximal number of the restored objects waiting for a dispatcher.
+     */
+    public static final int MIN_MAX_RESTORATION_BACKLOG = TenantRegistry.DISPATCH_QUANTUM;
+    public static final int MAX_MAX_RESTORATION_BACKLOG = Integer.MAX_VALUE;
+    public static final int DEFAULT_MAX_RESTORATION_BACKLOG = 10_000;
+
+    // ****************************** //
+
+    TenantSuspender(String tenant, MemSuspender engine, long maxObjectCount) {
+        this.tenant = tenant;
+        this.engine = engine;
+        this.tenantPrefix = new Path(tenant);
+        setMaxObjectCount(maxObjectCount);
+
+        // The prefix-scoped listeners are notified through the trie
+        // which is registered as an ordinary listener.
+        listeners.add(prefixListeners);
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setMaxObjectCount(long maxObjectCount) {
+        checkArgument(maxObjectCount > 0L);
+        this.maxObjectCount = maxObjectCount;
+    }
+
+    public long getMaxObjectCount() {
+        return maxObjectCount;
+    }
+
+    public void setMaxRestorationBacklog(int maxRestorationBacklog) {
+        this.maxRestorationBacklog = Ints.adjust(maxRestorationBacklog, MIN_MAX_RESTORATION_BACKLOG, MAX_MAX_RESTORATION_BACKLOG);
+    }
+
+    public int getMaxRestorationBacklog() {
+        return maxRestorationBacklog;
+    }
+
+    /**
+     * @return the number of the objects of the tenant.
+     */
+    public long getObjectCount() {
+        return engine.countSuspendedBy(tenantPrefix);
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void stop() {}
+
+    @Override
+    public void addRestoredObjectListener(RestoredObjectListener listener) {
+        listeners.add(checkNotNull(listener));
+    }
+
+    @Override
+    public void removeRestoredObjectListener(RestoredObjectListener listener) {
+        listeners.remove(checkNotNull(listener));
+    }
+
+    @Override
+    public void addRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        prefixListeners.add(prefix, listener);
+    }
+
+    @Override
+    public void removeRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        prefixListeners.remove(prefix, listener);
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        return engine.hasObjectsSuspendedBy(toEnginePath(path));
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(PathPattern pattern) {
+        return engine.hasObjectsSuspendedBy(toEnginePattern(pattern));
+    }
+
+    @Override
+    public long countSuspendedBy(Path path) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        return engine.countSuspendedBy(toEnginePath(path));
+    }
+
+    @Override
+    public List<SuspendedObject> peekEarliest(Path prefix, int maxCount) {
+        checkArgument(prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        return engine.peekEarliest(toEnginePath(prefix), maxCount).stream().map(this::toTenantObject).collect(toList());
+    }
+
+    @Override
+    public Stream<SuspendedObject> stream(Path prefix) {
+        checkArgument(prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        return engine.stream(toEnginePath(prefix)).map(this::toTenantObject);
+    }
+
+    @Override
+    public void suspend(Path path, Object object, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        Path enginePath = toEnginePath(path);
+        checkQuota(enginePath);
+        engine.suspend(enginePath, object, duration);
+    }
+
+    @Override
+    public boolean suspendIfAbsent(Path path, Object object, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        Path enginePath = toEnginePath(path);
+        checkQuota(enginePath);
+
+        return engine.suspendIfAbsent(enginePath, object, duration);
+    }
+
+    @Override
+    public boolean replace(Path path, Object expectedObject, Object newObject, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        return engine.replace(toEnginePath(path), expectedObject, newObject, duration);
+    }
+
+    @Override
+    public Object compute(Path path, UnaryOperator<Object> remappingFunction, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        Path enginePath = toEnginePath(path);
+        checkQuota(enginePath);
+
+        return engine.compute(enginePath, remappingFunction, duration);
+    }
+
+    /**
+     * @throws IllegalStateException when the quota is reached and there is no object suspended by the {@code enginePath}.
+     */
+    private void checkQuota(Path enginePath) {
+        checkState(
+            engine.countSuspendedBy(tenantPrefix) < maxObjectCount || engine.getSuspendedObject(enginePath) != null,
+            "The quota of the tenant \"%s\" (%s objects) has been reached",
+            tenant,
+            maxObjectCount);
+    }
+
+    @Override
+    public void restore(Path path) {
+        restore(path, listeners);
+    }
+
+    @Override
+    public void restore(Path path, Collection<RestoredObjectListener> listeners) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        engine.restore(toEnginePath(path), toEngineListeners(listeners));
+    }
+
+    @Override
+    public void restore(PathPattern pattern) {
+        restore(pattern, listeners);
+    }
+
+    @Override
+    public void restore(PathPattern pattern, Collection<RestoredObjectListener> listeners) {
+        engine.restore(toEnginePattern(pattern), toEngineListeners(listeners));
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff) {
+        restoreDueBefore(prefix, cutoff, listeners);
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff, Collection<RestoredObjectListener> listeners) {
+        checkArgument(prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        engine.restoreDueBefore(toEnginePath(prefix), cutoff, toEngineListeners(listeners));
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path) {
+        restoreObjectWithMinRestorationTime(path, listeners);
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path, Collection<RestoredObjectListener> listeners) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT - 1);
+        engine.restoreObjectWithMinRestorationTime(toEnginePath(path), toEngineListeners(listeners));
+    }
+
+    // ****************************** //
+
+    private Path toEnginePath(Path path) {
+        String[] segments = new String[path.getSegmentCount() + 1];
+        segments[0] = tenant;
+
+        for (int i = 0; i < path.getSegmentCount(); ++i) {
+            segments[i + 1] = path.getSegment(i);
+        }
+
+        return new Path(segments);
+    }
+
+    private PathPattern toEnginePattern(PathPattern pattern) {
+        String[] segments = new String[pattern.getSegmentCount() + 1];
+        segments[0] = tenant;
+
+        for (int i = 0; i < pattern.getSegmentCount(); ++i) {
+            segments[i + 1] = pattern.getSegment(i);
+        }
+
+        return new PathPattern(segments);
+    }
+
+    static Path toTenantPath(Path enginePath) {
+        String[] segments = new String[enginePath.getSegmentCount() - 1];
+
+        for (int i = 0; i < segments.length; ++i) {
+            segments[i] = enginePath.getSegment(i + 1);
+        }
+
+        return new Path(segments);
+    }
+
+    private SuspendedObject toTenantObject(SuspendedObject engineObject) {
+        return new SuspendedObject(toTenantPath(engineObject.getPath()), engineObject.getObject(), engineObject.getRestorationTime());
+    }
+
+    private static Collection<RestoredObjectListener> toEngineListeners(Collection<RestoredObjectListener> listeners) {
+        return Collections.singletonList(
+            (enginePath, restoredObject) ->
+                notifyAboutObjectRestored(toTenantPath(enginePath), restoredObject, listeners));
+    }
+
+    // ****************************** //
+
+    /**
+     * Queues the object restored on expiration to be delivered by a dispatcher.
+     * If the backlog exceeds the max restoration backlog, the excess is delivered by the calling thread.
+     *
+     * @return {@code true} iff the tenant has to be scheduled for delivery.
+     */
+    boolean enqueueRestored(Path path, Object restoredObject) {
+        pendingRestorations.add(new PathAndSuspendedObject(path, restoredObject));
+
+        if (pendingRestorationCount.incrementAndGet() > maxRestorationBacklog) {
+            synchronized (deliveryLock) {
+                while (pendingRestorationCount.get() > maxRestorationBacklog && deliverNextRestored()) {
+                    // Delivering the excess.
+                }
+            }
+        }
+
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Delivers at most {@code maxCount} queued objects to the listeners.
+     * Is called by one dispatcher at a time.
+     *
+     * @return {@code true} iff the tenant has to be scheduled for delivery again.
+     */
+    boolean deliverRestored(int maxCount) {
+        synchronized (deliveryLock) {
+            for (int i = 0; i < maxCount && deliverNextRestored(); ++i) {
+                // Delivering.
+            }
+        }
+
+        scheduled.set(false);
+
+        // The objects queued after the check of the flag by enqueueRestored() are delivered in the next turn.
+        return !pendingRestorations.isEmpty() && scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * @return {@code false} iff there were no queued objects.
+     */
+    private boolean deliverNextRestored() {
+        PathAndSuspendedObject restored = pendingRestorations.poll();
+
+        if (restored == null) {
+            return false;
+        }
+
+        pendingRestorationCount.decrementAndGet();
+        notifyAboutObjectRestored(restored.path, restored.suspendedObject, listeners);
+
+        return true;
+    }
+
+    // ****************************** //
+
+    private final String tenant;
+    private final MemSuspender engine;
+    private final Path tenantPrefix;
+    private volatile long maxObjectCount;
+
+    // An object restoration event listeners.
+    private final CopyOnWriteArraySet<RestoredObjectListener> listeners = new CopyOnWriteArraySet<>();
+
+    // An object restoration event listeners subscribed to path prefixes.
+    private final RestoredObjectListenerTrie prefixListeners = new RestoredObjectListenerTrie();
+
+    // The objects restored on expiration not delivered yet.
+    private final Queue<PathAndSuspendedObject> pendingRestorations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingRestorationCount = new AtomicInteger();
+    private volatile int maxRestorationBacklog = DEFAULT_MAX_RESTORATION_BACKLOG;
+
+    // Is held while delivering the queued objects, so they are delivered in order by one thread at a time.
+    private final Object deliveryLock = new Object();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+}
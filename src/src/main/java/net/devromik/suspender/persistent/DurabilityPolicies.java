@@ -0,0 +1,148 @@
+package net.devromik.suspender.persistent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import net.devromik.suspender.utils.Path;
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A registry of the durability policies (net.devromik.suspender.persistent.DurabilityPolicy)
+ * of net.devromik.suspender.persistent.PersistentSuspender.
+ *
+ * A policy can be registered for a path prefix.
+ * The policy of an operation with a path is the one registered for the longest prefix of the path
+ * or the default one (DurabilityPolicy.syncEveryWrite() unless it is changed).
+ * An operation with a path pattern is performed under the strictest of the policies,
+ * because the pattern can match the paths of any of them.
+ * An operation which restores the objects by a prefix is performed under the strictest of the policy of the prefix
+ * and the policies registered for the longer prefixes, because it removes the objects under them as well.
+ *
+ * The policies must be registered before the suspender is started.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class DurabilityPolicies {
+
+    public DurabilityPolicies() {
+        this(DurabilityPolicy.syncEveryWrite());
+    }
+
+    public DurabilityPolicies(DurabilityPolicy defaultPolicy) {
+        this.defaultPolicy = checkNotNull(defaultPolicy);
+    }
+
+    /**
+     * Registers the {@code policy} for the operations with the paths with the {@code prefix}.
+     *
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() == 0}.
+     */
+    public synchronized void register(Path prefix, DurabilityPolicy policy) {
+        checkArgument(prefix.getSegmentCount() > 0);
+        checkNotNull(policy);
+        PrefixNode node = prefixRoot;
+
+        for (String segment : prefix) {
+            node = node.children.computeIfAbsent(segment, (s) -> new PrefixNode());
+        }
+
+        node.policy = policy;
+        registeredPolicies.add(policy);
+    }
+
+    public DurabilityPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    /**
+     * @return the policy registered for the longest prefix of the {@code path} or the default one.
+     */
+    public DurabilityPolicy policyFor(Path path) {
+        DurabilityPolicy policy = defaultPolicy;
+        PrefixNode node = prefixRoot;
+
+        for (String segment : path) {
+            node = node.children.get(segment);
+
+            if (node == null) {
+                break;
+            }
+
+            if (node.policy != null) {
+                policy = node.policy;
+            }
+        }
+
+        return policy;
+    }
+
+    /**
+     * @return the strictest of the policy of the {@code prefix} (see policyFor())
+     *         and the policies registered for the prefixes having the {@code prefix} as a prefix.
+     */
+    public DurabilityPolicy strictestFor(Path prefix) {
+        DurabilityPolicy strictest = policyFor(prefix);
+        PrefixNode node = prefixRoot;
+
+        for (String segment : prefix) {
+            node = node.children.get(segment);
+
+            if (node == null) {
+                return strictest;
+            }
+        }
+
+        return strictestBelow(node, strictest);
+    }
+
+    private static DurabilityPolicy strictestBelow(PrefixNode node, DurabilityPolicy strictest) {
+        for (PrefixNode child : node.children.values()) {
+            if (child.policy != null && strictest.isWeakerThan(child.policy)) {
+                strictest = child.policy;
+            }
+
+            strictest = strictestBelow(child, strictest);
+        }
+
+        return strictest;
+    }
+
+    /**
+     * @return the policy under which an operation waits most for durability.
+     */
+    public synchronized DurabilityPolicy strictest() {
+        DurabilityPolicy strictest = defaultPolicy;
+
+        for (DurabilityPolicy policy : registeredPolicies) {
+            if (strictest.isWeakerThan(policy)) {
+                strictest = policy;
+            }
+        }
+
+        return strictest;
+    }
+
+    /**
+     * @return the default policy and the registered ones.
+     */
+    public synchronized Set<DurabilityPolicy> all() {
+        Set<DurabilityPolicy> all = new LinkedHashSet<>();
+        all.add(defaultPolicy);
+        all.addAll(registeredPolicies);
+
+        return all;
+    }
+
+    // ****************************** //
+
+    private static final class PrefixNode {
+
+        final Map<String, PrefixNode> children = new ConcurrentHashMap<>();
+        volatile DurabilityPolicy policy;
+    }
+
+    // ****************************** //
+
+    private final DurabilityPolicy defaultPolicy;
+    private final PrefixNode prefixRoot = new PrefixNode();
+    private final Set<DurabilityPolicy> registeredPolicies = Collections.newSetFromMap(new IdentityHashMap<>());
+}
@@ -0,0 +1,123 @@
+package net.devromik.suspender.persistent;
+
+import java.time.Duration;
+import net.devromik.suspender.utils.*;
+import static java.time.Duration.*;
+
+/**
+ * Defines when the modifications made by net.devromik.suspender.persistent.PersistentSuspender become durable:
+ *     - SYNC: a modifying operation returns only after its records are synced,
+ *       the concurrent operations share one fsync (see net.devromik.suspender.persistent.WriteAheadLog),
+ *     - GROUP_COMMIT: the same, but the thread that syncs waits for the group commit window before,
+ *       so more operations share one fsync at the cost of latency,
+ *     - PERIODIC: a modifying operation does not wait for its records to be synced,
+ *       they are synced by a special thread once in the sync interval,
+ *       so the modifications made within the last interval can be lost on a crash.
+ *
+ * The policies are chosen by path prefix (see net.devromik.suspender.persistent.DurabilityPolicies).
+ * Each policy reports the latencies (in microseconds) and the batch sizes (the numbers of the synced records)
+ * of the fsyncs made on its behalf.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class DurabilityPolicy {
+
+    public enum Mode {
+        SYNC,
+        GROUP_COMMIT,
+        PERIODIC
+    }
+
+    public static final Duration MIN_GROUP_COMMIT_WINDOW = ofNanos(1000L);
+    public static final Duration MAX_GROUP_COMMIT_WINDOW = ofMillis(100L);
+
+    public static final Duration MIN_SYNC_INTERVAL = ofMillis(1L);
+    public static final Duration MAX_SYNC_INTERVAL = ofMinutes(1L);
+
+    // ****************************** //
+
+    private DurabilityPolicy(Mode mode, Duration groupCommitWindow, Duration syncInterval) {
+        this.mode = mode;
+        this.groupCommitWindow = groupCommitWindow;
+        this.syncInterval = syncInterval;
+    }
+
+    public static DurabilityPolicy syncEveryWrite() {
+        return new DurabilityPolicy(Mode.SYNC, ZERO, ZERO);
+    }
+
+    public static DurabilityPolicy groupCommit(Duration groupCommitWindow) {
+        return new DurabilityPolicy(
+            Mode.GROUP_COMMIT,
+            Durations.adjust(groupCommitWindow, MIN_GROUP_COMMIT_WINDOW, MAX_GROUP_COMMIT_WINDOW),
+            ZERO);
+    }
+
+    public static DurabilityPolicy periodic(Duration syncInterval) {
+        return new DurabilityPolicy(
+            Mode.PERIODIC,
+            ZERO,
+            Durations.adjust(syncInterval, MIN_SYNC_INTERVAL, MAX_SYNC_INTERVAL));
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the group commit window or zero if the mode is not GROUP_COMMIT.
+     */
+    public Duration getGroupCommitWindow() {
+        return groupCommitWindow;
+    }
+
+    /**
+     * @return the sync interval or zero if the mode is not PERIODIC.
+     */
+    public Duration getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * @return {@code true} iff an operation under this policy waits less for durability than under the {@code other} one.
+     */
+    boolean isWeakerThan(DurabilityPolicy other) {
+        return
+            mode.compareTo(other.mode) > 0 ||
+            mode == other.mode && groupCommitWindow.compareTo(other.groupCommitWindow) > 0;
+    }
+
+    public Histogram getSyncLatencies() {
+        return syncLatencies;
+    }
+
+    public Histogram getSyncBatchSizes() {
+        return syncBatchSizes;
+    }
+
+    void recordSync(long latencyNanos, long batchSize) {
+        syncLatencies.record(latencyNanos / 1000L);
+        syncBatchSizes.record(batchSize);
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case GROUP_COMMIT:
+                return mode + "(" + groupCommitWindow + ")";
+            case PERIODIC:
+                return mode + "(" + syncInterval + ")";
+            default:
+                return mode.toString();
+        }
+    }
+
+    // ****************************** //
+
+    private final Mode mode;
+    private final Duration groupCommitWindow;
+    private final Duration syncInterval;
+
+    private final Histogram syncLatencies = new Histogram();
+    private final Histogram syncBatchSizes = new Histogram();
+}
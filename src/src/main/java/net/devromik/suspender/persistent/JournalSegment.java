@@ -0,0 +1,241 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * A fixed-size memory-mapped file of the write-ahead log (net.devromik.suspender.persistent.WriteAheadLog).
+ *
+ * The records are written to the mapped buffer one after another, so appending a record is not a system call.
+ * The file is preallocated and filled with zeros, so a zero length of a record marks the end of the records.
+ * A record is never split between segments: if it does not fit into the rest of the segment,
+ * the log continues with the next one.
+ *
+ * @author Shulnyaev Roman
+ */
+final class JournalSegment {
+
+    static final String FILE_NAME_PREFIX = "journal-";
+    static final String FILE_NAME_SUFFIX = ".seg";
+
+    // ****************************** //
+
+    private JournalSegment(long seqNumber, File file, MappedByteBuffer buffer) {
+        this.seqNumber = seqNumber;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates a new segment with the sequence number {@code seqNumber} in the directory {@code dir}.
+     */
+    static JournalSegment create(File dir, long seqNumber, int size) throws IOException {
+        File file = fileOf(dir, seqNumber);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+            return new JournalSegment(seqNumber, file, randomAccessFile.getChannel().map(READ_WRITE, 0L, size));
+        }
+    }
+
+    /**
+     * Opens an existing segment.
+     */
+    static JournalSegment open(File dir, long seqNumber) throws IOException {
+        File file = fileOf(dir, seqNumber);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            return new JournalSegment(seqNumber, file, channel.map(READ_WRITE, 0L, channel.size()));
+        }
+    }
+
+    static File fileOf(File dir, long seqNumber) {
+        return new File(dir, format("%s%020d%s", FILE_NAME_PREFIX, seqNumber, FILE_NAME_SUFFIX));
+    }
+
+    /**
+     * @return the sequence numbers of the segments in the directory {@code dir} in ascending order.
+     */
+    static List<Long> listSeqNumbers(File dir) {
+        List<Long> seqNumbers = new ArrayList<>();
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+
+                if (fileName.startsWith(FILE_NAME_PREFIX) && fileName.endsWith(FILE_NAME_SUFFIX)) {
+                    seqNumbers.add(Long.parseLong(fileName.substring(FILE_NAME_PREFIX.length(), fileName.length() - FILE_NAME_SUFFIX.length())));
+                }
+            }
+        }
+
+        Collections.sort(seqNumbers);
+        return seqNumbers;
+    }
+
+    /**
+     * Appends a record whose body of {@code bodySize} bytes is written by the {@code bodyWriter}
+     * straight to the mapped memory.
+     * Must be called by one thread at a time.
+     *
+     * @return {@code false} iff there is no room for the record in the segment.
+     *
+     * @throws IllegalArgumentException when the {@code bodyWriter} does not write exactly {@code bodySize} bytes.
+     *         The segment is not changed in this case.
+     */
+    boolean append(int bodySize, RecordBodyWriter bodyWriter) {
+        if (buffer.remaining() < WriteAheadLog.RECORD_HEADER_SIZE + bodySize) {
+            return false;
+        }
+
+        int start = buffer.position();
+        buffer.position(start + WriteAheadLog.RECORD_HEADER_SIZE);
+
+        // The writer cannot go beyond the body.
+        ByteBuffer body = buffer.slice();
+        body.limit(bodySize);
+
+        try {
+            bodyWriter.write(body);
+            checkArgument(!body.hasRemaining(), "The record body is less than declared");
+        }
+        catch (BufferOverflowException exception) {
+            rollBack(start, bodySize);
+            throw new IllegalArgumentException("The record body is greater than declared", exception);
+        }
+        catch (RuntimeException exception) {
+            rollBack(start, bodySize);
+            throw exception;
+        }
+
+        body.flip();
+        buffer.putInt(start, bodySize);
+        buffer.putInt(start + Integer.BYTES, WriteAheadLog.checksumOf(body));
+        buffer.position(start + WriteAheadLog.RECORD_HEADER_SIZE + bodySize);
+
+        return true;
+    }
+
+    interface RecordBodyWriter {
+        void write(ByteBuffer body);
+    }
+
+    /**
+     * Erases a partially written record, so it is not taken as a torn one.
+     */
+    private void rollBack(int start, int bodySize) {
+        for (int i = start; i < start + WriteAheadLog.RECORD_HEADER_SIZE + bodySize; ++i) {
+            buffer.put(i, (byte)0);
+        }
+
+        buffer.position(start);
+    }
+
+    /**
+     * Passes the bodies of the valid records to the {@code consumer}
+     * and positions the segment after the last of them.
+     *
+     * @return {@code true} iff the records end normally
+     *         ({@code false} means that a torn or corrupted record is found).
+     */
+    boolean replay(RecordBodyConsumer consumer) throws IOException {
+        buffer.position(0);
+
+        while (buffer.remaining() >= WriteAheadLog.RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+
+            if (length == 0) {
+                buffer.position(start);
+                return true;
+            }
+
+            if (length < 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                return false;
+            }
+
+            ByteBuffer body = buffer.slice();
+            body.limit(length);
+
+            if (WriteAheadLog.checksumOf(body) != checksum) {
+                buffer.position(start);
+                return false;
+            }
+
+            consumer.accept(body);
+            buffer.position(start + WriteAheadLog.RECORD_HEADER_SIZE + length);
+        }
+
+        return true;
+    }
+
+    interface RecordBodyConsumer {
+        void accept(ByteBuffer body) throws IOException;
+    }
+
+    /**
+     * Marks the current position as the end of the records,
+     * so a torn record at the position will not be read anymore.
+     */
+    void terminate() {
+        if (buffer.remaining() >= Integer.BYTES) {
+            buffer.putInt(buffer.position(), 0);
+        }
+
+        buffer.force();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Unmaps the segment, so its file can be deleted or opened again right away.
+     * The segment must not be used after that.
+     */
+    void release() {
+        unmap(buffer);
+    }
+
+    /**
+     * There is no public API to unmap a buffer, so it is done on the best-effort basis:
+     * if the platform does not allow it, the mapping is released when the buffer is garbage collected.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        try {
+            try {
+                // Java 9+.
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                unsafeField.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafeField.get(null), buffer);
+            }
+            catch (NoSuchMethodException exception) {
+                // Java 8.
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException exception) {
+            // Nothing to do.
+        }
+    }
+
+    // ****************************** //
+
+    final long seqNumber;
+    final File file;
+    final MappedByteBuffer buffer;
+}
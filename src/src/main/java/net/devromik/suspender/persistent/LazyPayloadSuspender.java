@@ -0,0 +1,377 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.time.*;
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import static com.google.common.base.Preconditions.*;
+import static java.lang.Thread.*;
+import static java.time.Duration.ofSeconds;
+import static java.util.stream.Collectors.toList;
+import net.devromik.suspender.*;
+import net.devromik.suspender.mem.MemSuspender;
+import net.devromik.suspender.utils.*;
+import static net.devromik.slf4jUtils.Slf4jUtils.logException;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A suspender which keeps the suspended objects on the disk and only their references in memory.
+ *
+ * When an object is suspended, it is encoded by the codecs (net.devromik.suspender.persistent.PayloadCodecs)
+ * to an append-only memory-mapped payload store (net.devromik.suspender.persistent.PayloadStore),
+ * and net.devromik.suspender.mem.MemSuspender keeps only a reference to it (a segment and an offset).
+ * So the heap taken by a suspension does not depend on the size of the object.
+ * The object is decoded from the mapped memory only when it is delivered:
+ * to a restored object listener, by peekEarliest(), stream(), replace() or compute().
+ * An object restored to several listeners is decoded for each of them.
+ *
+ * There is a special thread that deletes the segments of the payload store which are not referenced anymore.
+ * The name of that thread is payload collector.
+ * The segments are not compacted, so a segment with a single object still suspended stays on the disk (see PayloadStore).
+ *
+ * The payload store is not durable: it is a scratch space which is cleared when the suspender is created or closed.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class LazyPayloadSuspender implements Suspender, Closeable {
+
+    public static final String PAYLOAD_COLLECTOR_THREAD_NAME = "Suspender Payload Collector";
+
+    /**
+     * Size of a segment of the payload store in bytes.
+     */
+    public static final int MIN_PAYLOAD_SEGMENT_SIZE = 4 * 1024;
+    public static final int MAX_PAYLOAD_SEGMENT_SIZE = 1024 * 1024 * 1024;
+    public static final int DEFAULT_PAYLOAD_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Time-out of waiting for an unreferenced segment of the payload store.
+     */
+    public static final Duration PAYLOAD_COLLECTOR_SLEEP_TIME = ofSeconds(1L);
+
+    // ****************************** //
+
+    /**
+     * @param payloadDir the directory of the payload store.
+     *
+     * @throws UncheckedIOException when the payload store cannot be created.
+     */
+    public LazyPayloadSuspender(File payloadDir) {
+        this(payloadDir, new MemSuspender(), new PayloadCodecs(), DEFAULT_PAYLOAD_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param payloadDir the directory of the payload store.
+     * @param memSuspender the in-memory engine. It must be empty and must not be used directly.
+     * @param codecs the codecs of the suspended objects.
+     *
+     * @throws UncheckedIOException when the payload store cannot be created.
+     */
+    public LazyPayloadSuspender(File payloadDir, MemSuspender memSuspender, PayloadCodecs codecs, int payloadSegmentSize) {
+        this.memSuspender = memSuspender;
+        payloadSegmentSize = Ints.adjust(payloadSegmentSize, MIN_PAYLOAD_SEGMENT_SIZE, MAX_PAYLOAD_SEGMENT_SIZE);
+
+        try {
+            payloadStore = new PayloadStore(payloadDir, codecs, payloadSegmentSize);
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * @return the number of the segment files of the payload store.
+     */
+    public int getPayloadSegmentCount() {
+        return payloadStore.getSegmentCount();
+    }
+
+    @Override
+    public void start() {
+        synchronized (lifeCycleLock) {
+            checkState(!started);
+            memSuspender.start();
+
+            // Creating and starting the payload collector.
+            makeAndStartPayloadCollector();
+
+            started = true;
+        }
+    }
+
+    private void makeAndStartPayloadCollector() {
+        // Creating the payload collector.
+        payloadCollector = new Thread(
+            () -> {
+                while (!currentThread().isInterrupted()) {
+                    try {
+                        payloadStore.deleteUnreachableSegments(PAYLOAD_COLLECTOR_SLEEP_TIME.toMillis());
+                    }
+                    catch (InterruptedException exception) {
+                        currentThread().interrupt();
+                    }
+                    catch (Exception exception) {
+                        logException(logger, exception);
+                    }
+                }
+            },
+            PAYLOAD_COLLECTOR_THREAD_NAME);
+
+        // Starting the payload collector.
+        payloadCollector.start();
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lifeCycleLock) {
+            checkState(started);
+            payloadCollector.interrupt();
+
+            try {
+                logger.info("Waiting for \"{}\" to be stopped...", PAYLOAD_COLLECTOR_THREAD_NAME);
+                payloadCollector.join();
+                logger.info("\"{}\" has been stopped", PAYLOAD_COLLECTOR_THREAD_NAME);
+            }
+            catch (InterruptedException exception) {
+                logger.error("Interrupted while waiting for \"{}\" to be stopped", PAYLOAD_COLLECTOR_THREAD_NAME);
+            }
+
+            memSuspender.stop();
+            started = false;
+        }
+    }
+
+    /**
+     * Deletes the payload store.
+     * The suspender must be stopped before.
+     *
+     * @throws UncheckedIOException when the payload store cannot be deleted.
+     */
+    @Override
+    public void close() {
+        try {
+            payloadStore.close();
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    @Override
+    public void addRestoredObjectListener(RestoredObjectListener listener) {
+        memSuspender.addRestoredObjectListener(new LoadingListener(listener));
+    }
+
+    @Override
+    public void removeRestoredObjectListener(RestoredObjectListener listener) {
+        memSuspender.removeRestoredObjectListener(new LoadingListener(listener));
+    }
+
+    @Override
+    public void addRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        memSuspender.addRestoredObjectListener(prefix, new LoadingListener(listener));
+    }
+
+    @Override
+    public void removeRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        memSuspender.removeRestoredObjectListener(prefix, new LoadingListener(listener));
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(Path path) {
+        return memSuspender.hasObjectsSuspendedBy(path);
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(PathPattern pattern) {
+        return memSuspender.hasObjectsSuspendedBy(pattern);
+    }
+
+    @Override
+    public long countSuspendedBy(Path path) {
+        return memSuspender.countSuspendedBy(path);
+    }
+
+    @Override
+    public List<SuspendedObject> peekEarliest(Path prefix, int maxCount) {
+        return memSuspender.peekEarliest(prefix, maxCount).stream().map(this::load).collect(toList());
+    }
+
+    @Override
+    public Stream<SuspendedObject> stream(Path prefix) {
+        return memSuspender.stream(prefix).map(this::load);
+    }
+
+    /**
+     * @throws IllegalArgumentException when there is no codec for the {@code object}.
+     */
+    @Override
+    public void suspend(Path path, Object object, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        memSuspender.suspend(path, store(path, object), duration);
+    }
+
+    @Override
+    public boolean suspendIfAbsent(Path path, Object object, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+
+        // The payload of an object which is not suspended is never referenced, so it is collected.
+        return memSuspender.suspendIfAbsent(path, store(path, object), duration);
+    }
+
+    @Override
+    public boolean replace(Path path, Object expectedObject, Object newObject, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        PayloadStore.Ref newRef = null;
+
+        while (true) {
+            SuspendedObject suspendedObject = memSuspender.getSuspendedObject(path);
+
+            if (suspendedObject == null || !Objects.equals(load(suspendedObject).getObject(), expectedObject)) {
+                return false;
+            }
+
+            if (newRef == null) {
+                newRef = store(path, newObject);
+            }
+
+            // The references are compared by identity,
+            // so the object is replaced only if it has not been changed since it was loaded.
+            if (memSuspender.replace(path, suspendedObject.getObject(), newRef, duration)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public Object compute(Path path, UnaryOperator<Object> remappingFunction, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        checkNotNull(remappingFunction);
+        Object[] computedObject = new Object[1];
+
+        memSuspender.compute(
+            path,
+            (ref) -> {
+                computedObject[0] = remappingFunction.apply(ref != null ? load(path, ref) : null);
+                return computedObject[0] != null ? store(path, computedObject[0]) : null;
+            },
+            duration);
+
+        return computedObject[0];
+    }
+
+    @Override
+    public void restore(Path path) {
+        memSuspender.restore(path);
+    }
+
+    @Override
+    public void restore(Path path, Collection<RestoredObjectListener> listeners) {
+        memSuspender.restore(path, loading(listeners));
+    }
+
+    @Override
+    public void restore(PathPattern pattern) {
+        memSuspender.restore(pattern);
+    }
+
+    @Override
+    public void restore(PathPattern pattern, Collection<RestoredObjectListener> listeners) {
+        memSuspender.restore(pattern, loading(listeners));
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff) {
+        memSuspender.restoreDueBefore(prefix, cutoff);
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff, Collection<RestoredObjectListener> listeners) {
+        memSuspender.restoreDueBefore(prefix, cutoff, loading(listeners));
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path) {
+        memSuspender.restoreObjectWithMinRestorationTime(path);
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path, Collection<RestoredObjectListener> listeners) {
+        memSuspender.restoreObjectWithMinRestorationTime(path, loading(listeners));
+    }
+
+    // ****************************** //
+
+    private PayloadStore.Ref store(Path path, Object object) {
+        try {
+            return payloadStore.store(path, object);
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private SuspendedObject load(SuspendedObject suspendedObject) {
+        return new SuspendedObject(
+            suspendedObject.getPath(),
+            load(suspendedObject.getPath(), suspendedObject.getObject()),
+            suspendedObject.getRestorationTime());
+    }
+
+    private Object load(Path path, Object ref) {
+        try {
+            return payloadStore.load((PayloadStore.Ref)ref);
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException("Cannot load the object suspended by " + path, exception);
+        }
+    }
+
+    private Collection<RestoredObjectListener> loading(Collection<RestoredObjectListener> listeners) {
+        return listeners.stream().map(LoadingListener::new).collect(toList());
+    }
+
+    /**
+     * Loads a restored object before passing it to the listener.
+     * Two such listeners are equal iff their listeners are equal, so they can be removed.
+     */
+    private final class LoadingListener implements RestoredObjectListener {
+
+        LoadingListener(RestoredObjectListener listener) {
+            this.listener = checkNotNull(listener);
+        }
+
+        @Override
+        public void onObjectRestored(Path suspensionPath, Object restoredObject) throws Exception {
+            listener.onObjectRestored(suspensionPath, load(suspensionPath, restoredObject));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof LoadingListener && listener.equals(((LoadingListener)other).listener);
+        }
+
+        @Override
+        public int hashCode() {
+            return listener.hashCode();
+        }
+
+        // ****************************** //
+
+        final RestoredObjectListener listener;
+    }
+
+    // ****************************** //
+
+    final MemSuspender memSuspender;
+    final PayloadStore payloadStore;
+
+    // Life cycle.
+    private final Object lifeCycleLock = new Object();
+    private boolean started;
+    private Thread payloadCollector;
+
+    final static Logger logger = getLogger(LazyPayloadSuspender.class);
+}
@@ -0,0 +1,78 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import net.devromik.suspender.mem.MemSuspender;
+import net.devromik.suspender.utils.Ints;
+import static net.devromik.suspender.persistent.PersistentSuspender.*;
+
+/**
+ * Dumps the suspended objects of net.devromik.suspender.mem.MemSuspender to a file and loads them back,
+ * so the pending suspensions survive a planned restart (for example, a rolling deploy)
+ * without a write-ahead log.
+ *
+ * A dump is consistent per division: each division is copied within a single critical section,
+ * so the suspender can be dumped while it is running.
+ * The objects are streamed to the file in the format of a snapshot (net.devromik.suspender.persistent.Snapshot)
+ * and are encoded by the codecs (net.devromik.suspender.persistent.PayloadCodecs).
+ * The dump is written to a temporary file which is renamed when it is complete, so a dump is never torn.
+ *
+ * The restoration times are absolute,
+ * so the objects which are expired by the time of loading are restored as soon as the suspender is started.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class MemSuspenderDumps {
+
+    private MemSuspenderDumps() {}
+
+    /**
+     * Dumps the objects suspended by the {@code suspender} to the {@code file}.
+     * If the {@code file} exists then it is replaced.
+     *
+     * @throws IllegalArgumentException when there is no codec for a suspended object.
+     * @throws UncheckedIOException when the dump cannot be written.
+     */
+    public static void dump(MemSuspender suspender, File file, PayloadCodecs codecs) {
+        try {
+            Snapshot.write(file, suspender, codecs);
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Loads the objects from the {@code file} to the {@code suspender}.
+     *
+     * @return the number of the loaded objects.
+     *
+     * @throws UncheckedIOException when the dump cannot be read.
+     */
+    public static long load(File file, MemSuspender suspender, PayloadCodecs codecs) {
+        return load(file, suspender, codecs, DEFAULT_RECOVERY_THREAD_COUNT);
+    }
+
+    /**
+     * Loads the objects from the {@code file} to the {@code suspender}.
+     * The divisions of the {@code suspender} are filled by {@code threadCount} threads in parallel
+     * bypassing the critical sections (see net.devromik.suspender.persistent.ParallelReplayer),
+     * so the {@code suspender} must not be used until the method returns.
+     *
+     * @return the number of the loaded objects.
+     *
+     * @throws UncheckedIOException when the dump cannot be read.
+     */
+    public static long load(File file, MemSuspender suspender, PayloadCodecs codecs, int threadCount) {
+        threadCount = Ints.adjust(threadCount, MIN_RECOVERY_THREAD_COUNT, MAX_RECOVERY_THREAD_COUNT);
+
+        try (ParallelReplayer replayer = new ParallelReplayer(suspender, codecs, threadCount)) {
+            Snapshot.replay(file, replayer);
+            replayer.finish();
+
+            return replayer.getRecordCount();
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
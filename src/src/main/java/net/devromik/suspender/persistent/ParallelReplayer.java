@@ -0,0 +1,254 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import net.devromik.suspender.mem.*;
+import net.devromik.suspender.utils.Path;
+import static java.lang.Math.min;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_PATH_SEGMENT_COUNT;
+
+/**
+ * Replays the records of the snapshot and of the write-ahead log to net.devromik.suspender.mem.MemSuspender
+ * by several threads.
+ *
+ * The records are read by one thread (the caller of accept()).
+ * It reads only the type and the path of a record and passes the rest to the worker owning the division of the path
+ * (the division with the index i is owned by the worker with the index i % workerCount).
+ * The workers decode the objects and apply the records to the divisions by the loaders
+ * (see MemSuspender.makeDivisionLoader()), so the critical sections are not entered.
+ *
+ * The records of a division are applied in the order they are read,
+ * and the records of different divisions do not affect each other,
+ * so the result is the same as the one of the sequential replay.
+ * A restoration record with a single-segment prefix spans all the divisions, so it is passed to all the workers.
+ *
+ * The records are passed to a worker in batches through a bounded queue,
+ * so the reading thread does not get too far ahead of the workers.
+ *
+ * @author Shulnyaev Roman
+ */
+final class ParallelReplayer implements JournalSegment.RecordBodyConsumer, Closeable {
+
+    static final String WORKER_THREAD_NAME_PREFIX = "Suspender Recovery Worker #";
+
+    static final int BATCH_SIZE = 1024;
+    static final int MAX_QUEUED_BATCH_COUNT_PER_WORKER = 16;
+
+    // ****************************** //
+
+    ParallelReplayer(MemSuspender memSuspender, PayloadCodecs codecs, int workerCount) {
+        this.memSuspender = memSuspender;
+        this.codecs = codecs;
+
+        int divCount = memSuspender.getDivisionCount();
+        loaders = new MutationListener[divCount];
+
+        for (int i = 0; i < divCount; ++i) {
+            loaders[i] = memSuspender.makeDivisionLoader(i);
+        }
+
+        workers = new Worker[min(workerCount, divCount)];
+
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public void accept(ByteBuffer body) throws IOException {
+        checkNoFailure();
+
+        byte type;
+        Path path;
+
+        try {
+            type = body.get();
+            path = WriteAheadLog.readPath(body);
+        }
+        catch (BufferUnderflowException exception) {
+            throw new IOException("A write-ahead log record is malformed", exception);
+        }
+
+        ++recordCount;
+
+        if (path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT) {
+            int divIndex = memSuspender.getDivisionIndex(path);
+            workers[divIndex % workers.length].add(new Record(type, path, body, divIndex));
+        }
+        else {
+            Record record = new Record(type, path, body, ALL_DIVISIONS);
+
+            for (Worker worker : workers) {
+                worker.add(record);
+            }
+        }
+    }
+
+    /**
+     * Waits for all the passed records to be applied and completes loading (see MemSuspender.completeLoading()).
+     *
+     * @throws IOException when a record cannot be applied.
+     */
+    void finish() throws IOException {
+        close();
+        checkNoFailure();
+        memSuspender.completeLoading();
+    }
+
+    private void checkNoFailure() throws IOException {
+        Exception failure = this.failure.get();
+
+        if (failure != null) {
+            throw new IOException("Cannot replay a record", failure);
+        }
+    }
+
+    /**
+     * Stops the workers after they apply all the passed records.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        for (Worker worker : workers) {
+            worker.flush();
+            worker.put(END);
+        }
+
+        for (Worker worker : workers) {
+            try {
+                worker.join();
+            }
+            catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for \"" + worker.getName() + "\" to be stopped");
+            }
+        }
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    int getWorkerCount() {
+        return workers.length;
+    }
+
+    // ****************************** //
+
+    private final class Worker extends Thread {
+
+        Worker(int index) {
+            super(WORKER_THREAD_NAME_PREFIX + index);
+            this.index = index;
+        }
+
+        void add(Record record) throws IOException {
+            batch.add(record);
+
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (!batch.isEmpty()) {
+                put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        void put(List<Record> batch) throws IOException {
+            try {
+                queue.put(batch);
+            }
+            catch (InterruptedException exception) {
+                currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while passing records to \"" + getName() + "\"");
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<Record> batch;
+
+                while ((batch = queue.take()) != END) {
+                    // After a failure the records are only drained, so the reading thread is never blocked.
+                    if (failure.get() == null) {
+                        apply(batch);
+                    }
+                }
+            }
+            catch (InterruptedException exception) {
+                failure.compareAndSet(null, exception);
+            }
+        }
+
+        private void apply(List<Record> batch) {
+            try {
+                for (Record record : batch) {
+                    if (record.divIndex != ALL_DIVISIONS) {
+                        WriteAheadLog.replayRecord(record.type, record.path, record.body, codecs, loaders[record.divIndex]);
+                    }
+                    else {
+                        for (int divIndex = index; divIndex < loaders.length; divIndex += workers.length) {
+                            WriteAheadLog.replayRecord(record.type, record.path, record.body.duplicate(), codecs, loaders[divIndex]);
+                        }
+                    }
+                }
+            }
+            catch (Exception exception) {
+                failure.compareAndSet(null, exception);
+            }
+        }
+
+        // ****************************** //
+
+        final int index;
+
+        // Is accessed by the reading thread only.
+        List<Record> batch = new ArrayList<>(BATCH_SIZE);
+
+        final BlockingQueue<List<Record>> queue = new ArrayBlockingQueue<>(MAX_QUEUED_BATCH_COUNT_PER_WORKER);
+    }
+
+    private static final class Record {
+
+        Record(byte type, Path path, ByteBuffer body, int divIndex) {
+            this.type = type;
+            this.path = path;
+            this.body = body;
+            this.divIndex = divIndex;
+        }
+
+        // ****************************** //
+
+        final byte type;
+        final Path path;
+        final ByteBuffer body;
+        final int divIndex;
+    }
+
+    private static final int ALL_DIVISIONS = -1;
+    private static final List<Record> END = new ArrayList<>();
+
+    // ****************************** //
+
+    private final MemSuspender memSuspender;
+    private final PayloadCodecs codecs;
+    private final MutationListener[] loaders;
+    private final Worker[] workers;
+
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private long recordCount;
+    private boolean closed;
+}
@@ -0,0 +1,33 @@
+package net.devromik.suspender.persistent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the objects suspended by net.devromik.suspender.persistent.PersistentSuspender
+ * to the write-ahead log and decodes them back.
+ *
+ * A codec writes an object straight to the buffer of the log (a memory-mapped segment),
+ * so it has to know the size of the encoded object in advance.
+ * Codecs are registered in net.devromik.suspender.persistent.PayloadCodecs.
+ *
+ * @author Shulnyaev Roman
+ */
+public interface PayloadCodec<T> {
+
+    /**
+     * @return the exact number of bytes which encode() writes for the {@code object}.
+     */
+    int sizeOf(T object);
+
+    /**
+     * Writes the {@code object} to the {@code buffer} starting from its position.
+     * The buffer has at least {@code sizeOf(object)} bytes remaining.
+     */
+    void encode(T object, ByteBuffer buffer);
+
+    /**
+     * Reads an object from the {@code buffer}.
+     * The remaining bytes of the buffer are exactly the ones written by encode().
+     */
+    T decode(ByteBuffer buffer);
+}
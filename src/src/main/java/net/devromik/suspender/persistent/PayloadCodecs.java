@@ -0,0 +1,458 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import static com.google.common.base.Preconditions.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import net.devromik.suspender.utils.Path;
+
+/**
+ * A registry of the codecs (net.devromik.suspender.persistent.PayloadCodec)
+ * of the objects suspended by net.devromik.suspender.persistent.PersistentSuspender.
+ *
+ * A codec can be registered for a type or for a path prefix.
+ * The codec of an object suspended by a path is chosen as follows:
+ *     - the codec registered for the longest prefix of the path (if any),
+ *     - the codec registered for the class of the object (if any),
+ *     - Java serialization (the object must be serializable).
+ *
+ * The id of the codec is written to the log together with the encoded object
+ * and is used to choose the codec while decoding, so the ids must not change between restarts.
+ * There are built-in codecs for {@code byte[]}, {@code String} and the boxed primitive types.
+ *
+ * The codecs must be registered before the suspender is created, because the log is decoded on creation.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class PayloadCodecs {
+
+    public static final int NULL_CODEC_ID = 0;
+    public static final int JAVA_SERIALIZATION_CODEC_ID = 1;
+    public static final int BYTE_ARRAY_CODEC_ID = 2;
+    public static final int STRING_CODEC_ID = 3;
+    public static final int LONG_CODEC_ID = 4;
+    public static final int INTEGER_CODEC_ID = 5;
+    public static final int SHORT_CODEC_ID = 6;
+    public static final int BYTE_CODEC_ID = 7;
+    public static final int DOUBLE_CODEC_ID = 8;
+    public static final int FLOAT_CODEC_ID = 9;
+    public static final int BOOLEAN_CODEC_ID = 10;
+    public static final int CHARACTER_CODEC_ID = 11;
+
+    /**
+     * The ids less than this one are reserved for the built-in codecs.
+     */
+    public static final int MIN_CUSTOM_CODEC_ID = 64;
+
+    // ****************************** //
+
+    public static final PayloadCodec<Object> NULL = new PayloadCodec<Object>() {
+
+        @Override
+        public int sizeOf(Object object) {
+            return 0;
+        }
+
+        @Override
+        public void encode(Object object, ByteBuffer buffer) {}
+
+        @Override
+        public Object decode(ByteBuffer buffer) {
+            return null;
+        }
+    };
+
+    public static final PayloadCodec<Object> JAVA_SERIALIZATION = new PayloadCodec<Object>() {
+
+        @Override
+        public int sizeOf(Object object) {
+            return serialize(object).length;
+        }
+
+        @Override
+        public void encode(Object object, ByteBuffer buffer) {
+            buffer.put(serialize(object));
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+
+            try {
+                return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+            }
+            catch (IOException | ClassNotFoundException exception) {
+                throw new IllegalStateException("Cannot deserialize a suspended object", exception);
+            }
+        }
+    };
+
+    public static final PayloadCodec<byte[]> BYTE_ARRAY = new PayloadCodec<byte[]>() {
+
+        @Override
+        public int sizeOf(byte[] bytes) {
+            return bytes.length;
+        }
+
+        @Override
+        public void encode(byte[] bytes, ByteBuffer buffer) {
+            buffer.put(bytes);
+        }
+
+        @Override
+        public byte[] decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+
+            return bytes;
+        }
+    };
+
+    /**
+     * Encodes a string to UTF-8 straight to the buffer.
+     * Unpaired surrogates are replaced with '?'.
+     */
+    public static final PayloadCodec<String> STRING = new PayloadCodec<String>() {
+
+        @Override
+        public int sizeOf(String string) {
+            int size = 0;
+
+            for (int i = 0; i < string.length(); ++i) {
+                char c = string.charAt(i);
+
+                if (c < 0x80) {
+                    size += 1;
+                }
+                else if (c < 0x800) {
+                    size += 2;
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    size += 4;
+                    ++i;
+                }
+                else if (Character.isSurrogate(c)) {
+                    size += 1;
+                }
+                else {
+                    size += 3;
+                }
+            }
+
+            return size;
+        }
+
+        @Override
+        public void encode(String string, ByteBuffer buffer) {
+            CharsetEncoder encoder = UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+            encoder.encode(CharBuffer.wrap(string), buffer, true);
+            encoder.flush(buffer);
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer) {
+            return UTF_8.decode(buffer).toString();
+        }
+    };
+
+    public static final PayloadCodec<Long> LONG = new FixedSizePayloadCodec<Long>(Long.BYTES) {
+
+        @Override
+        public void encode(Long value, ByteBuffer buffer) {
+            buffer.putLong(value);
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    };
+
+    public static final PayloadCodec<Integer> INTEGER = new FixedSizePayloadCodec<Integer>(Integer.BYTES) {
+
+        @Override
+        public void encode(Integer value, ByteBuffer buffer) {
+            buffer.putInt(value);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    public static final PayloadCodec<Short> SHORT = new FixedSizePayloadCodec<Short>(Short.BYTES) {
+
+        @Override
+        public void encode(Short value, ByteBuffer buffer) {
+            buffer.putShort(value);
+        }
+
+        @Override
+        public Short decode(ByteBuffer buffer) {
+            return buffer.getShort();
+        }
+    };
+
+    public static final PayloadCodec<Byte> BYTE = new FixedSizePayloadCodec<Byte>(Byte.BYTES) {
+
+        @Override
+        public void encode(Byte value, ByteBuffer buffer) {
+            buffer.put(value);
+        }
+
+        @Override
+        public Byte decode(ByteBuffer buffer) {
+            return buffer.get();
+        }
+    };
+
+    public static final PayloadCodec<Double> DOUBLE = new FixedSizePayloadCodec<Double>(Double.BYTES) {
+
+        @Override
+        public void encode(Double value, ByteBuffer buffer) {
+            buffer.putDouble(value);
+        }
+
+        @Override
+        public Double decode(ByteBuffer buffer) {
+            return buffer.getDouble();
+        }
+    };
+
+    public static final PayloadCodec<Float> FLOAT = new FixedSizePayloadCodec<Float>(Float.BYTES) {
+
+        @Override
+        public void encode(Float value, ByteBuffer buffer) {
+            buffer.putFloat(value);
+        }
+
+        @Override
+        public Float decode(ByteBuffer buffer) {
+            return buffer.getFloat();
+        }
+    };
+
+    public static final PayloadCodec<Boolean> BOOLEAN = new FixedSizePayloadCodec<Boolean>(Byte.BYTES) {
+
+        @Override
+        public void encode(Boolean value, ByteBuffer buffer) {
+            buffer.put(value ? (byte)1 : (byte)0);
+        }
+
+        @Override
+        public Boolean decode(ByteBuffer buffer) {
+            return buffer.get() != 0;
+        }
+    };
+
+    public static final PayloadCodec<Character> CHARACTER = new FixedSizePayloadCodec<Character>(Character.BYTES) {
+
+        @Override
+        public void encode(Character value, ByteBuffer buffer) {
+            buffer.putChar(value);
+        }
+
+        @Override
+        public Character decode(ByteBuffer buffer) {
+            return buffer.getChar();
+        }
+    };
+
+    private static abstract class FixedSizePayloadCodec<T> implements PayloadCodec<T> {
+
+        FixedSizePayloadCodec(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int sizeOf(T object) {
+            return size;
+        }
+
+        // ****************************** //
+
+        final int size;
+    }
+
+    // ****************************** //
+
+    public PayloadCodecs() {
+        codecs.put(NULL_CODEC_ID, NULL);
+        codecs.put(JAVA_SERIALIZATION_CODEC_ID, JAVA_SERIALIZATION);
+
+        registerBuiltIn(BYTE_ARRAY_CODEC_ID, byte[].class, BYTE_ARRAY);
+        registerBuiltIn(STRING_CODEC_ID, String.class, STRING);
+        registerBuiltIn(LONG_CODEC_ID, Long.class, LONG);
+        registerBuiltIn(INTEGER_CODEC_ID, Integer.class, INTEGER);
+        registerBuiltIn(SHORT_CODEC_ID, Short.class, SHORT);
+        registerBuiltIn(BYTE_CODEC_ID, Byte.class, BYTE);
+        registerBuiltIn(DOUBLE_CODEC_ID, Double.class, DOUBLE);
+        registerBuiltIn(FLOAT_CODEC_ID, Float.class, FLOAT);
+        registerBuiltIn(BOOLEAN_CODEC_ID, Boolean.class, BOOLEAN);
+        registerBuiltIn(CHARACTER_CODEC_ID, Character.class, CHARACTER);
+    }
+
+    private <T> void registerBuiltIn(int codecId, Class<T> type, PayloadCodec<T> codec) {
+        codecs.put(codecId, codec);
+        typeToCodec.put(type, new Registration(codecId, codec));
+    }
+
+    /**
+     * Registers the {@code codec} for the objects of exactly the class {@code type}.
+     *
+     * @throws IllegalArgumentException when {@code codecId < MIN_CUSTOM_CODEC_ID}.
+     * @throws IllegalArgumentException when another codec is already registered with the {@code codecId}.
+     */
+    public synchronized <T> void register(int codecId, Class<T> type, PayloadCodec<T> codec) {
+        checkNotNull(type);
+        typeToCodec.put(type, registerId(codecId, codec));
+    }
+
+    /**
+     * Registers the {@code codec} for the objects suspended by the paths with the {@code prefix}.
+     * The codec must accept all such objects.
+     *
+     * @throws IllegalArgumentException when {@code codecId < MIN_CUSTOM_CODEC_ID}.
+     * @throws IllegalArgumentException when another codec is already registered with the {@code codecId}.
+     * @throws IllegalArgumentException when {@code prefix.getSegmentCount() == 0}.
+     */
+    public synchronized void register(int codecId, Path prefix, PayloadCodec<?> codec) {
+        checkArgument(prefix.getSegmentCount() > 0);
+        PrefixNode node = prefixRoot;
+
+        for (String segment : prefix) {
+            node = node.children.computeIfAbsent(segment, (s) -> new PrefixNode());
+        }
+
+        node.registration = registerId(codecId, codec);
+    }
+
+    private Registration registerId(int codecId, PayloadCodec<?> codec) {
+        checkArgument(codecId >= MIN_CUSTOM_CODEC_ID);
+        checkNotNull(codec);
+        PayloadCodec<?> registeredCodec = codecs.putIfAbsent(codecId, codec);
+        checkArgument(registeredCodec == null || registeredCodec == codec, "Another codec is registered with the id %s", codecId);
+
+        return new Registration(codecId, codec);
+    }
+
+    /**
+     * Chooses the codec of the {@code object} suspended by the {@code path}
+     * and prepares the object to be written.
+     *
+     * @throws IllegalArgumentException when there is no codec for the {@code object}.
+     */
+    Payload prepare(Path path, Object object) {
+        if (object == null) {
+            return new Payload(NULL_CODEC_ID, NULL, null);
+        }
+
+        Registration registration = null;
+        PrefixNode node = prefixRoot;
+
+        for (String segment : path) {
+            node = node.children.get(segment);
+
+            if (node == null) {
+                break;
+            }
+
+            if (node.registration != null) {
+                registration = node.registration;
+            }
+        }
+
+        if (registration == null) {
+            registration = typeToCodec.get(object.getClass());
+        }
+
+        if (registration != null) {
+            return new Payload(registration.codecId, registration.codec, object);
+        }
+
+        // Java serialization cannot tell the size in advance, so the object is serialized here.
+        checkArgument(object instanceof Serializable, "There is no codec for the object suspended by %s", path);
+        return new Payload(JAVA_SERIALIZATION_CODEC_ID, BYTE_ARRAY, serialize(object));
+    }
+
+    /**
+     * @return the codec registered with the {@code codecId} or {@code null} if there is no such codec.
+     */
+    PayloadCodec<?> codecOf(int codecId) {
+        return codecs.get(codecId);
+    }
+
+    static byte[] serialize(Object object) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(object);
+            out.flush();
+
+            return bytes.toByteArray();
+        }
+        catch (IOException exception) {
+            throw new IllegalArgumentException("Cannot serialize a suspended object", exception);
+        }
+    }
+
+    // ****************************** //
+
+    /**
+     * An object ready to be written together with its codec.
+     */
+    static final class Payload {
+
+        @SuppressWarnings("unchecked")
+        Payload(int codecId, PayloadCodec<?> codec, Object object) {
+            this.codecId = codecId;
+            this.codec = (PayloadCodec<Object>)codec;
+            this.object = object;
+            this.size = this.codec.sizeOf(object);
+        }
+
+        void encode(ByteBuffer buffer) {
+            codec.encode(object, buffer);
+        }
+
+        // ****************************** //
+
+        final int codecId;
+        final int size;
+        private final PayloadCodec<Object> codec;
+        private final Object object;
+    }
+
+    private static final class Registration {
+
+        @SuppressWarnings("unchecked")
+        Registration(int codecId, PayloadCodec<?> codec) {
+            this.codecId = codecId;
+            this.codec = (PayloadCodec<Object>)codec;
+        }
+
+        // ****************************** //
+
+        final int codecId;
+        final PayloadCodec<Object> codec;
+    }
+
+    private static final class PrefixNode {
+        final Map<String, PrefixNode> children = new ConcurrentHashMap<>();
+        volatile Registration registration;
+    }
+
+    // ****************************** //
+
+    private final Map<Integer, PayloadCodec<?>> codecs = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Registration> typeToCodec = new ConcurrentHashMap<>();
+    private final PrefixNode prefixRoot = new PrefixNode();
+}
@@ -0,0 +1,264 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.lang.ref.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import net.devromik.suspender.persistent.PayloadCodecs.Payload;
+import net.devromik.suspender.utils.Path;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * An append-only on-disk store of the encoded suspended objects (used by net.devromik.suspender.persistent.LazyPayloadSuspender).
+ *
+ * The objects are encoded by the codecs (net.devromik.suspender.persistent.PayloadCodecs)
+ * straight to fixed-size memory-mapped segments (an object greater than a segment gets a segment of its own).
+ * A stored object is represented by a reference (net.devromik.suspender.persistent.PayloadStore.Ref)
+ * which consists of its segment and its offset, so it takes a few bytes of the heap regardless of the size of the object.
+ * The objects are decoded from the mapped memory when they are loaded.
+ *
+ * Only the space of a record is reserved within the critical section of the store,
+ * the object is encoded to the reserved space out of it, so the suspensions do not wait for the encoding of each other.
+ *
+ * A segment is referenced only by the current one and by the references of the objects stored in it.
+ * When all of them become unreachable, the segment is reclaimed by the garbage collector,
+ * and its file is deleted by deleteUnreachableSegments().
+ * So the store never deletes the payload of an object which can still be loaded.
+ *
+ * The segments are not compacted: a segment stays on the disk as long as any object stored in it is suspended,
+ * so a single long-suspended object keeps the whole segment. Hence the disk space taken by the store
+ * is bounded by the number of the segments with live objects times the segment size rather than by the size of the live objects.
+ * A smaller segment size (see LazyPayloadSuspender) reduces this overhead when the lifetimes of the objects differ a lot.
+ *
+ * @author Shulnyaev Roman
+ */
+final class PayloadStore implements Closeable {
+
+    static final String FILE_NAME_PREFIX = "payload-";
+    static final String FILE_NAME_SUFFIX = ".seg";
+
+    // ****************************** //
+
+    /**
+     * Creates an empty store in the directory {@code dir}.
+     * The segments left in the directory (by a previous run) are deleted.
+     */
+    PayloadStore(File dir, PayloadCodecs codecs, int segmentSize) throws IOException {
+        this.dir = dir;
+        this.codecs = codecs;
+        this.segmentSize = segmentSize;
+
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create the directory " + dir);
+        }
+
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(FILE_NAME_PREFIX) && file.getName().endsWith(FILE_NAME_SUFFIX)) {
+                    WriteAheadLog.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes the {@code object} suspended by the {@code path} to the current segment.
+     *
+     * @throws IllegalArgumentException when there is no codec for the {@code object}
+     *         or the codec does not write exactly the declared number of bytes.
+     */
+    Ref store(Path path, Object object) throws IOException {
+        Payload payload = codecs.prepare(path, object);
+        int bodySize = Integer.BYTES + payload.size;
+        int recordSize = WriteAheadLog.RECORD_HEADER_SIZE + bodySize;
+        Segment segment;
+        ByteBuffer record;
+
+        // Reserving the space of the record.
+        synchronized (this) {
+            if (currentSegment == null || currentSegment.buffer.remaining() < recordSize) {
+                currentSegment = makeSegment(Math.max(segmentSize, recordSize));
+            }
+
+            segment = currentSegment;
+            record = segment.buffer.duplicate();
+            segment.buffer.position(record.position() + recordSize);
+        }
+
+        int offset = record.position();
+
+        // The codec cannot go beyond the body.
+        // If the encoding fails, the reserved space stays unused: no reference points to it.
+        ByteBuffer body = record.duplicate();
+        body.position(offset + WriteAheadLog.RECORD_HEADER_SIZE);
+        body = body.slice();
+        body.limit(bodySize);
+
+        try {
+            body.putInt(payload.codecId);
+            payload.encode(body);
+            checkArgument(!body.hasRemaining(), "The codec %s has written less bytes than declared", payload.codecId);
+        }
+        catch (BufferOverflowException exception) {
+            throw new IllegalArgumentException("The codec " + payload.codecId + " has written more bytes than declared", exception);
+        }
+
+        body.flip();
+        record.putInt(bodySize);
+        record.putInt(WriteAheadLog.checksumOf(body));
+
+        return new Ref(segment, offset);
+    }
+
+    private Segment makeSegment(int size) throws IOException {
+        File file = new File(dir, format("%s%020d%s", FILE_NAME_PREFIX, nextSegmentSeqNumber++, FILE_NAME_SUFFIX));
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+            Segment segment = new Segment(randomAccessFile.getChannel().map(READ_WRITE, 0L, size));
+            segmentFiles.add(new SegmentReference(segment, file, unreachableSegments));
+
+            return segment;
+        }
+    }
+
+    /**
+     * @return the object stored by the {@code ref}.
+     *
+     * @throws IOException when the stored object is corrupted or there is no codec for it.
+     */
+    Object load(Ref ref) throws IOException {
+        ByteBuffer record = ref.segment.buffer.duplicate();
+
+        try {
+            record.position(ref.offset);
+            int length = record.getInt();
+            int checksum = record.getInt();
+
+            ByteBuffer body = record.slice();
+            body.limit(length);
+
+            if (WriteAheadLog.checksumOf(body) != checksum) {
+                throw new IOException("The payload at " + ref.offset + " is corrupted");
+            }
+
+            int codecId = body.getInt();
+            PayloadCodec<?> codec = codecs.codecOf(codecId);
+
+            if (codec == null) {
+                throw new IOException("There is no codec with the id " + codecId);
+            }
+
+            return codec.decode(body);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException exception) {
+            throw new IOException("The payload at " + ref.offset + " is malformed", exception);
+        }
+    }
+
+    /**
+     * Deletes the files of the segments which are reclaimed by the garbage collector.
+     * Waits for such a segment at most {@code timeout} milliseconds ({@code 0} means not to wait).
+     */
+    void deleteUnreachableSegments(long timeout) throws IOException, InterruptedException {
+        Reference<?> reference = timeout > 0L ? unreachableSegments.remove(timeout) : unreachableSegments.poll();
+
+        while (reference != null) {
+            SegmentReference segmentReference = (SegmentReference)reference;
+
+            if (segmentFiles.remove(segmentReference)) {
+                WriteAheadLog.delete(segmentReference.file);
+            }
+
+            reference = unreachableSegments.poll();
+        }
+    }
+
+    /**
+     * @return the number of the segment files.
+     */
+    int getSegmentCount() {
+        return segmentFiles.size();
+    }
+
+    /**
+     * Deletes all the segments.
+     * The objects which are not loaded yet cannot be loaded anymore.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        currentSegment = null;
+
+        for (SegmentReference segmentReference : segmentFiles) {
+            WriteAheadLog.delete(segmentReference.file);
+        }
+
+        segmentFiles.clear();
+    }
+
+    // ****************************** //
+
+    /**
+     * A reference to a stored object.
+     */
+    static final class Ref {
+
+        Ref(Segment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public String toString() {
+            return "PayloadStore.Ref{offset=" + offset + "}";
+        }
+
+        // ****************************** //
+
+        final Segment segment;
+        final int offset;
+    }
+
+    static final class Segment {
+
+        Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // ****************************** //
+
+        // The position is guarded by the store.
+        // The records are written through the duplicates of the buffer.
+        final MappedByteBuffer buffer;
+    }
+
+    private static final class SegmentReference extends PhantomReference<Segment> {
+
+        SegmentReference(Segment segment, File file, ReferenceQueue<Segment> queue) {
+            super(segment, queue);
+            this.file = file;
+        }
+
+        // ****************************** //
+
+        final File file;
+    }
+
+    // ****************************** //
+
+    private final File dir;
+    private final PayloadCodecs codecs;
+    private final int segmentSize;
+
+    // Are guarded by the store.
+    private Segment currentSegment;
+    private long nextSegmentSeqNumber;
+
+    private final Set<SegmentReference> segmentFiles = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Segment> unreachableSegments = new ReferenceQueue<>();
+}
@@ -1,10 +1,587 @@
 package net.devromik.suspender.persistent;
 
-import net.devromik.suspender.Suspender;
+import java.io.*;
+import java.time.*;
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.*;
+import static java.time.Duration.ofSeconds;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.toList;
+import net.devromik.suspender.*;
+import net.devromik.suspender.mem.*;
+import net.devromik.suspender.utils.*;
+import static net.devromik.slf4jUtils.Slf4jUtils.logException;
+import static org.slf4j.LoggerFactory.getLogger;
 
 /**
- * This feature will be implemented soon. ;)
+ * A durable suspender.
+ *
+ * The suspended objects are kept by net.devromik.suspender.mem.MemSuspender,
+ * and each modification of them is recorded to an append-only write-ahead log
+ * (net.devromik.suspender.persistent.WriteAheadLog) within the same critical section.
+ * When the suspender is created, the latest snapshot (net.devromik.suspender.persistent.Snapshot) and the log after it
+ * are replayed, so the objects suspended before a restart are suspended again.
+ * The records are applied to the divisions of the in-memory engine by several threads
+ * (see net.devromik.suspender.persistent.ParallelReplayer).
+ * The time taken by the recovery is reported by getRecoveryDuration().
+ *
+ * The log consists of fixed-size memory-mapped segments.
+ * There is a special thread that compacts the log when enough segments are written after the latest snapshot:
+ * it writes a new snapshot of the live suspensions and deletes the segments covered by it.
+ * So the size of the log is proportional to the number of the live objects rather than to the number of the modifications.
+ * The name of that thread is compactor.
+ *
+ * By default, a modifying operation returns only after its records are synced to the storage device.
+ * The log uses group commit, so many concurrent operations share one fsync.
+ * The durability can be relaxed per path prefix (see net.devromik.suspender.persistent.DurabilityPolicies):
+ * an operation can wait for a group commit window, so more operations share one fsync,
+ * or not wait at all, then its records are synced periodically by a special thread (syncer).
+ * Each policy reports the latencies and the batch sizes of its fsyncs.
+ *
+ * The restorations are durable at least once:
+ * if the process crashes after an object is restored but before the restoration is synced
+ * then the object is restored once more after the restart.
+ * In particular, the restorations performed by the restorer are synced with the next modifying operation or stop().
+ *
+ * The suspended objects are encoded by the codecs (net.devromik.suspender.persistent.PayloadCodecs).
+ * An object without a registered codec must be serializable.
  *
  * @author Shulnyaev Roman
  */
-public abstract class PersistentSuspender implements Suspender {}
\ No newline at end of file
+public final class PersistentSuspender implements Suspender, Closeable {
+
+    public static final String COMPACTOR_THREAD_NAME = "Suspender Journal Compactor";
+    public static final String SYNCER_THREAD_NAME = "Suspender Journal Syncer";
+
+    /**
+     * Size of a segment of the write-ahead log in bytes.
+     */
+    public static final int MIN_JOURNAL_SEGMENT_SIZE = 4 * 1024;
+    public static final int MAX_JOURNAL_SEGMENT_SIZE = 1024 * 1024 * 1024;
+    public static final int DEFAULT_JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Number of the segments written after the latest snapshot which triggers compaction.
+     */
+    public static final int MIN_COMPACTION_SEGMENT_COUNT = 1;
+    public static final int MAX_COMPACTION_SEGMENT_COUNT = 1024;
+    public static final int DEFAULT_COMPACTION_SEGMENT_COUNT = 4;
+
+    /**
+     * Number of the threads which apply the recovered records to the divisions of the in-memory engine.
+     */
+    public static final int MIN_RECOVERY_THREAD_COUNT = 1;
+    public static final int MAX_RECOVERY_THREAD_COUNT = MemSuspender.MAX_SUSPENDED_OBJECT_DIVISION_COUNT;
+    public static final int DEFAULT_RECOVERY_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Time-out between the checks if compaction is needed.
+     */
+    public static final Duration COMPACTOR_SLEEP_TIME = ofSeconds(1L);
+
+    // ****************************** //
+
+    /**
+     * @param dir the directory of the write-ahead log.
+     *
+     * @throws UncheckedIOException when the log cannot be read or opened.
+     */
+    public PersistentSuspender(File dir) {
+        this(dir, new PayloadCodecs());
+    }
+
+    /**
+     * @param dir the directory of the write-ahead log.
+     * @param codecs the codecs of the suspended objects.
+     *
+     * @throws UncheckedIOException when the log cannot be read or opened.
+     */
+    public PersistentSuspender(File dir, PayloadCodecs codecs) {
+        this(dir, new MemSuspender(), codecs, DEFAULT_JOURNAL_SEGMENT_SIZE, DEFAULT_COMPACTION_SEGMENT_COUNT);
+    }
+
+    /**
+     * @param dir the directory of the write-ahead log.
+     * @param memSuspender the in-memory engine. It must be empty and must not be used directly.
+     * @param codecs the codecs of the suspended objects.
+     *
+     * @throws UncheckedIOException when the log cannot be read or opened.
+     */
+    public PersistentSuspender(
+        File dir,
+        MemSuspender memSuspender,
+        PayloadCodecs codecs,
+        int journalSegmentSize,
+        int compactionSegmentCount) {
+
+        this(dir, memSuspender, codecs, journalSegmentSize, compactionSegmentCount, DEFAULT_RECOVERY_THREAD_COUNT);
+    }
+
+    /**
+     * @param dir the directory of the write-ahead log.
+     * @param memSuspender the in-memory engine. It must be empty and must not be used directly.
+     * @param codecs the codecs of the suspended objects.
+     * @param recoveryThreadCount the number of the threads which apply the recovered records
+     *        (see net.devromik.suspender.persistent.ParallelReplayer).
+     *
+     * @throws UncheckedIOException when the log cannot be read or opened.
+     */
+    public PersistentSuspender(
+        File dir,
+        MemSuspender memSuspender,
+        PayloadCodecs codecs,
+        int journalSegmentSize,
+        int compactionSegmentCount,
+        int recoveryThreadCount) {
+
+        this(dir, memSuspender, codecs, journalSegmentSize, compactionSegmentCount, recoveryThreadCount, new DurabilityPolicies());
+    }
+
+    /**
+     * @param dir the directory of the write-ahead log.
+     * @param memSuspender the in-memory engine. It must be empty and must not be used directly.
+     * @param codecs the codecs of the suspended objects.
+     * @param recoveryThreadCount the number of the threads which apply the recovered records
+     *        (see net.devromik.suspender.persistent.ParallelReplayer).
+     * @param durabilityPolicies the durability policies of the operations (see net.devromik.suspender.persistent.DurabilityPolicy).
+     *
+     * @throws UncheckedIOException when the log cannot be read or opened.
+     */
+    public PersistentSuspender(
+        File dir,
+        MemSuspender memSuspender,
+        PayloadCodecs codecs,
+        int journalSegmentSize,
+        int compactionSegmentCount,
+        int recoveryThreadCount,
+        DurabilityPolicies durabilityPolicies) {
+
+        this.dir = dir;
+        this.memSuspender = memSuspender;
+        this.codecs = codecs;
+        this.durabilityPolicies = durabilityPolicies;
+        this.compactionSegmentCount = Ints.adjust(compactionSegmentCount, MIN_COMPACTION_SEGMENT_COUNT, MAX_COMPACTION_SEGMENT_COUNT);
+        journalSegmentSize = Ints.adjust(journalSegmentSize, MIN_JOURNAL_SEGMENT_SIZE, MAX_JOURNAL_SEGMENT_SIZE);
+        recoveryThreadCount = Ints.adjust(recoveryThreadCount, MIN_RECOVERY_THREAD_COUNT, MAX_RECOVERY_THREAD_COUNT);
+
+        try {
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Cannot create the directory " + dir);
+            }
+
+            long recoveryStartTime = nanoTime();
+
+            try (ParallelReplayer replayer = new ParallelReplayer(memSuspender, codecs, recoveryThreadCount)) {
+                Long snapshotSeqNumber = Snapshot.findLatestSeqNumber(dir);
+
+                if (snapshotSeqNumber != null) {
+                    Snapshot.replay(Snapshot.fileOf(dir, snapshotSeqNumber), replayer);
+                    lastSnapshotSeqNumber = snapshotSeqNumber;
+                }
+
+                Snapshot.deleteAllExcept(dir, lastSnapshotSeqNumber);
+                log = WriteAheadLog.open(dir, lastSnapshotSeqNumber, journalSegmentSize, codecs, replayer);
+                replayer.finish();
+
+                recoveredRecordCount = replayer.getRecordCount();
+                recoveryDuration = Duration.ofNanos(nanoTime() - recoveryStartTime);
+
+                logger.info(
+                    "{} records have been recovered from \"{}\" in {} ms by {} threads",
+                    recoveredRecordCount,
+                    dir,
+                    recoveryDuration.toMillis(),
+                    replayer.getWorkerCount());
+            }
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        memSuspender.setMutationListener(log);
+    }
+
+    /**
+     * @return the time taken by the recovery of the suspended objects when the suspender was created.
+     */
+    public Duration getRecoveryDuration() {
+        return recoveryDuration;
+    }
+
+    /**
+     * @return the number of the snapshot and write-ahead log records replayed when the suspender was created.
+     */
+    public long getRecoveredRecordCount() {
+        return recoveredRecordCount;
+    }
+
+    /**
+     * Enables the catch-up restoration of the objects which are overdue after the recovery.
+     *
+     * @see MemSuspender#enableCatchUp(double, boolean)
+     */
+    public void enableCatchUp(double maxRestorationsPerSecond, boolean perPathFirstSegment) {
+        memSuspender.enableCatchUp(maxRestorationsPerSecond, perPathFirstSegment);
+    }
+
+    public boolean isCatchingUp() {
+        return memSuspender.isCatchingUp();
+    }
+
+    public long getOverdueBacklog() {
+        return memSuspender.getOverdueBacklog();
+    }
+
+    public long getCatchUpRestoredCount() {
+        return memSuspender.getCatchUpRestoredCount();
+    }
+
+    /**
+     * @see MemSuspender#setRestorerThreadCount(int)
+     */
+    public void setRestorerThreadCount(int restorerThreadCount) {
+        memSuspender.setRestorerThreadCount(restorerThreadCount);
+    }
+
+    @Override
+    public void start() {
+        synchronized (lifeCycleLock) {
+            checkState(!started);
+            memSuspender.start();
+
+            // Creating and starting the compactor.
+            makeAndStartCompactor();
+
+            // Creating and starting the syncer.
+            makeAndStartSyncer();
+
+            started = true;
+        }
+    }
+
+    private void makeAndStartCompactor() {
+        // Creating the compactor.
+        compactor = new Thread(
+            () -> {
+                while (!currentThread().isInterrupted()) {
+                    try {
+                        if (log.getCurrentSegmentSeqNumber() - lastSnapshotSeqNumber >= compactionSegmentCount) {
+                            compact();
+                        }
+
+                        sleep(COMPACTOR_SLEEP_TIME.toMillis());
+                    }
+                    catch (InterruptedException exception) {
+                        currentThread().interrupt();
+                    }
+                    catch (Exception exception) {
+                        logException(logger, exception);
+                    }
+                }
+            },
+            COMPACTOR_THREAD_NAME);
+
+        // Starting the compactor.
+        compactor.start();
+    }
+
+    private void makeAndStartSyncer() {
+        List<DurabilityPolicy> periodicPolicies = durabilityPolicies.all().stream()
+            .filter((policy) -> policy.getMode() == DurabilityPolicy.Mode.PERIODIC)
+            .collect(toList());
+
+        if (periodicPolicies.isEmpty()) {
+            syncer = null;
+            return;
+        }
+
+        // Creating the syncer.
+        syncer = new Thread(
+            () -> {
+                long[] nextSyncTimes = new long[periodicPolicies.size()];
+                Arrays.fill(nextSyncTimes, nanoTime());
+
+                while (!currentThread().isInterrupted()) {
+                    try {
+                        long now = nanoTime();
+                        long sleepTime = Long.MAX_VALUE;
+
+                        for (int i = 0; i < nextSyncTimes.length; ++i) {
+                            DurabilityPolicy policy = periodicPolicies.get(i);
+
+                            if (now - nextSyncTimes[i] >= 0L) {
+                                log.sync(0L, policy);
+                                nextSyncTimes[i] = now + policy.getSyncInterval().toNanos();
+                            }
+
+                            sleepTime = Math.min(sleepTime, nextSyncTimes[i] - now);
+                        }
+
+                        if (sleepTime > 0L) {
+                            NANOSECONDS.sleep(sleepTime);
+                        }
+                    }
+                    catch (InterruptedException exception) {
+                        currentThread().interrupt();
+                    }
+                    catch (Exception exception) {
+                        logException(logger, exception);
+                    }
+                }
+            },
+            SYNCER_THREAD_NAME);
+
+        // Starting the syncer.
+        syncer.start();
+    }
+
+    /**
+     * Writes a snapshot of the live suspensions and deletes the segments of the write-ahead log covered by it.
+     * Is called by the compactor, but can be called explicitly as well.
+     *
+     * @throws UncheckedIOException when the snapshot cannot be written.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            try {
+                // All the records appended before are in the segments preceding the new one,
+                // and their modifications are already made, so the snapshot reflects them.
+                long seqNumber = log.startNewSegment();
+                Snapshot.write(dir, seqNumber, memSuspender, codecs);
+                lastSnapshotSeqNumber = seqNumber;
+
+                Snapshot.deleteAllExcept(dir, seqNumber);
+                log.deleteSegmentsBefore(seqNumber);
+            }
+            catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+    }
+
+    /**
+     * Stops the suspender and syncs the write-ahead log.
+     */
+    @Override
+    public void stop() {
+        synchronized (lifeCycleLock) {
+            checkState(started);
+            stopThread(compactor, COMPACTOR_THREAD_NAME);
+
+            if (syncer != null) {
+                stopThread(syncer, SYNCER_THREAD_NAME);
+            }
+
+            memSuspender.stop();
+            log.sync();
+            started = false;
+        }
+    }
+
+    private static void stopThread(Thread thread, String threadName) {
+        thread.interrupt();
+
+        try {
+            logger.info("Waiting for \"{}\" to be stopped...", threadName);
+            thread.join();
+            logger.info("\"{}\" has been stopped", threadName);
+        }
+        catch (InterruptedException exception) {
+            logger.error("Interrupted while waiting for \"{}\" to be stopped", threadName);
+        }
+    }
+
+    /**
+     * Syncs and closes the write-ahead log.
+     * The suspender must be stopped before.
+     */
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    @Override
+    public void addRestoredObjectListener(RestoredObjectListener listener) {
+        memSuspender.addRestoredObjectListener(listener);
+    }
+
+    @Override
+    public void removeRestoredObjectListener(RestoredObjectListener listener) {
+        memSuspender.removeRestoredObjectListener(listener);
+    }
+
+    @Override
+    public void addRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        memSuspender.addRestoredObjectListener(prefix, listener);
+    }
+
+    @Override
+    public void removeRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        memSuspender.removeRestoredObjectListener(prefix, listener);
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(Path path) {
+        return memSuspender.hasObjectsSuspendedBy(path);
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(PathPattern pattern) {
+        return memSuspender.hasObjectsSuspendedBy(pattern);
+    }
+
+    @Override
+    public long countSuspendedBy(Path path) {
+        return memSuspender.countSuspendedBy(path);
+    }
+
+    @Override
+    public List<SuspendedObject> peekEarliest(Path prefix, int maxCount) {
+        return memSuspender.peekEarliest(prefix, maxCount);
+    }
+
+    @Override
+    public Stream<SuspendedObject> stream(Path prefix) {
+        return memSuspender.stream(prefix);
+    }
+
+    /**
+     * @throws IllegalArgumentException when there is no codec for the {@code object}.
+     */
+    @Override
+    public void suspend(Path path, Object object, Duration duration) {
+        memSuspender.suspend(path, object, duration);
+        sync(path);
+    }
+
+    @Override
+    public boolean suspendIfAbsent(Path path, Object object, Duration duration) {
+        boolean suspended = memSuspender.suspendIfAbsent(path, object, duration);
+
+        if (suspended) {
+            sync(path);
+        }
+
+        return suspended;
+    }
+
+    @Override
+    public boolean replace(Path path, Object expectedObject, Object newObject, Duration duration) {
+        boolean replaced = memSuspender.replace(path, expectedObject, newObject, duration);
+
+        if (replaced) {
+            sync(path);
+        }
+
+        return replaced;
+    }
+
+    @Override
+    public Object compute(Path path, UnaryOperator<Object> remappingFunction, Duration duration) {
+        Object computedObject = memSuspender.compute(path, remappingFunction, duration);
+        sync(path);
+
+        return computedObject;
+    }
+
+    @Override
+    public void restore(Path path) {
+        memSuspender.restore(path);
+        syncSubtree(path);
+    }
+
+    @Override
+    public void restore(Path path, Collection<RestoredObjectListener> listeners) {
+        memSuspender.restore(path, listeners);
+        syncSubtree(path);
+    }
+
+    @Override
+    public void restore(PathPattern pattern) {
+        memSuspender.restore(pattern);
+        sync(durabilityPolicies.strictest());
+    }
+
+    @Override
+    public void restore(PathPattern pattern, Collection<RestoredObjectListener> listeners) {
+        memSuspender.restore(pattern, listeners);
+        sync(durabilityPolicies.strictest());
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff) {
+        memSuspender.restoreDueBefore(prefix, cutoff);
+        syncSubtree(prefix);
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff, Collection<RestoredObjectListener> listeners) {
+        memSuspender.restoreDueBefore(prefix, cutoff, listeners);
+        syncSubtree(prefix);
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path) {
+        memSuspender.restoreObjectWithMinRestorationTime(path);
+        syncSubtree(path);
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path, Collection<RestoredObjectListener> listeners) {
+        memSuspender.restoreObjectWithMinRestorationTime(path, listeners);
+        syncSubtree(path);
+    }
+
+    private void sync(Path path) {
+        sync(durabilityPolicies.policyFor(path));
+    }
+
+    /**
+     * Is called after the objects suspended by the paths with the {@code prefix} have been restored:
+     * they may be under a stricter policy than the one of the {@code prefix}.
+     */
+    private void syncSubtree(Path prefix) {
+        sync(durabilityPolicies.strictestFor(prefix));
+    }
+
+    /**
+     * Makes the records appended so far durable as the {@code policy} requires.
+     */
+    private void sync(DurabilityPolicy policy) {
+        if (policy.getMode() != DurabilityPolicy.Mode.PERIODIC) {
+            log.sync(policy.getGroupCommitWindow().toNanos(), policy);
+        }
+    }
+
+    // ****************************** //
+
+    final File dir;
+    final MemSuspender memSuspender;
+    final PayloadCodecs codecs;
+    final WriteAheadLog log;
+
+    // Recovery.
+    private final Duration recoveryDuration;
+    private final long recoveredRecordCount;
+
+    // Life cycle.
+    private final Object lifeCycleLock = new Object();
+    private boolean started;
+
+    // Compaction.
+    private final int compactionSegmentCount;
+    private final Object compactionLock = new Object();
+    private volatile long lastSnapshotSeqNumber;
+    private Thread compactor;
+
+    // Durability.
+    private final DurabilityPolicies durabilityPolicies;
+    private Thread syncer;
+
+    final static Logger logger = getLogger(PersistentSuspender.class);
+}
@@ -0,0 +1,179 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import static java.lang.String.format;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.READ;
+import net.devromik.suspender.mem.*;
+
+/**
+ * A snapshot of the live suspensions.
+ *
+ * A snapshot with the sequence number N reflects all the records of the write-ahead log segments
+ * with the sequence numbers less than N, so the recovery replays the latest snapshot
+ * and then the segments starting from N. The segments before N are deleted.
+ *
+ * The snapshot consists of the suspension records of the write-ahead log
+ * (see net.devromik.suspender.persistent.WriteAheadLog) followed by a zero length.
+ * It is written to a temporary file which is renamed when it is complete and durable,
+ * so a snapshot file is never torn.
+ *
+ * @author Shulnyaev Roman
+ */
+final class Snapshot {
+
+    static final String FILE_NAME_PREFIX = "snapshot-";
+    static final String FILE_NAME_SUFFIX = ".snap";
+    static final String TEMP_FILE_NAME_SUFFIX = ".tmp";
+
+    // ****************************** //
+
+    private Snapshot() {}
+
+    static File fileOf(File dir, long seqNumber) {
+        return new File(dir, format("%s%020d%s", FILE_NAME_PREFIX, seqNumber, FILE_NAME_SUFFIX));
+    }
+
+    /**
+     * Writes the snapshot of the suspended objects of the {@code suspender}
+     * with the sequence number {@code seqNumber}.
+     *
+     * The snapshot is consistent per division (see MemSuspender.forEachSuspendedObject()).
+     * It is enough because each record of the log either overwrites or removes suspended objects,
+     * so replaying the records appended after the snapshot was started brings every path to its latest state.
+     */
+    static void write(File dir, long seqNumber, MemSuspender suspender, PayloadCodecs codecs) throws IOException {
+        write(fileOf(dir, seqNumber), suspender, codecs);
+    }
+
+    /**
+     * Writes the snapshot of the suspended objects of the {@code suspender} to the {@code file}.
+     * The objects are written division by division, so only one division is copied to the heap at a time.
+     */
+    static void write(File file, MemSuspender suspender, PayloadCodecs codecs) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tempFile = new File(dir, file.getName() + TEMP_FILE_NAME_SUFFIX);
+
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+
+            try {
+                suspender.forEachSuspendedObject(
+                    (suspendedObject) -> {
+                        try {
+                            byte[] body = WriteAheadLog.makeSuspensionRecordBody(
+                                suspendedObject.getPath(),
+                                suspendedObject.getObject(),
+                                suspendedObject.getRestorationTime().toEpochMilli(),
+                                codecs);
+
+                            out.writeInt(body.length);
+                            out.writeInt(WriteAheadLog.checksumOf(body));
+                            out.write(body);
+                        }
+                        catch (IOException exception) {
+                            throw new UncheckedIOException(exception);
+                        }
+                    });
+            }
+            catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+
+            out.writeInt(0);
+            out.flush();
+            fileOut.getChannel().force(true);
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), ATOMIC_MOVE);
+        forceDir(dir);
+    }
+
+    /**
+     * Makes the renaming of the snapshot durable.
+     * Not all the platforms allow to force a directory, so it is done on the best-effort basis.
+     */
+    private static void forceDir(File dir) {
+        try (FileChannel dirChannel = FileChannel.open(dir.toPath(), READ)) {
+            dirChannel.force(true);
+        }
+        catch (IOException exception) {
+            // Nothing to do.
+        }
+    }
+
+    /**
+     * Passes the bodies of the suspension records of the snapshot to the {@code replayer}.
+     */
+    static void replay(File file, JournalSegment.RecordBodyConsumer replayer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long remainingLength = file.length() - Integer.BYTES;
+            int length;
+
+            while ((length = in.readInt()) != 0) {
+                int checksum = in.readInt();
+                remainingLength -= Integer.BYTES;
+
+                // A corrupted length must not make us allocate a huge buffer.
+                if (length < 0 || length > remainingLength) {
+                    throw new IOException("The snapshot " + file + " is corrupted");
+                }
+
+                byte[] body = new byte[length];
+                in.readFully(body);
+
+                if (WriteAheadLog.checksumOf(body) != checksum) {
+                    throw new IOException("The snapshot " + file + " is corrupted");
+                }
+
+                remainingLength -= length + Integer.BYTES;
+                replayer.accept(ByteBuffer.wrap(body));
+            }
+        }
+    }
+
+    /**
+     * @return the sequence number of the latest complete snapshot in the directory {@code dir}
+     *         or {@code null} if there are no snapshots.
+     */
+    static Long findLatestSeqNumber(File dir) {
+        Long latestSeqNumber = null;
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+
+                if (fileName.startsWith(FILE_NAME_PREFIX) && fileName.endsWith(FILE_NAME_SUFFIX)) {
+                    long seqNumber = Long.parseLong(fileName.substring(FILE_NAME_PREFIX.length(), fileName.length() - FILE_NAME_SUFFIX.length()));
+
+                    if (latestSeqNumber == null || seqNumber > latestSeqNumber) {
+                        latestSeqNumber = seqNumber;
+                    }
+                }
+            }
+        }
+
+        return latestSeqNumber;
+    }
+
+    /**
+     * Deletes the snapshots (including the incomplete ones) other than the one with the sequence number {@code seqNumber}.
+     */
+    static void deleteAllExcept(File dir, long seqNumber) throws IOException {
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+
+                if (fileName.startsWith(FILE_NAME_PREFIX) && !file.equals(fileOf(dir, seqNumber))) {
+                    WriteAheadLog.delete(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import net.devromik.suspender.SuspendedObject;
+import net.devromik.suspender.utils.*;
+import static java.lang.String.format;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An on-disk store of the suspended objects sorted by restoration time (used by net.devromik.suspender.persistent.TieredSuspender).
+ *
+ * The objects are appended to bucket files: a bucket keeps the objects with the restoration times
+ * within [start, start + bucketWidth). The records have the format of the snapshot records
+ * (see net.devromik.suspender.persistent.Snapshot), so the objects are encoded by the codecs.
+ *
+ * Only a small entry (the bucket and the offset of the record) is kept in the heap for each object.
+ * The entries are indexed by path in the lexicographic order of the segments,
+ * so the paths with a prefix form a contiguous range of the index.
+ * A record is valid while the index refers to it: when an object is removed or replaced, its record becomes garbage
+ * which is dropped together with the bucket.
+ *
+ * The buckets are taken in ascending order as their restoration times approach (see takeBucketsStartingBy()).
+ * A taken bucket does not accept new objects, its valid records are passed to the caller and the bucket is deleted.
+ *
+ * @author Shulnyaev Roman
+ */
+final class SpillStore implements Closeable {
+
+    static final String FILE_NAME_PREFIX = "spill-";
+    static final String FILE_NAME_SUFFIX = ".bucket";
+
+    // ****************************** //
+
+    /**
+     * Creates an empty store in the directory {@code dir}.
+     * The buckets left in the directory (by a previous run) are deleted.
+     */
+    SpillStore(File dir, PayloadCodecs codecs, long bucketWidth) throws IOException {
+        this.dir = dir;
+        this.codecs = codecs;
+        this.bucketWidth = bucketWidth;
+
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create the directory " + dir);
+        }
+
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(FILE_NAME_PREFIX) && file.getName().endsWith(FILE_NAME_SUFFIX)) {
+                    WriteAheadLog.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the {@code object} suspended by the {@code path} until the {@code restorationTime}.
+     * An object previously stored by the {@code path} is replaced.
+     * Must be called within the critical section of the {@code path} (see TieredSuspender).
+     *
+     * @return {@code false} iff the bucket of the {@code restorationTime} is already taken,
+     *         so the object is not stored.
+     *
+     * @throws IllegalArgumentException when there is no codec for the {@code object}.
+     */
+    boolean put(Path path, Object object, long restorationTime) throws IOException {
+        byte[] body = WriteAheadLog.makeSuspensionRecordBody(path, object, restorationTime, codecs);
+        ByteBuffer record = ByteBuffer.allocate(WriteAheadLog.RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length);
+        record.putInt(WriteAheadLog.checksumOf(body));
+        record.put(body);
+        record.flip();
+
+        Bucket bucket = bucketFor(restorationTime - Math.floorMod(restorationTime, bucketWidth));
+        long offset = bucket.append(record);
+
+        if (offset < 0L) {
+            return false;
+        }
+
+        if (index.put(path, new Entry(bucket.start, offset, restorationTime)) == null) {
+            count.increment();
+        }
+
+        return true;
+    }
+
+    private synchronized Bucket bucketFor(long start) throws IOException {
+        Bucket bucket = buckets.get(start);
+
+        if (bucket == null) {
+            bucket = new Bucket(start, new File(dir, format("%s%020d%s", FILE_NAME_PREFIX, start, FILE_NAME_SUFFIX)));
+            buckets.put(start, bucket);
+        }
+
+        return bucket;
+    }
+
+    boolean contains(Path path) {
+        return index.containsKey(path);
+    }
+
+    /**
+     * Removes the object suspended by exactly the {@code path}.
+     *
+     * @return {@code true} iff there was such an object.
+     */
+    boolean remove(Path path) {
+        if (index.remove(path) != null) {
+            count.decrement();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the object suspended by exactly the {@code path} iff it is stored by the {@code entry}.
+     *
+     * @return {@code true} iff the object was removed.
+     */
+    boolean remove(Path path, Entry entry) {
+        if (index.remove(path, entry)) {
+            count.decrement();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the object suspended by exactly the {@code path} or {@code null} if there is no such object.
+     */
+    SuspendedObject read(Path path) throws IOException {
+        Entry entry = index.get(path);
+        return entry != null ? read(entry) : null;
+    }
+
+    /**
+     * @return the object stored by the {@code entry} or {@code null} if its bucket is already deleted.
+     */
+    private SuspendedObject read(Entry entry) throws IOException {
+        Bucket bucket = buckets.get(entry.bucketStart);
+        return bucket != null ? bucket.read(entry.offset) : null;
+    }
+
+    /**
+     * @return the paths with the {@code prefix} of the objects
+     *         with the restoration times not greater than {@code maxRestorationTime}.
+     */
+    List<Path> pathsWithPrefix(Path prefix, long maxRestorationTime) {
+        return entriesWithPrefix(prefix).entrySet().stream()
+            .filter((pathAndEntry) -> pathAndEntry.getValue().restorationTime <= maxRestorationTime)
+            .map(Map.Entry::getKey)
+            .collect(toList());
+    }
+
+    private Map<Path, Entry> entriesWithPrefix(Path prefix) {
+        Map<Path, Entry> entries = new LinkedHashMap<>();
+
+        for (Map.Entry<Path, Entry> indexEntry : index.tailMap(prefix, true).entrySet()) {
+            if (!indexEntry.getKey().hasPrefix(prefix)) {
+                break;
+            }
+
+            entries.put(indexEntry.getKey(), indexEntry.getValue());
+        }
+
+        return entries;
+    }
+
+    boolean hasObjectsSuspendedBy(Path prefix) {
+        Path path = index.ceilingKey(prefix);
+        return path != null && path.hasPrefix(prefix);
+    }
+
+    /**
+     * @return the paths of the objects suspended by the paths having a prefix which matches the {@code pattern}.
+     */
+    List<Path> pathsMatching(PathPattern pattern) {
+        Collection<Path> candidates =
+            pattern.isLiteral(0) ?
+            entriesWithPrefix(new Path(pattern.getSegment(0))).keySet() :
+            index.keySet();
+
+        return candidates.stream().filter(pattern::matchesPrefixOf).collect(toList());
+    }
+
+    long countSuspendedBy(Path prefix) {
+        return entriesWithPrefix(prefix).size();
+    }
+
+    /**
+     * @return the paths with the {@code prefix} ordered by the restoration times of their objects.
+     *         Only the objects with the restoration times not greater than {@code maxRestorationTime} are considered.
+     */
+    List<Path> earliest(Path prefix, int maxCount, long maxRestorationTime) {
+        return entriesWithPrefix(prefix).entrySet().stream()
+            .filter((pathAndEntry) -> pathAndEntry.getValue().restorationTime <= maxRestorationTime)
+            .sorted(comparingLong((pathAndEntry) -> pathAndEntry.getValue().restorationTime))
+            .limit(maxCount)
+            .map(Map.Entry::getKey)
+            .collect(toList());
+    }
+
+    /**
+     * @return the objects suspended by the paths with the {@code prefix}.
+     *         The objects are read lazily, the ones removed meanwhile are skipped.
+     */
+    Stream<SuspendedObject> stream(Path prefix) {
+        return entriesWithPrefix(prefix).values().stream()
+            .map((entry) -> {
+                try {
+                    return read(entry);
+                }
+                catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            })
+            .filter(Objects::nonNull);
+    }
+
+    long getObjectCount() {
+        return count.sum();
+    }
+
+    int getBucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * Takes the buckets with the start not greater than {@code time} in ascending order.
+     * A taken bucket does not accept new objects.
+     * Its records are passed to the {@code consumer} (they may be not valid anymore, see remove(Path, Entry))
+     * and then the bucket is deleted.
+     */
+    void takeBucketsStartingBy(long time, BucketRecordConsumer consumer) throws IOException {
+        for (Bucket bucket : new ArrayList<>(buckets.headMap(time, true).values())) {
+            bucket.close();
+            bucket.forEachRecord(consumer);
+
+            synchronized (this) {
+                buckets.remove(bucket.start);
+                bucket.delete();
+            }
+        }
+    }
+
+    interface BucketRecordConsumer {
+        void accept(SuspendedObject suspendedObject, Entry entry) throws IOException;
+    }
+
+    /**
+     * Deletes all the buckets.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Bucket bucket : buckets.values()) {
+            bucket.close();
+            bucket.delete();
+        }
+
+        buckets.clear();
+        index.clear();
+        count.reset();
+    }
+
+    // ****************************** //
+
+    static final class Entry {
+
+        Entry(long bucketStart, long offset, long restorationTime) {
+            this.bucketStart = bucketStart;
+            this.offset = offset;
+            this.restorationTime = restorationTime;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+
+            Entry otherEntry = (Entry)other;
+            return bucketStart == otherEntry.bucketStart && offset == otherEntry.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(bucketStart) * 37 + Long.hashCode(offset);
+        }
+
+        // ****************************** //
+
+        final long bucketStart;
+        final long offset;
+        final long restorationTime;
+    }
+
+    private final class Bucket {
+
+        Bucket(long start, File file) throws IOException {
+            this.start = start;
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * @return the offset of the appended {@code record} or {@code -1} if the bucket is closed.
+         */
+        synchronized long append(ByteBuffer record) throws IOException {
+            if (closed) {
+                return -1L;
+            }
+
+            long offset = size;
+
+            while (record.hasRemaining()) {
+                size += channel.write(record, size);
+            }
+
+            return offset;
+        }
+
+        /**
+         * @return the object of the record with the {@code offset} or {@code null} if the bucket is already deleted.
+         */
+        SuspendedObject read(long offset) throws IOException {
+            try {
+                ByteBuffer header = readFully(offset, WriteAheadLog.RECORD_HEADER_SIZE);
+                int length = header.getInt();
+                int checksum = header.getInt();
+                ByteBuffer body = readFully(offset + WriteAheadLog.RECORD_HEADER_SIZE, length);
+
+                if (WriteAheadLog.checksumOf(body) != checksum) {
+                    throw new IOException("The spilled object at " + offset + " of " + file + " is corrupted");
+                }
+
+                return WriteAheadLog.readSuspensionRecord(body, codecs);
+            }
+            catch (ClosedChannelException exception) {
+                return null;
+            }
+        }
+
+        private ByteBuffer readFully(long position, int size) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of " + file);
+                }
+            }
+
+            buffer.flip();
+            return buffer;
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+
+        void forEachRecord(BucketRecordConsumer consumer) throws IOException {
+            long offset = 0L;
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (offset < size) {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+
+                    if (WriteAheadLog.checksumOf(body) != checksum) {
+                        throw new IOException("The spilled object at " + offset + " of " + file + " is corrupted");
+                    }
+
+                    SuspendedObject suspendedObject = WriteAheadLog.readSuspensionRecord(ByteBuffer.wrap(body), codecs);
+                    consumer.accept(suspendedObject, new Entry(start, offset, suspendedObject.getRestorationTime().toEpochMilli()));
+                    offset += WriteAheadLog.RECORD_HEADER_SIZE + length;
+                }
+            }
+        }
+
+        void delete() throws IOException {
+            channel.close();
+            WriteAheadLog.delete(file);
+        }
+
+        // ****************************** //
+
+        final long start;
+        final File file;
+        final FileChannel channel;
+
+        // Are guarded by the bucket.
+        long size;
+        boolean closed;
+    }
+
+    static final Comparator<Path> PATH_COMPARATOR = (path, otherPath) -> {
+        int commonSegmentCount = Math.min(path.getSegmentCount(), otherPath.getSegmentCount());
+
+        for (int i = 0; i < commonSegmentCount; ++i) {
+            int segmentComparison = path.getSegment(i).compareTo(otherPath.getSegment(i));
+
+            if (segmentComparison != 0) {
+                return segmentComparison;
+            }
+        }
+
+        return Integer.compare(path.getSegmentCount(), otherPath.getSegmentCount());
+    };
+
+    // ****************************** //
+
+    private final File dir;
+    private final PayloadCodecs codecs;
+    private final long bucketWidth;
+
+    private final ConcurrentNavigableMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<Path, Entry> index = new ConcurrentSkipListMap<>(PATH_COMPARATOR);
+    private final LongAdder count = new LongAdder();
+}
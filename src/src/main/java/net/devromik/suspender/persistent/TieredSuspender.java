@@ -0,0 +1,541 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import static com.google.common.base.Preconditions.*;
+import static java.lang.Math.abs;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.Thread.*;
+import static java.time.Duration.*;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+import net.devromik.suspender.*;
+import net.devromik.suspender.mem.MemSuspender;
+import static net.devromik.suspender.mem.MemSuspender.calcRestorationTime;
+import net.devromik.suspender.utils.*;
+import static net.devromik.slf4jUtils.Slf4jUtils.logException;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A suspender which keeps in memory only the objects due within the horizon.
+ *
+ * The objects suspended for longer than the horizon are spilled to an on-disk store
+ * sorted by restoration time (net.devromik.suspender.persistent.SpillStore),
+ * so the heap is proportional to the near-term objects rather than to all the suspended ones.
+ * Only a small index entry per spilled object stays in the heap.
+ * The spilled objects are encoded by the codecs (net.devromik.suspender.persistent.PayloadCodecs).
+ *
+ * There is a special thread that promotes the spilled objects to net.devromik.suspender.mem.MemSuspender
+ * as their restoration times approach the horizon. The name of that thread is promoter.
+ * The objects are restored by the in-memory engine only, so the spilled objects which are to be restored explicitly
+ * (for example, by restore(Path)) are promoted first.
+ *
+ * Each path belongs to exactly one tier at any time:
+ * the modifications of a path are made within the critical section of its stripe
+ * (the paths are striped by the hash code of their first two segments like the divisions of the in-memory engine).
+ * The queries check both tiers within the critical section of the stripe of the prefix
+ * (within the critical sections of all the stripes for a single-segment prefix),
+ * so they never miss an object being moved between the tiers.
+ * The only exception is stream(): it is lazy, so an object moved between the tiers
+ * while the stream is being consumed may be missed or reported twice.
+ *
+ * The spill store is not durable: it is a scratch space which is cleared when the suspender is created or closed.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class TieredSuspender implements Suspender, Closeable {
+
+    public static final String PROMOTER_THREAD_NAME = "Suspender Tier Promoter";
+
+    /**
+     * The objects suspended for longer than the horizon are spilled to the disk.
+     */
+    public static final Duration MIN_HORIZON = ofSeconds(1L);
+    public static final Duration MAX_HORIZON = ofDays(365L);
+    public static final Duration DEFAULT_HORIZON = ofHours(1L);
+
+    /**
+     * Number of the time buckets of the spill store within the horizon.
+     */
+    public static final int BUCKET_COUNT_PER_HORIZON = 4;
+
+    /**
+     * Time-out between the promotions.
+     */
+    public static final Duration PROMOTER_SLEEP_TIME = ofMillis(100L);
+
+    // ****************************** //
+
+    /**
+     * @param spillDir the directory of the spill store.
+     *
+     * @throws UncheckedIOException when the spill store cannot be created.
+     */
+    public TieredSuspender(File spillDir) {
+        this(spillDir, new MemSuspender(), new PayloadCodecs(), DEFAULT_HORIZON);
+    }
+
+    /**
+     * @param spillDir the directory of the spill store.
+     * @param memSuspender the in-memory engine. It must be empty and must not be used directly.
+     * @param codecs the codecs of the spilled objects.
+     * @param horizon the objects suspended for longer than it are spilled to the disk.
+     *
+     * @throws UncheckedIOException when the spill store cannot be created.
+     */
+    public TieredSuspender(File spillDir, MemSuspender memSuspender, PayloadCodecs codecs, Duration horizon) {
+        this.memSuspender = memSuspender;
+        this.horizon = Durations.adjust(horizon, MIN_HORIZON, MAX_HORIZON);
+
+        try {
+            spillStore = new SpillStore(spillDir, codecs, this.horizon.toMillis() / BUCKET_COUNT_PER_HORIZON);
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        stripeLocks = new Lock[memSuspender.getDivisionCount()];
+
+        for (int i = 0; i < stripeLocks.length; ++i) {
+            stripeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    public Duration getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * @return the number of the objects spilled to the disk.
+     */
+    public long getSpilledObjectCount() {
+        return spillStore.getObjectCount();
+    }
+
+    @Override
+    public void start() {
+        synchronized (lifeCycleLock) {
+            checkState(!started);
+            memSuspender.start();
+
+            // Creating and starting the promoter.
+            makeAndStartPromoter();
+
+            started = true;
+        }
+    }
+
+    private void makeAndStartPromoter() {
+        // Creating the promoter.
+        promoter = new Thread(
+            () -> {
+                while (!currentThread().isInterrupted()) {
+                    try {
+                        promoteDueBy(currentTimeMillis() + horizon.toMillis());
+                        sleep(PROMOTER_SLEEP_TIME.toMillis());
+                    }
+                    catch (InterruptedException exception) {
+                        currentThread().interrupt();
+                    }
+                    catch (Exception exception) {
+                        logException(logger, exception);
+                    }
+                }
+            },
+            PROMOTER_THREAD_NAME);
+
+        // Starting the promoter.
+        promoter.start();
+    }
+
+    /**
+     * Promotes the objects of the buckets of the spill store which start not later than {@code time}.
+     * Is called by the promoter.
+     */
+    void promoteDueBy(long time) throws IOException {
+        spillStore.takeBucketsStartingBy(
+            time,
+            (suspendedObject, entry) -> {
+                Path path = suspendedObject.getPath();
+                Lock stripeLock = stripeLockFor(path);
+                stripeLock.lock();
+
+                try {
+                    // The object may be already restored, replaced or promoted.
+                    if (spillStore.remove(path, entry)) {
+                        memSuspender.suspend(path, suspendedObject.getObject(), suspendedObject.getRestorationTime());
+                    }
+                }
+                finally {
+                    stripeLock.unlock();
+                }
+            });
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lifeCycleLock) {
+            checkState(started);
+            promoter.interrupt();
+
+            try {
+                logger.info("Waiting for \"{}\" to be stopped...", PROMOTER_THREAD_NAME);
+                promoter.join();
+                logger.info("\"{}\" has been stopped", PROMOTER_THREAD_NAME);
+            }
+            catch (InterruptedException exception) {
+                logger.error("Interrupted while waiting for \"{}\" to be stopped", PROMOTER_THREAD_NAME);
+            }
+
+            memSuspender.stop();
+            started = false;
+        }
+    }
+
+    /**
+     * Deletes the spill store.
+     * The suspender must be stopped before.
+     *
+     * @throws UncheckedIOException when the spill store cannot be deleted.
+     */
+    @Override
+    public void close() {
+        try {
+            spillStore.close();
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    @Override
+    public void addRestoredObjectListener(RestoredObjectListener listener) {
+        memSuspender.addRestoredObjectListener(listener);
+    }
+
+    @Override
+    public void removeRestoredObjectListener(RestoredObjectListener listener) {
+        memSuspender.removeRestoredObjectListener(listener);
+    }
+
+    @Override
+    public void addRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        memSuspender.addRestoredObjectListener(prefix, listener);
+    }
+
+    @Override
+    public void removeRestoredObjectListener(Path prefix, RestoredObjectListener listener) {
+        memSuspender.removeRestoredObjectListener(prefix, listener);
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(Path path) {
+        return withStripeOf(stripePathOf(path), () -> memSuspender.hasObjectsSuspendedBy(path) || spillStore.hasObjectsSuspendedBy(path));
+    }
+
+    @Override
+    public boolean hasObjectsSuspendedBy(PathPattern pattern) {
+        Path stripePath =
+            pattern.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT && pattern.isLiteral(0) && pattern.isLiteral(1) ?
+            new Path(pattern.getSegment(0), pattern.getSegment(1)) :
+            null;
+
+        return withStripeOf(stripePath, () -> memSuspender.hasObjectsSuspendedBy(pattern) || !spillStore.pathsMatching(pattern).isEmpty());
+    }
+
+    @Override
+    public long countSuspendedBy(Path path) {
+        return withStripeOf(stripePathOf(path), () -> memSuspender.countSuspendedBy(path) + spillStore.countSuspendedBy(path));
+    }
+
+    @Override
+    public List<SuspendedObject> peekEarliest(Path prefix, int maxCount) {
+        List<SuspendedObject> earliest = withStripeOf(stripePathOf(prefix), () -> {
+            List<SuspendedObject> objects = new ArrayList<>(memSuspender.peekEarliest(prefix, maxCount));
+
+            for (Path path : spillStore.earliest(prefix, maxCount, Long.MAX_VALUE)) {
+                SuspendedObject suspendedObject = readSpilled(path);
+
+                if (suspendedObject != null) {
+                    objects.add(suspendedObject);
+                }
+            }
+
+            return objects;
+        });
+
+        return earliest.stream()
+            .sorted(comparing(SuspendedObject::getRestorationTime))
+            .limit(maxCount)
+            .collect(toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * An object moved between the tiers while the stream is being consumed may be missed or reported twice.
+     */
+    @Override
+    public Stream<SuspendedObject> stream(Path prefix) {
+        return Stream.concat(memSuspender.stream(prefix), spillStore.stream(prefix));
+    }
+
+    /**
+     * @throws IllegalArgumentException when there is no codec for the {@code object} and it is to be spilled.
+     */
+    @Override
+    public void suspend(Path path, Object object, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        duration = Durations.adjust(duration, MIN_SUSPENSION_DURATION, MAX_SUSPENSION_DURATION);
+        Lock stripeLock = stripeLockFor(path);
+        stripeLock.lock();
+
+        try {
+            suspendLocked(path, object, duration);
+        }
+        finally {
+            stripeLock.unlock();
+        }
+    }
+
+    private void suspendLocked(Path path, Object object, Duration duration) {
+        if (duration.compareTo(horizon) <= 0) {
+            spillStore.remove(path);
+            memSuspender.suspend(path, object, duration);
+        }
+        else {
+            memSuspender.discard(path);
+
+            // Rounded like in the in-memory engine, which gets the object back on promotion.
+            long restorationTime = calcRestorationTime(duration);
+
+            try {
+                // The bucket may be already taken by the promoter.
+                if (!spillStore.put(path, object, restorationTime)) {
+                    memSuspender.suspend(path, object, Instant.ofEpochMilli(restorationTime));
+                }
+            }
+            catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+    }
+
+    @Override
+    public boolean suspendIfAbsent(Path path, Object object, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        duration = Durations.adjust(duration, MIN_SUSPENSION_DURATION, MAX_SUSPENSION_DURATION);
+        Lock stripeLock = stripeLockFor(path);
+        stripeLock.lock();
+
+        try {
+            if (spillStore.contains(path) || memSuspender.getSuspendedObject(path) != null) {
+                return false;
+            }
+
+            suspendLocked(path, object, duration);
+            return true;
+        }
+        finally {
+            stripeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(Path path, Object expectedObject, Object newObject, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        duration = Durations.adjust(duration, MIN_SUSPENSION_DURATION, MAX_SUSPENSION_DURATION);
+        Lock stripeLock = stripeLockFor(path);
+        stripeLock.lock();
+
+        try {
+            SuspendedObject suspendedObject = memSuspender.getSuspendedObject(path);
+
+            if (suspendedObject == null) {
+                suspendedObject = readSpilled(path);
+            }
+
+            if (suspendedObject == null || !Objects.equals(suspendedObject.getObject(), expectedObject)) {
+                return false;
+            }
+
+            suspendLocked(path, newObject, duration);
+            return true;
+        }
+        finally {
+            stripeLock.unlock();
+        }
+    }
+
+    @Override
+    public Object compute(Path path, UnaryOperator<Object> remappingFunction, Duration duration) {
+        checkArgument(path.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT);
+        checkNotNull(remappingFunction);
+        duration = Durations.adjust(duration, MIN_SUSPENSION_DURATION, MAX_SUSPENSION_DURATION);
+        Lock stripeLock = stripeLockFor(path);
+        stripeLock.lock();
+
+        try {
+            promote(path);
+            Object computedObject = memSuspender.compute(path, remappingFunction, duration);
+
+            if (computedObject != null && duration.compareTo(horizon) > 0) {
+                suspendLocked(path, computedObject, duration);
+            }
+
+            return computedObject;
+        }
+        finally {
+            stripeLock.unlock();
+        }
+    }
+
+    @Override
+    public void restore(Path path) {
+        promote(spillStore.pathsWithPrefix(path, Long.MAX_VALUE));
+        memSuspender.restore(path);
+    }
+
+    @Override
+    public void restore(Path path, Collection<RestoredObjectListener> listeners) {
+        promote(spillStore.pathsWithPrefix(path, Long.MAX_VALUE));
+        memSuspender.restore(path, listeners);
+    }
+
+    @Override
+    public void restore(PathPattern pattern) {
+        promote(spillStore.pathsMatching(pattern));
+        memSuspender.restore(pattern);
+    }
+
+    @Override
+    public void restore(PathPattern pattern, Collection<RestoredObjectListener> listeners) {
+        promote(spillStore.pathsMatching(pattern));
+        memSuspender.restore(pattern, listeners);
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff) {
+        promote(spillStore.pathsWithPrefix(prefix, cutoff.toEpochMilli()));
+        memSuspender.restoreDueBefore(prefix, cutoff);
+    }
+
+    @Override
+    public void restoreDueBefore(Path prefix, Instant cutoff, Collection<RestoredObjectListener> listeners) {
+        promote(spillStore.pathsWithPrefix(prefix, cutoff.toEpochMilli()));
+        memSuspender.restoreDueBefore(prefix, cutoff, listeners);
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path) {
+        promote(spillStore.earliest(path, 1, Long.MAX_VALUE));
+        memSuspender.restoreObjectWithMinRestorationTime(path);
+    }
+
+    @Override
+    public void restoreObjectWithMinRestorationTime(Path path, Collection<RestoredObjectListener> listeners) {
+        promote(spillStore.earliest(path, 1, Long.MAX_VALUE));
+        memSuspender.restoreObjectWithMinRestorationTime(path, listeners);
+    }
+
+    private void promote(Collection<Path> paths) {
+        for (Path path : paths) {
+            Lock stripeLock = stripeLockFor(path);
+            stripeLock.lock();
+
+            try {
+                promote(path);
+            }
+            finally {
+                stripeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves the object spilled by exactly the {@code path} (if any) to the in-memory engine.
+     * Must be called within the critical section of the stripe of the {@code path}.
+     */
+    private void promote(Path path) {
+        SuspendedObject suspendedObject = readSpilled(path);
+
+        if (suspendedObject != null) {
+            spillStore.remove(path);
+            memSuspender.suspend(path, suspendedObject.getObject(), suspendedObject.getRestorationTime());
+        }
+    }
+
+    private SuspendedObject readSpilled(Path path) {
+        try {
+            return spillStore.read(path);
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * @return a path of the stripe of all the objects suspended by the paths with the {@code prefix}
+     *         or {@code null} if they may belong to several stripes.
+     */
+    private static Path stripePathOf(Path prefix) {
+        return prefix.getSegmentCount() >= MIN_SUSPENSION_PATH_SEGMENT_COUNT ? prefix : null;
+    }
+
+    /**
+     * Performs the {@code query} so that no queried object is moved between the tiers meanwhile:
+     * within the critical section of the stripe of the {@code stripePath}
+     * or within the critical sections of all the stripes if the {@code stripePath} is {@code null}.
+     */
+    private <R> R withStripeOf(Path stripePath, Supplier<R> query) {
+        if (stripePath != null) {
+            Lock stripeLock = stripeLockFor(stripePath);
+            stripeLock.lock();
+
+            try {
+                return query.get();
+            }
+            finally {
+                stripeLock.unlock();
+            }
+        }
+
+        // The stripe locks are acquired in the same order by all the queries.
+        for (Lock stripeLock : stripeLocks) {
+            stripeLock.lock();
+        }
+
+        try {
+            return query.get();
+        }
+        finally {
+            for (Lock stripeLock : stripeLocks) {
+                stripeLock.unlock();
+            }
+        }
+    }
+
+    private Lock stripeLockFor(Path path) {
+        // The stripes are fixed, while the divisions of the engine can be resized.
+        return stripeLocks[abs(MemSuspender.routingHashCodeOf(path)) % stripeLocks.length];
+    }
+
+    // ****************************** //
+
+    final MemSuspender memSuspender;
+    final SpillStore spillStore;
+    private final Duration horizon;
+    private final Lock[] stripeLocks;
+
+    // Life cycle.
+    private final Object lifeCycleLock = new Object();
+    private boolean started;
+    private Thread promoter;
+
+    final static Logger logger = getLogger(TieredSuspender.class);
+}
@@ -0,0 +1,506 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.nio.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+import net.devromik.suspender.SuspendedObject;
+import net.devromik.suspender.mem.MutationListener;
+import net.devromik.suspender.persistent.PayloadCodecs.Payload;
+import net.devromik.suspender.utils.Path;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An append-only write-ahead log of the modifications of the suspended objects.
+ *
+ * A record consists of:
+ *     - the length of the body (int),
+ *     - the CRC32 checksum of the body (int),
+ *     - the body: the type of the record, the path and (for the suspension records)
+ *       the restoration time, the id of the codec and the encoded object.
+ *
+ * The objects are encoded by the codecs (net.devromik.suspender.persistent.PayloadCodecs)
+ * straight to the mapped memory, without intermediate arrays.
+ *
+ * The log is a sequence of fixed-size memory-mapped segments (net.devromik.suspender.persistent.JournalSegment)
+ * numbered in ascending order. The records are appended to the current segment
+ * within the critical sections of the divisions (see net.devromik.suspender.mem.MutationListener),
+ * so appending is only copying to the mapped memory. The full segments stay until they are covered by a snapshot
+ * (net.devromik.suspender.persistent.Snapshot) and deleted by compaction.
+ *
+ * sync() makes the appended records durable using group commit: the first thread that finds its records not synced yet
+ * becomes the leader and forces all the segments modified so far (by its own records and the ones of the other threads).
+ * The threads that arrive while the leader is syncing wait for it and usually find their records
+ * already synced, so many concurrent writers share one fsync.
+ * The leader can wait for a group commit window before taking the batch (see net.devromik.suspender.persistent.DurabilityPolicy).
+ *
+ * @author Shulnyaev Roman
+ */
+final class WriteAheadLog implements MutationListener, Closeable {
+
+    static final byte SUSPENDED = 1;
+    static final byte OBJECT_RESTORED = 2;
+    static final byte RESTORED = 3;
+
+    static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    // ****************************** //
+
+    private WriteAheadLog(File dir, int segmentSize, PayloadCodecs codecs, List<JournalSegment> replayedSegments, JournalSegment currentSegment) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.codecs = codecs;
+        this.replayedSegments = replayedSegments;
+        this.currentSegment = currentSegment;
+    }
+
+    /**
+     * Passes the valid records of the log in the directory {@code dir} to the {@code target}
+     * and opens the log for appending.
+     */
+    static WriteAheadLog open(
+        File dir,
+        long firstSeqNumber,
+        int segmentSize,
+        PayloadCodecs codecs,
+        MutationListener target) throws IOException {
+
+        return open(dir, firstSeqNumber, segmentSize, codecs, (body) -> replayRecord(body, codecs, target));
+    }
+
+    /**
+     * Passes the bodies of the valid records of the log in the directory {@code dir} to the {@code replayer}
+     * and opens the log for appending.
+     *
+     * Only the segments having the sequence numbers not less than {@code firstSeqNumber} are replayed,
+     * the older ones are covered by a snapshot and are deleted.
+     * Replaying stops at the first torn or corrupted record
+     * (such a record could only be partially written when the process crashed),
+     * the rest of the log is discarded. The records are appended to a new segment.
+     */
+    static WriteAheadLog open(
+        File dir,
+        long firstSeqNumber,
+        int segmentSize,
+        PayloadCodecs codecs,
+        JournalSegment.RecordBodyConsumer replayer) throws IOException {
+
+        long nextSeqNumber = firstSeqNumber;
+        boolean tornRecordFound = false;
+
+        // The replayer may hold the record bodies (which are the slices of the mapped segments) until it finishes,
+        // so the replayed segments are unmapped when the log is closed.
+        List<JournalSegment> replayedSegments = new ArrayList<>();
+
+        for (long seqNumber : JournalSegment.listSeqNumbers(dir)) {
+            if (seqNumber < firstSeqNumber || tornRecordFound) {
+                delete(JournalSegment.fileOf(dir, seqNumber));
+                continue;
+            }
+
+            JournalSegment segment = JournalSegment.open(dir, seqNumber);
+
+            replayedSegments.add(segment);
+
+            if (!segment.replay(replayer)) {
+                segment.terminate();
+                tornRecordFound = true;
+            }
+
+            nextSeqNumber = seqNumber + 1L;
+        }
+
+        return new WriteAheadLog(dir, segmentSize, codecs, replayedSegments, JournalSegment.create(dir, nextSeqNumber, segmentSize));
+    }
+
+    static void replayRecord(ByteBuffer body, PayloadCodecs codecs, MutationListener target) throws IOException {
+        byte type;
+        Path path;
+
+        try {
+            type = body.get();
+            path = readPath(body);
+        }
+        catch (BufferUnderflowException exception) {
+            throw new IOException("A write-ahead log record is malformed", exception);
+        }
+
+        replayRecord(type, path, body, codecs, target);
+    }
+
+    /**
+     * Replays the record of the {@code type} with the {@code path} already read from the {@code body}.
+     */
+    static void replayRecord(byte type, Path path, ByteBuffer body, PayloadCodecs codecs, MutationListener target) throws IOException {
+        try {
+            switch (type) {
+                case SUSPENDED:
+                    long restorationTime = body.getLong();
+                    int codecId = body.getInt();
+                    PayloadCodec<?> codec = codecs.codecOf(codecId);
+
+                    if (codec == null) {
+                        throw new IOException("There is no codec with the id " + codecId + " for the object suspended by " + path);
+                    }
+
+                    target.onSuspended(path, codec.decode(body), restorationTime);
+                    break;
+                case OBJECT_RESTORED:
+                    target.onObjectRestored(path);
+                    break;
+                case RESTORED:
+                    target.onRestored(path);
+                    break;
+                default:
+                    throw new IOException("Unknown type of a write-ahead log record: " + type);
+            }
+        }
+        catch (BufferUnderflowException exception) {
+            throw new IOException("A write-ahead log record is malformed", exception);
+        }
+    }
+
+    // ****************************** //
+
+    /**
+     * @throws IllegalArgumentException when there is no codec for the {@code object}
+     *         or the codec does not write exactly the declared number of bytes.
+     * @throws UncheckedIOException when a new segment cannot be created.
+     */
+    @Override
+    public void onSuspended(Path path, Object object, long restorationTime) {
+        Payload payload = codecs.prepare(path, object);
+        int bodySize = suspensionRecordBodySize(path, payload);
+
+        append(
+            bodySize,
+            (body) -> {
+                writeRecordTypeAndPath(SUSPENDED, path, body);
+                body.putLong(restorationTime);
+                body.putInt(payload.codecId);
+                payload.encode(body);
+            });
+    }
+
+    private static int suspensionRecordBodySize(Path path, Payload payload) {
+        return Byte.BYTES + sizeOf(path) + Long.BYTES + Integer.BYTES + payload.size;
+    }
+
+    /**
+     * @return the body of the suspension record written to a byte array (used by snapshots).
+     */
+    static byte[] makeSuspensionRecordBody(Path path, Object object, long restorationTime, PayloadCodecs codecs) {
+        Payload payload = codecs.prepare(path, object);
+        ByteBuffer body = ByteBuffer.allocate(suspensionRecordBodySize(path, payload));
+
+        writeRecordTypeAndPath(SUSPENDED, path, body);
+        body.putLong(restorationTime);
+        body.putInt(payload.codecId);
+        payload.encode(body);
+        checkArgument(!body.hasRemaining(), "The codec %s has written less bytes than declared", payload.codecId);
+
+        return body.array();
+    }
+
+    /**
+     * @return the suspended object of the suspension record with the {@code body}.
+     *
+     * @throws IOException when the record is malformed or is not a suspension one.
+     */
+    static SuspendedObject readSuspensionRecord(ByteBuffer body, PayloadCodecs codecs) throws IOException {
+        List<SuspendedObject> suspendedObjects = new ArrayList<>(1);
+
+        replayRecord(
+            body,
+            codecs,
+            new MutationListener() {
+
+                @Override
+                public void onSuspended(Path path, Object object, long restorationTime) {
+                    suspendedObjects.add(new SuspendedObject(path, object, Instant.ofEpochMilli(restorationTime)));
+                }
+
+                @Override
+                public void onObjectRestored(Path path) {}
+
+                @Override
+                public void onRestored(Path prefix) {}
+            });
+
+        if (suspendedObjects.isEmpty()) {
+            throw new IOException("A suspension record is expected");
+        }
+
+        return suspendedObjects.get(0);
+    }
+
+    @Override
+    public void onObjectRestored(Path path) {
+        appendRestorationRecord(OBJECT_RESTORED, path);
+    }
+
+    @Override
+    public void onRestored(Path prefix) {
+        appendRestorationRecord(RESTORED, prefix);
+    }
+
+    private void appendRestorationRecord(byte type, Path path) {
+        append(Byte.BYTES + sizeOf(path), (body) -> writeRecordTypeAndPath(type, path, body));
+    }
+
+    private static void writeRecordTypeAndPath(byte type, Path path, ByteBuffer body) {
+        body.put(type);
+        writePath(path, body);
+    }
+
+    private void append(int bodySize, JournalSegment.RecordBodyWriter bodyWriter) {
+        synchronized (appendLock) {
+            if (failure != null) {
+                throw failure;
+            }
+
+            if (!currentSegment.append(bodySize, bodyWriter)) {
+                startNewSegment(RECORD_HEADER_SIZE + bodySize);
+                currentSegment.append(bodySize, bodyWriter);
+            }
+
+            modifiedSegments.add(currentSegment);
+            ++appendedRecordCount;
+        }
+    }
+
+    /**
+     * Makes the next record be appended to a new segment.
+     *
+     * @return the sequence number of the new segment:
+     *         all the records appended before the call are in the segments with lesser sequence numbers.
+     */
+    long startNewSegment() {
+        synchronized (appendLock) {
+            if (failure != null) {
+                throw failure;
+            }
+
+            startNewSegment(0);
+            return currentSegment.seqNumber;
+        }
+    }
+
+    /**
+     * Must be called within the append critical section.
+     */
+    private void startNewSegment(int minSize) {
+        try {
+            currentSegment = JournalSegment.create(dir, currentSegment.seqNumber + 1L, Math.max(segmentSize, minSize));
+        }
+        catch (IOException exception) {
+            failure = new UncheckedIOException("Cannot create a segment of the write-ahead log", exception);
+            throw failure;
+        }
+    }
+
+    /**
+     * Deletes the segments having the sequence numbers less than {@code seqNumber}.
+     */
+    void deleteSegmentsBefore(long seqNumber) throws IOException {
+        for (long segmentSeqNumber : JournalSegment.listSeqNumbers(dir)) {
+            if (segmentSeqNumber < seqNumber) {
+                delete(JournalSegment.fileOf(dir, segmentSeqNumber));
+            }
+        }
+    }
+
+    static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    /**
+     * Makes all the records appended before the call durable.
+     *
+     * @throws UncheckedIOException when the log cannot be written.
+     *         After that the log is broken and all the subsequent calls fail.
+     */
+    void sync() {
+        sync(0L, null);
+    }
+
+    /**
+     * Makes all the records appended before the call durable.
+     * If the calling thread becomes the leader of a group commit,
+     * it waits {@code groupCommitWindowNanos} before taking the batch, so more records join it,
+     * and reports the fsync to the {@code policy} (if it is not {@code null}).
+     *
+     * @throws UncheckedIOException when the log cannot be written.
+     *         After that the log is broken and all the subsequent calls fail.
+     */
+    void sync(long groupCommitWindowNanos, DurabilityPolicy policy) {
+        long target;
+
+        synchronized (appendLock) {
+            target = appendedRecordCount;
+        }
+
+        if (syncedRecordCount >= target) {
+            return;
+        }
+
+        synchronized (syncLock) {
+            // The records could be synced by another leader while we were waiting for the lock.
+            if (syncedRecordCount >= target) {
+                return;
+            }
+
+            if (groupCommitWindowNanos > 0L) {
+                LockSupport.parkNanos(groupCommitWindowNanos);
+            }
+
+            List<JournalSegment> batchSegments;
+            long batchEnd;
+
+            synchronized (appendLock) {
+                if (failure != null) {
+                    throw failure;
+                }
+
+                batchSegments = new ArrayList<>(modifiedSegments);
+                modifiedSegments.clear();
+                batchEnd = appendedRecordCount;
+            }
+
+            // The writers are not blocked while the segments are being forced.
+            long syncStartTime = System.nanoTime();
+
+            for (JournalSegment segment : batchSegments) {
+                segment.force();
+            }
+
+            if (policy != null) {
+                policy.recordSync(System.nanoTime() - syncStartTime, batchEnd - syncedRecordCount);
+            }
+
+            ++syncCount;
+            syncedRecordCount = batchEnd;
+        }
+    }
+
+    /**
+     * Syncs the log and unmaps its segments, so the log can be deleted or opened again.
+     * The subsequent appends fail.
+     */
+    @Override
+    public void close() {
+        sync();
+
+        // No leader of a group commit is forcing the segments meanwhile.
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                if (failure == null) {
+                    failure = new UncheckedIOException(new IOException("The write-ahead log is closed"));
+                }
+
+                for (JournalSegment segment : replayedSegments) {
+                    segment.release();
+                }
+
+                for (JournalSegment segment : modifiedSegments) {
+                    segment.release();
+                }
+
+                replayedSegments.clear();
+                modifiedSegments.clear();
+                currentSegment.release();
+            }
+        }
+    }
+
+    long getCurrentSegmentSeqNumber() {
+        synchronized (appendLock) {
+            return currentSegment.seqNumber;
+        }
+    }
+
+    long getAppendedRecordCount() {
+        synchronized (appendLock) {
+            return appendedRecordCount;
+        }
+    }
+
+    long getSyncCount() {
+        synchronized (syncLock) {
+            return syncCount;
+        }
+    }
+
+    // ****************************** //
+
+    static int sizeOf(Path path) {
+        int size = Integer.BYTES;
+
+        for (String segment : path) {
+            size += Integer.BYTES + PayloadCodecs.STRING.sizeOf(segment);
+        }
+
+        return size;
+    }
+
+    static void writePath(Path path, ByteBuffer buffer) {
+        buffer.putInt(path.getSegmentCount());
+
+        for (String segment : path) {
+            buffer.putInt(PayloadCodecs.STRING.sizeOf(segment));
+            PayloadCodecs.STRING.encode(segment, buffer);
+        }
+    }
+
+    static Path readPath(ByteBuffer buffer) {
+        String[] segments = new String[buffer.getInt()];
+
+        for (int i = 0; i < segments.length; ++i) {
+            int segmentSize = buffer.getInt();
+            ByteBuffer segment = buffer.slice();
+            segment.limit(segmentSize);
+            segments[i] = PayloadCodecs.STRING.decode(segment);
+            buffer.position(buffer.position() + segmentSize);
+        }
+
+        return new Path(segments);
+    }
+
+    static int checksumOf(byte[] body) {
+        return checksumOf(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * @return the checksum of the remaining bytes of the {@code body}.
+     *         The position of the {@code body} is not changed.
+     */
+    static int checksumOf(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+
+        return (int)crc.getValue();
+    }
+
+    // ****************************** //
+
+    final File dir;
+    final int segmentSize;
+    final PayloadCodecs codecs;
+    final List<JournalSegment> replayedSegments;
+
+    // The records are appended to the current segment.
+    final Object appendLock = new Object();
+    JournalSegment currentSegment;
+    final Set<JournalSegment> modifiedSegments = new LinkedHashSet<>();
+    long appendedRecordCount;
+    UncheckedIOException failure;
+
+    // The modified segments are forced by the leader of a group commit.
+    final Object syncLock = new Object();
+    volatile long syncedRecordCount;
+    long syncCount;
+}
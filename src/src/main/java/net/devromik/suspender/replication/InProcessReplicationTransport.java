@@ -0,0 +1,36 @@
+package net.devromik.suspender.replication;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A transport to the follower living in the same process (for example, in tests).
+ * The shipped records are kept in memory until they are received.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class InProcessReplicationTransport implements ReplicationTransport {
+
+    @Override
+    public void ship(ReplicationRecord record) {
+        records.add(checkNotNull(record));
+    }
+
+    @Override
+    public ReplicationRecord receive(Duration timeout) throws InterruptedException {
+        return records.poll(timeout.toNanos(), NANOSECONDS);
+    }
+
+    /**
+     * @return the number of the shipped records not received yet.
+     */
+    public int getBacklog() {
+        return records.size();
+    }
+
+    // ****************************** //
+
+    private final BlockingQueue<ReplicationRecord> records = new LinkedBlockingQueue<>();
+}
@@ -0,0 +1,209 @@
+package net.devromik.suspender.replication;
+
+import java.time.*;
+import java.util.Collections;
+import org.slf4j.Logger;
+import net.devromik.suspender.mem.MemSuspender;
+import static com.google.common.base.Preconditions.*;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.Thread.currentThread;
+import static java.time.Duration.*;
+import static net.devromik.slf4jUtils.Slf4jUtils.logException;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A warm standby of the leader (see net.devromik.suspender.replication.ReplicationLeader).
+ *
+ * The follower applies the replication log received by the transport (net.devromik.suspender.replication.ReplicationTransport)
+ * to its own suspender, which is kept passive: it is not started, so it does not restore the expired objects
+ * and does not notify the listeners. The objects are restored by the leader, and the follower drops them
+ * on receiving the restoration records. The restoration times are kept as they are on the leader.
+ * The suspender of the follower must be used neither for modifications nor for restorations while the follower is passive.
+ *
+ * promote() makes the follower take over: the records received so far are applied and the suspender is started,
+ * so the pending objects are restored on expiration as if they were suspended by it
+ * (the objects expired while the leader was down are restored at once, see MemSuspender.enableCatchUp()).
+ *
+ * The name of the applying thread is applier.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class ReplicationFollower {
+
+    public static final String APPLIER_THREAD_NAME = "Suspender Replication Applier";
+
+    /**
+     * Time-out of waiting for the next record.
+     */
+    static final Duration RECEIVE_TIMEOUT = ofMillis(100L);
+
+    // ****************************** //
+
+    /**
+     * @param suspender an unused and not started suspender.
+     */
+    public ReplicationFollower(MemSuspender suspender, ReplicationTransport transport) {
+        this.suspender = checkNotNull(suspender);
+        this.transport = checkNotNull(transport);
+    }
+
+    public MemSuspender getSuspender() {
+        return suspender;
+    }
+
+    public void start() {
+        synchronized (lifeCycleLock) {
+            checkState(!started && !promoted);
+
+            // Creating and starting the applier.
+            makeAndStartApplier();
+
+            started = true;
+        }
+    }
+
+    private void makeAndStartApplier() {
+        // Creating the applier.
+        applier = new Thread(
+            () -> {
+                while (!currentThread().isInterrupted()) {
+                    try {
+                        ReplicationRecord record = transport.receive(RECEIVE_TIMEOUT);
+
+                        if (record != null) {
+                            apply(record);
+                        }
+                        else {
+                            // There is nothing to catch up with.
+                            replicationLagMillis = 0L;
+                        }
+                    }
+                    catch (InterruptedException exception) {
+                        currentThread().interrupt();
+                    }
+                    catch (Exception exception) {
+                        logException(logger, exception);
+                    }
+                }
+            },
+            APPLIER_THREAD_NAME);
+
+        // Starting the applier.
+        applier.start();
+    }
+
+    /**
+     * Applies the {@code record} unless it has already been applied.
+     * Is called by one thread at a time.
+     */
+    void apply(ReplicationRecord record) {
+        if (record.getSeqNumber() <= appliedSeqNumber) {
+            return;
+        }
+
+        switch (record.getType()) {
+            case SUSPENDED:
+                suspender.suspend(record.getPath(), record.getObject(), Instant.ofEpochMilli(record.getRestorationTime()));
+                break;
+            case OBJECT_RESTORED:
+                suspender.discard(record.getPath());
+                break;
+            case RESTORED:
+                suspender.restore(record.getPath(), Collections.emptyList());
+                break;
+        }
+
+        replicationLagMillis = Math.max(currentTimeMillis() - record.getPublicationTime(), 0L);
+        appliedSeqNumber = record.getSeqNumber();
+    }
+
+    public void stop() {
+        synchronized (lifeCycleLock) {
+            checkState(started);
+            stopApplier();
+            started = false;
+        }
+    }
+
+    private void stopApplier() {
+        applier.interrupt();
+
+        try {
+            logger.info("Waiting for \"{}\" to be stopped...", APPLIER_THREAD_NAME);
+            applier.join();
+            logger.info("\"{}\" has been stopped", APPLIER_THREAD_NAME);
+        }
+        catch (InterruptedException exception) {
+            logger.error("Interrupted while waiting for \"{}\" to be stopped", APPLIER_THREAD_NAME);
+        }
+    }
+
+    /**
+     * Stops applying the log, applies the records received so far and starts the suspender.
+     * The caller must make sure the old leader does not publish anymore.
+     *
+     * @return the suspender which takes over.
+     */
+    public MemSuspender promote() {
+        synchronized (lifeCycleLock) {
+            checkState(!promoted);
+
+            if (started) {
+                stopApplier();
+                started = false;
+            }
+
+            try {
+                for (ReplicationRecord record = transport.receive(ZERO); record != null; record = transport.receive(ZERO)) {
+                    apply(record);
+                }
+            }
+            catch (InterruptedException exception) {
+                currentThread().interrupt();
+            }
+
+            replicationLagMillis = 0L;
+            suspender.start();
+            promoted = true;
+
+            return suspender;
+        }
+    }
+
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    /**
+     * @return the sequence number of the last applied record or {@code 0} if there are no such records.
+     */
+    public long getAppliedSeqNumber() {
+        return appliedSeqNumber;
+    }
+
+    /**
+     * The records not applied yet are ReplicationLeader.getPublishedSeqNumber() - getAppliedSeqNumber().
+     *
+     * @return the time between the publication and the application of the last applied record
+     *         or zero if the follower has caught up with the leader.
+     */
+    public Duration getReplicationLag() {
+        return ofMillis(replicationLagMillis);
+    }
+
+    // ****************************** //
+
+    private final MemSuspender suspender;
+    private final ReplicationTransport transport;
+
+    private volatile long appliedSeqNumber;
+    private volatile long replicationLagMillis;
+
+    // Life cycle.
+    private final Object lifeCycleLock = new Object();
+    private boolean started;
+    private volatile boolean promoted;
+    private Thread applier;
+
+    private final static Logger logger = getLogger(ReplicationFollower.class);
+}
@@ -0,0 +1,188 @@
+package net.devromik.suspender.replication;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import org.slf4j.Logger;
+import net.devromik.suspender.mem.MutationListener;
+import net.devromik.suspender.utils.Path;
+import static com.google.common.base.Preconditions.*;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.Thread.currentThread;
+import static java.time.Duration.ofMillis;
+import static net.devromik.slf4jUtils.Slf4jUtils.logException;
+import static net.devromik.suspender.replication.ReplicationRecord.Type.*;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Publishes the modifications of the suspended objects of net.devromik.suspender.mem.MemSuspender
+ * as the replication log shipped by the transport (net.devromik.suspender.replication.ReplicationTransport).
+ *
+ * The leader is the mutation listener of the suspender (see MemSuspender.setMutationListener()),
+ * so it must be set before the suspender is used: the objects suspended before are not replicated.
+ * The records are numbered and enqueued under one lock, so the modifications of the objects suspended by the same path
+ * are published in the order they are performed. The restorations on expiration are published as well,
+ * so the follower drops the restored objects.
+ *
+ * The records are shipped by a separate thread in the order of their sequence numbers,
+ * so a slow transport never holds the critical sections of the divisions.
+ * The records are kept until they are shipped: a record failed to be shipped is shipped again after a pause.
+ * The records published before stop() are shipped by it.
+ *
+ * The name of the shipping thread is shipper.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class ReplicationLeader implements MutationListener {
+
+    public static final String SHIPPER_THREAD_NAME = "Suspender Replication Shipper";
+
+    /**
+     * Pause before shipping a record again after the transport has failed to ship it.
+     */
+    static final Duration SHIP_RETRY_PAUSE = ofMillis(100L);
+
+    // ****************************** //
+
+    public ReplicationLeader(ReplicationTransport transport) {
+        this.transport = checkNotNull(transport);
+    }
+
+    public void start() {
+        synchronized (lifeCycleLock) {
+            checkState(!started);
+
+            // Creating and starting the shipper.
+            makeAndStartShipper();
+
+            started = true;
+        }
+    }
+
+    private void makeAndStartShipper() {
+        // Creating the shipper.
+        shipper = new Thread(
+            () -> {
+                while (!currentThread().isInterrupted()) {
+                    try {
+                        if (!shipNext(unshipped.takeFirst())) {
+                            Thread.sleep(SHIP_RETRY_PAUSE.toMillis());
+                        }
+                    }
+                    catch (InterruptedException exception) {
+                        currentThread().interrupt();
+                    }
+                }
+            },
+            SHIPPER_THREAD_NAME);
+
+        // Starting the shipper.
+        shipper.start();
+    }
+
+    /**
+     * Ships the {@code record} or returns it to the head of the queue if the transport fails.
+     * Is called by one thread at a time.
+     *
+     * @return {@code true} iff the {@code record} has been shipped.
+     */
+    private boolean shipNext(ReplicationRecord record) {
+        try {
+            transport.ship(record);
+            shippedSeqNumber = record.getSeqNumber();
+
+            return true;
+        }
+        catch (Exception exception) {
+            logException(logger, exception);
+            unshipped.addFirst(record);
+
+            return false;
+        }
+    }
+
+    public void stop() {
+        synchronized (lifeCycleLock) {
+            checkState(started);
+            shipper.interrupt();
+
+            try {
+                logger.info("Waiting for \"{}\" to be stopped...", SHIPPER_THREAD_NAME);
+                shipper.join();
+                logger.info("\"{}\" has been stopped", SHIPPER_THREAD_NAME);
+            }
+            catch (InterruptedException exception) {
+                logger.error("Interrupted while waiting for \"{}\" to be stopped", SHIPPER_THREAD_NAME);
+            }
+
+            // Shipping the records published so far.
+            for (ReplicationRecord record = unshipped.pollFirst(); record != null; record = unshipped.pollFirst()) {
+                if (!shipNext(record)) {
+                    break;
+                }
+            }
+
+            started = false;
+        }
+    }
+
+    @Override
+    public void onSuspended(Path path, Object object, long restorationTime) {
+        publish(SUSPENDED, path, object, restorationTime);
+    }
+
+    @Override
+    public void onObjectRestored(Path path) {
+        publish(OBJECT_RESTORED, path, null, 0L);
+    }
+
+    @Override
+    public void onRestored(Path prefix) {
+        publish(RESTORED, prefix, null, 0L);
+    }
+
+    /**
+     * Only enqueues the record, as it is called within the critical section of a division.
+     */
+    private void publish(ReplicationRecord.Type type, Path path, Object object, long restorationTime) {
+        synchronized (publicationLock) {
+            unshipped.addLast(new ReplicationRecord(publishedSeqNumber + 1L, type, path, object, restorationTime, currentTimeMillis()));
+            ++publishedSeqNumber;
+        }
+    }
+
+    /**
+     * @return the sequence number of the last published record or {@code 0} if there are no such records.
+     */
+    public long getPublishedSeqNumber() {
+        synchronized (publicationLock) {
+            return publishedSeqNumber;
+        }
+    }
+
+    /**
+     * The records not shipped yet are getPublishedSeqNumber() - getShippedSeqNumber().
+     *
+     * @return the sequence number of the last shipped record or {@code 0} if there are no such records.
+     */
+    public long getShippedSeqNumber() {
+        return shippedSeqNumber;
+    }
+
+    // ****************************** //
+
+    private final ReplicationTransport transport;
+
+    private final Object publicationLock = new Object();
+    private long publishedSeqNumber;
+
+    // The published records in the order of their sequence numbers.
+    private final BlockingDeque<ReplicationRecord> unshipped = new LinkedBlockingDeque<>();
+    private volatile long shippedSeqNumber;
+
+    // Life cycle.
+    private final Object lifeCycleLock = new Object();
+    private boolean started;
+    private Thread shipper;
+
+    private final static Logger logger = getLogger(ReplicationLeader.class);
+}
@@ -0,0 +1,83 @@
+package net.devromik.suspender.replication;
+
+import net.devromik.suspender.utils.Path;
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A record of the replication log: a modification of the suspended objects of the leader
+ * (see net.devromik.suspender.mem.MutationListener) numbered in the order of publication.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class ReplicationRecord {
+
+    public enum Type {
+        SUSPENDED,
+        OBJECT_RESTORED,
+        RESTORED
+    }
+
+    // ****************************** //
+
+    /**
+     * @param restorationTime the restoration time (in milliseconds since the epoch) of a SUSPENDED record.
+     * @param publicationTime the time (in milliseconds since the epoch) when the leader has published the record.
+     */
+    public ReplicationRecord(long seqNumber, Type type, Path path, Object object, long restorationTime, long publicationTime) {
+        checkArgument(seqNumber > 0L);
+        this.seqNumber = seqNumber;
+        this.type = checkNotNull(type);
+        this.path = checkNotNull(path);
+        this.object = object;
+        this.restorationTime = restorationTime;
+        this.publicationTime = publicationTime;
+    }
+
+    /**
+     * @return the sequence number starting with 1.
+     */
+    public long getSeqNumber() {
+        return seqNumber;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the path of the object for SUSPENDED and OBJECT_RESTORED
+     *         or the prefix of the restored objects for RESTORED.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the suspended object for SUSPENDED or {@code null}.
+     */
+    public Object getObject() {
+        return object;
+    }
+
+    public long getRestorationTime() {
+        return restorationTime;
+    }
+
+    public long getPublicationTime() {
+        return publicationTime;
+    }
+
+    @Override
+    public String toString() {
+        return seqNumber + " " + type + " " + path;
+    }
+
+    // ****************************** //
+
+    private final long seqNumber;
+    private final Type type;
+    private final Path path;
+    private final Object object;
+    private final long restorationTime;
+    private final long publicationTime;
+}
@@ -0,0 +1,32 @@
+package net.devromik.suspender.replication;
+
+import java.time.Duration;
+
+/**
+ * Delivers the replication log from net.devromik.suspender.replication.ReplicationLeader
+ * to net.devromik.suspender.replication.ReplicationFollower.
+ *
+ * The transport can be the in-process one (see net.devromik.suspender.replication.InProcessReplicationTransport)
+ * or a pair of stubs which send the records over the network.
+ * The records must be received in the order they are shipped. A record may be received more than once
+ * (for example, after a reconnection): the follower skips the records already applied.
+ *
+ * @author Shulnyaev Roman
+ */
+public interface ReplicationTransport {
+
+    /**
+     * Ships the {@code record} to the follower.
+     * Is called by one thread of the leader at a time in the order of the sequence numbers,
+     * out of the critical sections of the divisions.
+     * If the method throws an exception then the leader ships the {@code record} again after a pause.
+     */
+    void ship(ReplicationRecord record);
+
+    /**
+     * Is called by the follower.
+     *
+     * @return the next shipped record or {@code null} if there is no such record within the {@code timeout}.
+     */
+    ReplicationRecord receive(Duration timeout) throws InterruptedException;
+}
@@ -0,0 +1,103 @@
+package net.devromik.suspender.utils;
+
+import java.util.concurrent.atomic.*;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A concurrent histogram of non-negative long values.
+ *
+ * The values are counted in the buckets with the power-of-two bounds:
+ * the bucket with the index i > 0 counts the values within [2^(i - 1), 2^i), the bucket 0 counts zeros.
+ * So recording a value is a couple of atomic increments, and a percentile is accurate within a factor of two.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class Histogram {
+
+    public static final int BUCKET_COUNT = Long.SIZE;
+
+    // ****************************** //
+
+    /**
+     * @throws IllegalArgumentException when {@code value < 0}.
+     */
+    public void record(long value) {
+        checkArgument(value >= 0L);
+        buckets.incrementAndGet(bucketIndexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    static int bucketIndexOf(long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values or {@code 0} if there are no values.
+     */
+    public double getMean() {
+        long count = getCount();
+        return count > 0L ? (double)sum.sum() / count : 0.0;
+    }
+
+    /**
+     * @return the upper bound of the bucket containing the value at the {@code percentile}
+     *         (but not greater than the maximal recorded value) or {@code 0} if there are no values.
+     *
+     * @throws IllegalArgumentException when {@code percentile} is not within [0, 100].
+     */
+    public long getValueAtPercentile(double percentile) {
+        checkArgument(percentile >= 0.0 && percentile <= 100.0);
+        long count = getCount();
+
+        if (count == 0L) {
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long)Math.ceil(count * percentile / 100.0));
+        long seen = 0L;
+
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += buckets.get(i);
+
+            if (seen >= rank) {
+                return i == 0 ? 0L : Math.min((1L << i) - 1L, getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * @return the number of the recorded values counted in the bucket with the index {@code i}.
+     */
+    public long getBucketCount(int i) {
+        return buckets.get(i);
+    }
+
+    @Override
+    public String toString() {
+        return
+            "count=" + getCount() +
+            ", mean=" + getMean() +
+            ", p50=" + getValueAtPercentile(50.0) +
+            ", p99=" + getValueAtPercentile(99.0) +
+            ", max=" + getMax();
+    }
+
+    // ****************************** //
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+}
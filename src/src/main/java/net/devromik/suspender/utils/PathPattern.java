@@ -0,0 +1,215 @@
+package net.devromik.suspender.utils;
+
+import java.util.*;
+import com.google.common.base.Joiner;
+import static com.google.common.base.Preconditions.*;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Path pattern is a sequence of segments some of which can be wildcards:
+ *     - {@code *} matches exactly one segment,
+ *     - {@code **} matches zero or more segments,
+ *     - any other segment matches only itself.
+ *
+ * For example, the pattern /tenant/&#42;/sessions/S matches the paths /tenant/T1/sessions/S and /tenant/T2/sessions/S,
+ * the pattern /tenant/&#42;&#42;/S matches the paths /tenant/S, /tenant/T1/S and /tenant/T1/sessions/S.
+ *
+ * A pattern is matched against a path segment by segment as a nondeterministic automaton
+ * which states are positions in the pattern. This allows one to match a pattern
+ * while walking down a tree of segments without backtracking.
+ *
+ * A segment cannot be null or empty.
+ * A segment cannot contain '/'.
+ * A pattern must have at least one segment.
+ *
+ * This class is thread-safe.
+ *
+ * @author Shulnyaev Roman
+ */
+public final class PathPattern {
+
+    public static final String ANY_SEGMENT = "*";
+    public static final String ANY_SEGMENTS = "**";
+
+    // ****************************** //
+
+    /**
+     * @throws NullPointerException when {@code segments} is null.
+     * @throws IllegalArgumentException when {@code segments} is empty.
+     * @throws IllegalArgumentException when at least one element of the {@code segments} is null or empty.
+     * @throws IllegalArgumentException when at least one element of the {@code segments} contains '/'.
+     */
+    public PathPattern(String... segments) {
+        checkArgument(segments.length > 0);
+
+        for (String segment : segments) {
+            checkArgument(!isNullOrEmpty(segment) && !segment.contains("/"));
+        }
+
+        this.segments = segments.clone();
+    }
+
+    /**
+     * @return the {@code i}-th segment of the pattern, {@code i} = 0..{@code getSegmentCount()} - 1.
+     */
+    public String getSegment(int i) {
+        return segments[i];
+    }
+
+    /**
+     * @return the number of pattern segments.
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * @return {@code true} iff the {@code i}-th segment of the pattern is not a wildcard.
+     */
+    public boolean isLiteral(int i) {
+        return !isWildcard(segments[i]);
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.equals(ANY_SEGMENT) || segment.equals(ANY_SEGMENTS);
+    }
+
+    /**
+     * @return {@code true} iff the whole {@code path} matches the pattern.
+     */
+    public boolean matches(Path path) {
+        BitSet states = start();
+
+        for (String segment : path) {
+            states = step(states, segment);
+
+            if (states.isEmpty()) {
+                return false;
+            }
+        }
+
+        return isMatched(states);
+    }
+
+    /**
+     * @return {@code true} iff some prefix of the {@code path} (possibly, the path itself) matches the pattern.
+     */
+    public boolean matchesPrefixOf(Path path) {
+        BitSet states = start();
+
+        for (String segment : path) {
+            states = step(states, segment);
+
+            if (states.isEmpty()) {
+                return false;
+            }
+
+            if (isMatched(states)) {
+                return true;
+            }
+        }
+
+        return isMatched(states);
+    }
+
+    // ****************************** //
+
+    /**
+     * @return the initial set of states: no segments have been consumed yet.
+     */
+    public BitSet start() {
+        BitSet states = new BitSet(segments.length + 1);
+        addWithClosure(states, 0);
+
+        return states;
+    }
+
+    /**
+     * @return the set of states after consuming the {@code segment} in the {@code states}.
+     *         The empty set means that no path having the consumed segments as a prefix can match the pattern.
+     */
+    public BitSet step(BitSet states, String segment) {
+        BitSet nextStates = new BitSet(segments.length + 1);
+
+        for (int i = states.nextSetBit(0); i >= 0 && i < segments.length; i = states.nextSetBit(i + 1)) {
+            String patternSegment = segments[i];
+
+            if (patternSegment.equals(ANY_SEGMENTS)) {
+                addWithClosure(nextStates, i);
+            }
+            else if (patternSegment.equals(ANY_SEGMENT) || patternSegment.equals(segment)) {
+                addWithClosure(nextStates, i + 1);
+            }
+        }
+
+        return nextStates;
+    }
+
+    /**
+     * @return {@code true} iff the consumed segments match the whole pattern.
+     */
+    public boolean isMatched(BitSet states) {
+        return states.get(segments.length);
+    }
+
+    /**
+     * @return the segments which can be consumed in the {@code states} without getting the empty set,
+     *         or {@code null} if any segment can be consumed (there is a wildcard).
+     */
+    public Set<String> expectedSegments(BitSet states) {
+        Set<String> expectedSegments = new HashSet<>();
+
+        for (int i = states.nextSetBit(0); i >= 0 && i < segments.length; i = states.nextSetBit(i + 1)) {
+            if (!isLiteral(i)) {
+                return null;
+            }
+
+            expectedSegments.add(segments[i]);
+        }
+
+        return expectedSegments;
+    }
+
+    private void addWithClosure(BitSet states, int i) {
+        states.set(i);
+
+        // "**" can match zero segments, so the position after it is reachable without consuming anything.
+        while (i < segments.length && segments[i].equals(ANY_SEGMENTS)) {
+            states.set(++i);
+        }
+    }
+
+    // ****************************** //
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+
+        if (other == null) {
+            return false;
+        }
+
+        if (other.getClass() != getClass()) {
+            return false;
+        }
+
+        PathPattern otherPattern = (PathPattern)other;
+        return Arrays.equals(segments, otherPattern.segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(segments);
+    }
+
+    @Override
+    public String toString() {
+        return "/" + Joiner.on("/").join(segments);
+    }
+
+    // ****************************** //
+
+    private final String[] segments;
+}
@@ -0,0 +1,142 @@
+package net.devromik.suspender.cluster;
+
+import java.util.*;
+import java.util.concurrent.*;
+import net.devromik.suspender.SuspendedObject;
+import net.devromik.suspender.mem.MemSuspender;
+import org.junit.*;
+import static java.time.Duration.*;
+import static java.time.Instant.now;
+import static java.util.stream.Collectors.*;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class PartitionedSuspenderTest {
+
+    @Before
+    public void beforeTest() {
+        InProcessPartitionTransport transport = new InProcessPartitionTransport();
+
+        for (String node : NODES) {
+            MemSuspender nodeSuspender = new MemSuspender();
+            nodeSuspenders.put(node, nodeSuspender);
+            transport.register(node, nodeSuspender);
+        }
+
+        suspender = new PartitionedSuspender(new HashPartitionRouter(NODES), transport);
+        suspender.start();
+    }
+
+    @After
+    public void afterTest() {
+        suspender.stop();
+    }
+
+    // ****************************** //
+
+    @Test
+    public void pathsWithSameFirstTwoSegmentsAreOwnedBySameNode() {
+        for (int i = 0; i < 100; ++i) {
+            suspender.suspend(new Path("A", "B" + i, "C1"), i, ofHours(1L));
+            suspender.suspend(new Path("A", "B" + i, "C2"), i, ofHours(1L));
+        }
+
+        Set<String> usedNodes = new HashSet<>();
+
+        for (int i = 0; i < 100; ++i) {
+            String owner = suspender.getRouter().ownerOf(new Path("A", "B" + i));
+            usedNodes.add(owner);
+            assertThat(nodeSuspenders.get(owner).countSuspendedBy(new Path("A", "B" + i)), is(2L));
+            assertThat(suspender.countSuspendedBy(new Path("A", "B" + i)), is(2L));
+        }
+
+        assertThat(usedNodes, is(new HashSet<>(NODES)));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(200L));
+        assertThat(suspender.stream(new Path("A")).count(), is(200L));
+        assertTrue(suspender.hasObjectsSuspendedBy(new Path("A")));
+        assertTrue(suspender.hasObjectsSuspendedBy(new PathPattern("A", "*", "C2")));
+        assertTrue(suspender.hasObjectsSuspendedBy(new PathPattern("A", "B7", "C1")));
+        assertFalse(suspender.hasObjectsSuspendedBy(new PathPattern("A", "B7", "C3")));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("B")));
+    }
+
+    @Test
+    public void singleSegmentOperationsAreScattered() throws Exception {
+        BlockingQueue<Object> restored = new LinkedBlockingQueue<>();
+        suspender.addRestoredObjectListener((path, restoredObject) -> restored.add(restoredObject));
+
+        for (int i = 0; i < 50; ++i) {
+            suspender.suspend(new Path("A", "B" + i), i, ofMinutes(10L + i));
+            suspender.suspend(new Path("D", "B" + i), i, ofMinutes(10L));
+        }
+
+        assertThat(
+            suspender.peekEarliest(new Path("A"), 3).stream().map(SuspendedObject::getObject).collect(toList()),
+            is(Arrays.asList(0, 1, 2)));
+
+        suspender.restoreObjectWithMinRestorationTime(new Path("A"));
+        assertThat(restored.poll(1L, TimeUnit.SECONDS), is(0));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(49L));
+
+        suspender.restoreDueBefore(new Path("A"), now().plus(ofMinutes(20L)).minusSeconds(30L));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(40L));
+
+        suspender.restore(new PathPattern("*", "B11"));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(39L));
+        assertThat(suspender.countSuspendedBy(new Path("D")), is(49L));
+
+        suspender.restore(new Path("A"));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(0L));
+        assertThat(suspender.countSuspendedBy(new Path("D")), is(49L));
+        assertThat(restored.size(), is(9 + 2 + 39));
+    }
+
+    @Test
+    public void pathOperationsAreRoutedToOwner() {
+        Path path = new Path("A", "B", "C");
+        MemSuspender owner = nodeSuspenders.get(suspender.getRouter().ownerOf(path));
+
+        assertTrue(suspender.suspendIfAbsent(path, 1, ofHours(1L)));
+        assertFalse(suspender.suspendIfAbsent(path, 2, ofHours(1L)));
+        assertTrue(suspender.replace(path, 1, 3, ofHours(1L)));
+        assertThat(suspender.compute(path, (object) -> (Integer)object + 1, ofHours(1L)), is(4));
+        assertThat(owner.getSuspendedObject(path).getObject(), is(4));
+
+        suspender.restore(path);
+        assertFalse(owner.hasObjectsSuspendedBy(path));
+    }
+
+    @Test
+    public void addingNodeMovesFewPaths() {
+        HashPartitionRouter router = new HashPartitionRouter(NODES);
+        List<String> moreNodes = new ArrayList<>(NODES);
+        moreNodes.add("node-4");
+        HashPartitionRouter largerRouter = new HashPartitionRouter(moreNodes);
+        int movedPathCount = 0;
+
+        for (int i = 0; i < 10000; ++i) {
+            Path path = new Path("A", "B" + i);
+            String owner = router.ownerOf(path);
+            String newOwner = largerRouter.ownerOf(path);
+
+            if (!owner.equals(newOwner)) {
+                assertThat(newOwner, is("node-4"));
+                ++movedPathCount;
+            }
+        }
+
+        // About a quarter of the paths are moved to the new node.
+        assertTrue(movedPathCount > 1500 && movedPathCount < 3000);
+    }
+
+    // ****************************** //
+
+    static final List<String> NODES = Arrays.asList("node-1", "node-2", "node-3");
+
+    private PartitionedSuspender suspender;
+    private final Map<String, MemSuspender> nodeSuspenders = new HashMap<>();
+}
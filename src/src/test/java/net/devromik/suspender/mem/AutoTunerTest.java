@@ -0,0 +1,129 @@
+package net.devromik.suspender.mem;
+
+import org.junit.*;
+import static java.time.Duration.*;
+import static net.devromik.suspender.mem.AutoTuner.*;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class AutoTunerTest {
+
+    @Before
+    public void beforeTest() {
+        suspender = new MemSuspender(8, ofMillis(40L), ofMillis(400L));
+        tuner = new AutoTuner(suspender, ofSeconds(1L), ofMillis(200L), ofMillis(50L), ofMillis(800L), 16);
+    }
+
+    // ****************************** //
+
+    @Test
+    public void sleepTimesAreDecreasedWhenRestorationsAreLate() {
+        for (int i = 0; i < 100; ++i) {
+            suspender.getRestorationLateness().record(i < 90 ? 10L : 1000L);
+        }
+
+        tuner.tune();
+        assertThat(suspender.getRestorerSleepTimeAfterUsefulWork(), is(ofMillis(20L)));
+        assertThat(suspender.getRestorerSleepTimeAfterUselessWork(), is(ofMillis(200L)));
+
+        // Only the restorations since the previous tuning are taken into account.
+        suspender.getRestorationLateness().record(10L);
+        tuner.tune();
+        assertThat(suspender.getRestorerSleepTimeAfterUsefulWork(), is(ofMillis(40L)));
+        assertThat(suspender.getRestorerSleepTimeAfterUselessWork(), is(ofMillis(400L)));
+    }
+
+    @Test
+    public void sleepTimesAreIncreasedWithinLimits() {
+        suspender.setRestorerSleepTimeAfterUsefulWork(ZERO);
+        suspender.setRestorerSleepTimeAfterUselessWork(ZERO);
+
+        tuner.tune();
+        assertThat(suspender.getRestorerSleepTimeAfterUsefulWork(), is(INITIAL_SLEEP_TIME_AFTER_USEFUL_WORK));
+        assertThat(suspender.getRestorerSleepTimeAfterUselessWork(), is(INITIAL_SLEEP_TIME_AFTER_USELESS_WORK));
+
+        for (int i = 0; i < 10; ++i) {
+            tuner.tune();
+        }
+
+        assertThat(suspender.getRestorerSleepTimeAfterUsefulWork(), is(ofMillis(50L)));
+        assertThat(suspender.getRestorerSleepTimeAfterUselessWork(), is(ofMillis(800L)));
+
+        // A slow iteration over the divisions stops the increase.
+        suspender.setRestorerSleepTimeAfterUselessWork(ofMillis(100L));
+        suspender.getExpirationSweepDurations().record(ofMillis(150L).toNanos() / 1000L);
+        tuner.tune();
+        assertThat(suspender.getRestorerSleepTimeAfterUselessWork(), is(ofMillis(100L)));
+    }
+
+    @Test
+    public void divisionsAreAddedWhenContendedWithinLimit() {
+        SuspendedObjectDivision div = suspender.divisionFor(new Path("A", "B"));
+
+        // Not enough entries to judge.
+        div.lockAcquisitionCount.add(100L);
+        div.contendedLockAcquisitionCount.add(50L);
+        tuner.tune();
+        assertThat(suspender.getDivisionCount(), is(8));
+
+        // Not enough contention.
+        div.lockAcquisitionCount.add(10000L);
+        div.contendedLockAcquisitionCount.add(100L);
+        tuner.tune();
+        assertThat(suspender.getDivisionCount(), is(8));
+
+        div.lockAcquisitionCount.add(10000L);
+        div.contendedLockAcquisitionCount.add(1000L);
+        tuner.tune();
+        assertThat(suspender.getDivisionCount(), is(16));
+
+        div.lockAcquisitionCount.add(10000L);
+        div.contendedLockAcquisitionCount.add(1000L);
+        tuner.tune();
+        assertThat(suspender.getDivisionCount(), is(16));
+    }
+
+    @Test
+    public void lockWaitIsMeasured() throws Exception {
+        Path path = new Path("A", "B");
+        SuspendedObjectDivision div = suspender.divisionFor(path);
+        int divIndex = suspender.getDivisionIndex(path);
+        div.suspendedObjectTreeLock.lock();
+
+        Thread thread = new Thread(() -> suspender.suspend(path, 1, ofHours(1L)));
+        thread.start();
+
+        // The lock is held for a while only once the thread is blocked on it.
+        while (!div.suspendedObjectTreeLock.hasQueuedThreads()) {
+            Thread.yield();
+        }
+
+        Thread.sleep(50L);
+        div.suspendedObjectTreeLock.unlock();
+        thread.join();
+
+        assertThat(suspender.getContendedLockAcquisitionCount(divIndex), is(1L));
+        assertTrue(suspender.getLockAcquisitionCount(divIndex) >= 1L);
+        assertTrue(suspender.getLockWaitNanos(divIndex) >= ofMillis(50L).toNanos());
+    }
+
+    @Test
+    public void percentileIsFoundInBuckets() {
+        long[] buckets = new long[Histogram.BUCKET_COUNT];
+        assertThat(valueAtPercentile(buckets, 99.0), is(0L));
+
+        buckets[3] = 98L;
+        buckets[10] = 2L;
+        assertThat(valueAtPercentile(buckets, 50.0), is(7L));
+        assertThat(valueAtPercentile(buckets, 99.0), is(1023L));
+    }
+
+    // ****************************** //
+
+    private MemSuspender suspender;
+    private AutoTuner tuner;
+}
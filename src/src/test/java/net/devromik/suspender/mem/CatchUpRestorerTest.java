@@ -0,0 +1,131 @@
+package net.devromik.suspender.mem;
+
+import java.time.Instant;
+import java.util.*;
+import org.junit.*;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.Thread.sleep;
+import static java.time.Duration.*;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_DURATION;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class CatchUpRestorerTest {
+
+    @Before
+    public void beforeTest() {
+        suspender = new MemSuspender();
+        suspender.setRestorerSleepTimeAfterUselessWork(ofMillis(10L));
+        suspender.addRestoredObjectListener((path, restoredObject) -> restored.add((Long)restoredObject));
+    }
+
+    @After
+    public void afterTest() {
+        suspender.stop();
+    }
+
+    // ****************************** //
+
+    @Test
+    public void overdueObjectsAreRestoredAtMaxRateInOrderOfRestorationTime() throws Exception {
+        long now = currentTimeMillis();
+
+        for (int i = 0; i < 40; ++i) {
+            long restorationTime = now - 1000L + (i * 7919L) % 1000L;
+            suspender.suspend(new Path("A", "B" + i), restorationTime, Instant.ofEpochMilli(restorationTime));
+        }
+
+        suspender.enableCatchUp(50.0, false);
+        suspender.start();
+
+        assertTrue(suspender.isCatchingUp());
+        sleep(300L);
+
+        // At most ~15 restorations are allowed within 300 ms.
+        assertTrue(suspender.getCatchUpRestoredCount() >= 5L);
+        assertTrue(suspender.getCatchUpRestoredCount() <= 25L);
+        assertTrue(suspender.getOverdueBacklog() >= 15L);
+
+        waitForCatchUp();
+        assertThat(suspender.getOverdueBacklog(), is(0L));
+        assertThat(suspender.getCatchUpRestoredCount(), is(40L));
+        assertThat(restored.size(), is(40));
+
+        synchronized (restored) {
+            for (int i = 1; i < restored.size(); ++i) {
+                assertTrue(restored.get(i - 1) <= restored.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void onTimeRestorationsAreNotDelayedByCatchUp() throws Exception {
+        long overdueRestorationTime = currentTimeMillis() - 1000L;
+
+        for (int i = 0; i < 100; ++i) {
+            suspender.suspend(new Path("A", "B" + i), overdueRestorationTime, Instant.ofEpochMilli(overdueRestorationTime));
+        }
+
+        suspender.enableCatchUp(5.0, false);
+        suspender.start();
+        suspender.suspend(new Path("C", "D"), -1L, MIN_SUSPENSION_DURATION);
+        sleep(1000L);
+
+        assertTrue(suspender.isCatchingUp());
+        assertTrue(restored.contains(-1L));
+        assertNull(suspender.getSuspendedObject(new Path("C", "D")));
+    }
+
+    @Test
+    public void rateCanBeLimitedForEachPathFirstSegment() throws Exception {
+        long now = currentTimeMillis();
+
+        // The objects of "A" are due earlier than the ones of "B".
+        for (int i = 0; i < 100; ++i) {
+            suspender.suspend(new Path("A", "B" + i), now - 2000L, Instant.ofEpochMilli(now - 2000L));
+        }
+
+        for (int i = 0; i < 5; ++i) {
+            suspender.suspend(new Path("B", "B" + i), now - 1000L, Instant.ofEpochMilli(now - 1000L));
+        }
+
+        suspender.enableCatchUp(10.0, true);
+        suspender.start();
+        sleep(1000L);
+
+        assertTrue(suspender.isCatchingUp());
+        assertThat(suspender.countSuspendedBy(new Path("B")), is(0L));
+        assertTrue(suspender.countSuspendedBy(new Path("A")) >= 80L);
+    }
+
+    @Test
+    public void noCatchUpWithoutOverdueObjects() throws Exception {
+        suspender.suspend(new Path("A", "B"), 0L, ofHours(1L));
+        suspender.enableCatchUp(10.0, false);
+        suspender.start();
+
+        assertFalse(suspender.isCatchingUp());
+        assertThat(suspender.getOverdueBacklog(), is(0L));
+    }
+
+    // ****************************** //
+
+    private void waitForCatchUp() throws InterruptedException {
+        long deadline = currentTimeMillis() + 10_000L;
+
+        while (suspender.isCatchingUp() && currentTimeMillis() < deadline) {
+            sleep(10L);
+        }
+
+        assertFalse(suspender.isCatchingUp());
+    }
+
+    // ****************************** //
+
+    private MemSuspender suspender;
+    private final List<Long> restored = Collections.synchronizedList(new ArrayList<>());
+}
@@ -1,17 +1,25 @@
 package net.devromik.suspender.mem;
 
-import java.util.Collection;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.Lock;
+import net.devromik.suspender.SuspendedObject;
 import org.junit.*;
 import static com.google.common.collect.Lists.newArrayList;
 import static java.lang.System.currentTimeMillis;
 import static java.time.Duration.*;
+import static java.time.Instant.now;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.*;
 import static net.devromik.suspender.Suspender.*;
 import net.devromik.suspender.RestoredObjectListener;
 import static net.devromik.suspender.mem.MemSuspender.*;
-import net.devromik.suspender.utils.Path;
+import net.devromik.suspender.utils.*;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
-import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -741,6 +749,486 @@ public class MemSuspenderTest {
             path_A2_B2_C3);
     }
 
+    @Test
+    public void canRestoreByPattern() throws Exception {
+        Path path_T1_sessions_S = new Path("tenant", "T1", "sessions", "S");
+        suspender.suspend(path_T1_sessions_S, path_T1_sessions_S, MAX_SUSPENSION_DURATION);
+
+        Path path_T1_sessions_S_X = new Path("tenant", "T1", "sessions", "S", "X");
+        suspender.suspend(path_T1_sessions_S_X, path_T1_sessions_S_X, MAX_SUSPENSION_DURATION);
+
+        Path path_T1_sessions_R = new Path("tenant", "T1", "sessions", "R");
+        suspender.suspend(path_T1_sessions_R, path_T1_sessions_R, MAX_SUSPENSION_DURATION);
+
+        Path path_T2_sessions_S = new Path("tenant", "T2", "sessions", "S");
+        suspender.suspend(path_T2_sessions_S, path_T2_sessions_S, MAX_SUSPENSION_DURATION);
+
+        Path path_T3_sessions = new Path("tenant", "T3", "sessions");
+        suspender.suspend(path_T3_sessions, path_T3_sessions, MAX_SUSPENSION_DURATION);
+
+        Path path_T4_queues_Q_S = new Path("tenant", "T4", "queues", "Q", "S");
+        suspender.suspend(path_T4_queues_Q_S, path_T4_queues_Q_S, MAX_SUSPENSION_DURATION);
+
+        Path path_other_T1_sessions_S = new Path("other", "T1", "sessions", "S");
+        suspender.suspend(path_other_T1_sessions_S, path_other_T1_sessions_S, MAX_SUSPENSION_DURATION);
+
+        Collection<RestoredObjectListener> listeners = newArrayList(
+            mock(RestoredObjectListener.class),
+            mock(RestoredObjectListener.class));
+
+        assertFalse(suspender.hasObjectsSuspendedBy(new PathPattern("tenant", "*", "absent")));
+        suspender.restore(new PathPattern("tenant", "*", "absent"), listeners);
+        suspender.restore(new PathPattern("absent", "**"), listeners);
+        checkNotification(listeners);
+
+        // One session across every tenant.
+        assertTrue(suspender.hasObjectsSuspendedBy(new PathPattern("tenant", "*", "sessions", "S")));
+        suspender.restore(new PathPattern("tenant", "*", "sessions", "S"), listeners);
+
+        checkNotification(
+            listeners,
+            path_T1_sessions_S,
+            path_T1_sessions_S_X,
+            path_T2_sessions_S);
+
+        assertFalse(suspender.hasObjectsSuspendedBy(new PathPattern("tenant", "*", "sessions", "S")));
+        assertTrue(suspender.hasObjectsSuspendedBy(path_T1_sessions_R));
+        assertTrue(suspender.hasObjectsSuspendedBy(path_other_T1_sessions_S));
+
+        // Multi-segment wildcard.
+        assertTrue(suspender.hasObjectsSuspendedBy(new PathPattern("**", "S")));
+        suspender.restore(new PathPattern("tenant", "**", "S"), listeners);
+
+        checkNotification(
+            listeners,
+            path_T1_sessions_S,
+            path_T1_sessions_S_X,
+            path_T2_sessions_S,
+            path_T4_queues_Q_S);
+
+        // Wildcard in the first segment.
+        suspender.restore(new PathPattern("*", "T1"), listeners);
+
+        checkNotification(
+            listeners,
+            path_T1_sessions_S,
+            path_T1_sessions_S_X,
+            path_T2_sessions_S,
+            path_T4_queues_Q_S,
+            path_T1_sessions_R,
+            path_other_T1_sessions_S);
+
+        assertThat(suspender.countSuspendedBy(new Path("tenant")), is(1L));
+        assertThat(suspender.countSuspendedBy(new Path("other")), is(0L));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("other")));
+        assertFalse(suspender.pathFirstSegmentIndex.contains("other"));
+    }
+
+    @Test
+    public void canSuspendAtomically() throws Exception {
+        RestoredObjectListener listener = mock(RestoredObjectListener.class);
+        suspender.addRestoredObjectListener(listener);
+
+        // suspendIfAbsent.
+        Path path_A_B = new Path("A", "B");
+        assertTrue(suspender.suspendIfAbsent(path_A_B, path_A_B, MAX_SUSPENSION_DURATION));
+        assertFalse(suspender.suspendIfAbsent(path_A_B, "another object", MAX_SUSPENSION_DURATION));
+        assertThat(suspender.peekEarliest(path_A_B, 1).get(0).getObject(), is(path_A_B));
+
+        // Objects suspended by longer paths do not matter.
+        Path path_A_B_C = new Path("A", "B", "C");
+        suspender.restore(path_A_B);
+        suspender.suspend(path_A_B_C, path_A_B_C, MAX_SUSPENSION_DURATION);
+        assertTrue(suspender.suspendIfAbsent(path_A_B, path_A_B, ofHours(2L)));
+        assertThat(suspender.countSuspendedBy(path_A_B), is(2L));
+
+        // replace.
+        assertFalse(suspender.replace(new Path("A", "absent"), null, "new object", MAX_SUSPENSION_DURATION));
+        assertFalse(suspender.replace(path_A_B, "unexpected object", "new object", MAX_SUSPENSION_DURATION));
+        assertThat(suspender.peekEarliest(path_A_B, 1).get(0).getObject(), is(path_A_B));
+
+        assertTrue(suspender.replace(path_A_B, path_A_B, "new object", ofHours(1L)));
+        SuspendedObject replaced = suspender.peekEarliest(path_A_B, 1).get(0);
+        assertThat(replaced.getPath(), is(path_A_B));
+        assertThat(replaced.getObject(), is("new object"));
+        assertThat(suspender.countSuspendedBy(path_A_B), is(2L));
+
+        // compute.
+        Path path_A_D = new Path("A", "D");
+        assertThat(suspender.compute(path_A_D, (current) -> current == null ? 1 : (Integer)current + 1, MAX_SUSPENSION_DURATION), is(1));
+        assertThat(suspender.compute(path_A_D, (current) -> current == null ? 1 : (Integer)current + 1, MAX_SUSPENSION_DURATION), is(2));
+        assertThat(suspender.peekEarliest(path_A_D, 1).get(0).getObject(), is(2));
+
+        assertNull(suspender.compute(path_A_D, (current) -> null, MAX_SUSPENSION_DURATION));
+        assertFalse(suspender.hasObjectsSuspendedBy(path_A_D));
+        verify(listener).onObjectRestored(path_A_D, 2);
+
+        assertNull(suspender.compute(new Path("A", "absent"), (current) -> null, MAX_SUSPENSION_DURATION));
+        verify(listener, times(2)).onObjectRestored(any(), any());
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(2L));
+    }
+
+    @Test
+    public void canNotifyListenersSubscribedToPrefix() throws Exception {
+        Path path_A1_B1 = new Path("A1", "B1");
+        suspender.suspend(path_A1_B1, path_A1_B1, MAX_SUSPENSION_DURATION);
+
+        Path path_A1_B1_C1 = new Path("A1", "B1", "C1");
+        suspender.suspend(path_A1_B1_C1, path_A1_B1_C1, MAX_SUSPENSION_DURATION);
+
+        Path path_A1_B2_C1 = new Path("A1", "B2", "C1");
+        suspender.suspend(path_A1_B2_C1, path_A1_B2_C1, MAX_SUSPENSION_DURATION);
+
+        Path path_A2_B1 = new Path("A2", "B1");
+        suspender.suspend(path_A2_B1, path_A2_B1, MAX_SUSPENSION_DURATION);
+
+        RestoredObjectListener listener_A1 = mock(RestoredObjectListener.class);
+        RestoredObjectListener listener_A1_B1 = mock(RestoredObjectListener.class);
+        RestoredObjectListener listener_A2 = mock(RestoredObjectListener.class);
+        RestoredObjectListener removedListener = mock(RestoredObjectListener.class);
+        RestoredObjectListener globalListener = mock(RestoredObjectListener.class);
+
+        suspender.addRestoredObjectListener(new Path("A1"), listener_A1);
+        suspender.addRestoredObjectListener(path_A1_B1, listener_A1_B1);
+        suspender.addRestoredObjectListener(new Path("A2"), listener_A2);
+        suspender.addRestoredObjectListener(new Path("A2"), removedListener);
+        suspender.removeRestoredObjectListener(new Path("A2"), removedListener);
+        suspender.addRestoredObjectListener(globalListener);
+
+        suspender.restore(new Path("A1"));
+        suspender.restore(new Path("A2"));
+
+        checkNotification(newArrayList(listener_A1), path_A1_B1, path_A1_B1_C1, path_A1_B2_C1);
+        checkNotification(newArrayList(listener_A1_B1), path_A1_B1, path_A1_B1_C1);
+        checkNotification(newArrayList(listener_A2), path_A2_B1);
+        checkNotification(newArrayList(removedListener));
+        checkNotification(newArrayList(globalListener), path_A1_B1, path_A1_B1_C1, path_A1_B2_C1, path_A2_B1);
+
+        // The prefix-scoped listeners are not notified when the listeners are specified explicitly.
+        Path path_A1_B3 = new Path("A1", "B3");
+        suspender.suspend(path_A1_B3, path_A1_B3, MAX_SUSPENSION_DURATION);
+        suspender.restore(path_A1_B3, newArrayList());
+
+        checkNotification(newArrayList(listener_A1), path_A1_B1, path_A1_B1_C1, path_A1_B2_C1);
+    }
+
+    @Test
+    public void canCountSuspendedObjects() throws Exception {
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(0L));
+        assertThat(suspender.countSuspendedBy(new Path("A1", "B1")), is(0L));
+
+        for (int b = 1; b <= 10; ++b) {
+            Path path_A1_BI = new Path("A1", "B" + b);
+            suspender.suspend(path_A1_BI, path_A1_BI, MAX_SUSPENSION_DURATION);
+
+            for (int c = 1; c <= 5; ++c) {
+                Path path_A1_BI_CJ = new Path("A1", "B" + b, "C" + c);
+                suspender.suspend(path_A1_BI_CJ, path_A1_BI_CJ, MAX_SUSPENSION_DURATION);
+            }
+        }
+
+        Path path_A2_B1 = new Path("A2", "B1");
+        suspender.suspend(path_A2_B1, path_A2_B1, ofHours(1L));
+        suspender.suspend(path_A2_B1, path_A2_B1, ofHours(2L));
+
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(60L));
+        assertThat(suspender.countSuspendedBy(new Path("A1", "B1")), is(6L));
+        assertThat(suspender.countSuspendedBy(new Path("A1", "B1", "C1")), is(1L));
+        assertThat(suspender.countSuspendedBy(new Path("A1", "B1", "absent")), is(0L));
+        assertThat(suspender.countSuspendedBy(new Path("A2")), is(1L));
+        assertThat(suspender.countSuspendedBy(path_A2_B1), is(1L));
+
+        suspender.restore(new Path("A1", "B1", "C1"));
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(59L));
+        assertThat(suspender.countSuspendedBy(new Path("A1", "B1")), is(5L));
+
+        suspender.restore(new Path("A1", "B2"));
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(53L));
+        assertThat(suspender.countSuspendedBy(new Path("A1", "B2")), is(0L));
+
+        suspender.restoreObjectWithMinRestorationTime(new Path("A1", "B3"));
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(52L));
+        assertThat(suspender.countSuspendedBy(new Path("A1", "B3")), is(5L));
+
+        suspender.restoreExpired(currentTimeMillis() + ofHours(2L).toMillis() + MIN_DURATION_HALF);
+        assertThat(suspender.countSuspendedBy(new Path("A2")), is(0L));
+
+        suspender.restore(new Path("A1"));
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(0L));
+    }
+
+    @Test
+    public void canNotifyMutationListener() throws Exception {
+        MutationListener mutationListener = mock(MutationListener.class);
+        suspender.setMutationListener(mutationListener);
+
+        Path path_A_B = new Path("A", "B");
+        suspender.suspend(path_A_B, path_A_B, ofHours(1L));
+        long restorationTime = suspender.peekEarliest(path_A_B, 1).get(0).getRestorationTime().toEpochMilli();
+        verify(mutationListener).onSuspended(path_A_B, path_A_B, restorationTime);
+
+        Path path_A_B_C = new Path("A", "B", "C");
+        suspender.suspend(path_A_B_C, path_A_B_C, ofHours(2L));
+        suspender.restoreObjectWithMinRestorationTime(path_A_B);
+        verify(mutationListener).onObjectRestored(path_A_B);
+
+        suspender.restore(path_A_B);
+        verify(mutationListener).onRestored(path_A_B);
+
+        // Nothing to restore.
+        suspender.restore(path_A_B);
+        verify(mutationListener).onRestored(path_A_B);
+
+        Path path_A_D = new Path("A", "D");
+        suspender.suspend(path_A_D, path_A_D, ofHours(1L));
+        assertTrue(suspender.restoreExpired(currentTimeMillis() + ofHours(1L).toMillis() + MIN_DURATION_HALF));
+        verify(mutationListener).onObjectRestored(path_A_D);
+
+        // The rejected object is not suspended.
+        doThrow(new IllegalArgumentException()).when(mutationListener).onSuspended(eq(path_A_D), any(), anyLong());
+
+        try {
+            suspender.suspend(path_A_D, path_A_D, ofHours(1L));
+            fail();
+        }
+        catch (IllegalArgumentException exception) {
+            assertFalse(suspender.hasObjectsSuspendedBy(new Path("A")));
+        }
+    }
+
+    @Test
+    public void singleSegmentRestorationIsReportedByDivisions() throws Exception {
+        MutationListener mutationListener = mock(MutationListener.class);
+        suspender.setMutationListener(mutationListener);
+
+        suspender.suspend(new Path("A", "B"), 1, ofHours(1L));
+        suspender.suspend(new Path("A", "C", "D"), 2, ofHours(1L));
+        suspender.suspend(new Path("E", "F"), 3, ofHours(1L));
+
+        suspender.restore(new Path("A"));
+        suspender.restore(new PathPattern("E"));
+
+        // Each reported prefix belongs to a single division.
+        verify(mutationListener).onRestored(new Path("A", "B"));
+        verify(mutationListener).onRestored(new Path("A", "C"));
+        verify(mutationListener).onRestored(new Path("E", "F"));
+        verify(mutationListener, times(3)).onRestored(any());
+    }
+
+    @Test
+    public void canLoadDivisionsInParallel() throws Exception {
+        Map<Integer, List<Path>> divIndexToPaths = new HashMap<>();
+
+        for (int i = 0; i < 100; ++i) {
+            for (int j = 0; j < 10; ++j) {
+                Path path = new Path("A" + (i % 3), "B" + i, "C" + j);
+                divIndexToPaths.computeIfAbsent(suspender.getDivisionIndex(path), (divIndex) -> new ArrayList<>()).add(path);
+            }
+        }
+
+        List<Thread> loadingThreads = new ArrayList<>();
+        long restorationTime = currentTimeMillis() + ofHours(1L).toMillis();
+
+        divIndexToPaths.forEach(
+            (divIndex, paths) -> loadingThreads.add(new Thread(() -> {
+                MutationListener loader = suspender.makeDivisionLoader(divIndex);
+
+                for (Path path : paths) {
+                    loader.onSuspended(path, path, restorationTime);
+                }
+
+                for (Path path : paths) {
+                    if (path.getLastSegment().equals("C0")) {
+                        loader.onObjectRestored(path);
+                    }
+                    else if (path.getSegment(1).equals("B1")) {
+                        loader.onRestored(new Path(path.getSegment(0), path.getSegment(1)));
+                    }
+                }
+            })));
+
+        for (Thread loadingThread : loadingThreads) {
+            loadingThread.start();
+        }
+
+        for (Thread loadingThread : loadingThreads) {
+            loadingThread.join();
+        }
+
+        suspender.completeLoading();
+
+        assertThat(suspender.countSuspendedBy(new Path("A0")), is(34L * 9L));
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(33L * 9L - 9L));
+        assertThat(suspender.countSuspendedBy(new Path("A2")), is(33L * 9L));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A1", "B1")));
+        assertTrue(suspender.hasObjectsSuspendedBy(new Path("A1")));
+        assertThat(suspender.stream(new Path("A2")).count(), is(33L * 9L));
+
+        // The loaded objects are restored as usual.
+        RestoredObjectListener listener = mock(RestoredObjectListener.class);
+        suspender.addRestoredObjectListener(listener);
+        assertTrue(suspender.restoreExpired(restorationTime));
+        verify(listener, times((34 + 33 + 33) * 9 - 9)).onObjectRestored(any(), any());
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A0")));
+    }
+
+    @Test
+    public void canRestoreDueBefore() throws Exception {
+        Path path_A1_B1 = new Path("A1", "B1");
+        suspender.suspend(path_A1_B1, path_A1_B1, ofMinutes(40L));
+
+        Path path_A1_B1_C1 = new Path("A1", "B1", "C1");
+        suspender.suspend(path_A1_B1_C1, path_A1_B1_C1, ofMinutes(20L));
+
+        Path path_A1_B1_C2_D1 = new Path("A1", "B1", "C2", "D1");
+        suspender.suspend(path_A1_B1_C2_D1, path_A1_B1_C2_D1, ofMinutes(5L));
+
+        Path path_A1_B2 = new Path("A1", "B2");
+        suspender.suspend(path_A1_B2, path_A1_B2, ofMinutes(1L));
+
+        Path path_A1_B3_C1 = new Path("A1", "B3", "C1");
+        suspender.suspend(path_A1_B3_C1, path_A1_B3_C1, ofMinutes(30L));
+
+        Path path_A2_B1 = new Path("A2", "B1");
+        suspender.suspend(path_A2_B1, path_A2_B1, ofMinutes(2L));
+
+        List<Path> restoredPaths = new ArrayList<>();
+        Collection<RestoredObjectListener> listeners = singletonList((path, object) -> restoredPaths.add(path));
+
+        suspender.restoreDueBefore(new Path("absent"), now().plus(ofHours(1L)), listeners);
+        suspender.restoreDueBefore(new Path("A1", "absent"), now().plus(ofHours(1L)), listeners);
+        suspender.restoreDueBefore(new Path("A1"), now(), listeners);
+        assertTrue(restoredPaths.isEmpty());
+
+        suspender.restoreDueBefore(path_A1_B1, now().plus(ofMinutes(25L)), listeners);
+        assertThat(restoredPaths, is(Arrays.asList(path_A1_B1_C2_D1, path_A1_B1_C1)));
+        assertTrue(suspender.hasObjectsSuspendedBy(path_A1_B1));
+        assertFalse(suspender.hasObjectsSuspendedBy(path_A1_B1_C1));
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(3L));
+
+        restoredPaths.clear();
+        suspender.restoreDueBefore(new Path("A1"), now().plus(ofMinutes(35L)), listeners);
+        assertThat(restoredPaths, is(Arrays.asList(path_A1_B2, path_A1_B3_C1)));
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(1L));
+        assertThat(peekedPaths(new Path("A1"), 10), is(singletonList(path_A1_B1)));
+        assertTrue(suspender.hasObjectsSuspendedBy(path_A2_B1));
+
+        restoredPaths.clear();
+        suspender.restoreDueBefore(new Path("A1"), now().plus(ofHours(1L)), listeners);
+        assertThat(restoredPaths, is(singletonList(path_A1_B1)));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A1")));
+        assertFalse(suspender.pathFirstSegmentIndex.contains("A1"));
+    }
+
+    @Test
+    public void maxRestorationTimeIsStrictlyBeforeCutoff() {
+        assertThat(maxRestorationTimeBefore(Instant.ofEpochMilli(1000L)), is(999L));
+        assertThat(maxRestorationTimeBefore(Instant.ofEpochMilli(1000L).plusNanos(1L)), is(1000L));
+    }
+
+    @Test
+    public void canPeekEarliestSuspendedObjects() throws Exception {
+        Path path_A1_B1 = new Path("A1", "B1");
+        suspender.suspend(path_A1_B1, path_A1_B1, ofHours(4L));
+
+        Path path_A1_B1_C1 = new Path("A1", "B1", "C1");
+        suspender.suspend(path_A1_B1_C1, path_A1_B1_C1, ofHours(2L));
+
+        Path path_A1_B1_C2_D1 = new Path("A1", "B1", "C2", "D1");
+        suspender.suspend(path_A1_B1_C2_D1, path_A1_B1_C2_D1, ofHours(5L));
+
+        Path path_A1_B2 = new Path("A1", "B2");
+        suspender.suspend(path_A1_B2, path_A1_B2, ofHours(1L));
+
+        Path path_A1_B3_C1 = new Path("A1", "B3", "C1");
+        suspender.suspend(path_A1_B3_C1, path_A1_B3_C1, ofHours(3L));
+
+        Path path_A2_B1 = new Path("A2", "B1");
+        suspender.suspend(path_A2_B1, path_A2_B1, ofMinutes(1L));
+
+        assertTrue(suspender.peekEarliest(new Path("absent"), 10).isEmpty());
+        assertTrue(suspender.peekEarliest(new Path("A1", "absent"), 10).isEmpty());
+        assertTrue(suspender.peekEarliest(new Path("A1"), 0).isEmpty());
+
+        assertThat(
+            peekedPaths(new Path("A1"), 10),
+            is(Arrays.asList(path_A1_B2, path_A1_B1_C1, path_A1_B3_C1, path_A1_B1, path_A1_B1_C2_D1)));
+
+        assertThat(
+            peekedPaths(new Path("A1"), 3),
+            is(Arrays.asList(path_A1_B2, path_A1_B1_C1, path_A1_B3_C1)));
+
+        assertThat(
+            peekedPaths(path_A1_B1, 2),
+            is(Arrays.asList(path_A1_B1_C1, path_A1_B1)));
+
+        assertThat(
+            peekedPaths(path_A1_B1, 10),
+            is(Arrays.asList(path_A1_B1_C1, path_A1_B1, path_A1_B1_C2_D1)));
+
+        SuspendedObject earliest = suspender.peekEarliest(path_A1_B1_C1, 1).get(0);
+        assertThat(earliest.getPath(), is(path_A1_B1_C1));
+        assertThat(earliest.getObject(), is(path_A1_B1_C1));
+        assertThat(
+            earliest.getRestorationTime().toEpochMilli(),
+            is(suspender.divisionFor(path_A1_B1).suspendedObjectTreeRoot.getChild("A1").getChild("B1").getRestorationTime("C1")));
+
+        // Peeking does not restore objects.
+        assertThat(suspender.countSuspendedBy(new Path("A1")), is(5L));
+    }
+
+    @Test
+    public void canStreamSuspendedObjects() throws Exception {
+        Path path_A1_B1 = new Path("A1", "B1");
+        suspender.suspend(path_A1_B1, path_A1_B1, ofHours(1L));
+
+        Path path_A1_B1_C1 = new Path("A1", "B1", "C1");
+        suspender.suspend(path_A1_B1_C1, path_A1_B1_C1, ofHours(2L));
+
+        Path path_A1_B1_C1_D1 = new Path("A1", "B1", "C1", "D1");
+        suspender.suspend(path_A1_B1_C1_D1, path_A1_B1_C1_D1, ofHours(3L));
+
+        Path path_A1_B2 = new Path("A1", "B2");
+        suspender.suspend(path_A1_B2, path_A1_B2, ofHours(4L));
+
+        Path path_A2_B1 = new Path("A2", "B1");
+        suspender.suspend(path_A2_B1, path_A2_B1, ofHours(5L));
+
+        assertThat(streamedPaths(new Path("absent")), is(Collections.<Path>emptySet()));
+        assertThat(streamedPaths(new Path("A1", "absent")), is(Collections.<Path>emptySet()));
+
+        assertThat(streamedPaths(new Path("A1")), is(newSet(path_A1_B1, path_A1_B1_C1, path_A1_B1_C1_D1, path_A1_B2)));
+        assertThat(streamedPaths(path_A1_B1), is(newSet(path_A1_B1, path_A1_B1_C1, path_A1_B1_C1_D1)));
+        assertThat(streamedPaths(path_A1_B1_C1), is(newSet(path_A1_B1_C1, path_A1_B1_C1_D1)));
+        assertThat(streamedPaths(path_A1_B1_C1_D1), is(newSet(path_A1_B1_C1_D1)));
+        assertThat(streamedPaths(new Path("A2")), is(newSet(path_A2_B1)));
+
+        SuspendedObject suspendedObject = suspender.stream(path_A1_B2).findFirst().get();
+        assertThat(suspendedObject.getPath(), is(path_A1_B2));
+        assertThat(suspendedObject.getObject(), is(path_A1_B2));
+        assertThat(
+            suspendedObject.getRestorationTime().toEpochMilli(),
+            is(suspender.divisionFor(path_A1_B2).suspendedObjectTreeRoot.getChild("A1").getRestorationTime("B2")));
+
+        // Streaming does not restore objects.
+        assertTrue(suspender.hasObjectsSuspendedBy(path_A1_B1_C1_D1));
+
+        // Parallel streaming.
+        Set<Path> expectedPaths = new HashSet<>();
+
+        for (int c = 1; c <= 100; ++c) {
+            for (int d = 1; d <= 10; ++d) {
+                Path path = new Path("A3", "B1", "C" + c, "D" + d);
+                suspender.suspend(path, path, MAX_SUSPENSION_DURATION);
+                expectedPaths.add(path);
+            }
+        }
+
+        assertThat(
+            suspender.stream(new Path("A3")).parallel().map(SuspendedObject::getPath).collect(toSet()),
+            is(expectedPaths));
+    }
+
     @Test
     public void testMinDurationHalf() {
         assertThat(MIN_DURATION_HALF, is(MIN_SUSPENSION_DURATION.toMillis() / 2L));
@@ -763,6 +1251,336 @@ public class MemSuspenderTest {
 
     // ****************************** //
 
+    private List<Path> peekedPaths(Path prefix, int maxCount) {
+        List<Path> paths = new ArrayList<>();
+        suspender.peekEarliest(prefix, maxCount).forEach((suspendedObject) -> paths.add(suspendedObject.getPath()));
+
+        return paths;
+    }
+
+    @Test
+    public void divisionsCanBeResizedOnline() throws Exception {
+        MutationListener mutationListener = mock(MutationListener.class);
+        suspender.setMutationListener(mutationListener);
+        long restorationTime = currentTimeMillis() + ofHours(1L).toMillis();
+
+        for (int i = 0; i < 1000; ++i) {
+            suspender.suspend(new Path("A" + (i % 3), "B" + i, "C"), i, Instant.ofEpochMilli(restorationTime));
+        }
+
+        assertThat(suspender.resize(100), is(128));
+        assertThat(suspender.getDivisionCount(), is(128));
+        // The objects are moved silently.
+        verify(mutationListener, times(1000)).onSuspended(any(), any(), anyLong());
+        verifyNoMoreInteractions(mutationListener);
+
+        Set<Integer> usedDivIndices = new HashSet<>();
+
+        for (int i = 0; i < 1000; ++i) {
+            Path path = new Path("A" + (i % 3), "B" + i, "C");
+            usedDivIndices.add(suspender.getDivisionIndex(path));
+            assertThat(suspender.getSuspendedObject(path).getObject(), is(i));
+            assertThat(suspender.divisionFor(path).countSuspendedBy(path), is(1L));
+        }
+
+        assertTrue(usedDivIndices.size() > 100);
+        assertThat(suspender.countSuspendedBy(new Path("A0")), is(334L));
+        assertThat(suspender.stream(new Path("A1")).count(), is(333L));
+        assertTrue(suspender.hasObjectsSuspendedBy(new Path("A2")));
+
+        suspender.restore(new Path("A2"));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A2")));
+        assertTrue(suspender.restoreExpired(restorationTime));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A0")));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A1")));
+    }
+
+    @Test
+    public void divisionCountCanOnlyBeDoubledUpToMax() {
+        MemSuspender suspender = new MemSuspender(100, ofSeconds(1L), ofSeconds(1L));
+
+        assertThat(suspender.resize(50), is(100));
+        assertThat(suspender.resize(1000), is(200));
+        assertThat(suspender.resize(MAX_SUSPENDED_OBJECT_DIVISION_COUNT), is(200));
+    }
+
+    @Test
+    public void operationsCanBePerformedWhileResizing() throws Exception {
+        MemSuspender suspender = new MemSuspender(MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ofSeconds(1L), ofSeconds(1L));
+        List<Thread> threads = new ArrayList<>();
+        Set<Path> restoredPaths = ConcurrentHashMap.newKeySet();
+        suspender.addRestoredObjectListener((path, restoredObject) -> restoredPaths.add(path));
+
+        for (int t = 0; t < 4; ++t) {
+            String pathFirstSegment = "A" + t;
+
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 2000; ++i) {
+                    Path path = new Path(pathFirstSegment, "B" + i);
+                    suspender.suspend(path, i, ofHours(1L));
+
+                    if (i % 2 == 0) {
+                        suspender.restore(path);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        assertThat(suspender.resize(MAX_SUSPENDED_OBJECT_DIVISION_COUNT), is(MAX_SUSPENDED_OBJECT_DIVISION_COUNT));
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(restoredPaths.size(), is(4 * 1000));
+
+        for (int t = 0; t < 4; ++t) {
+            assertThat(suspender.countSuspendedBy(new Path("A" + t)), is(1000L));
+
+            for (int i = 1; i < 2000; i += 2) {
+                assertThat(suspender.getSuspendedObject(new Path("A" + t, "B" + i)).getObject(), is(i));
+            }
+        }
+    }
+
+    @Test
+    public void streamsReportEachObjectOnceWhileResizing() throws Exception {
+        MemSuspender suspender = new MemSuspender(MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ofSeconds(1L), ofSeconds(1L));
+
+        for (int t = 0; t < 4; ++t) {
+            for (int i = 0; i < 2000; ++i) {
+                suspender.suspend(new Path("A" + t, "B" + i, "C"), i, ofHours(1L));
+            }
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger inconsistentStreamCount = new AtomicInteger();
+        AtomicBoolean resized = new AtomicBoolean();
+
+        for (int t = 0; t < 4; ++t) {
+            Path prefix = new Path("A" + t);
+
+            threads.add(new Thread(() -> {
+                do {
+                    List<Path> paths = suspender.stream(prefix).map(SuspendedObject::getPath).collect(toList());
+
+                    if (paths.size() != 2000 || new HashSet<>(paths).size() != 2000) {
+                        inconsistentStreamCount.incrementAndGet();
+                    }
+                }
+                while (!resized.get());
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        assertThat(suspender.resize(MAX_SUSPENDED_OBJECT_DIVISION_COUNT), is(MAX_SUSPENDED_OBJECT_DIVISION_COUNT));
+        resized.set(true);
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(inconsistentStreamCount.get(), is(0));
+    }
+
+    @Test
+    public void busyHotSubtreeIsPartitionedLater() throws Exception {
+        MemSuspender suspender = new MemSuspender();
+        suspender.setHotSubtreeObjectCount(100);
+        Path hotPrefix = new Path("A", "B");
+
+        for (int i = 0; i < 200; ++i) {
+            suspender.suspend(new Path("A", "B", "C" + i), i, ofHours(1L));
+        }
+
+        Lock splitLock = suspender.divisionFor(hotPrefix).splitLock.readLock();
+        splitLock.lock();
+
+        try {
+            // The division is busy, so the restorer does not wait for it.
+            suspender.partitionOversizedSubtrees();
+            assertFalse(suspender.isPartitioned(hotPrefix));
+        }
+        finally {
+            splitLock.unlock();
+        }
+
+        suspender.partitionOversizedSubtrees();
+        assertTrue(suspender.isPartitioned(hotPrefix));
+        assertThat(suspender.countSuspendedBy(hotPrefix), is(200L));
+    }
+
+    @Test
+    public void hotSubtreeIsPartitionedBetweenDivisions() throws Exception {
+        MemSuspender suspender = new MemSuspender();
+        suspender.setHotSubtreeObjectCount(100);
+        List<Path> restoredPaths = new ArrayList<>();
+        suspender.addRestoredObjectListener((path, restoredObject) -> restoredPaths.add(path));
+        long restorationTime = currentTimeMillis() + ofHours(1L).toMillis();
+        Path hotPrefix = new Path("A", "B");
+
+        suspender.suspend(hotPrefix, -1, Instant.ofEpochMilli(restorationTime));
+        suspender.suspend(new Path("A", "X", "C"), -2, Instant.ofEpochMilli(restorationTime));
+
+        for (int i = 0; i < 200; ++i) {
+            suspender.suspend(new Path("A", "B", "C" + i, "D"), i, Instant.ofEpochMilli(restorationTime + 1000L * i));
+        }
+
+        // The subtree has been reported once.
+        assertThat(suspender.getHotSubtreeObjectCount(), is(100));
+        assertThat(suspender.divisionFor(hotPrefix).oversizedSubtrees, is(Collections.singleton(hotPrefix)));
+        suspender.partitionOversizedSubtrees();
+        assertFalse(suspender.partitionSubtree(hotPrefix));
+
+        Set<Integer> usedDivIndices = new HashSet<>();
+
+        for (int i = 0; i < 200; ++i) {
+            Path path = new Path("A", "B", "C" + i, "D");
+            usedDivIndices.add(suspender.getDivisionIndex(path));
+            assertThat(suspender.getSuspendedObject(path).getObject(), is(i));
+            assertThat(suspender.divisionFor(path).countSuspendedBy(path), is(1L));
+            assertThat(suspender.countSuspendedBy(new Path("A", "B", "C" + i)), is(1L));
+        }
+
+        assertTrue(usedDivIndices.size() > 32);
+        assertThat(suspender.getSuspendedObject(hotPrefix).getObject(), is(-1));
+
+        // The prefix queries span the divisions.
+        assertThat(suspender.countSuspendedBy(hotPrefix), is(201L));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(202L));
+        assertThat(suspender.stream(hotPrefix).count(), is(201L));
+        assertTrue(suspender.hasObjectsSuspendedBy(hotPrefix));
+        assertTrue(suspender.hasObjectsSuspendedBy(new PathPattern("A", "B", "C7")));
+        assertTrue(suspender.hasObjectsSuspendedBy(new PathPattern("A", "B", "*", "D")));
+        assertFalse(suspender.hasObjectsSuspendedBy(new PathPattern("A", "B", "*", "E")));
+
+        assertThat(
+            suspender.peekEarliest(hotPrefix, 3).stream().map(SuspendedObject::getObject).collect(toList()),
+            is(Arrays.asList(-1, 0, 1)));
+
+        suspender.restoreObjectWithMinRestorationTime(new Path("A", "B", "C7"));
+        suspender.restoreObjectWithMinRestorationTime(hotPrefix);
+        suspender.restoreObjectWithMinRestorationTime(hotPrefix);
+        assertThat(restoredPaths, is(Arrays.asList(new Path("A", "B", "C7", "D"), hotPrefix, new Path("A", "B", "C0", "D"))));
+        restoredPaths.clear();
+
+        suspender.restoreDueBefore(hotPrefix, Instant.ofEpochMilli(restorationTime + 1000L * 10));
+        assertThat(restoredPaths.size(), is(8));
+        assertThat(restoredPaths.get(7), is(new Path("A", "B", "C9", "D")));
+
+        suspender.restore(new PathPattern("A", "B", "C15"));
+        suspender.restore(new PathPattern("A", "*", "C199"));
+        assertThat(suspender.countSuspendedBy(hotPrefix), is(200L - 10L - 2L));
+
+        suspender.restore(hotPrefix);
+        assertFalse(suspender.hasObjectsSuspendedBy(hotPrefix));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(1L));
+    }
+
+    @Test
+    public void partitionedSubtreeIsKeptWhileResizing() {
+        MemSuspender suspender = new MemSuspender(MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ofSeconds(1L), ofSeconds(1L));
+        Path hotPrefix = new Path("A", "B");
+
+        for (int i = 0; i < 500; ++i) {
+            suspender.suspend(new Path("A", "B", "C" + i), i, ofHours(1L));
+            suspender.suspend(new Path("A", "B" + i), i, ofHours(1L));
+        }
+
+        assertTrue(suspender.partitionSubtree(hotPrefix));
+        assertThat(suspender.resize(64), is(64));
+        Set<Integer> usedDivIndices = new HashSet<>();
+
+        for (int i = 0; i < 500; ++i) {
+            Path path = new Path("A", "B", "C" + i);
+            usedDivIndices.add(suspender.getDivisionIndex(path));
+            assertThat(suspender.divisionFor(path).getSuspendedObject(path).getObject(), is(i));
+            assertThat(suspender.getSuspendedObject(new Path("A", "B" + i)).getObject(), is(i));
+        }
+
+        assertTrue(usedDivIndices.size() > 32);
+        assertThat(suspender.countSuspendedBy(hotPrefix), is(500L));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(1000L));
+    }
+
+    @Test
+    public void restorerWorkersOwnDivisionsAndStealFromOthers() {
+        MemSuspender suspender = new MemSuspender(MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ofSeconds(1L), ofSeconds(1L));
+        Set<Path> restoredPaths = new HashSet<>();
+        suspender.addRestoredObjectListener((path, restoredObject) -> restoredPaths.add(path));
+        long restorationTime = currentTimeMillis() + ofHours(1L).toMillis();
+        Map<Integer, Set<Path>> divIndexToPaths = new HashMap<>();
+
+        for (int i = 0; i < 100; ++i) {
+            Path path = new Path("A", "B" + i);
+            suspender.suspend(path, i, Instant.ofEpochMilli(restorationTime));
+            divIndexToPaths.computeIfAbsent(suspender.getDivisionIndex(path), (divIndex) -> new HashSet<>()).add(path);
+        }
+
+        assertThat(divIndexToPaths.size(), is(MIN_SUSPENDED_OBJECT_DIVISION_COUNT));
+
+        // The worker 0 of 2 owns the divisions 0 and 2.
+        assertTrue(suspender.restoreExpired(0, 2, restorationTime));
+        Set<Path> expectedRestoredPaths = new HashSet<>(divIndexToPaths.get(0));
+        expectedRestoredPaths.addAll(divIndexToPaths.get(2));
+        assertThat(restoredPaths, is(expectedRestoredPaths));
+
+        // The division 1 is being restored by its owner, so only the division 3 is stolen.
+        suspender.divisionFor(divIndexToPaths.get(1).iterator().next()).restoringExpired.set(true);
+        assertTrue(suspender.stealExpired(0, 2, restorationTime));
+        expectedRestoredPaths.addAll(divIndexToPaths.get(3));
+        assertThat(restoredPaths, is(expectedRestoredPaths));
+        assertFalse(suspender.stealExpired(0, 2, restorationTime));
+
+        suspender.divisionFor(divIndexToPaths.get(1).iterator().next()).restoringExpired.set(false);
+        assertTrue(suspender.stealExpired(0, 2, restorationTime));
+        assertThat(restoredPaths.size(), is(100));
+    }
+
+    @Test
+    public void restorerCanBePoolOfWorkers() throws Exception {
+        MemSuspender suspender = new MemSuspender(MAX_SUSPENDED_OBJECT_DIVISION_COUNT, ZERO, ofMillis(10L));
+        suspender.setRestorerThreadCount(4);
+        assertThat(suspender.getRestorerThreadCount(), is(4));
+        Set<Path> restoredPaths = ConcurrentHashMap.newKeySet();
+        suspender.addRestoredObjectListener((path, restoredObject) -> restoredPaths.add(path));
+
+        for (int i = 0; i < 1000; ++i) {
+            suspender.suspend(new Path("A" + (i % 10), "B" + i), i, MIN_SUSPENSION_DURATION);
+        }
+
+        suspender.start();
+
+        try {
+            long deadline = currentTimeMillis() + ofSeconds(10L).toMillis();
+
+            while (restoredPaths.size() < 1000 && currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+
+            assertThat(restoredPaths.size(), is(1000));
+            assertThat(suspender.getPathFirstSegmentCount(), is(0));
+        }
+        finally {
+            suspender.stop();
+        }
+    }
+
+    private Set<Path> streamedPaths(Path prefix) {
+        return suspender.stream(prefix).map(SuspendedObject::getPath).collect(toSet());
+    }
+
+    private static Set<Path> newSet(Path... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+
     private void assertThatRestorationQueueContains(String... suspendedObjectPathSegments) {
         Path suspendedObjectPath = new Path(suspendedObjectPathSegments);
         SuspendedObjectTreeNode suspendedObjectParentNode = suspender.divisionFor(suspendedObjectPath).findParentNodeFor(suspendedObjectPath);
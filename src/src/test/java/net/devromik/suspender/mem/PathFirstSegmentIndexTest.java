@@ -0,0 +1,66 @@
+package net.devromik.suspender.mem;
+
+import org.junit.Test;
+import static java.time.Duration.ofHours;
+import static net.devromik.suspender.mem.MemSuspender.MAX_SUSPENDED_OBJECT_DIVISION_COUNT;
+import net.devromik.suspender.utils.Path;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class PathFirstSegmentIndexTest {
+
+    @Test
+    public void tracksDivisionsAndObjectCounts() {
+        PathFirstSegmentIndex index = new PathFirstSegmentIndex();
+        assertFalse(index.contains("A"));
+        assertThat(index.countSuspendedBy("A"), is(0L));
+        assertThat(index.divisionIndicesOf("A").count(), is(0L));
+
+        index.update("A", 3, 0L, 2L);
+        index.update("A", 200, 0L, 1L);
+        index.update("A", MAX_SUSPENDED_OBJECT_DIVISION_COUNT - 1, 0L, 1L);
+        index.update("A", 3, 2L, 5L);
+        index.update("B", 64, 0L, 1L);
+
+        assertTrue(index.contains("A"));
+        assertThat(index.countSuspendedBy("A"), is(7L));
+        assertThat(index.divisionIndicesOf("A").toArray(), is(new int[] {3, 200, MAX_SUSPENDED_OBJECT_DIVISION_COUNT - 1}));
+        assertThat(index.divisionIndicesOf("B").toArray(), is(new int[] {64}));
+        assertThat(index.size(), is(2));
+
+        index.update("A", 200, 1L, 0L);
+        assertThat(index.countSuspendedBy("A"), is(6L));
+        assertThat(index.divisionIndicesOf("A").toArray(), is(new int[] {3, MAX_SUSPENDED_OBJECT_DIVISION_COUNT - 1}));
+    }
+
+    @Test
+    public void emptyEntriesAreReclaimed() {
+        PathFirstSegmentIndex index = new PathFirstSegmentIndex();
+        index.update("A", 1, 0L, 2L);
+        index.update("A", 2, 0L, 1L);
+        index.update("A", 1, 2L, 0L);
+        assertTrue(index.contains("A"));
+
+        index.update("A", 2, 1L, 0L);
+        assertFalse(index.contains("A"));
+        assertThat(index.size(), is(0));
+    }
+
+    @Test
+    public void shortLivedFirstSegmentsDoNotPileUp() {
+        MemSuspender suspender = new MemSuspender();
+
+        for (int i = 0; i < 10000; ++i) {
+            Path path = new Path("request" + i, "B");
+            suspender.suspend(path, i, ofHours(1L));
+            suspender.suspend(new Path("request" + i, "C"), i, ofHours(1L));
+            assertThat(suspender.getPathFirstSegmentCount(), is(1));
+            suspender.restore(new Path("request" + i));
+        }
+
+        assertThat(suspender.getPathFirstSegmentCount(), is(0));
+    }
+}
@@ -0,0 +1,99 @@
+package net.devromik.suspender.mem;
+
+import org.junit.Test;
+import net.devromik.suspender.RestoredObjectListener;
+import net.devromik.suspender.utils.Path;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class RestoredObjectListenerTrieTest {
+
+    @Test
+    public void notifiesOnlyListenersSubscribedToPrefixesOfPath() throws Exception {
+        RestoredObjectListenerTrie trie = new RestoredObjectListenerTrie();
+        assertTrue(trie.isEmpty());
+
+        RestoredObjectListener listener_A = mock(RestoredObjectListener.class);
+        RestoredObjectListener listener_A_B = mock(RestoredObjectListener.class);
+        RestoredObjectListener listener_A_B_C = mock(RestoredObjectListener.class);
+        RestoredObjectListener listener_A_X = mock(RestoredObjectListener.class);
+
+        trie.add(new Path("A"), listener_A);
+        trie.add(new Path("A", "B"), listener_A_B);
+        trie.add(new Path("A", "B", "C"), listener_A_B_C);
+        trie.add(new Path("A", "X"), listener_A_X);
+        assertFalse(trie.isEmpty());
+
+        Path path_A_B = new Path("A", "B");
+        trie.onObjectRestored(path_A_B, path_A_B);
+
+        verify(listener_A).onObjectRestored(path_A_B, path_A_B);
+        verify(listener_A_B).onObjectRestored(path_A_B, path_A_B);
+        verify(listener_A_B_C, never()).onObjectRestored(any(), any());
+        verify(listener_A_X, never()).onObjectRestored(any(), any());
+
+        Path path_A_B_C_D = new Path("A", "B", "C", "D");
+        trie.onObjectRestored(path_A_B_C_D, path_A_B_C_D);
+
+        verify(listener_A).onObjectRestored(path_A_B_C_D, path_A_B_C_D);
+        verify(listener_A_B).onObjectRestored(path_A_B_C_D, path_A_B_C_D);
+        verify(listener_A_B_C).onObjectRestored(path_A_B_C_D, path_A_B_C_D);
+        verify(listener_A_X, never()).onObjectRestored(any(), any());
+
+        Path path_Z_B = new Path("Z", "B");
+        trie.onObjectRestored(path_Z_B, path_Z_B);
+
+        verify(listener_A, times(2)).onObjectRestored(any(), any());
+    }
+
+    @Test
+    public void listenerExceptionDoesNotPreventOthersFromBeingNotified() throws Exception {
+        RestoredObjectListenerTrie trie = new RestoredObjectListenerTrie();
+
+        RestoredObjectListener failingListener = mock(RestoredObjectListener.class);
+        doThrow(new Exception("expected")).when(failingListener).onObjectRestored(any(), any());
+        RestoredObjectListener listener = mock(RestoredObjectListener.class);
+
+        trie.add(new Path("A"), failingListener);
+        trie.add(new Path("A", "B"), listener);
+
+        Path path_A_B = new Path("A", "B");
+        trie.onObjectRestored(path_A_B, path_A_B);
+
+        verify(listener).onObjectRestored(path_A_B, path_A_B);
+    }
+
+    @Test
+    public void canRemoveListeners() throws Exception {
+        RestoredObjectListenerTrie trie = new RestoredObjectListenerTrie();
+
+        RestoredObjectListener listener_A = mock(RestoredObjectListener.class);
+        RestoredObjectListener listener_A_B = mock(RestoredObjectListener.class);
+
+        trie.add(new Path("A"), listener_A);
+        trie.add(new Path("A", "B"), listener_A_B);
+
+        trie.remove(new Path("absent"), listener_A);
+        trie.remove(new Path("A", "B"), listener_A);
+        trie.remove(new Path("A", "B"), listener_A_B);
+        assertFalse(trie.isEmpty());
+
+        Path path_A_B = new Path("A", "B");
+        trie.onObjectRestored(path_A_B, path_A_B);
+
+        verify(listener_A).onObjectRestored(path_A_B, path_A_B);
+        verify(listener_A_B, never()).onObjectRestored(any(), any());
+
+        trie.remove(new Path("A"), listener_A);
+        assertTrue(trie.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prefixShouldHaveAtLeastOneSegment() {
+        new RestoredObjectListenerTrie().add(new Path(), mock(RestoredObjectListener.class));
+    }
+}
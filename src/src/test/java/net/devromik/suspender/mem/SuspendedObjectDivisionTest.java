@@ -1,7 +1,6 @@
 package net.devromik.suspender.mem;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import org.junit.Test;
 import static com.google.common.collect.Lists.newArrayList;
 import static java.lang.System.currentTimeMillis;
@@ -24,7 +23,7 @@ public class SuspendedObjectDivisionTest {
         SuspendedObjectDivision div = makeDivision();
 
         // We check that there are no suspended objects.
-        assertTrue(div.pathFirstSegmentToDivCount.isEmpty());
+        assertThat(div.pathFirstSegmentIndex.size(), is(0));
 
         assertFalse(div.hasObjectsSuspendedBy(new Path("A")));
         assertFalse(div.hasObjectsSuspendedBy(new Path("A", "B")));
@@ -68,37 +67,37 @@ public class SuspendedObjectDivisionTest {
         assertThat(
             div.suspendedObjectTreeRoot.getChild("A").suspendedObjects.get("B").suspendedObject,
             is(object_A_B));
-        assertThat(div.pathFirstSegmentToDivCount.get("A").get(), is(1));
+        assertThat(div.pathFirstSegmentIndex.divisionIndicesOf("A").toArray(), is(new int[] {0}));
 
         assertTrue(div.hasObjectsSuspendedBy(new Path("A", "B", "C1")));
         assertThat(
             div.suspendedObjectTreeRoot.getChild("A").getChild("B").suspendedObjects.get("C1").suspendedObject,
             is(object_A_B_C1));
-        assertThat(div.pathFirstSegmentToDivCount.get("A").get(), is(1));
+        assertThat(div.pathFirstSegmentIndex.divisionIndicesOf("A").toArray(), is(new int[] {0}));
 
         assertTrue(div.hasObjectsSuspendedBy(new Path("A", "B", "C2")));
         assertThat(
             div.suspendedObjectTreeRoot.getChild("A").getChild("B").suspendedObjects.get("C2").suspendedObject,
             is(object_A_B_C2));
-        assertThat(div.pathFirstSegmentToDivCount.get("A").get(), is(1));
+        assertThat(div.pathFirstSegmentIndex.divisionIndicesOf("A").toArray(), is(new int[] {0}));
 
         assertTrue(div.hasObjectsSuspendedBy(new Path("A", "B", "C3")));
         assertThat(
             div.suspendedObjectTreeRoot.getChild("A").getChild("B").suspendedObjects.get("C3").suspendedObject,
             is(object_A_B_C3));
-        assertThat(div.pathFirstSegmentToDivCount.get("A").get(), is(1));
+        assertThat(div.pathFirstSegmentIndex.divisionIndicesOf("A").toArray(), is(new int[] {0}));
 
         assertTrue(div.hasObjectsSuspendedBy(new Path("A", "B", "C3", "D1")));
         assertThat(
             div.suspendedObjectTreeRoot.getChild("A").getChild("B").getChild("C3").suspendedObjects.get("D1").suspendedObject,
             is(object_A_B_C3_D1));
-        assertThat(div.pathFirstSegmentToDivCount.get("A").get(), is(1));
+        assertThat(div.pathFirstSegmentIndex.divisionIndicesOf("A").toArray(), is(new int[] {0}));
 
         assertTrue(div.hasObjectsSuspendedBy(new Path("A", "B", "C3", "D2")));
         assertThat(
             div.suspendedObjectTreeRoot.getChild("A").getChild("B").getChild("C3").suspendedObjects.get("D2").suspendedObject,
             is(object_A_B_C3_D2));
-        assertThat(div.pathFirstSegmentToDivCount.get("A").get(), is(1));
+        assertThat(div.pathFirstSegmentIndex.divisionIndicesOf("A").toArray(), is(new int[] {0}));
 
         // We check that the restoration queue contains expected elements.
         assertThat(div.restorationQueue.size(), is(6));
@@ -111,11 +110,11 @@ public class SuspendedObjectDivisionTest {
         assertThatRestorationQueueContains(div, "A", "B", "C3", "D2");
 
         div.restore(new Path("A"), newArrayList());
-        assertThat(div.pathFirstSegmentToDivCount.get("A").get(), is(0));
+        assertFalse(div.pathFirstSegmentIndex.contains("A"));
     }
 
     private SuspendedObjectDivision makeDivision() {
-        return new SuspendedObjectDivision(new ConcurrentHashMap<>());
+        return new SuspendedObjectDivision(0, new PathFirstSegmentIndex());
     }
 
     @Test
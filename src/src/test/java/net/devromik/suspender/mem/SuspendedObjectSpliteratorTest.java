@@ -0,0 +1,172 @@
+package net.devromik.suspender.mem;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.Test;
+import net.devromik.suspender.SuspendedObject;
+import static java.time.Duration.*;
+import static java.util.Collections.singletonList;
+import static net.devromik.suspender.mem.MemSuspender.*;
+import net.devromik.suspender.utils.Path;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class SuspendedObjectSpliteratorTest {
+
+    @Test
+    public void canSplitByChildren() {
+        MemSuspender suspender = new MemSuspender();
+        Set<Path> expectedPaths = new HashSet<>();
+
+        for (int c = 1; c <= 4; ++c) {
+            for (int d = 1; d <= 4; ++d) {
+                Path path = new Path("A", "B", "C" + c, "D" + d);
+                suspender.suspend(path, path, ofHours(1L));
+                expectedPaths.add(path);
+            }
+        }
+
+        SuspendedObjectSpliterator spliterator = new SuspendedObjectSpliterator(suspender, new Path("A", "B"));
+        Spliterator<SuspendedObject> split = spliterator.trySplit();
+        assertNotNull(split);
+
+        List<Path> paths = new ArrayList<>();
+        spliterator.forEachRemaining((suspendedObject) -> paths.add(suspendedObject.getPath()));
+        int spliteratorPathCount = paths.size();
+        split.forEachRemaining((suspendedObject) -> paths.add(suspendedObject.getPath()));
+
+        // Each part gets its own subtrees.
+        assertTrue(spliteratorPathCount > 0);
+        assertTrue(paths.size() > spliteratorPathCount);
+
+        // Each object is reported exactly once.
+        assertThat(paths.size(), is(expectedPaths.size()));
+        assertThat(new HashSet<>(paths), is(expectedPaths));
+    }
+
+    @Test
+    public void cannotSplitLeaf() {
+        MemSuspender suspender = new MemSuspender();
+        Path path = new Path("A", "B");
+        suspender.suspend(path, path, ofHours(1L));
+
+        SuspendedObjectSpliterator spliterator = new SuspendedObjectSpliterator(suspender, path);
+        assertNull(spliterator.trySplit());
+        assertTrue(spliterator.tryAdvance((suspendedObject) -> assertThat(suspendedObject.getPath(), is(path))));
+        assertFalse(spliterator.tryAdvance((suspendedObject) -> fail()));
+    }
+
+    @Test
+    public void isWeaklyConsistent() {
+        MemSuspender suspender = new MemSuspender();
+
+        Path path_A_B_C1 = new Path("A", "B", "C1");
+        suspender.suspend(path_A_B_C1, path_A_B_C1, ofHours(1L));
+
+        Path path_A_B_C2_D1 = new Path("A", "B", "C2", "D1");
+        suspender.suspend(path_A_B_C2_D1, path_A_B_C2_D1, ofHours(1L));
+
+        SuspendedObjectSpliterator spliterator = new SuspendedObjectSpliterator(suspender, new Path("A", "B"));
+        List<Path> paths = new ArrayList<>();
+        assertTrue(spliterator.tryAdvance((suspendedObject) -> paths.add(suspendedObject.getPath())));
+        assertThat(paths, is(singletonList(path_A_B_C1)));
+
+        // The subtree C2 is pending now. Its restoration does not break the traversal.
+        suspender.restore(new Path("A", "B", "C2"), Collections.emptyList());
+        spliterator.forEachRemaining((suspendedObject) -> paths.add(suspendedObject.getPath()));
+        assertThat(paths, is(singletonList(path_A_B_C1)));
+    }
+
+    @Test
+    public void pendingSubtreesAreFoundAfterReorganization() {
+        MemSuspender suspender = new MemSuspender(MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ofSeconds(1L), ofSeconds(1L));
+        Set<Path> expectedPaths = new HashSet<>();
+
+        for (int b = 0; b < 64; ++b) {
+            for (int c = 0; c < 4; ++c) {
+                Path path = new Path("A", "B" + b, "C" + c);
+                suspender.suspend(path, path, ofHours(1L));
+                expectedPaths.add(path);
+            }
+        }
+
+        SuspendedObjectSpliterator spliterator = new SuspendedObjectSpliterator(suspender, new Path("A"));
+        Spliterator<SuspendedObject> split = spliterator.trySplit();
+        assertNotNull(split);
+
+        List<Path> paths = new ArrayList<>();
+        assertTrue(spliterator.tryAdvance((suspendedObject) -> paths.add(suspendedObject.getPath())));
+
+        // The pending subtrees are moved to other divisions.
+        assertThat(suspender.resize(MAX_SUSPENDED_OBJECT_DIVISION_COUNT), is(MAX_SUSPENDED_OBJECT_DIVISION_COUNT));
+        assertTrue(suspender.partitionSubtree(new Path("A", "B0")));
+
+        spliterator.forEachRemaining((suspendedObject) -> paths.add(suspendedObject.getPath()));
+        split.forEachRemaining((suspendedObject) -> paths.add(suspendedObject.getPath()));
+
+        assertThat(paths.size(), is(expectedPaths.size()));
+        assertThat(new HashSet<>(paths), is(expectedPaths));
+    }
+
+    @Test
+    public void largeSubtreeIsScannedInParallelWhileResizing() throws Exception {
+        MemSuspender suspender = new MemSuspender(MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ofSeconds(1L), ofSeconds(1L));
+        Set<Path> expectedPaths = new HashSet<>();
+
+        for (int b = 0; b < 100; ++b) {
+            for (int c = 0; c < 100; ++c) {
+                for (int d = 0; d < 10; ++d) {
+                    Path path = new Path("A", "B" + b, "C" + c, "D" + d);
+                    suspender.suspend(path, d, ofHours(1L));
+                    expectedPaths.add(path);
+                }
+            }
+        }
+
+        SuspendedObjectSpliterator spliterator = new SuspendedObjectSpliterator(suspender, new Path("A"));
+        List<Spliterator<SuspendedObject>> parts = new ArrayList<>();
+        parts.add(spliterator);
+
+        for (int i = 0; i < 3; ++i) {
+            for (Spliterator<SuspendedObject> part : new ArrayList<>(parts)) {
+                Spliterator<SuspendedObject> split = part.trySplit();
+                assertNotNull(split);
+                parts.add(split);
+            }
+        }
+
+        assertThat(parts.size(), is(8));
+        ExecutorService executor = Executors.newFixedThreadPool(parts.size());
+
+        try {
+            List<Future<List<Path>>> partPaths = new ArrayList<>();
+
+            for (Spliterator<SuspendedObject> part : parts) {
+                partPaths.add(executor.submit(() -> {
+                    List<Path> paths = new ArrayList<>();
+                    part.forEachRemaining((suspendedObject) -> paths.add(suspendedObject.getPath()));
+                    return paths;
+                }));
+            }
+
+            assertThat(suspender.resize(MAX_SUSPENDED_OBJECT_DIVISION_COUNT), is(MAX_SUSPENDED_OBJECT_DIVISION_COUNT));
+            List<Path> paths = new ArrayList<>();
+
+            for (Future<List<Path>> part : partPaths) {
+                List<Path> pathsOfPart = part.get();
+                assertFalse(pathsOfPart.isEmpty());
+                paths.addAll(pathsOfPart);
+            }
+
+            // Each object is reported exactly once.
+            assertThat(paths.size(), is(expectedPaths.size()));
+            assertThat(new HashSet<>(paths), is(expectedPaths));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
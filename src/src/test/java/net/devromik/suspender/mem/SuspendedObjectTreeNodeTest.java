@@ -1,6 +1,6 @@
 package net.devromik.suspender.mem;
 
-import java.util.Set;
+import java.util.*;
 import org.junit.Test;
 import static net.devromik.suspender.mem.SuspendedObjectTreeNode.makeRoot;
 import net.devromik.suspender.utils.Path;
@@ -212,6 +212,129 @@ public class SuspendedObjectTreeNodeTest {
         assertFalse(root.isDetached());
     }
 
+    @Test
+    public void maintainsSubtreeSuspendedObjectCount() {
+        SuspendedObjectTreeNode root = makeRoot();
+        SuspendedObjectTreeNode rootChild = root.ensureChild("rootChild");
+        SuspendedObjectTreeNode rootChild_Child_1 = rootChild.ensureChild("rootChild_Child_1");
+        SuspendedObjectTreeNode rootChild_Child_2 = rootChild.ensureChild("rootChild_Child_2");
+
+        rootChild.suspend("object_1", new Object(), 1L);
+        rootChild_Child_1.suspend("object_1", new Object(), 1L);
+        rootChild_Child_1.suspend("object_2", new Object(), 2L);
+        rootChild_Child_2.suspend("object_1", new Object(), 1L);
+
+        // Repeated suspension does not change the counters.
+        rootChild_Child_2.suspend("object_1", new Object(), 2L);
+
+        assertThat(root.getSubtreeSuspendedObjectCount(), is(4L));
+        assertThat(rootChild.getSubtreeSuspendedObjectCount(), is(4L));
+        assertThat(rootChild_Child_1.getSubtreeSuspendedObjectCount(), is(2L));
+        assertThat(rootChild_Child_2.getSubtreeSuspendedObjectCount(), is(1L));
+
+        rootChild_Child_1.removeSuspendedObject("object_1");
+        rootChild_Child_1.removeSuspendedObject("absent");
+
+        assertThat(root.getSubtreeSuspendedObjectCount(), is(3L));
+        assertThat(rootChild.getSubtreeSuspendedObjectCount(), is(3L));
+        assertThat(rootChild_Child_1.getSubtreeSuspendedObjectCount(), is(1L));
+
+        rootChild_Child_1.detach();
+
+        assertThat(root.getSubtreeSuspendedObjectCount(), is(2L));
+        assertThat(rootChild.getSubtreeSuspendedObjectCount(), is(2L));
+        assertThat(rootChild_Child_1.getSubtreeSuspendedObjectCount(), is(1L));
+
+        root.removeObjectWithMinRestorationTimeFromSubtree();
+        root.removeObjectWithMinRestorationTimeFromSubtree();
+
+        assertThat(root.getSubtreeSuspendedObjectCount(), is(0L));
+        assertTrue(root.isEmpty());
+    }
+
+    @Test
+    public void maintainsSubtreeMinRestorationTime() {
+        SuspendedObjectTreeNode root = makeRoot();
+        SuspendedObjectTreeNode rootChild = root.ensureChild("rootChild");
+        SuspendedObjectTreeNode rootChild_Child_1 = rootChild.ensureChild("rootChild_Child_1");
+        SuspendedObjectTreeNode rootChild_Child_2 = rootChild.ensureChild("rootChild_Child_2");
+
+        assertNull(root.getSubtreeMinRestorationTime());
+
+        rootChild.suspend("object_1", new Object(), 5L);
+        rootChild_Child_1.suspend("object_1", new Object(), 3L);
+        rootChild_Child_1.suspend("object_2", new Object(), 4L);
+        rootChild_Child_2.suspend("object_1", new Object(), 2L);
+
+        assertThat(root.getSubtreeMinRestorationTime(), is(2L));
+        assertThat(rootChild.getSubtreeMinRestorationTime(), is(2L));
+        assertThat(rootChild_Child_1.getSubtreeMinRestorationTime(), is(3L));
+        assertThat(rootChild_Child_2.getSubtreeMinRestorationTime(), is(2L));
+        assertTrue(rootChild.childrenBySubtreeMinRestorationTime.containsEntry(3L, "rootChild_Child_1"));
+        assertTrue(rootChild.childrenBySubtreeMinRestorationTime.containsEntry(2L, "rootChild_Child_2"));
+
+        // Repeated suspension moves the object in the index.
+        rootChild_Child_2.suspend("object_1", new Object(), 6L);
+        assertThat(root.getSubtreeMinRestorationTime(), is(3L));
+        assertThat(rootChild_Child_2.getSubtreeMinRestorationTime(), is(6L));
+        assertThat(rootChild.childrenBySubtreeMinRestorationTime.size(), is(2));
+
+        rootChild_Child_1.removeSuspendedObject("object_1");
+        assertThat(root.getSubtreeMinRestorationTime(), is(4L));
+
+        rootChild_Child_1.detach();
+        assertThat(root.getSubtreeMinRestorationTime(), is(5L));
+        assertThat(rootChild.childrenBySubtreeMinRestorationTime.size(), is(1));
+
+        rootChild.removeSuspendedObject("object_1");
+        assertThat(root.getSubtreeMinRestorationTime(), is(6L));
+
+        rootChild_Child_2.removeSuspendedObject("object_1");
+        assertNull(root.getSubtreeMinRestorationTime());
+        assertTrue(root.childrenBySubtreeMinRestorationTime.isEmpty());
+    }
+
+    @Test
+    public void canFindObjectsWithMinRestorationTimesInSubtree() {
+        SuspendedObjectTreeNode root = makeRoot();
+        assertTrue(root.findObjectsWithMinRestorationTimesInSubtree(10, Long.MAX_VALUE).isEmpty());
+
+        SuspendedObjectTreeNode rootChild = root.ensureChild("rootChild");
+        SuspendedObjectTreeNode rootChild_Child_1 = rootChild.ensureChild("rootChild_Child_1");
+        SuspendedObjectTreeNode rootChild_Child_2 = rootChild.ensureChild("rootChild_Child_2");
+
+        rootChild.suspend("object_1", "1", 1L);
+        rootChild.suspend("object_7", "7", 7L);
+        rootChild_Child_1.suspend("object_3", "3", 3L);
+        rootChild_Child_1.suspend("object_4", "4", 4L);
+        rootChild_Child_2.suspend("object_2", "2", 2L);
+        rootChild_Child_2.suspend("object_6", "6", 6L);
+        rootChild_Child_2.suspend("object_5", "5", 5L);
+
+        assertThat(suspendedObjectsOf(root.findObjectsWithMinRestorationTimesInSubtree(3, Long.MAX_VALUE)), is(Arrays.asList("1", "2", "3")));
+        assertThat(suspendedObjectsOf(root.findObjectsWithMinRestorationTimesInSubtree(100, Long.MAX_VALUE)), is(Arrays.asList("1", "2", "3", "4", "5", "6", "7")));
+        assertThat(suspendedObjectsOf(root.findObjectsWithMinRestorationTimesInSubtree(100, 4L)), is(Arrays.asList("1", "2", "3", "4")));
+        assertThat(suspendedObjectsOf(rootChild_Child_2.findObjectsWithMinRestorationTimesInSubtree(2, Long.MAX_VALUE)), is(Arrays.asList("2", "5")));
+        assertTrue(root.findObjectsWithMinRestorationTimesInSubtree(0, Long.MAX_VALUE).isEmpty());
+        assertTrue(root.findObjectsWithMinRestorationTimesInSubtree(10, 0L).isEmpty());
+
+        SuspendedObjectInfo min = root.findObjectWithMinRestorationTimeInSubtree();
+        assertThat(min.parentNode, is(rootChild));
+        assertThat(min.pathLastSegment, is("object_1"));
+        assertThat(min.restorationTime, is(1L));
+
+        min = rootChild_Child_2.findObjectWithMinRestorationTimeInSubtree();
+        assertThat(min.parentNode, is(rootChild_Child_2));
+        assertThat(min.pathLastSegment, is("object_2"));
+    }
+
+    private static List<Object> suspendedObjectsOf(List<SuspendedObjectInfo> infos) {
+        List<Object> suspendedObjects = new ArrayList<>();
+        infos.forEach((info) -> suspendedObjects.add(info.parentNode.getSuspendedObject(info.pathLastSegment)));
+
+        return suspendedObjects;
+    }
+
     @Test
     public void canTraverseSubtree() {
         SuspendedObjectTreeNode root = makeRoot();
@@ -0,0 +1,242 @@
+package net.devromik.suspender.mem;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import net.devromik.suspender.SuspendedObject;
+import org.junit.*;
+import static java.lang.System.currentTimeMillis;
+import static java.time.Duration.*;
+import static java.util.stream.Collectors.*;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_DURATION;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class TenantRegistryTest {
+
+    @Test
+    public void tenantsAreIsolated() {
+        TenantRegistry registry = new TenantRegistry();
+        TenantSuspender tenant1 = registry.register("T1", 1000L);
+        TenantSuspender tenant2 = registry.register("T2", 1000L);
+        assertThat(registry.getTenants(), is(new HashSet<>(Arrays.asList("T1", "T2"))));
+        assertThat(registry.getTenant("T1"), is(tenant1));
+
+        List<Path> restoredPaths = new ArrayList<>();
+        tenant1.addRestoredObjectListener((path, restoredObject) -> restoredPaths.add(path));
+        tenant2.addRestoredObjectListener(new Path("A"), (path, restoredObject) -> restoredPaths.add(new Path("T2")));
+
+        for (int i = 0; i < 10; ++i) {
+            tenant1.suspend(new Path("A", "B" + i), i, ofMinutes(10L + i));
+            tenant2.suspend(new Path("A", "B" + i), -i, ofMinutes(10L + i));
+        }
+
+        tenant2.suspend(new Path("C", "D"), 1, ofHours(1L));
+
+        assertThat(tenant1.countSuspendedBy(new Path("A")), is(10L));
+        assertThat(tenant1.getObjectCount(), is(10L));
+        assertThat(tenant2.getObjectCount(), is(11L));
+        assertThat(registry.getEngine().countSuspendedBy(new Path("T2")), is(11L));
+        assertFalse(tenant1.hasObjectsSuspendedBy(new Path("C")));
+        assertTrue(tenant2.hasObjectsSuspendedBy(new PathPattern("*", "D")));
+        assertFalse(tenant1.hasObjectsSuspendedBy(new PathPattern("*", "D")));
+
+        assertThat(
+            tenant2.peekEarliest(new Path("A"), 2).stream().map(SuspendedObject::getPath).collect(toList()),
+            is(Arrays.asList(new Path("A", "B0"), new Path("A", "B1"))));
+        assertThat(tenant1.stream(new Path("A", "B3")).map(SuspendedObject::getObject).collect(toList()), is(Arrays.asList((Object)3)));
+
+        // The explicit restorations are delivered by the calling thread.
+        tenant1.restore(new Path("A", "B5"));
+        tenant1.restoreObjectWithMinRestorationTime(new Path("A"));
+        assertThat(restoredPaths, is(Arrays.asList(new Path("A", "B5"), new Path("A", "B0"))));
+        assertThat(tenant2.countSuspendedBy(new Path("A")), is(10L));
+
+        restoredPaths.clear();
+        tenant2.restore(new PathPattern("A", "*"));
+        assertThat(restoredPaths.size(), is(10));
+        assertThat(tenant1.getObjectCount(), is(8L));
+
+        assertTrue(registry.unregister("T1"));
+        assertFalse(registry.unregister("T1"));
+        assertThat(registry.getEngine().countSuspendedBy(new Path("T1")), is(0L));
+        assertThat(restoredPaths.size(), is(10));
+    }
+
+    @Test
+    public void quotaIsEnforced() {
+        TenantRegistry registry = new TenantRegistry();
+        TenantSuspender tenant = registry.register("T", 3L);
+
+        for (int i = 0; i < 3; ++i) {
+            tenant.suspend(new Path("A", "B" + i), i, ofHours(1L));
+        }
+
+        try {
+            tenant.suspend(new Path("A", "B3"), 3, ofHours(1L));
+            fail();
+        }
+        catch (IllegalStateException exception) {
+            // Expected.
+        }
+
+        try {
+            tenant.suspendIfAbsent(new Path("A", "B3"), 3, ofHours(1L));
+            fail();
+        }
+        catch (IllegalStateException exception) {
+            // Expected.
+        }
+
+        // The existing objects can be overwritten.
+        tenant.suspend(new Path("A", "B0"), 10, ofHours(1L));
+        assertThat(tenant.compute(new Path("A", "B1"), (object) -> (Integer)object + 10, ofHours(1L)), is(11));
+        assertThat(tenant.getObjectCount(), is(3L));
+
+        tenant.restore(new Path("A", "B2"));
+        tenant.suspend(new Path("A", "B3"), 3, ofHours(1L));
+
+        tenant.setMaxObjectCount(4L);
+        assertThat(tenant.getMaxObjectCount(), is(4L));
+        assertTrue(tenant.suspendIfAbsent(new Path("A", "B4"), 4, ofHours(1L)));
+        assertThat(tenant.getObjectCount(), is(4L));
+    }
+
+    @Test
+    public void expiredObjectsAreDeliveredInTurns() {
+        TenantRegistry registry = new TenantRegistry();
+        List<String> deliveries = new ArrayList<>();
+        long restorationTime = currentTimeMillis() + ofHours(1L).toMillis();
+
+        for (String tenant : Arrays.asList("BIG", "SMALL")) {
+            registry.register(tenant, 1000L).addRestoredObjectListener((path, restoredObject) -> deliveries.add(tenant));
+        }
+
+        for (int i = 0; i < 200; ++i) {
+            registry.getTenant("BIG").suspend(new Path("A", "B" + i), i, ofHours(2L));
+        }
+
+        for (int i = 0; i < 10; ++i) {
+            registry.getTenant("SMALL").suspend(new Path("A", "B" + i), i, ofHours(2L));
+        }
+
+        registry.getEngine().restoreExpired(restorationTime + ofHours(2L).toMillis());
+        assertTrue(deliveries.isEmpty());
+
+        while (registry.dispatchNext()) {
+            // Dispatching.
+        }
+
+        assertThat(deliveries.size(), is(210));
+        assertThat(deliveries.stream().filter("SMALL"::equals).count(), is(10L));
+
+        // The small tenant has waited for at most two turns of the big one.
+        assertTrue(deliveries.lastIndexOf("SMALL") < 2 * TenantRegistry.DISPATCH_QUANTUM + 10);
+    }
+
+    @Test
+    public void expiredObjectsAreDeliveredByDispatchers() throws Exception {
+        TenantRegistry registry = new TenantRegistry(new MemSuspender(MemSuspender.MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ZERO, ofMillis(10L)), 2);
+        Map<String, Set<Path>> tenantToRestoredPaths = new ConcurrentHashMap<>();
+
+        for (int t = 0; t < 20; ++t) {
+            String tenant = "T" + t;
+            Set<Path> restoredPaths = ConcurrentHashMap.newKeySet();
+            tenantToRestoredPaths.put(tenant, restoredPaths);
+            TenantSuspender tenantSuspender = registry.register(tenant, 100L);
+            tenantSuspender.addRestoredObjectListener((path, restoredObject) -> restoredPaths.add(path));
+
+            for (int i = 0; i < 50; ++i) {
+                tenantSuspender.suspend(new Path("A", "B" + i), i, MIN_SUSPENSION_DURATION);
+            }
+        }
+
+        registry.start();
+
+        try {
+            long deadline = currentTimeMillis() + ofSeconds(10L).toMillis();
+
+            while (tenantToRestoredPaths.values().stream().mapToInt(Set::size).sum() < 20 * 50 && currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+        }
+        finally {
+            registry.stop();
+        }
+
+        for (Set<Path> restoredPaths : tenantToRestoredPaths.values()) {
+            assertThat(restoredPaths.size(), is(50));
+            assertTrue(restoredPaths.contains(new Path("A", "B49")));
+        }
+
+        assertThat(registry.getEngine().getPathFirstSegmentCount(), is(0));
+    }
+
+    @Test
+    public void restorationBacklogIsBounded() {
+        TenantRegistry registry = new TenantRegistry();
+        TenantSuspender tenant = registry.register("T", 1000L);
+        tenant.setMaxRestorationBacklog(0);
+        assertThat(tenant.getMaxRestorationBacklog(), is(TenantSuspender.MIN_MAX_RESTORATION_BACKLOG));
+
+        List<Path> restoredPaths = new ArrayList<>();
+        tenant.addRestoredObjectListener((path, restoredObject) -> restoredPaths.add(path));
+
+        for (int i = 0; i < 200; ++i) {
+            tenant.suspend(new Path("A", "B" + i), i, ofHours(1L).plusSeconds(i));
+        }
+
+        // No dispatchers: the restorer delivers the excess itself.
+        registry.getEngine().restoreExpired(currentTimeMillis() + ofHours(2L).toMillis());
+        assertThat(restoredPaths.size(), is(200 - TenantSuspender.MIN_MAX_RESTORATION_BACKLOG));
+
+        while (registry.dispatchNext()) {
+            // Dispatching.
+        }
+
+        List<Path> expectedPaths = new ArrayList<>();
+
+        for (int i = 0; i < 200; ++i) {
+            expectedPaths.add(new Path("A", "B" + i));
+        }
+
+        assertThat(restoredPaths, is(expectedPaths));
+    }
+
+    @Test
+    public void hotTenantGroupIsPartitionedBetweenDivisions() {
+        TenantRegistry registry = new TenantRegistry();
+        MemSuspender engine = registry.getEngine();
+        engine.setHotSubtreeObjectCount(100);
+        TenantSuspender tenant = registry.register("T", 1000L);
+
+        for (int i = 0; i < 200; ++i) {
+            tenant.suspend(new Path("A", "B" + i), i, ofHours(1L));
+        }
+
+        // The group is routed by the tenant and its first segment only.
+        Set<SuspendedObjectDivision> divs = new HashSet<>();
+
+        for (int i = 0; i < 200; ++i) {
+            divs.add(engine.divisionFor(new Path("T", "A", "B" + i)));
+        }
+
+        assertThat(divs.size(), is(1));
+
+        engine.partitionOversizedSubtrees();
+        assertTrue(engine.isPartitioned(new Path("T", "A")));
+        divs.clear();
+
+        for (int i = 0; i < 200; ++i) {
+            divs.add(engine.divisionFor(new Path("T", "A", "B" + i)));
+        }
+
+        assertTrue(divs.size() > 1);
+        assertThat(tenant.countSuspendedBy(new Path("A")), is(200L));
+        assertThat(tenant.stream(new Path("A")).count(), is(200L));
+    }
+}
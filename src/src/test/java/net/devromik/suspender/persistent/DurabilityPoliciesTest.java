@@ -0,0 +1,76 @@
+package net.devromik.suspender.persistent;
+
+import org.junit.Test;
+import net.devromik.suspender.utils.Path;
+import static java.time.Duration.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class DurabilityPoliciesTest {
+
+    @Test
+    public void policyOfLongestPrefixIsChosen() throws Exception {
+        DurabilityPolicies policies = new DurabilityPolicies();
+        DurabilityPolicy a = DurabilityPolicy.groupCommit(ofMillis(1L));
+        DurabilityPolicy ab = DurabilityPolicy.periodic(ofSeconds(1L));
+        policies.register(new Path("A"), a);
+        policies.register(new Path("A", "B"), ab);
+
+        assertThat(policies.policyFor(new Path("A")), is(sameInstance(a)));
+        assertThat(policies.policyFor(new Path("A", "C")), is(sameInstance(a)));
+        assertThat(policies.policyFor(new Path("A", "B", "C")), is(sameInstance(ab)));
+        assertThat(policies.policyFor(new Path("B", "C")), is(sameInstance(policies.getDefault())));
+        assertThat(policies.getDefault().getMode(), is(DurabilityPolicy.Mode.SYNC));
+        assertThat(policies.all().size(), is(3));
+    }
+
+    @Test
+    public void strictestPolicyWaitsMost() throws Exception {
+        DurabilityPolicy periodic = DurabilityPolicy.periodic(ofSeconds(1L));
+        DurabilityPolicy shortWindow = DurabilityPolicy.groupCommit(ofMillis(1L));
+        DurabilityPolicy longWindow = DurabilityPolicy.groupCommit(ofMillis(10L));
+
+        DurabilityPolicies policies = new DurabilityPolicies(periodic);
+        assertThat(policies.strictest(), is(sameInstance(periodic)));
+
+        policies.register(new Path("A"), longWindow);
+        assertThat(policies.strictest(), is(sameInstance(longWindow)));
+
+        policies.register(new Path("B"), shortWindow);
+        assertThat(policies.strictest(), is(sameInstance(shortWindow)));
+    }
+
+    @Test
+    public void strictestPolicyForPrefixCoversLongerPrefixes() throws Exception {
+        DurabilityPolicy timers = DurabilityPolicy.periodic(ofSeconds(1L));
+        DurabilityPolicy orders = DurabilityPolicy.groupCommit(ofMillis(10L));
+        DurabilityPolicy payments = DurabilityPolicy.syncEveryWrite();
+
+        DurabilityPolicies policies = new DurabilityPolicies(timers);
+        policies.register(new Path("A", "orders"), orders);
+        policies.register(new Path("A", "orders", "X", "payments"), payments);
+        policies.register(new Path("B"), orders);
+
+        assertThat(policies.strictestFor(new Path("A")), is(sameInstance(payments)));
+        assertThat(policies.strictestFor(new Path("A", "orders")), is(sameInstance(payments)));
+        assertThat(policies.strictestFor(new Path("A", "orders", "Y")), is(sameInstance(orders)));
+        assertThat(policies.strictestFor(new Path("A", "timers")), is(sameInstance(timers)));
+        assertThat(policies.strictestFor(new Path("B", "C")), is(sameInstance(orders)));
+        assertThat(policies.strictestFor(new Path("C")), is(sameInstance(timers)));
+    }
+
+    @Test
+    public void parametersAreAdjusted() throws Exception {
+        assertThat(DurabilityPolicy.groupCommit(ZERO).getGroupCommitWindow(), is(DurabilityPolicy.MIN_GROUP_COMMIT_WINDOW));
+        assertThat(DurabilityPolicy.periodic(ofDays(1L)).getSyncInterval(), is(DurabilityPolicy.MAX_SYNC_INTERVAL));
+        assertThat(DurabilityPolicy.syncEveryWrite().getGroupCommitWindow(), is(ZERO));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prefixMustNotBeEmpty() throws Exception {
+        new DurabilityPolicies().register(new Path(), DurabilityPolicy.syncEveryWrite());
+    }
+}
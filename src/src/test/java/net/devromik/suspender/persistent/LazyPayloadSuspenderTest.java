@@ -0,0 +1,223 @@
+package net.devromik.suspender.persistent;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.*;
+import com.google.common.base.Strings;
+import net.devromik.suspender.*;
+import net.devromik.suspender.mem.MemSuspender;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static java.time.Duration.*;
+import static java.util.stream.Collectors.*;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_DURATION;
+import static net.devromik.suspender.persistent.LazyPayloadSuspender.*;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class LazyPayloadSuspenderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeTest() throws Exception {
+        dir = tempFolder.newFolder();
+        suspender = new LazyPayloadSuspender(dir, new MemSuspender(), new PayloadCodecs(), MIN_PAYLOAD_SEGMENT_SIZE);
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        suspender.close();
+    }
+
+    // ****************************** //
+
+    @Test
+    public void onlyReferencesAreKeptInMemory() throws Exception {
+        String payload = Strings.repeat("X", 1000);
+        suspender.suspend(new Path("A", "B"), payload, ofHours(1L));
+        suspender.suspend(new Path("A", "C"), 1L, ofHours(2L));
+
+        Object ref = suspender.memSuspender.getSuspendedObject(new Path("A", "B")).getObject();
+        assertThat(ref, instanceOf(PayloadStore.Ref.class));
+
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(2L));
+        assertThat(
+            suspender.peekEarliest(new Path("A"), 2).stream().map(SuspendedObject::getObject).collect(toList()),
+            is(Arrays.asList(payload, 1L)));
+        assertThat(
+            suspender.stream(new Path("A", "C")).map(SuspendedObject::getObject).collect(toList()),
+            is(Collections.singletonList(1L)));
+    }
+
+    @Test
+    public void objectsAreLoadedForListeners() throws Exception {
+        Map<Path, Object> restored = new ConcurrentHashMap<>();
+        Map<Path, Object> restoredForPrefix = new ConcurrentHashMap<>();
+        Map<Path, Object> restoredExplicitly = new ConcurrentHashMap<>();
+        suspender.addRestoredObjectListener(restored::put);
+        suspender.addRestoredObjectListener(new Path("A"), restoredForPrefix::put);
+
+        suspender.suspend(new Path("A", "B"), "A_B", ofHours(1L));
+        suspender.suspend(new Path("A", "C"), new byte[] {1, 2, 3}, ofHours(1L));
+        suspender.suspend(new Path("D", "E"), "D_E", ofHours(1L));
+        suspender.suspend(new Path("D", "F"), "D_F", ofHours(1L));
+
+        suspender.restore(new Path("A"));
+        assertThat(restored.get(new Path("A", "B")), is("A_B"));
+        assertThat((byte[])restored.get(new Path("A", "C")), is(new byte[] {1, 2, 3}));
+        assertThat(restoredForPrefix.keySet(), is(restored.keySet()));
+
+        suspender.restore(new Path("D", "E"), Collections.singletonList(restoredExplicitly::put));
+        assertThat(restoredExplicitly, is(Collections.singletonMap(new Path("D", "E"), "D_E")));
+
+        RestoredListener removed = new RestoredListener();
+        suspender.addRestoredObjectListener(removed);
+        suspender.removeRestoredObjectListener(removed);
+        suspender.restore(new PathPattern("D", "*"));
+        assertThat(restored.get(new Path("D", "F")), is("D_F"));
+        assertTrue(removed.restored.isEmpty());
+    }
+
+    @Test
+    public void conditionalModificationsCompareLoadedObjects() throws Exception {
+        suspender.suspend(new Path("A", "B"), "A_B", ofHours(1L));
+
+        assertFalse(suspender.suspendIfAbsent(new Path("A", "B"), "A_B_absent", ofHours(1L)));
+        assertFalse(suspender.replace(new Path("A", "B"), "A_C", "A_B_replaced", ofHours(1L)));
+        assertTrue(suspender.replace(new Path("A", "B"), "A_B", "A_B_replaced", ofHours(1L)));
+        assertThat(suspender.compute(new Path("A", "B"), (object) -> object + "_computed", ofHours(1L)), is("A_B_replaced_computed"));
+        assertThat(suspender.stream(new Path("A")).findFirst().get().getObject(), is("A_B_replaced_computed"));
+
+        assertThat(suspender.compute(new Path("A", "B"), (object) -> null, ofHours(1L)), is(nullValue()));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A")));
+    }
+
+    @Test
+    public void expiredObjectsAreRestored() throws Exception {
+        CountDownLatch restored = new CountDownLatch(1);
+        List<Object> restoredObjects = new CopyOnWriteArrayList<>();
+
+        suspender.addRestoredObjectListener((path, object) -> {
+            restoredObjects.add(object);
+            restored.countDown();
+        });
+
+        suspender.suspend(new Path("A", "B"), "A_B", MIN_SUSPENSION_DURATION);
+        suspender.start();
+
+        try {
+            assertTrue(restored.await(10L, TimeUnit.SECONDS));
+            assertThat(restoredObjects, is(Collections.singletonList("A_B")));
+        }
+        finally {
+            suspender.stop();
+        }
+    }
+
+    @Test
+    public void unreferencedSegmentsAreDeleted() throws Exception {
+        String payload = Strings.repeat("X", MIN_PAYLOAD_SEGMENT_SIZE / 4);
+
+        for (int i = 0; i < 20; ++i) {
+            suspender.suspend(new Path("A", "B" + i), payload, ofHours(1L));
+        }
+
+        int segmentCount = suspender.getPayloadSegmentCount();
+        assertTrue(segmentCount > 1);
+        assertThat(dir.list().length, is(segmentCount));
+
+        // The segments with suspended objects survive garbage collections.
+        collectGarbage();
+        assertThat(suspender.getPayloadSegmentCount(), is(segmentCount));
+
+        suspender.restore(new Path("A"));
+        collectGarbage();
+
+        // Only the current segment stays referenced.
+        assertThat(suspender.getPayloadSegmentCount(), is(1));
+        assertThat(dir.list().length, is(1));
+    }
+
+    /**
+     * Runs garbage collections until the unreachable segments are reclaimed:
+     * each round waits for an actual collection (a cleared weak reference) rather than for a time-out.
+     */
+    void collectGarbage() throws Exception {
+        for (int i = 0; i < 10; ++i) {
+            WeakReference<Object> sentinel = new WeakReference<>(new Object());
+
+            while (sentinel.get() != null) {
+                System.gc();
+            }
+
+            suspender.payloadStore.deleteUnreachableSegments(0L);
+        }
+    }
+
+    @Test
+    public void concurrentSuspensionsAreStoredIntact() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int t = 0; t < 8; ++t) {
+                int thread = t;
+
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; ++i) {
+                        suspender.suspend(new Path("T" + thread, "B" + i), Strings.repeat("" + thread, i % 100) + i, ofHours(1L));
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        for (int t = 0; t < 8; ++t) {
+            int thread = t;
+            Map<Path, Object> objects = suspender.stream(new Path("T" + t)).collect(toMap(SuspendedObject::getPath, SuspendedObject::getObject));
+            assertThat(objects.size(), is(500));
+            objects.forEach((path, object) -> {
+                int i = Integer.parseInt(path.getSegment(1).substring(1));
+                assertThat(object, is(Strings.repeat("" + thread, i % 100) + i));
+            });
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void objectMustHaveCodec() throws Exception {
+        suspender.suspend(new Path("A", "B"), new Object(), ofHours(1L));
+    }
+
+    // ****************************** //
+
+    static class RestoredListener implements RestoredObjectListener {
+
+        @Override
+        public void onObjectRestored(Path suspensionPath, Object restoredObject) {
+            restored.add(restoredObject);
+        }
+
+        // ****************************** //
+
+        final List<Object> restored = new CopyOnWriteArrayList<>();
+    }
+
+    // ****************************** //
+
+    File dir;
+    LazyPayloadSuspender suspender;
+}
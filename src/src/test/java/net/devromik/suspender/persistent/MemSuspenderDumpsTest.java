@@ -0,0 +1,101 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.nio.file.Files;
+import net.devromik.suspender.SuspendedObject;
+import net.devromik.suspender.mem.MemSuspender;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static java.time.Duration.*;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_DURATION;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class MemSuspenderDumpsTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void canDumpAndLoadRunningSuspender() throws Exception {
+        MemSuspender suspender = new MemSuspender();
+        suspender.start();
+
+        for (int i = 0; i < 1000; ++i) {
+            suspender.suspend(new Path("A" + (i % 3), "B" + (i % 97), "C" + i), i % 2 == 0 ? "O" + i : (Object)(long)i, ofHours(1L + i % 10));
+        }
+
+        suspender.restore(new Path("A1"));
+        Map<Path, SuspendedObject> before = suspendedObjects(suspender);
+
+        File file = new File(tempFolder.getRoot(), "suspender.dump");
+        MemSuspenderDumps.dump(suspender, file, new PayloadCodecs());
+        suspender.stop();
+
+        // A dump can be replaced.
+        MemSuspenderDumps.dump(suspender, file, new PayloadCodecs());
+
+        MemSuspender loaded = new MemSuspender();
+        assertThat(MemSuspenderDumps.load(file, loaded, new PayloadCodecs(), 4), is((long)before.size()));
+
+        assertThat(suspendedObjects(loaded), is(before));
+        assertThat(loaded.countSuspendedBy(new Path("A0")), is(suspender.countSuspendedBy(new Path("A0"))));
+        assertFalse(loaded.hasObjectsSuspendedBy(new Path("A1")));
+        assertThat(tempFolder.getRoot().list(), is(new String[] {"suspender.dump"}));
+    }
+
+    @Test
+    public void expiredObjectsAreRestoredAfterLoading() throws Exception {
+        MemSuspender suspender = new MemSuspender();
+        suspender.suspend(new Path("A", "B"), "A_B", MIN_SUSPENSION_DURATION);
+        suspender.suspend(new Path("A", "C"), "A_C", ofHours(1L));
+
+        File file = new File(tempFolder.getRoot(), "suspender.dump");
+        MemSuspenderDumps.dump(suspender, file, new PayloadCodecs());
+        Thread.sleep(2L * MIN_SUSPENSION_DURATION.toMillis());
+
+        MemSuspender loaded = new MemSuspender();
+        MemSuspenderDumps.load(file, loaded, new PayloadCodecs());
+        CountDownLatch restored = new CountDownLatch(1);
+        loaded.addRestoredObjectListener((path, object) -> restored.countDown());
+        loaded.start();
+
+        try {
+            assertTrue(restored.await(10L, TimeUnit.SECONDS));
+            assertThat(suspendedObjects(loaded).keySet(), is(Collections.singleton(new Path("A", "C"))));
+        }
+        finally {
+            loaded.stop();
+        }
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void corruptedDumpIsRejected() throws Exception {
+        MemSuspender suspender = new MemSuspender();
+        suspender.suspend(new Path("A", "B"), "A_B", ofHours(1L));
+
+        File file = new File(tempFolder.getRoot(), "suspender.dump");
+        MemSuspenderDumps.dump(suspender, file, new PayloadCodecs());
+
+        byte[] dump = Files.readAllBytes(file.toPath());
+        ++dump[dump.length - Integer.BYTES - 1];
+        Files.write(file.toPath(), dump);
+
+        MemSuspenderDumps.load(file, new MemSuspender(), new PayloadCodecs());
+    }
+
+    // ****************************** //
+
+    static Map<Path, SuspendedObject> suspendedObjects(MemSuspender suspender) {
+        Map<Path, SuspendedObject> suspendedObjects = new HashMap<>();
+        suspender.forEachSuspendedObject((suspendedObject) -> suspendedObjects.put(suspendedObject.getPath(), suspendedObject));
+
+        return suspendedObjects;
+    }
+}
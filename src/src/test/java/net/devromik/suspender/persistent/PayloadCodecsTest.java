@@ -0,0 +1,123 @@
+package net.devromik.suspender.persistent;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import net.devromik.suspender.utils.Path;
+import org.junit.Test;
+import static net.devromik.suspender.persistent.PayloadCodecs.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class PayloadCodecsTest {
+
+    @Test
+    public void builtInCodecsRoundTrip() {
+        PayloadCodecs codecs = new PayloadCodecs();
+        Path path = new Path("A", "B");
+
+        assertThat(roundTrip(codecs, path, null), is((Object)null));
+        assertThat(roundTrip(codecs, path, "ASCII"), is("ASCII"));
+        assertThat(roundTrip(codecs, path, "Кириллица"), is("Кириллица"));
+        assertThat(roundTrip(codecs, path, "€ 😀"), is("€ 😀"));
+        assertThat(roundTrip(codecs, path, Long.MIN_VALUE), is(Long.MIN_VALUE));
+        assertThat(roundTrip(codecs, path, -1), is(-1));
+        assertThat(roundTrip(codecs, path, (short)7), is((short)7));
+        assertThat(roundTrip(codecs, path, (byte)-7), is((byte)-7));
+        assertThat(roundTrip(codecs, path, 0.5D), is(0.5D));
+        assertThat(roundTrip(codecs, path, 0.25F), is(0.25F));
+        assertThat(roundTrip(codecs, path, true), is(true));
+        assertThat(roundTrip(codecs, path, 'Ж'), is('Ж'));
+        assertArrayEquals((byte[])roundTrip(codecs, path, new byte[] {1, 2, 3}), new byte[] {1, 2, 3});
+        assertThat(roundTrip(codecs, path, new ArrayList<>(Arrays.asList(1, 2))), is(Arrays.asList(1, 2)));
+
+        assertThat(codecs.prepare(path, "S").codecId, is(STRING_CODEC_ID));
+        assertThat(codecs.prepare(path, 1L).codecId, is(LONG_CODEC_ID));
+        assertThat(codecs.prepare(path, new ArrayList<>()).codecId, is(JAVA_SERIALIZATION_CODEC_ID));
+    }
+
+    @Test
+    public void unpairedSurrogatesAreReplaced() {
+        PayloadCodecs codecs = new PayloadCodecs();
+        assertThat(roundTrip(codecs, new Path("A"), "A\uD83DB\uDE00"), is("A?B?"));
+    }
+
+    @Test
+    public void longestPrefixCodecIsPreferredToTypeCodec() {
+        PayloadCodecs codecs = new PayloadCodecs();
+        codecs.register(MIN_CUSTOM_CODEC_ID, new Path("A"), BYTE_ARRAY);
+        codecs.register(MIN_CUSTOM_CODEC_ID + 1, new Path("A", "B"), STRING);
+        codecs.register(MIN_CUSTOM_CODEC_ID + 2, StringBuilder.class, new StringBuilderCodec());
+
+        assertThat(codecs.prepare(new Path("A", "C"), new byte[0]).codecId, is(MIN_CUSTOM_CODEC_ID));
+        assertThat(codecs.prepare(new Path("A", "B", "C"), "S").codecId, is(MIN_CUSTOM_CODEC_ID + 1));
+        assertThat(codecs.prepare(new Path("B"), "S").codecId, is(STRING_CODEC_ID));
+        assertThat(codecs.prepare(new Path("B"), new StringBuilder()).codecId, is(MIN_CUSTOM_CODEC_ID + 2));
+        assertThat(roundTrip(codecs, new Path("B"), new StringBuilder("SB")).toString(), is("SB"));
+
+        // null does not need a codec.
+        assertThat(codecs.prepare(new Path("A", "B"), null).codecId, is(NULL_CODEC_ID));
+    }
+
+    @Test
+    public void codecIdsMustBeUnique() {
+        PayloadCodecs codecs = new PayloadCodecs();
+        codecs.register(MIN_CUSTOM_CODEC_ID, new Path("A"), STRING);
+
+        // The same codec can be registered for several prefixes.
+        codecs.register(MIN_CUSTOM_CODEC_ID, new Path("B"), STRING);
+
+        try {
+            codecs.register(MIN_CUSTOM_CODEC_ID, new Path("C"), BYTE_ARRAY);
+            fail();
+        }
+        catch (IllegalArgumentException exception) {
+            // Expected.
+        }
+
+        try {
+            codecs.register(STRING_CODEC_ID, StringBuilder.class, new StringBuilderCodec());
+            fail();
+        }
+        catch (IllegalArgumentException exception) {
+            // Expected.
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void objectWithoutCodecMustBeSerializable() {
+        new PayloadCodecs().prepare(new Path("A"), new Object());
+    }
+
+    // ****************************** //
+
+    static Object roundTrip(PayloadCodecs codecs, Path path, Object object) {
+        PayloadCodecs.Payload payload = codecs.prepare(path, object);
+        ByteBuffer buffer = ByteBuffer.allocate(payload.size);
+        payload.encode(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+
+        return codecs.codecOf(payload.codecId).decode(buffer);
+    }
+
+    static class StringBuilderCodec implements PayloadCodec<StringBuilder> {
+
+        @Override
+        public int sizeOf(StringBuilder builder) {
+            return STRING.sizeOf(builder.toString());
+        }
+
+        @Override
+        public void encode(StringBuilder builder, ByteBuffer buffer) {
+            STRING.encode(builder.toString(), buffer);
+        }
+
+        @Override
+        public StringBuilder decode(ByteBuffer buffer) {
+            return new StringBuilder(STRING.decode(buffer));
+        }
+    }
+}
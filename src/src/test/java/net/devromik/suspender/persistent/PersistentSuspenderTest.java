@@ -0,0 +1,506 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.nio.file.Files;
+import com.google.common.base.Strings;
+import net.devromik.suspender.SuspendedObject;
+import net.devromik.suspender.mem.MemSuspender;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static com.google.common.collect.Iterables.getLast;
+import static java.lang.System.currentTimeMillis;
+import static java.time.Duration.*;
+import static java.time.Instant.now;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_DURATION;
+import static net.devromik.suspender.persistent.PayloadCodecs.MIN_CUSTOM_CODEC_ID;
+import static net.devromik.suspender.persistent.PersistentSuspender.*;
+import static java.util.stream.Collectors.toMap;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class PersistentSuspenderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeTest() throws Exception {
+        dir = tempFolder.newFolder();
+        codecs = new PayloadCodecs();
+        suspender = makeSuspender();
+        suspender.start();
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        if (suspender != null) {
+            suspender.stop();
+            suspender.close();
+        }
+    }
+
+    // ****************************** //
+
+    @Test
+    public void canRecoverSuspendedObjects() throws Exception {
+        suspender.suspend(new Path("A", "B"), "A_B", ofHours(1L));
+        suspender.suspend(new Path("A", "B", "C1"), "A_B_C1", ofHours(2L));
+        suspender.suspend(new Path("A", "B", "C2"), "A_B_C2", ofHours(3L));
+        suspender.suspend(new Path("A", "B", "C2"), "A_B_C2_replaced", ofHours(4L));
+        suspender.suspend(new Path("A", "D", "E"), "A_D_E", ofHours(5L));
+        suspender.suspend(new Path("F", "G", "H"), "F_G_H", ofHours(6L));
+        suspender.suspend(new Path("F", "I"), "F_I", ofHours(7L));
+        suspender.suspend(new Path("J", "K"), "J_K", ofHours(8L));
+
+        // Only the object suspended by exactly the path.
+        suspender.compute(new Path("A", "B"), (object) -> null, ofHours(1L));
+        suspender.restore(new Path("A", "D"));
+        suspender.restore(new PathPattern("*", "G"));
+        suspender.restoreObjectWithMinRestorationTime(new Path("F"));
+        assertTrue(suspender.suspendIfAbsent(new Path("L", "M"), "L_M", ofHours(9L)));
+        assertTrue(suspender.replace(new Path("J", "K"), "J_K", "J_K_replaced", ofHours(10L)));
+
+        Map<Path, SuspendedObject> before = suspendedObjects();
+        assertThat(before.keySet(), is(newSet(
+            new Path("A", "B", "C1"),
+            new Path("A", "B", "C2"),
+            new Path("J", "K"),
+            new Path("L", "M"))));
+
+        restart();
+
+        assertThat(suspendedObjects(), is(before));
+        assertThat(suspender.stream(new Path("A", "B", "C2")).findFirst().get().getObject(), is("A_B_C2_replaced"));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(2L));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("F")));
+
+        // The recovered suspender keeps logging.
+        suspender.restore(new Path("A"));
+        restart();
+        assertThat(suspendedObjects().keySet(), is(newSet(new Path("J", "K"), new Path("L", "M"))));
+    }
+
+    @Test
+    public void restorationsByRootLevelPatternAreDurable() throws Exception {
+        suspender.suspend(new Path("A", "B"), "A_B", ofHours(1L));
+        suspender.suspend(new Path("A", "C", "D"), "A_C_D", ofHours(2L));
+        suspender.suspend(new Path("J", "K"), "J_K", ofHours(3L));
+
+        Set<Path> restoredPaths = ConcurrentHashMap.newKeySet();
+        suspender.restore(new PathPattern("A"), Collections.singletonList((path, restoredObject) -> restoredPaths.add(path)));
+        assertThat(restoredPaths, is(newSet(new Path("A", "B"), new Path("A", "C", "D"))));
+
+        restart();
+        assertThat(suspendedObjects().keySet(), is(newSet(new Path("J", "K"))));
+
+        suspender.restore(new PathPattern("*"));
+        restart();
+        assertTrue(suspendedObjects().isEmpty());
+    }
+
+    @Test
+    public void restorationsByRestorerAreDurable() throws Exception {
+        CountDownLatch restored = new CountDownLatch(1);
+        suspender.addRestoredObjectListener((path, object) -> restored.countDown());
+        suspender.suspend(new Path("A", "B"), "A_B", MIN_SUSPENSION_DURATION);
+        suspender.suspend(new Path("A", "C"), "A_C", ofHours(1L));
+        assertTrue(restored.await(10L, TimeUnit.SECONDS));
+
+        restart();
+
+        assertThat(suspendedObjects().keySet(), is(newSet(new Path("A", "C"))));
+    }
+
+    @Test
+    public void tornTailOfLogIsDiscarded() throws Exception {
+        suspender.suspend(new Path("A", "B"), "A_B", ofHours(1L));
+        restart();
+
+        // The last byte of the second record gets corrupted.
+        suspender.suspend(new Path("A", "C"), "A_C", ofHours(1L));
+        suspender.stop();
+        suspender.close();
+
+        File lastSegmentFile = JournalSegment.fileOf(dir, getLast(JournalSegment.listSeqNumbers(dir)));
+        byte[] lastSegment = Files.readAllBytes(lastSegmentFile.toPath());
+        int lastNonZeroByteIndex = lastSegment.length - 1;
+
+        while (lastSegment[lastNonZeroByteIndex] == 0) {
+            --lastNonZeroByteIndex;
+        }
+
+        ++lastSegment[lastNonZeroByteIndex];
+        Files.write(lastSegmentFile.toPath(), lastSegment);
+
+        suspender = makeSuspender();
+        suspender.start();
+        assertThat(suspendedObjects().keySet(), is(newSet(new Path("A", "B"))));
+
+        suspender.suspend(new Path("A", "D"), "A_D", ofHours(1L));
+        restart();
+        assertThat(suspendedObjects().keySet(), is(newSet(new Path("A", "B"), new Path("A", "D"))));
+    }
+
+    @Test
+    public void objectsMustBeSerializable() throws Exception {
+        try {
+            suspender.suspend(new Path("A", "B"), new Object(), ofHours(1L));
+            fail();
+        }
+        catch (IllegalArgumentException exception) {
+            assertFalse(suspender.hasObjectsSuspendedBy(new Path("A")));
+        }
+
+        restart();
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A")));
+    }
+
+    @Test
+    public void objectsAreEncodedByRegisteredCodecs() throws Exception {
+        suspender.stop();
+        suspender.close();
+
+        codecs = new PayloadCodecs();
+        codecs.register(MIN_CUSTOM_CODEC_ID, new Path("A"), new UpperCaseCodec());
+        suspender = makeSuspender();
+        suspender.start();
+
+        suspender.suspend(new Path("A", "B"), "a_b", ofHours(1L));
+        suspender.suspend(new Path("F", "G"), "f_g", ofHours(1L));
+        suspender.suspend(new Path("J", "K"), 1L, ofHours(1L));
+
+        restart();
+
+        assertThat(suspendedObjects().get(new Path("A", "B")).getObject(), is("A_B"));
+        assertThat(suspendedObjects().get(new Path("F", "G")).getObject(), is("f_g"));
+        assertThat(suspendedObjects().get(new Path("J", "K")).getObject(), is(1L));
+    }
+
+    @Test
+    public void suspensionIsRejectedWhenCodecLiesAboutSize() throws Exception {
+        codecs.register(MIN_CUSTOM_CODEC_ID, new Path("A"), new UpperCaseCodec() {
+
+            @Override
+            public int sizeOf(String string) {
+                return super.sizeOf(string) + 1;
+            }
+        });
+
+        suspender.suspend(new Path("F", "G"), "f_g", ofHours(1L));
+
+        try {
+            suspender.suspend(new Path("A", "B"), "a_b", ofHours(1L));
+            fail();
+        }
+        catch (IllegalArgumentException exception) {
+            assertFalse(suspender.hasObjectsSuspendedBy(new Path("A")));
+        }
+
+        suspender.suspend(new Path("J", "K"), "j_k", ofHours(1L));
+        restart();
+        assertThat(suspendedObjects().keySet(), is(newSet(new Path("F", "G"), new Path("J", "K"))));
+    }
+
+    static class UpperCaseCodec implements PayloadCodec<String> {
+
+        @Override
+        public int sizeOf(String string) {
+            return PayloadCodecs.STRING.sizeOf(string);
+        }
+
+        @Override
+        public void encode(String string, ByteBuffer buffer) {
+            PayloadCodecs.STRING.encode(string.toUpperCase(), buffer);
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer) {
+            return PayloadCodecs.STRING.decode(buffer);
+        }
+    }
+
+    @Test
+    public void parallelRecoveryIsSameAsSequentialOne() throws Exception {
+        for (int i = 0; i < 2000; ++i) {
+            suspender.suspend(new Path("A", "B" + (i % 100), "C" + (i % 7)), i, ofHours(1L + i % 5));
+        }
+
+        suspender.compact();
+
+        for (int i = 0; i < 500; ++i) {
+            suspender.suspend(new Path("F", "G" + (i % 50)), "F_" + i, ofHours(1L));
+        }
+
+        suspender.restore(new Path("A", "B1"));
+        suspender.restore(new PathPattern("A", "*", "C3"));
+        suspender.restoreDueBefore(new Path("A"), now().plus(ofHours(2L)));
+        suspender.restore(new Path("F"));
+        suspender.suspend(new Path("F", "G1"), "F_G1", ofHours(1L));
+        suspender.compute(new Path("A", "B2", "C4"), (object) -> null, ofHours(1L));
+
+        Map<Path, SuspendedObject> before = suspendedObjects();
+        suspender.stop();
+        suspender.close();
+
+        for (int recoveryThreadCount : new int[] {1, 3, 16}) {
+            suspender = new PersistentSuspender(dir, new MemSuspender(), codecs, MIN_JOURNAL_SEGMENT_SIZE, MAX_COMPACTION_SEGMENT_COUNT, recoveryThreadCount);
+            suspender.start();
+
+            assertThat(suspendedObjects(), is(before));
+            assertThat(suspender.countSuspendedBy(new Path("A")), is((long)before.size() - 1L));
+            assertThat(suspender.countSuspendedBy(new Path("F")), is(1L));
+            assertTrue(suspender.getRecoveredRecordCount() > 0L);
+            assertNotNull(suspender.getRecoveryDuration());
+
+            suspender.stop();
+            suspender.close();
+        }
+
+        suspender = null;
+    }
+
+    @Test
+    public void concurrentSuspensionsShareSyncs() throws Exception {
+        int threadCount = 8;
+        int suspensionCountPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threadCount; ++t) {
+            String thread = "T" + t;
+
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < suspensionCountPerThread; ++i) {
+                    suspender.suspend(new Path(thread, "O" + i), i, ofHours(1L));
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+
+        assertThat(suspender.log.getAppendedRecordCount(), is((long)threadCount * suspensionCountPerThread));
+        assertTrue(suspender.log.getSyncCount() <= suspender.log.getAppendedRecordCount());
+
+        restart();
+
+        for (int t = 0; t < threadCount; ++t) {
+            assertThat(suspender.countSuspendedBy(new Path("T" + t)), is((long)suspensionCountPerThread));
+        }
+    }
+
+    @Test
+    public void durabilityPoliciesAreChosenByPrefix() throws Exception {
+        suspender.stop();
+        suspender.close();
+
+        DurabilityPolicy payments = DurabilityPolicy.syncEveryWrite();
+        DurabilityPolicy orders = DurabilityPolicy.groupCommit(ofMillis(1L));
+        DurabilityPolicy timers = DurabilityPolicy.periodic(ofMillis(500L));
+        DurabilityPolicies policies = new DurabilityPolicies(timers);
+        policies.register(new Path("Payments"), payments);
+        policies.register(new Path("Orders"), orders);
+
+        suspender = new PersistentSuspender(dir, new MemSuspender(), codecs, MIN_JOURNAL_SEGMENT_SIZE, MAX_COMPACTION_SEGMENT_COUNT, 1, policies);
+        suspender.start();
+
+        suspender.suspend(new Path("Payments", "P1"), "P1", ofHours(1L));
+        assertThat(payments.getSyncBatchSizes().getCount(), is(1L));
+        assertThat(payments.getSyncLatencies().getCount(), is(1L));
+        assertThat(suspender.log.syncedRecordCount, is(suspender.log.getAppendedRecordCount()));
+
+        suspender.suspend(new Path("Orders", "O1"), "O1", ofHours(1L));
+        assertThat(orders.getSyncBatchSizes().getCount(), is(1L));
+        assertThat(orders.getSyncBatchSizes().getMax(), is(1L));
+
+        // The operations under the periodic policy do not wait for the syncer.
+        long syncCount = suspender.log.getSyncCount();
+
+        for (int i = 0; i < 10; ++i) {
+            suspender.suspend(new Path("Timers", "T" + i), i, ofHours(1L));
+        }
+
+        suspender.restore(new PathPattern("Timers", "T0"));
+        assertThat(payments.getSyncBatchSizes().getCount(), is(2L));
+        assertThat(payments.getSyncBatchSizes().getMax(), is(11L));
+
+        suspender.suspend(new Path("Timers", "T10"), 10, ofHours(1L));
+        long deadline = currentTimeMillis() + 10_000L;
+
+        while (suspender.log.syncedRecordCount < suspender.log.getAppendedRecordCount() && currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertThat(suspender.log.syncedRecordCount, is(suspender.log.getAppendedRecordCount()));
+        assertThat(suspender.log.getSyncCount(), is(syncCount + 2L));
+        assertThat(timers.getSyncBatchSizes().getCount(), is(1L));
+
+        restart();
+        assertThat(suspender.countSuspendedBy(new Path("Timers")), is(10L));
+    }
+
+    @Test
+    public void prefixRestorationSyncsAsStricterDescendantRequires() throws Exception {
+        suspender.stop();
+        suspender.close();
+
+        DurabilityPolicy payments = DurabilityPolicy.syncEveryWrite();
+        DurabilityPolicy timers = DurabilityPolicy.periodic(ofMinutes(1L));
+        DurabilityPolicies policies = new DurabilityPolicies(timers);
+        policies.register(new Path("A", "payments"), payments);
+
+        suspender = new PersistentSuspender(dir, new MemSuspender(), codecs, MIN_JOURNAL_SEGMENT_SIZE, MAX_COMPACTION_SEGMENT_COUNT, 1, policies);
+        suspender.start();
+
+        suspender.suspend(new Path("A", "payments", "P1"), "P1", ofHours(1L));
+        suspender.suspend(new Path("A", "timers", "T1"), "T1", ofHours(1L));
+        assertThat(payments.getSyncBatchSizes().getCount(), is(1L));
+
+        // The restoration of /A removes /A/payments/P1, so it must be synced as /A/payments requires.
+        suspender.restore(new Path("A"));
+        assertThat(payments.getSyncBatchSizes().getCount(), is(2L));
+        assertThat(suspender.log.syncedRecordCount, is(suspender.log.getAppendedRecordCount()));
+        assertThat(timers.getSyncBatchSizes().getCount(), is(0L));
+    }
+
+    @Test
+    public void canCompactJournal() throws Exception {
+        for (int i = 0; i < 20; ++i) {
+            for (int j = 0; j < 50; ++j) {
+                suspender.suspend(new Path("A", "B" + j), "A_B" + j + "_" + i, ofHours(1L));
+            }
+        }
+
+        suspender.restore(new Path("A", "B0"));
+        assertTrue(JournalSegment.listSeqNumbers(dir).size() > 10);
+        Map<Path, SuspendedObject> before = suspendedObjects();
+
+        suspender.compact();
+
+        assertThat(JournalSegment.listSeqNumbers(dir).size(), is(1));
+        assertNotNull(Snapshot.findLatestSeqNumber(dir));
+        assertThat(Snapshot.findLatestSeqNumber(dir), is(JournalSegment.listSeqNumbers(dir).get(0)));
+
+        restart();
+        assertThat(suspendedObjects(), is(before));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(49L));
+
+        // The records after the snapshot are replayed on top of it.
+        suspender.suspend(new Path("A", "B0"), "A_B0", ofHours(1L));
+        suspender.restore(new Path("A", "B1"));
+        suspender.compute(new Path("A", "B2"), (object) -> null, ofHours(1L));
+        Map<Path, SuspendedObject> afterCompaction = suspendedObjects();
+
+        restart();
+        assertThat(suspendedObjects(), is(afterCompaction));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(48L));
+    }
+
+    @Test
+    public void snapshotWithCorruptedLengthIsRejected() throws Exception {
+        for (int i = 0; i < 10; ++i) {
+            suspender.suspend(new Path("A", "B" + i), "A_B" + i, ofHours(1L));
+        }
+
+        suspender.compact();
+        suspender.stop();
+        suspender.close();
+        suspender = null;
+
+        File snapshotFile = Snapshot.fileOf(dir, Snapshot.findLatestSeqNumber(dir));
+        byte[] snapshot = Files.readAllBytes(snapshotFile.toPath());
+
+        for (int length : new int[] {Integer.MAX_VALUE - 8, snapshot.length, -1}) {
+            ByteBuffer.wrap(snapshot).putInt(0, length);
+            Files.write(snapshotFile.toPath(), snapshot);
+
+            try {
+                makeSuspender();
+                fail();
+            }
+            catch (UncheckedIOException exception) {
+                assertTrue(exception.getCause().getMessage().contains("corrupted"));
+            }
+        }
+    }
+
+    @Test
+    public void compactorCompactsJournalAutomatically() throws Exception {
+        suspender.stop();
+        suspender.close();
+
+        suspender = new PersistentSuspender(dir, new MemSuspender(), codecs, MIN_JOURNAL_SEGMENT_SIZE, 2);
+        suspender.start();
+
+        for (int i = 0; i < 1000; ++i) {
+            suspender.suspend(new Path("A", "B"), "A_B_" + i, ofHours(1L));
+        }
+
+        long deadline = currentTimeMillis() + 10000L;
+
+        while (Snapshot.findLatestSeqNumber(dir) == null || JournalSegment.listSeqNumbers(dir).size() > 2) {
+            assertTrue(currentTimeMillis() < deadline);
+            Thread.sleep(50L);
+        }
+
+        restart();
+        assertThat(suspendedObjects().get(new Path("A", "B")).getObject(), is("A_B_999"));
+    }
+
+    @Test
+    public void recordCanBeLargerThanSegment() throws Exception {
+        String largeObject = Strings.repeat("X", 2 * MIN_JOURNAL_SEGMENT_SIZE);
+        suspender.suspend(new Path("A", "B"), largeObject, ofHours(1L));
+        suspender.suspend(new Path("A", "C"), "A_C", ofHours(1L));
+
+        restart();
+
+        assertThat(suspendedObjects().get(new Path("A", "B")).getObject(), is(largeObject));
+        assertThat(suspendedObjects().get(new Path("A", "C")).getObject(), is("A_C"));
+    }
+
+    // ****************************** //
+
+    PersistentSuspender makeSuspender() {
+        // Compaction is performed explicitly.
+        return new PersistentSuspender(dir, new MemSuspender(), codecs, MIN_JOURNAL_SEGMENT_SIZE, MAX_COMPACTION_SEGMENT_COUNT);
+    }
+
+    void restart() throws Exception {
+        suspender.stop();
+        suspender.close();
+
+        suspender = makeSuspender();
+        suspender.start();
+    }
+
+    Map<Path, SuspendedObject> suspendedObjects() {
+        Map<Path, SuspendedObject> suspendedObjects = new HashMap<>();
+
+        for (String first : new String[] {"A", "F", "J", "L"}) {
+            suspendedObjects.putAll(suspender.stream(new Path(first)).collect(toMap(SuspendedObject::getPath, (object) -> object)));
+        }
+
+        return suspendedObjects;
+    }
+
+    static Set<Path> newSet(Path... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+
+    // ****************************** //
+
+    private File dir;
+    private PayloadCodecs codecs;
+    private PersistentSuspender suspender;
+}
@@ -0,0 +1,233 @@
+package net.devromik.suspender.persistent;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import net.devromik.suspender.SuspendedObject;
+import net.devromik.suspender.mem.MemSuspender;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static java.lang.System.currentTimeMillis;
+import static java.time.Duration.*;
+import static java.time.Instant.now;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_DURATION;
+import static java.util.stream.Collectors.*;
+import static net.devromik.suspender.persistent.TieredSuspender.*;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class TieredSuspenderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeTest() throws Exception {
+        dir = tempFolder.newFolder();
+        suspender = new TieredSuspender(dir, new MemSuspender(), new PayloadCodecs(), ofHours(1L));
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        suspender.close();
+    }
+
+    // ****************************** //
+
+    @Test
+    public void farFutureObjectsAreSpilled() throws Exception {
+        suspender.suspend(new Path("A", "B"), "A_B", ofMinutes(1L));
+        suspender.suspend(new Path("A", "B", "C"), "A_B_C", ofDays(1L));
+        suspender.suspend(new Path("A", "D"), 1L, ofDays(2L));
+
+        assertThat(suspender.getSpilledObjectCount(), is(2L));
+        assertThat(suspender.memSuspender.countSuspendedBy(new Path("A")), is(1L));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(3L));
+        assertThat(suspender.countSuspendedBy(new Path("A", "B")), is(2L));
+        assertTrue(suspender.hasObjectsSuspendedBy(new Path("A", "D")));
+        assertTrue(suspender.hasObjectsSuspendedBy(new PathPattern("*", "D")));
+        assertFalse(suspender.hasObjectsSuspendedBy(new Path("A", "E")));
+
+        assertThat(
+            suspender.peekEarliest(new Path("A"), 2).stream().map(SuspendedObject::getObject).collect(toList()),
+            is(Arrays.asList("A_B", "A_B_C")));
+        assertThat(
+            suspender.stream(new Path("A")).map(SuspendedObject::getObject).collect(toSet()),
+            is(new HashSet<>(Arrays.asList("A_B", "A_B_C", 1L))));
+
+        // Moving between the tiers.
+        suspender.suspend(new Path("A", "B"), "A_B_replaced", ofDays(3L));
+        suspender.suspend(new Path("A", "D"), 2L, ofMinutes(1L));
+        assertThat(suspender.getSpilledObjectCount(), is(2L));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(3L));
+        assertThat(suspender.memSuspender.getSuspendedObject(new Path("A", "D")).getObject(), is(2L));
+    }
+
+    @Test
+    public void objectsBeingMovedBetweenTiersAreNeverMissed() throws Exception {
+        int pathCount = 100;
+
+        for (int i = 0; i < pathCount; ++i) {
+            suspender.suspend(new Path("A", "B" + i), i, ofMinutes(1L));
+        }
+
+        AtomicBoolean moved = new AtomicBoolean();
+        AtomicInteger missCount = new AtomicInteger();
+
+        Thread reader = new Thread(() -> {
+            while (!moved.get()) {
+                for (int i = 0; i < pathCount; ++i) {
+                    if (!suspender.hasObjectsSuspendedBy(new Path("A", "B" + i))) {
+                        missCount.incrementAndGet();
+                    }
+                }
+
+                if (suspender.countSuspendedBy(new Path("A")) != pathCount) {
+                    missCount.incrementAndGet();
+                }
+            }
+        });
+
+        reader.start();
+
+        try {
+            // Moving the objects back and forth between the tiers.
+            for (int round = 0; round < 20; ++round) {
+                for (int i = 0; i < pathCount; ++i) {
+                    suspender.suspend(new Path("A", "B" + i), i, round % 2 == 0 ? ofDays(1L) : ofMinutes(1L));
+                }
+
+                if (round % 2 == 0) {
+                    suspender.promoteDueBy(Long.MAX_VALUE);
+                }
+            }
+        }
+        finally {
+            moved.set(true);
+            reader.join();
+        }
+
+        assertThat(missCount.get(), is(0));
+    }
+
+    @Test
+    public void spilledRestorationTimesAreRounded() throws Exception {
+        Path path = new Path("A", "B");
+        suspender.suspend(path, 1, ofDays(1L).plusMillis(1L));
+        suspender.promoteDueBy(Long.MAX_VALUE);
+
+        long restorationTime = suspender.memSuspender.getSuspendedObject(path).getRestorationTime().toEpochMilli();
+        assertThat(restorationTime % (MIN_SUSPENSION_DURATION.toMillis() / 2L), is(0L));
+    }
+
+    @Test
+    public void conditionalModificationsSeeBothTiers() throws Exception {
+        suspender.suspend(new Path("A", "B"), "A_B", ofDays(1L));
+
+        assertFalse(suspender.suspendIfAbsent(new Path("A", "B"), "A_B_absent", ofMinutes(1L)));
+        assertFalse(suspender.replace(new Path("A", "B"), "A_C", "A_B_replaced", ofMinutes(1L)));
+        assertTrue(suspender.replace(new Path("A", "B"), "A_B", "A_B_replaced", ofMinutes(1L)));
+        assertThat(suspender.getSpilledObjectCount(), is(0L));
+
+        assertThat(suspender.compute(new Path("A", "B"), (object) -> object + "_computed", ofDays(1L)), is("A_B_replaced_computed"));
+        assertThat(suspender.getSpilledObjectCount(), is(1L));
+        assertThat(suspender.compute(new Path("A", "B"), (object) -> object + "_again", ofDays(1L)), is("A_B_replaced_computed_again"));
+        assertThat(suspender.stream(new Path("A")).findFirst().get().getObject(), is("A_B_replaced_computed_again"));
+    }
+
+    @Test
+    public void spilledObjectsCanBeRestoredExplicitly() throws Exception {
+        Map<Path, Object> restored = new ConcurrentHashMap<>();
+        suspender.addRestoredObjectListener(restored::put);
+
+        suspender.suspend(new Path("A", "B"), "A_B", ofDays(1L));
+        suspender.suspend(new Path("A", "C"), "A_C", ofDays(2L));
+        suspender.suspend(new Path("D", "E"), "D_E", ofDays(3L));
+        suspender.suspend(new Path("D", "F"), "D_F", ofDays(4L));
+        suspender.suspend(new Path("G", "H"), "G_H", ofDays(5L));
+
+        suspender.restore(new Path("A", "B"));
+        assertThat(restored.keySet(), is(Collections.singleton(new Path("A", "B"))));
+
+        suspender.restoreObjectWithMinRestorationTime(new Path("A"));
+        assertTrue(restored.containsKey(new Path("A", "C")));
+
+        suspender.restore(new PathPattern("*", "E"));
+        assertTrue(restored.containsKey(new Path("D", "E")));
+
+        suspender.restoreDueBefore(new Path("D"), now().plus(ofDays(5L)));
+        assertTrue(restored.containsKey(new Path("D", "F")));
+
+        suspender.restore(new Path("G"));
+        assertThat(restored.size(), is(5));
+        assertThat(suspender.getSpilledObjectCount(), is(0L));
+    }
+
+    @Test
+    public void approachingObjectsArePromoted() throws Exception {
+        suspender.suspend(new Path("A", "B"), "A_B", ofDays(1L));
+        suspender.suspend(new Path("A", "C"), "A_C", ofDays(2L));
+        suspender.suspend(new Path("A", "D"), "A_D", ofDays(3L));
+        suspender.restore(new Path("A", "D"));
+
+        suspender.promoteDueBy(currentTimeMillis() + ofDays(1L).toMillis() + ofHours(1L).toMillis());
+        assertThat(suspender.getSpilledObjectCount(), is(1L));
+        assertThat(suspender.memSuspender.getSuspendedObject(new Path("A", "B")).getObject(), is("A_B"));
+        assertThat(suspender.memSuspender.countSuspendedBy(new Path("A")), is(1L));
+        assertThat(suspender.spillStore.getBucketCount(), is(2));
+
+        // The bucket of the restored object contains only garbage.
+        suspender.promoteDueBy(currentTimeMillis() + ofDays(3L).toMillis() + ofHours(1L).toMillis());
+        assertThat(suspender.getSpilledObjectCount(), is(0L));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(2L));
+        assertThat(suspender.spillStore.getBucketCount(), is(0));
+        assertThat(dir.list().length, is(0));
+    }
+
+    @Test
+    public void promotedObjectsAreRestoredInTime() throws Exception {
+        suspender.close();
+        suspender = new TieredSuspender(dir, new MemSuspender(), new PayloadCodecs(), MIN_HORIZON);
+
+        CountDownLatch restored = new CountDownLatch(1);
+        suspender.addRestoredObjectListener((path, object) -> restored.countDown());
+        suspender.suspend(new Path("A", "B"), "A_B", MIN_HORIZON.multipliedBy(2L));
+        assertThat(suspender.getSpilledObjectCount(), is(1L));
+
+        suspender.start();
+
+        try {
+            assertTrue(restored.await(10L, TimeUnit.SECONDS));
+            assertThat(suspender.getSpilledObjectCount(), is(0L));
+        }
+        finally {
+            suspender.stop();
+        }
+    }
+
+    @Test
+    public void spilledObjectsAreDeletedOnClose() throws Exception {
+        suspender.suspend(new Path("A", "B"), "A_B", ofDays(1L));
+        suspender.suspend(new Path("A", "C"), "A_C", ofDays(10L));
+        assertThat(dir.list().length, is(2));
+
+        suspender.close();
+        assertThat(dir.list().length, is(0));
+        assertThat(suspender.countSuspendedBy(new Path("A")), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void spilledObjectMustHaveCodec() throws Exception {
+        suspender.suspend(new Path("A", "B"), new Object(), ofDays(1L));
+    }
+
+    // ****************************** //
+
+    File dir;
+    TieredSuspender suspender;
+}
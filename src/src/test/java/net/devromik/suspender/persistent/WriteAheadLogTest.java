@@ -0,0 +1,112 @@
+package net.devromik.suspender.persistent;
+
+import java.io.*;
+import net.devromik.suspender.mem.MutationListener;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import net.devromik.suspender.utils.Path;
+import static net.devromik.suspender.persistent.PersistentSuspender.MIN_JOURNAL_SEGMENT_SIZE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReplayedInOrderAcrossSegments() throws Exception {
+        File dir = tempFolder.newFolder();
+        WriteAheadLog log = WriteAheadLog.open(dir, 0L, MIN_JOURNAL_SEGMENT_SIZE, new PayloadCodecs(), MutationListener.NONE);
+
+        for (int i = 0; i < 200; ++i) {
+            log.onSuspended(new Path("A", "B" + i), i, i);
+        }
+
+        log.onObjectRestored(new Path("A", "B0"));
+        log.onRestored(new Path("A"));
+        log.sync();
+        assertTrue(JournalSegment.listSeqNumbers(dir).size() > 1);
+
+        MutationListener target = mock(MutationListener.class);
+        WriteAheadLog.open(dir, 0L, MIN_JOURNAL_SEGMENT_SIZE, new PayloadCodecs(), target);
+        InOrder inOrder = inOrder(target);
+
+        for (int i = 0; i < 200; ++i) {
+            inOrder.verify(target).onSuspended(new Path("A", "B" + i), i, i);
+        }
+
+        inOrder.verify(target).onObjectRestored(new Path("A", "B0"));
+        inOrder.verify(target).onRestored(new Path("A"));
+        verifyNoMoreInteractions(target);
+    }
+
+    @Test
+    public void segmentsCoveredBySnapshotAreNotReplayed() throws Exception {
+        File dir = tempFolder.newFolder();
+        WriteAheadLog log = WriteAheadLog.open(dir, 0L, MIN_JOURNAL_SEGMENT_SIZE, new PayloadCodecs(), MutationListener.NONE);
+        log.onRestored(new Path("A"));
+        long seqNumber = log.startNewSegment();
+        log.onRestored(new Path("B"));
+        log.sync();
+
+        MutationListener target = mock(MutationListener.class);
+        WriteAheadLog.open(dir, seqNumber, MIN_JOURNAL_SEGMENT_SIZE, new PayloadCodecs(), target);
+
+        verify(target).onRestored(new Path("B"));
+        verifyNoMoreInteractions(target);
+        assertFalse(JournalSegment.listSeqNumbers(dir).contains(seqNumber - 1L));
+    }
+
+    @Test
+    public void syncIsSkippedWhenRecordsAreAlreadySynced() throws Exception {
+        WriteAheadLog log = WriteAheadLog.open(tempFolder.newFolder(), 0L, MIN_JOURNAL_SEGMENT_SIZE, new PayloadCodecs(), MutationListener.NONE);
+        log.sync();
+        assertThat(log.getSyncCount(), is(0L));
+
+        log.onRestored(new Path("A"));
+        log.onRestored(new Path("B"));
+        log.sync();
+        log.sync();
+
+        assertThat(log.getAppendedRecordCount(), is(2L));
+        assertThat(log.getSyncCount(), is(1L));
+    }
+
+    @Test
+    public void closedLogCanBeDeletedOrReopened() throws Exception {
+        File dir = tempFolder.newFolder();
+        WriteAheadLog log = WriteAheadLog.open(dir, 0L, MIN_JOURNAL_SEGMENT_SIZE, new PayloadCodecs(), MutationListener.NONE);
+
+        for (int i = 0; i < 200; ++i) {
+            log.onSuspended(new Path("A", "B" + i), i, i);
+        }
+
+        log.close();
+        log.close();
+
+        try {
+            log.onRestored(new Path("A"));
+            fail();
+        }
+        catch (UncheckedIOException exception) {
+            // Expected.
+        }
+
+        MutationListener target = mock(MutationListener.class);
+        log = WriteAheadLog.open(dir, 0L, MIN_JOURNAL_SEGMENT_SIZE, new PayloadCodecs(), target);
+        verify(target, times(200)).onSuspended(any(Path.class), any(), anyLong());
+        log.close();
+
+        for (long seqNumber : JournalSegment.listSeqNumbers(dir)) {
+            WriteAheadLog.delete(JournalSegment.fileOf(dir, seqNumber));
+        }
+
+        assertTrue(JournalSegment.listSeqNumbers(dir).isEmpty());
+    }
+}
@@ -0,0 +1,193 @@
+package net.devromik.suspender.replication;
+
+import java.util.*;
+import java.util.concurrent.*;
+import net.devromik.suspender.SuspendedObject;
+import net.devromik.suspender.mem.MemSuspender;
+import org.junit.*;
+import static java.lang.System.currentTimeMillis;
+import static java.time.Duration.*;
+import static net.devromik.suspender.Suspender.MIN_SUSPENSION_DURATION;
+import static net.devromik.suspender.replication.ReplicationRecord.Type.*;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class ReplicationFollowerTest {
+
+    @Test
+    public void followerMirrorsLeaderWithoutRestoring() throws Exception {
+        InProcessReplicationTransport transport = new InProcessReplicationTransport();
+        ReplicationLeader leader = new ReplicationLeader(transport);
+        MemSuspender leaderSuspender = new MemSuspender(MemSuspender.MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ZERO, ofMillis(10L));
+        leaderSuspender.setMutationListener(leader);
+
+        ReplicationFollower follower = new ReplicationFollower(new MemSuspender(), transport);
+        List<Path> followerRestoredPaths = new CopyOnWriteArrayList<>();
+        follower.getSuspender().addRestoredObjectListener((path, restoredObject) -> followerRestoredPaths.add(path));
+        Set<Path> leaderRestoredPaths = ConcurrentHashMap.newKeySet();
+        leaderSuspender.addRestoredObjectListener((path, restoredObject) -> leaderRestoredPaths.add(path));
+
+        leader.start();
+        leaderSuspender.start();
+        follower.start();
+
+        try {
+            for (int i = 0; i < 100; ++i) {
+                leaderSuspender.suspend(new Path("A", "B" + i), i, ofHours(1L));
+                leaderSuspender.suspend(new Path("A", "B" + i, "C"), -i, ofHours(2L));
+                leaderSuspender.suspend(new Path("E", "F" + i), i, MIN_SUSPENSION_DURATION);
+            }
+
+            leaderSuspender.restore(new Path("A", "B0"));
+            leaderSuspender.restore(new Path("A", "B1", "C"));
+            leaderSuspender.replace(new Path("A", "B2"), 2, 20, ofHours(3L));
+            leaderSuspender.compute(new Path("A", "B3"), (object) -> (Integer)object + 30, ofHours(4L));
+            leaderSuspender.restore(new PathPattern("A", "*", "C"));
+
+            awaitCaughtUp(() -> leaderRestoredPaths.size() == 201 && follower.getAppliedSeqNumber() == leader.getPublishedSeqNumber() && follower.getReplicationLag().isZero());
+        }
+        finally {
+            follower.stop();
+            leaderSuspender.stop();
+            leader.stop();
+        }
+
+        assertThat(contentOf(follower.getSuspender()), is(contentOf(leaderSuspender)));
+        assertThat(follower.getSuspender().countSuspendedBy(new Path("A")), is(99L));
+        assertFalse(follower.getSuspender().hasObjectsSuspendedBy(new Path("E")));
+        assertThat(follower.getSuspender().getSuspendedObject(new Path("A", "B2")).getObject(), is(20));
+        assertTrue(followerRestoredPaths.isEmpty());
+        assertThat(follower.getReplicationLag(), is(ZERO));
+    }
+
+    @Test
+    public void promotedFollowerRestoresPendingObjects() throws Exception {
+        InProcessReplicationTransport transport = new InProcessReplicationTransport();
+        ReplicationLeader leader = new ReplicationLeader(transport);
+        MemSuspender leaderSuspender = new MemSuspender();
+        leaderSuspender.setMutationListener(leader);
+        leader.start();
+
+        ReplicationFollower follower = new ReplicationFollower(
+            new MemSuspender(MemSuspender.MIN_SUSPENDED_OBJECT_DIVISION_COUNT, ZERO, ofMillis(10L)),
+            transport);
+
+        Set<Path> restoredPaths = ConcurrentHashMap.newKeySet();
+        follower.getSuspender().addRestoredObjectListener((path, restoredObject) -> restoredPaths.add(path));
+
+        // The leader is not started, so it does not restore the objects itself.
+        for (int i = 0; i < 10; ++i) {
+            leaderSuspender.suspend(new Path("A", "B" + i), i, MIN_SUSPENSION_DURATION);
+        }
+
+        leaderSuspender.suspend(new Path("C", "D"), 1, ofHours(1L));
+        long restorationTime = leaderSuspender.getSuspendedObject(new Path("C", "D")).getRestorationTime().toEpochMilli();
+        leader.stop();
+        assertThat(leader.getShippedSeqNumber(), is(11L));
+        assertThat(transport.getBacklog(), is(11));
+
+        MemSuspender promoted = follower.promote();
+
+        try {
+            assertTrue(follower.isPromoted());
+            assertThat(transport.getBacklog(), is(0));
+            assertThat(follower.getAppliedSeqNumber(), is(11L));
+            assertThat(promoted.getSuspendedObject(new Path("C", "D")).getRestorationTime().toEpochMilli(), is(restorationTime));
+
+            awaitCaughtUp(() -> restoredPaths.size() == 10);
+            assertThat(restoredPaths.size(), is(10));
+            assertTrue(promoted.hasObjectsSuspendedBy(new Path("C", "D")));
+        }
+        finally {
+            promoted.stop();
+        }
+    }
+
+    @Test
+    public void restorationOfPartitionedSubtreeIsReplicated() {
+        InProcessReplicationTransport transport = new InProcessReplicationTransport();
+        ReplicationLeader leader = new ReplicationLeader(transport);
+        MemSuspender leaderSuspender = new MemSuspender();
+        leaderSuspender.setMutationListener(leader);
+        leader.start();
+        ReplicationFollower follower = new ReplicationFollower(new MemSuspender(), transport);
+
+        Path prefix = new Path("T", "B");
+        assertTrue(leaderSuspender.partitionSubtree(prefix));
+        leaderSuspender.suspend(prefix, -1, ofHours(1L));
+
+        for (int i = 0; i < 64; ++i) {
+            leaderSuspender.suspend(prefix.withAppendedSegment("C" + i), i, ofHours(1L));
+            leaderSuspender.suspend(new Path("T", "B", "C" + i, "D"), i, ofHours(1L));
+        }
+
+        // The divisions are restored one after another,
+        // so the object is suspended after its division has been restored but before the other divisions are.
+        Set<Path> resuspendedPaths = ConcurrentHashMap.newKeySet();
+
+        leaderSuspender.restore(
+            prefix,
+            Collections.singletonList(
+                (path, restoredObject) -> {
+                    if (path.getSegmentCount() > 2 && resuspendedPaths.isEmpty()) {
+                        Path resuspendedPath = new Path("T", "B", path.getSegment(2), "NEW");
+                        resuspendedPaths.add(resuspendedPath);
+                        leaderSuspender.suspend(resuspendedPath, 0, ofHours(1L));
+                    }
+                }));
+
+        assertThat(leaderSuspender.countSuspendedBy(new Path("T")), is(1L));
+        leader.stop();
+        MemSuspender promoted = follower.promote();
+
+        try {
+            assertThat(contentOf(promoted), is(contentOf(leaderSuspender)));
+            assertTrue(promoted.hasObjectsSuspendedBy(resuspendedPaths.iterator().next()));
+        }
+        finally {
+            promoted.stop();
+        }
+    }
+
+    @Test
+    public void recordsAreAppliedOnce() {
+        ReplicationFollower follower = new ReplicationFollower(new MemSuspender(), new InProcessReplicationTransport());
+        long restorationTime = currentTimeMillis() + ofHours(1L).toMillis();
+        long publicationTime = currentTimeMillis() - 1000L;
+
+        follower.apply(new ReplicationRecord(1L, SUSPENDED, new Path("A", "B"), 1, restorationTime, publicationTime));
+        follower.apply(new ReplicationRecord(2L, OBJECT_RESTORED, new Path("A", "B"), null, 0L, publicationTime));
+        assertThat(follower.getReplicationLag().toMillis() >= 1000L, is(true));
+
+        // Redelivered.
+        follower.apply(new ReplicationRecord(1L, SUSPENDED, new Path("A", "B"), 1, restorationTime, publicationTime));
+        assertFalse(follower.getSuspender().hasObjectsSuspendedBy(new Path("A")));
+
+        follower.apply(new ReplicationRecord(3L, SUSPENDED, new Path("A", "B", "C"), 3, restorationTime, publicationTime));
+        follower.apply(new ReplicationRecord(4L, SUSPENDED, new Path("A", "D"), 4, restorationTime, publicationTime));
+        follower.apply(new ReplicationRecord(5L, RESTORED, new Path("A", "B"), null, 0L, publicationTime));
+        assertThat(follower.getSuspender().countSuspendedBy(new Path("A")), is(1L));
+        assertThat(follower.getAppliedSeqNumber(), is(5L));
+    }
+
+    // ****************************** //
+
+    private static Map<Path, String> contentOf(MemSuspender suspender) {
+        Map<Path, String> content = new HashMap<>();
+        suspender.forEachSuspendedObject((SuspendedObject object) -> content.put(object.getPath(), object.getObject() + " " + object.getRestorationTime()));
+
+        return content;
+    }
+
+    private static void awaitCaughtUp(Callable<Boolean> condition) throws Exception {
+        long deadline = currentTimeMillis() + ofSeconds(10L).toMillis();
+
+        while (!condition.call() && currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+}
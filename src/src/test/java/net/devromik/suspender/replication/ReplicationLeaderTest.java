@@ -0,0 +1,113 @@
+package net.devromik.suspender.replication;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.devromik.suspender.mem.MemSuspender;
+import org.junit.*;
+import static java.lang.System.currentTimeMillis;
+import static java.time.Duration.*;
+import net.devromik.suspender.utils.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class ReplicationLeaderTest {
+
+    @Test
+    public void slowTransportDoesNotHoldSuspender() throws Exception {
+        CountDownLatch shippingAllowed = new CountDownLatch(1);
+        List<Long> shippedSeqNumbers = new CopyOnWriteArrayList<>();
+
+        ReplicationLeader leader = new ReplicationLeader(new ReplicationTransport() {
+
+            @Override
+            public void ship(ReplicationRecord record) {
+                try {
+                    shippingAllowed.await();
+                }
+                catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+
+                shippedSeqNumbers.add(record.getSeqNumber());
+            }
+
+            @Override
+            public ReplicationRecord receive(Duration timeout) {
+                return null;
+            }
+        });
+
+        MemSuspender suspender = new MemSuspender();
+        suspender.setMutationListener(leader);
+        leader.start();
+
+        try {
+            for (int i = 0; i < 100; ++i) {
+                suspender.suspend(new Path("A", "B" + i), i, ofHours(1L));
+            }
+
+            assertThat(leader.getPublishedSeqNumber(), is(100L));
+            assertThat(leader.getShippedSeqNumber(), is(0L));
+        }
+        finally {
+            shippingAllowed.countDown();
+            leader.stop();
+        }
+
+        assertThat(leader.getShippedSeqNumber(), is(100L));
+        assertThat(shippedSeqNumbers.size(), is(100));
+
+        for (int i = 0; i < 100; ++i) {
+            assertThat(shippedSeqNumbers.get(i), is(i + 1L));
+        }
+    }
+
+    @Test
+    public void recordFailedToBeShippedIsShippedAgain() throws Exception {
+        AtomicInteger failureCount = new AtomicInteger(2);
+        InProcessReplicationTransport delivered = new InProcessReplicationTransport();
+
+        ReplicationLeader leader = new ReplicationLeader(new ReplicationTransport() {
+
+            @Override
+            public void ship(ReplicationRecord record) {
+                if (failureCount.getAndDecrement() > 0) {
+                    throw new IllegalStateException("expected");
+                }
+
+                delivered.ship(record);
+            }
+
+            @Override
+            public ReplicationRecord receive(Duration timeout) {
+                return null;
+            }
+        });
+
+        MemSuspender suspender = new MemSuspender();
+        suspender.setMutationListener(leader);
+        leader.start();
+
+        try {
+            suspender.suspend(new Path("A", "B"), 1, ofHours(1L));
+            suspender.suspend(new Path("A", "C"), 2, ofHours(1L));
+            long deadline = currentTimeMillis() + ofSeconds(10L).toMillis();
+
+            while (leader.getShippedSeqNumber() < 2L && currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+        }
+        finally {
+            leader.stop();
+        }
+
+        assertThat(delivered.getBacklog(), is(2));
+        assertThat(delivered.receive(ZERO).getSeqNumber(), is(1L));
+        assertThat(delivered.receive(ZERO).getSeqNumber(), is(2L));
+    }
+}
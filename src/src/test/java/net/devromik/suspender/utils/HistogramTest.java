@@ -0,0 +1,59 @@
+package net.devromik.suspender.utils;
+
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class HistogramTest {
+
+    @Test
+    public void valuesAreCountedInPowerOfTwoBuckets() throws Exception {
+        assertThat(Histogram.bucketIndexOf(0L), is(0));
+        assertThat(Histogram.bucketIndexOf(1L), is(1));
+        assertThat(Histogram.bucketIndexOf(2L), is(2));
+        assertThat(Histogram.bucketIndexOf(3L), is(2));
+        assertThat(Histogram.bucketIndexOf(4L), is(3));
+        assertThat(Histogram.bucketIndexOf(Long.MAX_VALUE), is(Histogram.BUCKET_COUNT - 1));
+
+        Histogram histogram = new Histogram();
+        histogram.record(0L);
+        histogram.record(5L);
+        histogram.record(6L);
+        histogram.record(7L);
+
+        assertThat(histogram.getBucketCount(0), is(1L));
+        assertThat(histogram.getBucketCount(3), is(3L));
+        assertThat(histogram.getCount(), is(4L));
+        assertThat(histogram.getMax(), is(7L));
+        assertThat(histogram.getMean(), is(4.5));
+    }
+
+    @Test
+    public void canTellPercentiles() throws Exception {
+        Histogram histogram = new Histogram();
+        assertThat(histogram.getValueAtPercentile(50.0), is(0L));
+        assertThat(histogram.getMean(), is(0.0));
+
+        for (long value = 1L; value <= 100L; ++value) {
+            histogram.record(value);
+        }
+
+        assertThat(histogram.getValueAtPercentile(0.0), is(1L));
+        assertThat(histogram.getValueAtPercentile(50.0), is(63L));
+        assertThat(histogram.getValueAtPercentile(99.0), is(100L));
+        assertThat(histogram.getValueAtPercentile(100.0), is(100L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void valueMustBeNonNegative() throws Exception {
+        new Histogram().record(-1L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentileMustBeWithinRange() throws Exception {
+        new Histogram().getValueAtPercentile(101.0);
+    }
+}
@@ -0,0 +1,86 @@
+package net.devromik.suspender.utils;
+
+import org.junit.Test;
+import static com.google.common.collect.Sets.newHashSet;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Shulnyaev Roman
+ */
+public class PathPatternTest {
+
+    @Test
+    public void literalPatternMatchesOnlyItself() {
+        PathPattern pattern = new PathPattern("A", "B");
+
+        assertTrue(pattern.matches(new Path("A", "B")));
+        assertFalse(pattern.matches(new Path("A")));
+        assertFalse(pattern.matches(new Path("A", "C")));
+        assertFalse(pattern.matches(new Path("A", "B", "C")));
+
+        assertTrue(pattern.matchesPrefixOf(new Path("A", "B", "C")));
+        assertFalse(pattern.matchesPrefixOf(new Path("A", "C", "B")));
+    }
+
+    @Test
+    public void anySegmentMatchesExactlyOneSegment() {
+        PathPattern pattern = new PathPattern("tenant", "*", "sessions", "S");
+
+        assertTrue(pattern.matches(new Path("tenant", "T1", "sessions", "S")));
+        assertTrue(pattern.matches(new Path("tenant", "T2", "sessions", "S")));
+        assertFalse(pattern.matches(new Path("tenant", "sessions", "S")));
+        assertFalse(pattern.matches(new Path("tenant", "T1", "T2", "sessions", "S")));
+        assertFalse(pattern.matches(new Path("tenant", "T1", "sessions", "X")));
+    }
+
+    @Test
+    public void anySegmentsMatchesZeroOrMoreSegments() {
+        PathPattern pattern = new PathPattern("tenant", "**", "S");
+
+        assertTrue(pattern.matches(new Path("tenant", "S")));
+        assertTrue(pattern.matches(new Path("tenant", "T1", "S")));
+        assertTrue(pattern.matches(new Path("tenant", "T1", "sessions", "S")));
+        assertTrue(pattern.matches(new Path("tenant", "S", "S")));
+        assertFalse(pattern.matches(new Path("tenant", "T1", "sessions")));
+        assertFalse(pattern.matches(new Path("other", "S")));
+
+        PathPattern trailingPattern = new PathPattern("A", "**");
+
+        assertTrue(trailingPattern.matches(new Path("A")));
+        assertTrue(trailingPattern.matches(new Path("A", "B", "C")));
+        assertFalse(trailingPattern.matches(new Path("B", "A")));
+    }
+
+    @Test
+    public void canTellExpectedSegments() {
+        PathPattern pattern = new PathPattern("A", "*", "C");
+
+        assertThat(pattern.expectedSegments(pattern.start()), is(newHashSet("A")));
+        assertNull(pattern.expectedSegments(pattern.step(pattern.start(), "A")));
+        assertTrue(pattern.step(pattern.start(), "B").isEmpty());
+        assertTrue(pattern.isLiteral(0));
+        assertFalse(pattern.isLiteral(1));
+    }
+
+    @Test
+    public void testEqualsHashCodeAndToString() {
+        PathPattern pattern = new PathPattern("A", "*", "**");
+
+        assertThat(pattern, is(equalTo(new PathPattern("A", "*", "**"))));
+        assertThat(pattern, is(not(equalTo(new PathPattern("A", "*")))));
+        assertThat(pattern, is(not(equalTo(null))));
+        assertThat(pattern.hashCode(), is(new PathPattern("A", "*", "**").hashCode()));
+        assertThat(pattern.toString(), is("/A/*/**"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void patternShouldHaveAtLeastOneSegment() {
+        new PathPattern();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentCannotContainSlash() {
+        new PathPattern("A", "B/C");
+    }
+}